@@ -0,0 +1,141 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                ;
+import io.helins.linux.Linux                             ;
+import io.helins.linux.SizeT                             ;
+import io.helins.linux.gpio.GpioEvent                    ;
+import io.helins.linux.gpio.internal.NativeGpioEventData ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
+import io.helins.linux.io.LinuxIO                        ;
+import java.io.IOException                               ;
+
+
+
+
+// File descriptors standing in for GPIO devices and handles, so that benchmarks run without any hardware.
+//
+// Benchmarks live in the package of the library in order to build handles around such file descriptors.
+//
+final class GpioBenchmarkIO {
+
+
+    // Path of the stand-in for ioctl requests.
+    //
+    // Ioctls are rejected by the kernel right after entering it, which leaves the cost of marshalling and of the
+    // native transition, the part the library is responsible for.
+    //
+    static final String STAND_IN = "/dev/null" ;
+
+
+
+
+    private GpioBenchmarkIO() {}
+
+
+
+
+    // Opens the given GPIO device or, if the path is empty, the stand-in.
+    //
+    static int open( String path ) throws IOException {
+
+        if ( path.isEmpty() ) {
+
+            path = STAND_IN ;
+        }
+
+        int fd = LinuxIO.open64( path           ,
+                                 LinuxIO.O_RDWR ) ;
+
+        if ( fd < 0 ) {
+
+            throw new IOException( "Native error while opening '" + path + "' : errno " + Linux.getErrno() ) ;
+        }
+
+        return fd ;
+    }
+
+
+
+
+    // Creates a pipe whose read end does not block, returns { read end, write end }.
+    //
+    static int[] pipe() throws IOException {
+
+        int[] fds = new int[ 2 ] ;
+
+        if ( NativeLinux.pipe2( fds                                           ,
+                                NativeLinux.O_NONBLOCK | NativeLinux.O_CLOEXEC ) != 0 ) {
+
+            throw new IOException( "Native error while creating a pipe : errno " + Linux.getErrno() ) ;
+        }
+
+        return fds ;
+    }
+
+
+
+
+    // Builds synthetic gpioevent_data structures, alternating rising and falling edges 1 microsecond apart.
+    //
+    static Memory events( int count ) {
+
+        Memory memory = new Memory( (long)count * NativeGpioEventData.BYTES ) ;
+
+        memory.clear() ;
+
+        for ( int i = 0  ;
+              i < count  ;
+              i += 1     ) {
+
+            long offset = (long)i * NativeGpioEventData.BYTES ;
+
+            memory.setLong( offset + NativeGpioEventData.OFFSET_TIMESTAMP ,
+                            1000L * i                                     ) ;
+
+            memory.setInt( offset + NativeGpioEventData.OFFSET_ID         ,
+                           i % 2 == 0 ? GpioEvent.GPIO_EVENT_RISING_EDGE
+                                      : GpioEvent.GPIO_EVENT_FALLING_EDGE ) ;
+        }
+
+        return memory ;
+    }
+
+
+
+
+    // Writes the first `count` synthetic events to the write end of a pipe.
+    //
+    static void fill( int    fd     ,
+                      Memory events ,
+                      int    count  ) throws IOException {
+
+        long bytes = (long)count * NativeGpioEventData.BYTES ;
+
+        if ( LinuxIO.write( fd                ,
+                            events            ,
+                            new SizeT( bytes ) ).longValue() != bytes ) {
+
+            throw new IOException( "Unable to fill a pipe with " + count + " events : errno " + Linux.getErrno() ) ;
+        }
+    }
+
+
+
+
+    // Closes a file descriptor.
+    //
+    static void close( int fd ) throws IOException {
+
+        if ( LinuxIO.close( fd ) != 0 ) {
+
+            throw new IOException( "Native error while closing a file descriptor : errno " + Linux.getErrno() ) ;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                  ;
+import io.helins.linux.gpio.GpioEvent                      ;
+import io.helins.linux.gpio.GpioEventBatch                 ;
+import java.io.IOException                                 ;
+import java.util.concurrent.TimeUnit                       ;
+import org.openjdk.jmh.annotations.Benchmark               ;
+import org.openjdk.jmh.annotations.BenchmarkMode           ;
+import org.openjdk.jmh.annotations.Fork                    ;
+import org.openjdk.jmh.annotations.Level                   ;
+import org.openjdk.jmh.annotations.Measurement             ;
+import org.openjdk.jmh.annotations.Mode                    ;
+import org.openjdk.jmh.annotations.OperationsPerInvocation ;
+import org.openjdk.jmh.annotations.OutputTimeUnit          ;
+import org.openjdk.jmh.annotations.Scope                   ;
+import org.openjdk.jmh.annotations.Setup                   ;
+import org.openjdk.jmh.annotations.State                   ;
+import org.openjdk.jmh.annotations.TearDown                ;
+import org.openjdk.jmh.annotations.Warmup                  ;
+import org.openjdk.jmh.infra.Blackhole                     ;
+
+
+
+
+/**
+ * Measures reading events, one by one and in batches, from a pipe filled with synthetic gpioevent_data.
+ * <p>
+ * The pipe is filled before each invocation, which reads all events, and results are reported per event.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 ,
+         time       = 1 )
+@Measurement( iterations = 5 ,
+              time       = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GpioEventBenchmark {
+
+
+    // How many events are read per invocation, fitting in the default capacity of a pipe.
+    //
+    static final int EVENTS = 1024 ;
+
+
+    // Pipe standing in for an event handle, { read end, write end }.
+    //
+    private int[] pipe ;
+
+
+    // Synthetic events written to the pipe.
+    //
+    private final Memory events = GpioBenchmarkIO.events( EVENTS ) ;
+
+
+    // Reused for every read.
+    //
+    private final GpioEvent      event = new GpioEvent()      ;
+    private final GpioEventBatch batch = new GpioEventBatch() ;
+
+
+
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException {
+
+        this.pipe = GpioBenchmarkIO.pipe() ;
+    }
+
+
+
+
+    @Setup( Level.Invocation )
+    public void fill() throws IOException {
+
+        GpioBenchmarkIO.fill( this.pipe[ 1 ] ,
+                              this.events    ,
+                              EVENTS         ) ;
+    }
+
+
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+
+        GpioBenchmarkIO.close( this.pipe[ 0 ] ) ;
+        GpioBenchmarkIO.close( this.pipe[ 1 ] ) ;
+    }
+
+
+
+
+    @Benchmark
+    @OperationsPerInvocation( EVENTS )
+    public void read( Blackhole blackhole ) throws IOException {
+
+        while ( this.event.read( this.pipe[ 0 ] ) ) {
+
+            blackhole.consume( this.event.getNanoTimestamp() ) ;
+        }
+    }
+
+
+
+
+    @Benchmark
+    @OperationsPerInvocation( EVENTS )
+    public void readBatch( Blackhole blackhole ) throws IOException {
+
+        do {
+
+            this.batch.clear() ;
+
+            this.batch.read( this.pipe[ 0 ] ,
+                             0              ) ;
+
+            blackhole.consume( this.batch.size() ) ;
+        }
+        while ( this.batch.isFull() ) ;
+    }
+}
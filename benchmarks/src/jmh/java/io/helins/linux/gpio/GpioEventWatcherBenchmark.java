@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                  ;
+import io.helins.linux.gpio.GpioEvent                      ;
+import io.helins.linux.gpio.GpioEventHandle                ;
+import io.helins.linux.gpio.GpioEventWatcher               ;
+import java.io.IOException                                 ;
+import java.util.concurrent.TimeUnit                       ;
+import org.openjdk.jmh.annotations.Benchmark               ;
+import org.openjdk.jmh.annotations.BenchmarkMode           ;
+import org.openjdk.jmh.annotations.Fork                    ;
+import org.openjdk.jmh.annotations.Level                   ;
+import org.openjdk.jmh.annotations.Measurement             ;
+import org.openjdk.jmh.annotations.Mode                    ;
+import org.openjdk.jmh.annotations.OperationsPerInvocation ;
+import org.openjdk.jmh.annotations.OutputTimeUnit          ;
+import org.openjdk.jmh.annotations.Param                   ;
+import org.openjdk.jmh.annotations.Scope                   ;
+import org.openjdk.jmh.annotations.Setup                   ;
+import org.openjdk.jmh.annotations.State                   ;
+import org.openjdk.jmh.annotations.TearDown                ;
+import org.openjdk.jmh.annotations.Warmup                  ;
+import org.openjdk.jmh.infra.Blackhole                     ;
+
+
+
+
+/**
+ * Measures dispatching events with a watcher: waiting on epoll, reading the ready handle and tagging the event with
+ * the id of that handle.
+ * <p>
+ * Each handle is a pipe filled with synthetic gpioevent_data before each invocation, which dispatches all events.
+ * Results are reported per event.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 ,
+         time       = 1 )
+@Measurement( iterations = 5 ,
+              time       = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GpioEventWatcherBenchmark {
+
+
+    // How many events are dispatched per invocation, divisible by any number of handles benchmarked.
+    //
+    static final int EVENTS = 1024 ;
+
+
+    /**
+     * How many handles are watched.
+     */
+    @Param( { "1"  ,
+              "16" } )
+    public int handles ;
+
+
+    // Pipes standing in for event handles, { read end, write end } each.
+    //
+    private int[][] pipes ;
+
+
+    // Event handles wrapping the read ends.
+    //
+    private GpioEventHandle[] eventHandles ;
+
+
+    // Watcher under test.
+    //
+    private GpioEventWatcher watcher ;
+
+
+    // Synthetic events written to the pipes.
+    //
+    private final Memory events = GpioBenchmarkIO.events( EVENTS ) ;
+
+
+    // Reused for every event.
+    //
+    private final GpioEvent event = new GpioEvent() ;
+
+
+
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException {
+
+        this.pipes        = new int[ this.handles ][]           ;
+        this.eventHandles = new GpioEventHandle[ this.handles ] ;
+        this.watcher      = new GpioEventWatcher()              ;
+
+        for ( int i = 0        ;
+              i < this.handles ;
+              i += 1           ) {
+
+            this.pipes[ i ]        = GpioBenchmarkIO.pipe()                    ;
+            this.eventHandles[ i ] = new GpioEventHandle( this.pipes[ i ][ 0 ] ,
+                                                          i                    ) ;
+
+            this.watcher.addHandle( this.eventHandles[ i ] ,
+                                    i                      ) ;
+        }
+    }
+
+
+
+
+    @Setup( Level.Invocation )
+    public void fill() throws IOException {
+
+        for ( int[] pipe : this.pipes ) {
+
+            GpioBenchmarkIO.fill( pipe[ 1 ]             ,
+                                  this.events           ,
+                                  EVENTS / this.handles ) ;
+        }
+    }
+
+
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+
+        this.watcher.close() ;
+
+        for ( int i = 0        ;
+              i < this.handles ;
+              i += 1           ) {
+
+            this.eventHandles[ i ].close() ;
+
+            GpioBenchmarkIO.close( this.pipes[ i ][ 1 ] ) ;
+        }
+    }
+
+
+
+
+    @Benchmark
+    @OperationsPerInvocation( EVENTS )
+    public void waitForEvent( Blackhole blackhole ) throws IOException {
+
+        for ( int i = 0  ;
+              i < EVENTS ;
+              i += 1     ) {
+
+            if ( this.watcher.waitForEvent( this.event ,
+                                            0          ) == false ) {
+
+                throw new IllegalStateException( "Pipes were drained before all events were dispatched" ) ;
+            }
+
+            blackhole.consume( this.event.getId() ) ;
+        }
+    }
+}
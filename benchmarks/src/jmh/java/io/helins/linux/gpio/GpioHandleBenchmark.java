@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioBuffer            ;
+import io.helins.linux.gpio.GpioDevice            ;
+import io.helins.linux.gpio.GpioFlags             ;
+import io.helins.linux.gpio.GpioHandle            ;
+import io.helins.linux.gpio.GpioHandleRequest     ;
+import io.helins.linux.gpio.GpioLineInfo          ;
+import io.helins.linux.gpio.internal.NativeIO     ;
+import java.io.IOException                        ;
+import java.util.concurrent.TimeUnit              ;
+import org.openjdk.jmh.annotations.Benchmark      ;
+import org.openjdk.jmh.annotations.BenchmarkMode  ;
+import org.openjdk.jmh.annotations.Fork           ;
+import org.openjdk.jmh.annotations.Level          ;
+import org.openjdk.jmh.annotations.Measurement    ;
+import org.openjdk.jmh.annotations.Mode           ;
+import org.openjdk.jmh.annotations.OutputTimeUnit ;
+import org.openjdk.jmh.annotations.Param          ;
+import org.openjdk.jmh.annotations.Scope          ;
+import org.openjdk.jmh.annotations.Setup          ;
+import org.openjdk.jmh.annotations.State          ;
+import org.openjdk.jmh.annotations.TearDown       ;
+import org.openjdk.jmh.annotations.Warmup         ;
+
+
+
+
+/**
+ * Measures ioctl paths: reading and writing the values of a handle, requesting information about a line.
+ * <p>
+ * By default, ioctls are issued against a stand-in file descriptor which the kernel rejects, measuring what the
+ * library adds on top of the kernel. Given the path of a GPIO device, for instance one created by the gpio-sim or
+ * gpio-mockup modules, the real calls are measured end to end using its first line.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 ,
+         time       = 1 )
+@Measurement( iterations = 5 ,
+              time       = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GpioHandleBenchmark {
+
+
+    /**
+     * Path of a GPIO device, empty for using the stand-in.
+     */
+    @Param( { "" } )
+    public String device ;
+
+
+    // Opened GPIO device, null when using the stand-in.
+    //
+    private GpioDevice gpio ;
+
+
+    // Handle to the first line, null when using the stand-in.
+    //
+    private GpioHandle handle ;
+
+
+    // Stand-in file descriptor, -1 when using a GPIO device.
+    //
+    private int standIn = -1 ;
+
+
+    // Reused for every call.
+    //
+    private final GpioBuffer   buffer = new GpioBuffer()   ;
+    private final GpioLineInfo info   = new GpioLineInfo() ;
+
+
+
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException {
+
+        if ( this.device.isEmpty() ) {
+
+            this.standIn = GpioBenchmarkIO.open( this.device ) ;
+        }
+
+        else {
+
+            GpioHandleRequest request = new GpioHandleRequest().setConsumer( "benchmark" ) ;
+
+            request.addLine( 0     ,
+                             false ) ;
+
+            request.setFlags( new GpioFlags().setOutput() ) ;
+
+            this.gpio   = new GpioDevice( this.device )     ;
+            this.handle = this.gpio.requestHandle( request ) ;
+        }
+    }
+
+
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+
+        if ( this.handle != null ) {
+
+            this.handle.close() ;
+            this.gpio.close()   ;
+        }
+
+        else {
+
+            GpioBenchmarkIO.close( this.standIn ) ;
+        }
+    }
+
+
+
+
+    @Benchmark
+    public int read() throws IOException {
+
+        if ( this.handle == null ) {
+
+            return NativeIO.ioctl( this.standIn                                ,
+                                   GpioHandle.GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                                   this.buffer.getPointer()                    ) ;
+        }
+
+        this.handle.read( this.buffer ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    @Benchmark
+    public int write() throws IOException {
+
+        if ( this.handle == null ) {
+
+            return NativeIO.ioctl( this.standIn                                ,
+                                   GpioHandle.GPIOHANDLE_SET_LINE_VALUES_IOCTL ,
+                                   this.buffer.getPointer()                    ) ;
+        }
+
+        this.handle.write( this.buffer ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    @Benchmark
+    public Object requestLineInfo() throws IOException {
+
+        if ( this.gpio == null ) {
+
+            this.info.setLine( 0 ) ;
+
+            return NativeIO.ioctl( this.standIn                       ,
+                                   GpioDevice.GPIO_GET_LINEINFO_IOCTL ,
+                                   this.info.memory                   ) ;
+        }
+
+        return this.gpio.requestLineInfo( 0         ,
+                                          this.info ) ;
+    }
+}
@@ -0,0 +1,127 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                         ;
+import io.helins.linux.SizeT                      ;
+import io.helins.linux.gpio.GpioHandle            ;
+import io.helins.linux.gpio.internal.NativeIO     ;
+import java.io.IOException                        ;
+import java.util.concurrent.TimeUnit              ;
+import org.openjdk.jmh.annotations.Benchmark      ;
+import org.openjdk.jmh.annotations.BenchmarkMode  ;
+import org.openjdk.jmh.annotations.Fork           ;
+import org.openjdk.jmh.annotations.Level          ;
+import org.openjdk.jmh.annotations.Measurement    ;
+import org.openjdk.jmh.annotations.Mode           ;
+import org.openjdk.jmh.annotations.OutputTimeUnit ;
+import org.openjdk.jmh.annotations.Param          ;
+import org.openjdk.jmh.annotations.Scope          ;
+import org.openjdk.jmh.annotations.Setup          ;
+import org.openjdk.jmh.annotations.State          ;
+import org.openjdk.jmh.annotations.TearDown       ;
+import org.openjdk.jmh.annotations.Warmup         ;
+
+
+
+
+/**
+ * Compares the cost of native calls on the hot paths when going through JNA and through the Foreign Function and
+ * Memory API.
+ * <p>
+ * Calls are issued against the stand-in, which rejects ioctls and reads nothing, leaving the cost of the transition
+ * itself. The Foreign Function and Memory API requires the library to be built with `-Pjava22` and the benchmarks to
+ * run on Java 22 or later, otherwise that variant fails, which is why it is opt-in.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 ,
+         time       = 1 )
+@Measurement( iterations = 5 ,
+              time       = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GpioNativeCallBenchmark {
+
+
+    /**
+     * How native calls are made, "jna" or "foreign".
+     * <p>
+     * Only "jna" by default so that a plain run works anywhere, the comparison being requested with
+     * `-p api=jna,foreign`. Each value runs in its own fork, the choice being made once when native calls are first
+     * needed.
+     */
+    @Param( { "jna" } )
+    public String api ;
+
+
+    // Stand-in file descriptor.
+    //
+    private int standIn = -1 ;
+
+
+    // Reused for every call.
+    //
+    private final Memory memory = new Memory( 64 ) ;
+    private final SizeT  size   = new SizeT( 16 )  ;
+
+
+
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException                 ,
+                               ReflectiveOperationException {
+
+        boolean isForeignWanted = this.api.equals( "foreign" ) ;
+
+        // Must happen before native calls are first needed.
+        //
+        System.setProperty( "io.helins.linux.gpio.jna"              ,
+                            Boolean.toString( ! isForeignWanted ) ) ;
+
+        // Read reflectively since the JNA version of that field is a constant inlined at compile time.
+        //
+        if ( NativeIO.class.getField( "IS_FOREIGN" ).getBoolean( null ) != isForeignWanted ) {
+
+            throw new IllegalStateException( "Foreign Function and Memory API not available, requires a library built with -Pjava22 and Java 22 or later" ) ;
+        }
+
+        this.standIn = GpioBenchmarkIO.open( "" ) ;
+    }
+
+
+
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+
+        GpioBenchmarkIO.close( this.standIn ) ;
+    }
+
+
+
+
+    @Benchmark
+    public int ioctl() {
+
+        return NativeIO.ioctl( this.standIn                                ,
+                               GpioHandle.GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                               this.memory                                 ) ;
+    }
+
+
+
+
+    @Benchmark
+    public int read() {
+
+        return NativeIO.read( this.standIn ,
+                              this.memory  ,
+                              this.size    ) ;
+    }
+}
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioFlags             ;
+import io.helins.linux.gpio.GpioHandleRequest     ;
+import java.util.concurrent.TimeUnit              ;
+import org.openjdk.jmh.annotations.Benchmark      ;
+import org.openjdk.jmh.annotations.BenchmarkMode  ;
+import org.openjdk.jmh.annotations.Fork           ;
+import org.openjdk.jmh.annotations.Measurement    ;
+import org.openjdk.jmh.annotations.Mode           ;
+import org.openjdk.jmh.annotations.OutputTimeUnit ;
+import org.openjdk.jmh.annotations.Param          ;
+import org.openjdk.jmh.annotations.Scope          ;
+import org.openjdk.jmh.annotations.State          ;
+import org.openjdk.jmh.annotations.Warmup         ;
+import org.openjdk.jmh.infra.Blackhole            ;
+
+
+
+
+/**
+ * Measures preparing requests, which happens entirely in Java: creating a handle request and adding lines to it,
+ * building flags.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 ,
+         time       = 1 )
+@Measurement( iterations = 5 ,
+              time       = 1 )
+@Fork( 1 )
+public class GpioRequestBenchmark {
+
+
+    /**
+     * Parameters for requests, only relevant to benchmarks which need them.
+     */
+    @State( Scope.Thread )
+    public static class Lines {
+
+
+        /**
+         * How many lines are added to a request, at most 64.
+         */
+        @Param( { "1"  ,
+                  "8"  ,
+                  "64" } )
+        public int count ;
+    }
+
+
+
+
+    @Benchmark
+    public GpioHandleRequest addLine( Lines     lines     ,
+                                      Blackhole blackhole ) {
+
+        GpioHandleRequest request = new GpioHandleRequest() ;
+
+        for ( int i = 0       ;
+              i < lines.count ;
+              i += 1          ) {
+
+            blackhole.consume( request.addLine( i              ,
+                                                ( i & 1 ) == 0 ) ) ;
+        }
+
+        return request ;
+    }
+
+
+
+
+    @Benchmark
+    public GpioFlags buildFlags() {
+
+        return new GpioFlags().setOutput()
+                              .setActiveLow( true )
+                              .setOpenDrain( true ) ;
+    }
+}
@@ -0,0 +1,211 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.examples ;
+
+
+import io.helins.linux.gpio.*                 ;
+import java.io.IOException                    ;
+import java.util.Arrays                       ;
+import java.util.concurrent.locks.LockSupport ;
+
+
+
+
+/**
+ * In this example, the latency between an edge and its handling is measured when waiting for events by
+ * blocking, by busy-polling for a while before blocking (hybrid), by busy-polling only (spin) and by adapting
+ * to the rate of events (adaptive).
+ * <p>
+ * An output is toggled at a steady pace and must be wired to an input which is monitored for events. Latency is
+ * computed by comparing the kernel timestamp of an event with the time at which the thread waiting for it
+ * wakes up. Those timestamps are comparable only since Linux 5.7, as events were timestamped using the realtime
+ * clock before that.
+ * <p>
+ * It works out of the box with a Raspberry Pi 3 and should work on any other board
+ * exposing a GPIO character device.
+ * <p>
+ * You need to make sure that the user running this program has permissions for the needed
+ * character device, '/dev/gpiochip0' in this example.
+ *
+ * Attention, error checking not included !
+ */
+public class EventLatency {
+
+
+
+
+    // Path to our GPIO device in the file system.
+    //
+    public static final String PATH_TO_DEVICE = "/dev/gpiochip0" ;
+
+
+    // The lines we are going to use, the output must be wired to the input.
+    //
+    public static final int LINE_NUMBER_OUTPUT = 17 ;
+    public static final int LINE_NUMBER_INPUT  = 27 ;
+
+    // How many edges are measured per mode.
+    //
+    public static final int N_SAMPLES = 10000 ;
+
+    // How often the output is toggled, in nanoseconds.
+    //
+    public static final long TOGGLE_INTERVAL_NS = 1000000L ;
+
+    // How long the hybrid mode busy-polls before blocking, longer than the toggling interval so that it
+    // rarely blocks.
+    //
+    public static final long HYBRID_IDLE_NS = 2 * TOGGLE_INTERVAL_NS ;
+
+    // Events arriving faster than this are considered a burst by the adaptive mode.
+    //
+    public static final long BURST_THRESHOLD_NS = 2 * TOGGLE_INTERVAL_NS ;
+
+
+
+
+    // Private constructor.
+    //
+    private EventLatency() {}
+
+
+
+
+    // Toggles the output until interrupted.
+    //
+    private static void toggle( GpioHandle handle ,
+                                GpioBuffer buffer ,
+                                GpioLine   line   ) {
+
+        try {
+
+            while ( Thread.currentThread().isInterrupted() == false ) {
+
+                handle.write( buffer.toggle( line ) ) ;
+
+                LockSupport.parkNanos( TOGGLE_INTERVAL_NS ) ;
+            }
+        }
+
+        catch ( IOException e ) {
+
+            e.printStackTrace() ;
+        }
+    }
+
+
+
+
+    // Measures latency using the given wait strategy and prints a summary.
+    //
+    private static void measure( String           mode         ,
+                                 GpioEventWatcher watcher      ,
+                                 GpioWaitStrategy waitStrategy ) throws IOException {
+
+        watcher.setWaitStrategy( waitStrategy ) ;
+
+        GpioEvent event     = new GpioEvent()       ;
+        long[]    latencies = new long[ N_SAMPLES ] ;
+        int       nSamples  = 0                     ;
+
+        while ( nSamples < N_SAMPLES ) {
+
+            // Nothing was read when false, the event still holding a previous sample.
+            //
+            if ( watcher.waitForEvent( event ,
+                                       -1    ) ) {
+
+                latencies[ nSamples ] = System.nanoTime() - event.getNanoTimestamp() ;
+
+                nSamples += 1 ;
+            }
+        }
+
+        Arrays.sort( latencies ) ;
+
+        System.out.printf( "%-8s  p50 = %7d ns   p99 = %7d ns   p99.9 = %7d ns   max = %7d ns\n" ,
+                           mode                                                                  ,
+                           latencies[ N_SAMPLES / 2 ]                                            ,
+                           latencies[ (int)( N_SAMPLES * 0.99 ) ]                                ,
+                           latencies[ (int)( N_SAMPLES * 0.999 ) ]                               ,
+                           latencies[ N_SAMPLES - 1 ]                                            ) ;
+    }
+
+
+
+
+    // Our example program.
+    //
+    public static void main( String[] args ) {
+
+        System.out.println( "\n\nStarting event latency measurements...\n" ) ;
+
+        GpioHandleRequest request = new GpioHandleRequest().setConsumer( "my-program" )
+                                                           .setFlags( new GpioFlags().setOutput() ) ;
+
+        GpioLine output = request.addLine( LINE_NUMBER_OUTPUT ,
+                                           false              ) ;
+
+        GpioBuffer buffer = new GpioBuffer() ;
+
+        // Acquiring all needed GPIO resources in a "try-with-resources" manner in order to ensure they will be closed properly
+        // if anything goes wrong.
+        //
+        try ( GpioDevice       device  = new GpioDevice( PATH_TO_DEVICE )                               ;
+
+              GpioHandle       handle  = device.requestHandle( request )                                ;
+
+              GpioEventHandle  input   = device.requestEvent( new GpioEventRequest( LINE_NUMBER_INPUT ) ) ;
+
+              GpioEventWatcher watcher = new GpioEventWatcher()                                         ;
+
+              ) {
+
+            // Non-blocking mode is best when busy-polling.
+            //
+            input.setNonBlocking( true ) ;
+
+            watcher.addHandle( input             ,
+                               LINE_NUMBER_INPUT ) ;
+
+            Thread toggler = new Thread( () -> toggle( handle ,
+                                                       buffer ,
+                                                       output ) ) ;
+
+            toggler.start() ;
+
+            measure( "blocking" ,
+                     watcher    ,
+                     null       ) ;
+
+            measure( "hybrid"                                    ,
+                     watcher                                     ,
+                     GpioWaitStrategy.busyPoll( HYBRID_IDLE_NS ) ) ;
+
+            measure( "spin"                                      ,
+                     watcher                                     ,
+                     GpioWaitStrategy.busyPoll( Long.MAX_VALUE ) ) ;
+
+            measure( "adaptive"                                                ,
+                     watcher                                                   ,
+                     new GpioAdaptiveWaitStrategy( BURST_THRESHOLD_NS         ,
+                                                   TOGGLE_INTERVAL_NS         ,
+                                                   TOGGLE_INTERVAL_NS / 2     ,
+                                                   TOGGLE_INTERVAL_NS / 2     ) ) ;
+
+            toggler.interrupt() ;
+            toggler.join()      ;
+        }
+
+        catch ( Throwable e ) {
+
+            System.out.println( "\nDamn, something went wrong !\n" ) ;
+
+            e.printStackTrace() ;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+/*
+ * Optional native shim running sequences of GPIO operations in a single native call.
+ *
+ * Loaded by `io.helins.linux.gpio.internal.NativeGpioBatch` when found by JNA, such as in a directory given by
+ * `-Djna.library.path`. Otherwise, the library falls back to doing the same thing from Java.
+ *
+ * Functions return how far they went, even when failing midway. Then, errno is stored in `error`, which is set to 0
+ * otherwise.
+ *
+ * Build using `bin/native`.
+ */
+
+
+#define _GNU_SOURCE
+
+#include <errno.h>
+#include <poll.h>
+#include <stdint.h>
+#include <sys/ioctl.h>
+#include <time.h>
+#include <unistd.h>
+
+
+
+
+/* Size of `struct gpiohandle_data`. */
+
+#define GPIOHANDLE_DATA_SIZE 64
+
+
+
+
+/* Reads the monotonic clock, the one used by System.nanoTime() on Linux. */
+
+static int64_t now_nanos( void ) {
+
+    struct timespec ts ;
+
+    clock_gettime( CLOCK_MONOTONIC ,
+                   &ts             ) ;
+
+    return (int64_t)ts.tv_sec * 1000000000LL + ts.tv_nsec ;
+}
+
+
+
+
+/* Busy-waits until the monotonic clock reaches `target`. */
+
+static void spin_until( int64_t target ) {
+
+    while ( now_nanos() < target ) {
+
+#if defined( __x86_64__ ) || defined( __i386__ )
+        __builtin_ia32_pause() ;
+#elif defined( __aarch64__ ) || defined( __arm__ )
+        __asm__ __volatile__( "yield" ) ;
+#endif
+    }
+}
+
+
+
+
+/*
+ * Writes `count` states of `struct gpiohandle_data` stored contiguously, `spacing_nanos` apart, 0 meaning as fast
+ * as possible.
+ *
+ * Returns how many states were written, `count` unless failing.
+ */
+
+int gpio_batch_write( int           fd            ,
+                      unsigned long request       ,
+                      uint8_t      *states        ,
+                      int           count         ,
+                      int64_t       spacing_nanos ,
+                      int          *error         ) {
+
+    int64_t start = now_nanos() ;
+
+    *error = 0 ;
+
+    for ( int i = 0 ;
+          i < count ;
+          i += 1    ) {
+
+        if ( spacing_nanos > 0 && i > 0 ) {
+
+            spin_until( start + i * spacing_nanos ) ;
+        }
+
+        if ( ioctl( fd                                   ,
+                    request                              ,
+                    states + i * GPIOHANDLE_DATA_SIZE ) < 0 ) {
+
+            *error = errno ;
+
+            return i ;
+        }
+    }
+
+    return count ;
+}
+
+
+
+
+/*
+ * Samples `count` states of `struct gpiohandle_data` into contiguous memory, `spacing_nanos` apart, 0 meaning as
+ * fast as possible. The monotonic time right before each sample is stored in `timestamps`.
+ *
+ * Returns how many states were sampled, `count` unless failing.
+ */
+
+int gpio_batch_read( int           fd            ,
+                     unsigned long request       ,
+                     uint8_t      *states        ,
+                     int64_t      *timestamps    ,
+                     int           count         ,
+                     int64_t       spacing_nanos ,
+                     int          *error         ) {
+
+    int64_t start = now_nanos() ;
+
+    *error = 0 ;
+
+    for ( int i = 0 ;
+          i < count ;
+          i += 1    ) {
+
+        if ( spacing_nanos > 0 && i > 0 ) {
+
+            spin_until( start + i * spacing_nanos ) ;
+        }
+
+        timestamps[ i ] = now_nanos() ;
+
+        if ( ioctl( fd                                   ,
+                    request                              ,
+                    states + i * GPIOHANDLE_DATA_SIZE ) < 0 ) {
+
+            *error = errno ;
+
+            return i ;
+        }
+    }
+
+    return count ;
+}
+
+
+
+
+/*
+ * Reads events of `event_size` bytes into `buffer` until `max_events` are read or `timeout_nanos` elapses,
+ * negative meaning no timeout. Reading also stops when the file descriptor reaches its end.
+ *
+ * Returns how many bytes were read, including those read before failing.
+ */
+
+int gpio_batch_read_events( int      fd            ,
+                            uint8_t *buffer        ,
+                            int      event_size    ,
+                            int      max_events    ,
+                            int64_t  timeout_nanos ,
+                            int     *error         ) {
+
+    int64_t deadline = now_nanos() + timeout_nanos ;
+    int     wanted   = event_size * max_events     ;
+    int     total    = 0                           ;
+
+    struct pollfd pfd = { .fd      = fd     ,
+                          .events  = POLLIN ,
+                          .revents = 0      } ;
+
+    *error = 0 ;
+
+    while ( total < wanted ) {
+
+        struct timespec  ts      ;
+        struct timespec *timeout = NULL ;
+
+        if ( timeout_nanos >= 0 ) {
+
+            int64_t remaining = deadline - now_nanos() ;
+
+            if ( remaining < 0 ) {
+
+                remaining = 0 ;
+            }
+
+            ts.tv_sec  = remaining / 1000000000LL ;
+            ts.tv_nsec = remaining % 1000000000LL ;
+            timeout    = &ts                       ;
+        }
+
+        int ready = ppoll( &pfd    ,
+                           1       ,
+                           timeout ,
+                           NULL    ) ;
+
+        if ( ready < 0 ) {
+
+            if ( errno == EINTR ) {
+
+                continue ;
+            }
+
+            *error = errno ;
+
+            break ;
+        }
+
+        if ( ready == 0 ) {
+
+            break ;
+        }
+
+        ssize_t n = read( fd             ,
+                          buffer + total ,
+                          wanted - total ) ;
+
+        if ( n < 0 ) {
+
+            if ( errno == EAGAIN || errno == EINTR ) {
+
+                continue ;
+            }
+
+            *error = errno ;
+
+            break ;
+        }
+
+        if ( n == 0 ) {
+
+            break ;
+        }
+
+        total += n ;
+    }
+
+    return total ;
+}
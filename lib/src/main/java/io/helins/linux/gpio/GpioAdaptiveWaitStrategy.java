@@ -0,0 +1,156 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioWaitMode     ;
+import io.helins.linux.gpio.GpioWaitStrategy ;
+
+
+
+
+/**
+ * Class for a wait strategy adapting to how fast events arrive.
+ * <p>
+ * The interval between events is tracked using their kernel timestamps, not the time at which they are read,
+ * as a moving average. While events arrive faster than a given threshold, the watcher spins for the lowest latency.
+ * Then, as it stays idle, it backs off by yielding, then parking, then blocking. When events arrive slower than
+ * the threshold, the watcher blocks right away and does not burn any CPU.
+ * <p>
+ * This provides latency close to spinning during bursts without using a core all the time.
+ */
+public class GpioAdaptiveWaitStrategy implements GpioWaitStrategy {
+
+
+    // Weight of a new interval in the moving average, as a power of 2.
+    //
+    private static final int SMOOTHING_SHIFT = 3 ;
+
+
+
+
+    // Events arriving faster than this are considered a burst, in nanoseconds.
+    //
+    private final long burstThreshold ;
+
+
+    // Idle durations at which backing off to the next mode, in nanoseconds.
+    //
+    private final long yieldAfter ;
+    private final long parkAfter  ;
+    private final long blockAfter ;
+
+
+    // Kernel timestamp of the last event.
+    //
+    private long lastTimestamp = 0 ;
+
+
+    // Moving average of the interval between events.
+    //
+    private long meanInterval = Long.MAX_VALUE ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  burstThreshold
+     *           Events arriving faster than this are considered a burst, in nanoseconds.
+     *
+     * @param  spinNanos
+     *           During a burst, how long to spin before yielding, in nanoseconds.
+     *
+     * @param  yieldNanos
+     *           Then, how long to yield before parking, in nanoseconds.
+     *
+     * @param  parkNanos
+     *           Then, how long to park before blocking, in nanoseconds.
+     *
+     * @throws IllegalArgumentException
+     *           When a duration is negative.
+     */
+    public GpioAdaptiveWaitStrategy( long burstThreshold ,
+                                     long spinNanos      ,
+                                     long yieldNanos     ,
+                                     long parkNanos      ) {
+
+        if ( burstThreshold < 0 || spinNanos < 0 || yieldNanos < 0 || parkNanos < 0 ) {
+
+            throw new IllegalArgumentException( "Durations of a wait strategy must be >= 0" ) ;
+        }
+
+        this.burstThreshold = burstThreshold               ;
+        this.yieldAfter     = spinNanos                    ;
+        this.parkAfter      = this.yieldAfter + yieldNanos ;
+        this.blockAfter     = this.parkAfter  + parkNanos  ;
+    }
+
+
+
+
+    /**
+     * Retrieves the moving average of the interval between events.
+     *
+     * @return Interval in nanoseconds, `<strong>Long.MAX_VALUE</strong>` if not known yet.
+     */
+    public long getMeanInterval() {
+
+        return this.meanInterval ;
+    }
+
+
+
+
+    /**
+     * Is a burst of events currently happening ?
+     *
+     * @return A boolean.
+     */
+    public boolean isBursting() {
+
+        return this.meanInterval < this.burstThreshold ;
+    }
+
+
+
+
+    @Override
+    public void onEvent( long nanoTimestamp ) {
+
+        long interval = nanoTimestamp - this.lastTimestamp ;
+
+        if ( this.lastTimestamp != 0 && interval >= 0 ) {
+
+            this.meanInterval = this.meanInterval == Long.MAX_VALUE ? interval
+                                                                    : this.meanInterval + ( ( interval - this.meanInterval ) >> SMOOTHING_SHIFT ) ;
+        }
+
+        this.lastTimestamp = nanoTimestamp ;
+    }
+
+
+
+
+    @Override
+    public GpioWaitMode idle( long idleNanos ) {
+
+        if ( this.isBursting() == false || idleNanos >= this.blockAfter ) {
+
+            return GpioWaitMode.BLOCK ;
+        }
+
+        if ( idleNanos < this.yieldAfter ) {
+
+            return GpioWaitMode.SPIN ;
+        }
+
+        return idleNanos < this.parkAfter ? GpioWaitMode.YIELD
+                                          : GpioWaitMode.PARK  ;
+    }
+}
@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.NativeLong ;
+import com.sun.jna.Pointer    ;
+import java.io.IOException    ;
+
+
+
+
+/**
+ * Interface for the system calls GPIO devices and their handles are built upon, so that the same application code can
+ * run against real chips or against a simulation.
+ * <p>
+ * Requests and the structures they point to follow the Linux GPIO character device API. File descriptors returned by
+ * a backend must be real ones: events are read from them and waited upon with epoll like with any other file
+ * descriptor.
+ * <p>
+ * Like system calls, methods return -1 on failure and errno is then retrieved using {@link #getErrno()}, from the same
+ * thread.
+ *
+ * @see GpioDevice#GpioDevice(GpioBackend, String)
+ * @see GpioSimulatedChip
+ */
+public interface GpioBackend {
+
+
+    /**
+     * Backend relying on the kernel, used by default.
+     */
+    GpioBackend NATIVE = new GpioNativeBackend() ;
+
+
+
+
+    /**
+     * Opens a GPIO device.
+     *
+     * @param  path
+     *           Path to the GPIO device.
+     *
+     * @return File descriptor.
+     *
+     * @throws java.io.FileNotFoundException
+     *           When the GPIO device does not exist or cannot be accessed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    int open( String path ) throws IOException ;
+
+
+
+
+    /**
+     * Performs an ioctl request on a GPIO device or handle.
+     *
+     * @param  fd
+     *           File descriptor.
+     *
+     * @param  request
+     *           Request.
+     *
+     * @param  argument
+     *           Structure the request reads and writes.
+     *
+     * @return 0 or a positive value on success, -1 on failure.
+     */
+    int ioctl( int        fd       ,
+               NativeLong request  ,
+               Pointer    argument ) ;
+
+
+
+
+    /**
+     * Closes a GPIO device or handle.
+     *
+     * @param  fd
+     *           File descriptor.
+     *
+     * @return 0 on success, -1 on failure.
+     */
+    int close( int fd ) ;
+
+
+
+
+    /**
+     * Retrieves errno after a failed call from the current thread.
+     *
+     * @return Errno.
+     */
+    int getErrno() ;
+}
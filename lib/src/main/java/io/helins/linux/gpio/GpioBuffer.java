@@ -10,6 +10,7 @@ package io.helins.linux.gpio ;
 import com.sun.jna.Memory            ;
 import com.sun.jna.Pointer           ;
 import io.helins.linux.gpio.GpioLine ;
+import java.nio.ByteOrder            ;
 
 
 
@@ -122,6 +123,68 @@ public class GpioBuffer {
 
 
 
+    // Packs the states of all lines in a long, bit i being the state of the line at index i.
+    //
+    long getBits() {
+
+        long bits = 0 ;
+
+        for ( int i = 0    ;
+              i < SIZE / 8 ;
+              i += 1       ) {
+
+            long bytes = this.buffer.getLong( i * 8 ) ;
+
+            if ( ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ) {
+
+                bytes = Long.reverseBytes( bytes ) ;
+            }
+
+            // Each byte is 0 or 1, the multiplication gathers byte j in bit j of the upper byte.
+            //
+            bits |= ( ( bytes * 0x0102040810204080L ) >>> 56 ) << ( i * 8 ) ;
+        }
+
+        return bits ;
+    }
+
+
+
+
+    // Copies the states of all lines to native memory, without allocating anything.
+    //
+    void copyTo( Pointer ptr    ,
+                 long    offset ) {
+
+        for ( int i = 0    ;
+              i < SIZE / 8 ;
+              i += 1       ) {
+
+            ptr.setLong( offset + i * 8                ,
+                         this.buffer.getLong( i * 8 ) ) ;
+        }
+    }
+
+
+
+
+    // Copies the states of all lines from native memory, without allocating anything.
+    //
+    void copyFrom( Pointer ptr    ,
+                   long    offset ) {
+
+        for ( int i = 0    ;
+              i < SIZE / 8 ;
+              i += 1       ) {
+
+            this.buffer.setLong( i * 8                         ,
+                                 ptr.getLong( offset + i * 8 ) ) ;
+        }
+    }
+
+
+
+
     // Retrieves the pointer to the buffer's native memory.
     //
     Pointer getPointer() {
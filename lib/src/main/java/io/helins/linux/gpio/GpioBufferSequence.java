@@ -0,0 +1,225 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory              ;
+import com.sun.jna.Pointer             ;
+import io.helins.linux.gpio.GpioBuffer ;
+import io.helins.linux.gpio.GpioLine   ;
+
+
+
+
+/**
+ * Class holding a fixed number of states of up to 64 GPIO lines, contiguous in native memory.
+ * <p>
+ * A sequence is either written by a GPIO handle, state after state, or filled by sampling the lines of a GPIO handle
+ * several times. When the optional native shim is loaded, the whole sequence is processed in a single native call.
+ * Either way, nothing is allocated.
+ * <p>
+ * It does not do any IO on its own and is meant to be reused.
+ *
+ * @see GpioHandle#write(GpioBufferSequence, long)
+ * @see GpioHandle#read(GpioBufferSequence, long)
+ */
+public class GpioBufferSequence {
+
+
+    // Native memory holding all states.
+    //
+    private final Memory memory ;
+
+
+    // Pointers to each state, so that none is allocated when processing the sequence from Java.
+    //
+    private final Pointer[] states ;
+
+
+    // When each state was sampled.
+    //
+    final long[] timestamps ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  length
+     *           How many states this sequence holds.
+     *
+     * @throws IllegalArgumentException
+     *           When the length is not strictly positive.
+     */
+    public GpioBufferSequence( int length ) {
+
+        if ( length <= 0 ) {
+
+            throw new IllegalArgumentException( "Length of a sequence must be > 0" ) ;
+        }
+
+        this.memory     = new Memory( (long)length * GpioBuffer.SIZE ) ;
+        this.states     = new Pointer[ length ]                        ;
+        this.timestamps = new long[ length ]                           ;
+
+        this.memory.clear() ;
+
+        for ( int i = 0  ;
+              i < length ;
+              i += 1     ) {
+
+            this.states[ i ] = this.memory.share( (long)i * GpioBuffer.SIZE ,
+                                                  GpioBuffer.SIZE           ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves how many states this sequence holds.
+     *
+     * @return The length.
+     */
+    public int length() {
+
+        return this.states.length ;
+    }
+
+
+
+
+    /**
+     * Copies a state into this sequence.
+     *
+     * @param  index
+     *           Index of the state.
+     *
+     * @param  buffer
+     *           State of the lines.
+     *
+     * @return This instance.
+     */
+    public GpioBufferSequence set( int        index  ,
+                                   GpioBuffer buffer ) {
+
+        buffer.copyTo( this.memory                   ,
+                       (long)index * GpioBuffer.SIZE ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Copies a state from this sequence.
+     *
+     * @param  index
+     *           Index of the state.
+     *
+     * @param  buffer
+     *           Will hold the state of the lines.
+     *
+     * @return The buffer.
+     */
+    public GpioBuffer get( int        index  ,
+                           GpioBuffer buffer ) {
+
+        buffer.copyFrom( this.memory                   ,
+                         (long)index * GpioBuffer.SIZE ) ;
+
+        return buffer ;
+    }
+
+
+
+
+    /**
+     * Sets the state of a line in one state of this sequence.
+     *
+     * @param  index
+     *           Index of the state.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @param  value
+     *           The new state of the line.
+     *
+     * @return This instance.
+     */
+    public GpioBufferSequence set( int      index ,
+                                   GpioLine line  ,
+                                   boolean  value ) {
+
+        this.memory.setByte( (long)index * GpioBuffer.SIZE + line.index ,
+                             value ? (byte)1
+                                   : (byte)0                            ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves the state of a line in one state of this sequence.
+     *
+     * @param  index
+     *           Index of the state.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @return A boolean representing the state.
+     */
+    public boolean get( int      index ,
+                        GpioLine line  ) {
+
+        return this.memory.getByte( (long)index * GpioBuffer.SIZE + line.index ) == 1 ;
+    }
+
+
+
+
+    /**
+     * Retrieves when a state was sampled.
+     *
+     * @param  index
+     *           Index of the state.
+     *
+     * @return Timestamp in nanoseconds, from the monotonic clock such as `<strong>System.nanoTime()</strong>`.
+     *
+     * @see GpioHandle#read(GpioBufferSequence, long)
+     */
+    public long getNanoTimestamp( int index ) {
+
+        return this.timestamps[ index ] ;
+    }
+
+
+
+
+    // Retrieves the native memory holding all states.
+    //
+    Pointer getPointer() {
+
+        return this.memory ;
+    }
+
+
+
+
+    // Retrieves the native memory of a single state.
+    //
+    Pointer getPointer( int index ) {
+
+        return this.states[ index ] ;
+    }
+}
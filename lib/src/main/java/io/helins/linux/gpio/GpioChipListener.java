@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioChipInfo ;
+import io.helins.linux.gpio.GpioDevice   ;
+import java.io.IOException               ;
+
+
+
+
+/**
+ * Interface for being notified when GPIO devices appear or disappear.
+ *
+ * @see GpioChipRegistry
+ */
+public interface GpioChipListener {
+
+
+    /**
+     * Called when a GPIO device has been opened by the registry.
+     *
+     * @param chip
+     *          Number of the chip.
+     *
+     * @param device
+     *          The GPIO device, owned by the registry.
+     *
+     * @param info
+     *          Information about the chip.
+     */
+    void onAdded( int          chip   ,
+                  GpioDevice   device ,
+                  GpioChipInfo info   ) ;
+
+
+
+
+    /**
+     * Called when a GPIO device has disappeared, right before the registry closes it.
+     *
+     * @param chip
+     *          Number of the chip.
+     */
+    void onRemoved( int chip ) ;
+
+
+
+
+    /**
+     * Called when a GPIO device appeared but could not be opened.
+     * <p>
+     * Opening is tried again when the attributes of the device change, which is typical when permissions are set
+     * after the device is created. Does nothing by default.
+     *
+     * @param chip
+     *          Number of the chip.
+     *
+     * @param e
+     *          What went wrong.
+     */
+    default void onError( int         chip ,
+                          IOException e    ) {}
+}
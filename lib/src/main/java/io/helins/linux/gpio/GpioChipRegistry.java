@@ -0,0 +1,611 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                        ;
+import io.helins.linux.Linux                     ;
+import io.helins.linux.SizeT                     ;
+import io.helins.linux.epoll.Epoll               ;
+import io.helins.linux.epoll.EpollEvent          ;
+import io.helins.linux.errno.Errno               ;
+import io.helins.linux.gpio.GpioChipInfo         ;
+import io.helins.linux.gpio.GpioChipListener     ;
+import io.helins.linux.gpio.GpioDevice           ;
+import io.helins.linux.gpio.GpioTopology         ;
+import io.helins.linux.gpio.internal.NativeLinux ;
+import io.helins.linux.io.LinuxIO                ;
+import java.io.IOException                       ;
+import java.nio.file.Path                        ;
+import java.nio.file.Paths                       ;
+import java.util.Arrays                          ;
+
+
+
+
+/**
+ * Class keeping GPIO devices open as they appear and disappear, such as USB GPIO expanders being plugged in and out.
+ * <p>
+ * Instead of periodically trying to open every possible GPIO device, the directory where devices are created is
+ * watched using inotify. A GPIO device is opened and information about its chip is requested only when it appears,
+ * and it is closed when it disappears. Everything already present is opened when the registry is created.
+ * <p>
+ * Changes are processed by calling {@link #processChanges(int)}, typically from the thread running an event loop, and
+ * the listener, if any, is called from that thread.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see GpioTopology#refresh(int)
+ */
+public class GpioChipRegistry implements AutoCloseable {
+
+
+    // What is watched in the directory.
+    //
+    private static final int WATCH_MASK = NativeLinux.IN_CREATE
+                                          | NativeLinux.IN_DELETE
+                                          | NativeLinux.IN_MOVED_FROM
+                                          | NativeLinux.IN_MOVED_TO
+                                          | NativeLinux.IN_ATTRIB ;
+
+
+    // Size of the buffer inotify events are read into, enough for dozens of them.
+    //
+    private static final int BUFFER_SIZE = 4096 ;
+
+
+
+
+    // Requests information about a freshly opened GPIO device.
+    //
+    // Replaced in tests where regular files stand in for GPIO devices.
+    //
+    @FunctionalInterface
+    interface InfoRequester {
+
+        GpioChipInfo request( GpioDevice device ) throws IOException ;
+    }
+
+
+
+
+    // Directory where GPIO devices are found.
+    //
+    private final Path directory ;
+
+
+    // Requests information about chips.
+    //
+    private final InfoRequester requester ;
+
+
+    // Notified about changes, null if none.
+    //
+    private final GpioChipListener listener ;
+
+
+    // Inotify file descriptor.
+    //
+    private final int fd ;
+
+
+    // Buffer inotify events are read into.
+    //
+    private final Memory buffer  = new Memory( BUFFER_SIZE ) ;
+    private final SizeT  bufSize = new SizeT( BUFFER_SIZE )  ;
+
+
+    // For waiting on the inotify file descriptor.
+    //
+    private final Epoll      epoll      ;
+    private final EpollEvent epollEvent ;
+
+
+    // Open GPIO devices and information about them, indexed by chip number, null when absent.
+    //
+    private GpioDevice[]   devices = new GpioDevice[ 0 ]   ;
+    private GpioChipInfo[] infos   = new GpioChipInfo[ 0 ] ;
+
+
+    // Bookkeeping of state.
+    //
+    private boolean isClosed = false ;
+
+
+
+
+    /**
+     * Basic constructor, watching the default directory.
+     *
+     * @param  listener
+     *           Notified about changes, including the GPIO devices opened right away, null if not needed.
+     *
+     * @throws IOException
+     *           When the directory cannot be watched or an unplanned error occured.
+     */
+    public GpioChipRegistry( GpioChipListener listener ) throws IOException {
+
+        this( Paths.get( GpioTopology.DEFAULT_DIRECTORY ) ,
+              listener                                    ) ;
+    }
+
+
+
+
+    /**
+     * Constructor specifying where GPIO devices are found.
+     *
+     * @param  directory
+     *           Directory containing the GPIO devices.
+     *
+     * @param  listener
+     *           Notified about changes, including the GPIO devices opened right away, null if not needed.
+     *
+     * @throws IOException
+     *           When the directory cannot be watched or an unplanned error occured.
+     */
+    public GpioChipRegistry( Path             directory ,
+                             GpioChipListener listener  ) throws IOException {
+
+        this( directory                   ,
+              listener                    ,
+              GpioDevice::requestChipInfo ) ;
+    }
+
+
+
+
+    // Constructor specifying how information about chips is requested.
+    //
+    GpioChipRegistry( Path             directory ,
+                      GpioChipListener listener  ,
+                      InfoRequester    requester ) throws IOException {
+
+        this.directory = directory ;
+        this.listener  = listener  ;
+        this.requester = requester ;
+
+        this.fd = NativeLinux.inotify_init1( NativeLinux.IN_NONBLOCK | NativeLinux.IN_CLOEXEC ) ;
+
+        if ( this.fd < 0 ) {
+
+            throw new IOException( "Native error while initializing inotify : errno " + Linux.getErrno() ) ;
+        }
+
+        if ( NativeLinux.inotify_add_watch( this.fd              ,
+                                            directory.toString() ,
+                                            WATCH_MASK           ) < 0 ) {
+
+            int errno = Linux.getErrno() ;
+
+            LinuxIO.close( this.fd ) ;
+
+            throw new IOException( "Native error while watching '" + directory + "' : errno " + errno ) ;
+        }
+
+        Epoll epoll ;
+
+        try {
+
+            epoll = new Epoll() ;
+        }
+
+        catch ( Throwable e ) {
+
+            LinuxIO.close( this.fd ) ;
+
+            throw e ;
+        }
+
+        this.epoll      = epoll            ;
+        this.epollEvent = new EpollEvent() ;
+
+        this.epollEvent.setFlags( new EpollEvent.Flags().set( EpollEvent.Flag.EPOLLIN ) ) ;
+
+        try {
+
+            this.epoll.add( this.fd         ,
+                            this.epollEvent ) ;
+
+            this.rescan() ;
+        }
+
+        catch ( Throwable e ) {
+
+            // Releases inotify, epoll and the GPIO devices opened so far, the listener possibly being the culprit.
+            //
+            try {
+
+                this.close() ;
+            }
+
+            catch ( IOException suppressed ) {
+
+                e.addSuppressed( suppressed ) ;
+            }
+
+            throw e ;
+        }
+    }
+
+
+
+
+    // Remembers a failure while closing, the first one being thrown after closing everything and the next ones being
+    // attached to it.
+    //
+    private static Exception fail( Exception failure ,
+                                   Exception e       ) {
+
+        if ( failure == null ) {
+
+            return e ;
+        }
+
+        failure.addSuppressed( e ) ;
+
+        return failure ;
+    }
+
+
+
+
+    /**
+     * Closes this registry as well as all the GPIO devices it opened.
+     * <p>
+     * The listener is not notified. Everything is closed even if something fails, the first failure being thrown and
+     * the next ones being suppressed by it.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public void close() throws IOException {
+
+        if ( this.isClosed == false ) {
+
+            this.isClosed = true ;
+
+            Exception failure = null ;
+
+            for ( GpioDevice device : this.devices ) {
+
+                if ( device != null ) {
+
+                    try {
+
+                        device.close() ;
+                    }
+
+                    catch ( IOException | RuntimeException e ) {
+
+                        failure = fail( failure ,
+                                        e       ) ;
+                    }
+                }
+            }
+
+            try {
+
+                this.epoll.close() ;
+            }
+
+            catch ( IOException | RuntimeException e ) {
+
+                failure = fail( failure ,
+                                e       ) ;
+            }
+
+            if ( LinuxIO.close( this.fd ) != 0 ) {
+
+                failure = fail( failure                                                                             ,
+                                new IOException( "Native error while closing inotify : errno " + Linux.getErrno() ) ) ;
+            }
+
+            if ( failure instanceof IOException ) {
+
+                throw (IOException)failure ;
+            }
+
+            if ( failure != null ) {
+
+                throw (RuntimeException)failure ;
+            }
+        }
+    }
+
+
+
+
+    // Throws an IllegalStateException if the registry is closed.
+    //
+    private void guardClosed() {
+
+        if ( this.isClosed ) {
+
+            throw new IllegalStateException( "Unable to process changes with a closed GPIO chip registry" ) ;
+        }
+    }
+
+
+
+
+    // Opens a chip if it is not already open.
+    //
+    // Returns true if it was opened.
+    //
+    private boolean add( int chip ) {
+
+        if ( chip < this.devices.length && this.devices[ chip ] != null ) {
+
+            return false ;
+        }
+
+        GpioDevice   device = null ;
+        GpioChipInfo info   ;
+
+        try {
+
+            device = new GpioDevice( this.directory.resolve( GpioTopology.CHIP_PREFIX + chip ).toString() ) ;
+            info   = this.requester.request( device )                                                        ;
+        }
+
+        catch ( IOException e ) {
+
+            if ( device != null ) {
+
+                try {
+
+                    device.close() ;
+                }
+
+                catch ( IOException ignored ) {}
+            }
+
+            if ( this.listener != null ) {
+
+                this.listener.onError( chip ,
+                                       e    ) ;
+            }
+
+            return false ;
+        }
+
+        if ( chip >= this.devices.length ) {
+
+            this.devices = Arrays.copyOf( this.devices ,
+                                          chip + 1     ) ;
+
+            this.infos   = Arrays.copyOf( this.infos ,
+                                          chip + 1   ) ;
+        }
+
+        this.devices[ chip ] = device ;
+        this.infos[ chip ]   = info   ;
+
+        if ( this.listener != null ) {
+
+            this.listener.onAdded( chip   ,
+                                   device ,
+                                   info   ) ;
+        }
+
+        return true ;
+    }
+
+
+
+
+    // Closes a chip if it is open.
+    //
+    // Returns true if it was closed.
+    //
+    private boolean remove( int chip ) throws IOException {
+
+        if ( chip >= this.devices.length || this.devices[ chip ] == null ) {
+
+            return false ;
+        }
+
+        GpioDevice device = this.devices[ chip ] ;
+
+        this.devices[ chip ] = null ;
+        this.infos[ chip ]   = null ;
+
+        try {
+
+            if ( this.listener != null ) {
+
+                this.listener.onRemoved( chip ) ;
+            }
+        }
+
+        finally {
+
+            device.close() ;
+        }
+
+        return true ;
+    }
+
+
+
+
+    // Lists the directory and opens or closes chips accordingly, returns how many were opened or closed.
+    //
+    // Needed at start and when inotify events were lost.
+    //
+    private int rescan() throws IOException {
+
+        int[] present = GpioTopology.listChips( this.directory ) ;
+        int   changes = 0                                        ;
+
+        for ( int chip = 0               ;
+              chip < this.devices.length ;
+              chip += 1                  ) {
+
+            if ( Arrays.binarySearch( present ,
+                                      chip    ) < 0 && this.remove( chip ) ) {
+
+                changes += 1 ;
+            }
+        }
+
+        for ( int chip : present ) {
+
+            if ( this.add( chip ) ) {
+
+                changes += 1 ;
+            }
+        }
+
+        return changes ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most for GPIO devices to appear or disappear, then processes
+     * all pending changes.
+     *
+     * @param  timeout
+     *           In milliseconds, 0 for returning right away, negative for waiting forever.
+     *
+     * @return How many GPIO devices were opened or closed, 0 if the timeout elapsed or if changes in the directory did
+     *         not concern GPIO devices.
+     *
+     * @throws IllegalStateException
+     *           When the registry has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public int processChanges( int timeout ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( this.epoll.wait( this.epollEvent ,
+                              timeout         ) == false ) {
+
+            return 0 ;
+        }
+
+        int changes = 0 ;
+
+        while ( true ) {
+
+            int nBytes = LinuxIO.read( this.fd      ,
+                                       this.buffer  ,
+                                       this.bufSize ).intValue() ;
+
+            if ( nBytes < 0 ) {
+
+                int errno = Linux.getErrno() ;
+
+                if ( errno == Errno.EAGAIN ) {
+
+                    return changes ;
+                }
+
+                throw new IOException( "Native error while reading inotify events : errno " + errno ) ;
+            }
+
+            int offset = 0 ;
+
+            while ( offset < nBytes ) {
+
+                int mask   = this.buffer.getInt( offset + 4  ) ;
+                int length = this.buffer.getInt( offset + 12 ) ;
+
+                if ( ( mask & NativeLinux.IN_Q_OVERFLOW ) != 0 ) {
+
+                    changes += this.rescan() ;
+                }
+
+                else if ( length > 0 ) {
+
+                    int chip = GpioTopology.parseChip( this.buffer.getString( offset + NativeLinux.IN_EVENT_BYTES ) ) ;
+
+                    if ( chip >= 0 ) {
+
+                        if ( ( mask & ( NativeLinux.IN_DELETE | NativeLinux.IN_MOVED_FROM ) ) != 0 ? this.remove( chip )
+                                                                                                   : this.add( chip )    ) {
+
+                            changes += 1 ;
+                        }
+                    }
+                }
+
+                offset += NativeLinux.IN_EVENT_BYTES + length ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves the numbers of the chips currently open.
+     *
+     * @return Numbers of the chips, sorted.
+     */
+    public int[] getChips() {
+
+        int[] chips  = new int[ this.devices.length ] ;
+        int   nChips = 0                              ;
+
+        for ( int chip = 0               ;
+              chip < this.devices.length ;
+              chip += 1                  ) {
+
+            if ( this.devices[ chip ] != null ) {
+
+                chips[ nChips ]  = chip ;
+                nChips          += 1    ;
+            }
+        }
+
+        return Arrays.copyOf( chips  ,
+                              nChips ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves an open GPIO device.
+     * <p>
+     * It is owned by this registry and must not be closed by the user.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return The GPIO device, null if it is not open.
+     */
+    public GpioDevice getDevice( int chip ) {
+
+        return chip >= 0 && chip < this.devices.length ? this.devices[ chip ]
+                                                       : null                 ;
+    }
+
+
+
+
+    /**
+     * Retrieves information about the chip of an open GPIO device, as requested when it was opened.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return Information, null if the GPIO device is not open.
+     */
+    public GpioChipInfo getChipInfo( int chip ) {
+
+        return chip >= 0 && chip < this.infos.length ? this.infos[ chip ]
+                                                     : null               ;
+    }
+}
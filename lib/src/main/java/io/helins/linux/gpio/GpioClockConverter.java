@@ -0,0 +1,244 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                        ;
+import com.sun.jna.NativeLong                    ;
+import io.helins.linux.Linux                     ;
+import io.helins.linux.gpio.GpioEvent            ;
+import io.helins.linux.gpio.GpioEventBatch       ;
+import io.helins.linux.gpio.internal.NativeLinux ;
+import java.io.IOException                       ;
+
+
+
+
+/**
+ * Class for converting timestamps from the monotonic clock to wall-clock time, in nanoseconds since the Unix epoch.
+ * <p>
+ * Events timestamped using the monotonic clock cannot be compared with timestamps from other machines, such as logs.
+ * This converter keeps the offset between the monotonic clock and the real-time clock, so that converting is a mere
+ * addition, without allocating anything nor calling the kernel.
+ * <p>
+ * The offset is measured by reading the real-time clock between two readings of the monotonic clock, several times,
+ * keeping the tightest sample. The uncertainty of the offset is half the width of that sample, typically well below a
+ * microsecond. Because the real-time clock is slewed by NTP and can jump, the offset drifts and should be calibrated
+ * again periodically, for instance every second from a scheduled executor.
+ * <p>
+ * Converting is thread-safe and can happen while calibrating.
+ *
+ * @see GpioEventClock#MONOTONIC
+ */
+public class GpioClockConverter {
+
+
+    // How many samples are taken when calibrating.
+    //
+    private static final int SAMPLES = 16 ;
+
+
+
+
+    // Native timespec for reading clocks, guarded by this instance.
+    //
+    private final Memory timespec = new Memory( 2 * NativeLong.SIZE ) ;
+
+
+    // Offset between the real-time clock and the monotonic clock.
+    //
+    private volatile long offset = 0 ;
+
+
+    // Uncertainty of the offset and when it was measured.
+    //
+    private volatile long uncertainty  = Long.MAX_VALUE ;
+    private volatile long calibratedAt = 0              ;
+
+
+
+
+    /**
+     * Constructor calibrating right away.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioClockConverter() throws IOException {
+
+        this.calibrate() ;
+    }
+
+
+
+
+    // Reads a clock, in nanoseconds.
+    //
+    private long read( int clockId ) throws IOException {
+
+        if ( NativeLinux.clock_gettime( clockId       ,
+                                        this.timespec ) != 0 ) {
+
+            throw new IOException( "Native error while reading clock " + clockId + " : errno " + Linux.getErrno() ) ;
+        }
+
+        return this.timespec.getNativeLong( 0 ).longValue() * 1000000000L
+               +
+               this.timespec.getNativeLong( NativeLong.SIZE ).longValue() ;
+    }
+
+
+
+
+    /**
+     * Measures the offset between the monotonic clock and the real-time clock again.
+     * <p>
+     * Takes a few microseconds.
+     *
+     * @return This instance.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public synchronized GpioClockConverter calibrate() throws IOException {
+
+        long bestWidth  = Long.MAX_VALUE ;
+        long bestOffset = 0              ;
+
+        for ( int i = 0   ;
+              i < SAMPLES ;
+              i += 1      ) {
+
+            // Bracketed by the same kind of call, so that the real-time clock is read in the middle of the sample
+            // rather than skewed by the cost of crossing into native code.
+            //
+            long before   = this.read( NativeLinux.CLOCK_MONOTONIC ) ;
+            long realtime = this.read( NativeLinux.CLOCK_REALTIME )  ;
+            long after    = this.read( NativeLinux.CLOCK_MONOTONIC ) ;
+
+            long width = after - before ;
+
+            if ( width < bestWidth ) {
+
+                bestWidth  = width                             ;
+                bestOffset = realtime - ( before + width / 2 ) ;
+            }
+        }
+
+        this.offset       = bestOffset            ;
+        this.uncertainty  = ( bestWidth + 1 ) / 2 ;
+        this.calibratedAt = System.nanoTime()     ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Calibrates only if the last calibration is older than the given age.
+     * <p>
+     * Cheap enough to be called before converting a batch of events.
+     *
+     * @param  maxAgeNanos
+     *           Maximum age of the offset, in nanoseconds.
+     *
+     * @return True if calibrated.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public boolean calibrateIfOlder( long maxAgeNanos ) throws IOException {
+
+        if ( System.nanoTime() - this.calibratedAt > maxAgeNanos ) {
+
+            this.calibrate() ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Retrieves the offset between the monotonic clock and the real-time clock.
+     *
+     * @return Offset in nanoseconds, added to monotonic timestamps for converting them.
+     */
+    public long getOffset() {
+
+        return this.offset ;
+    }
+
+
+
+
+    /**
+     * Retrieves the uncertainty of the offset, as measured during the last calibration.
+     *
+     * @return Uncertainty in nanoseconds.
+     */
+    public long getUncertainty() {
+
+        return this.uncertainty ;
+    }
+
+
+
+
+    /**
+     * Converts a timestamp from the monotonic clock, such as `<strong>System.nanoTime()</strong>`.
+     *
+     * @param  monotonicNanos
+     *           Timestamp from the monotonic clock, in nanoseconds.
+     *
+     * @return Nanoseconds since the Unix epoch.
+     */
+    public long toEpochNanos( long monotonicNanos ) {
+
+        return monotonicNanos + this.offset ;
+    }
+
+
+
+
+    /**
+     * Converts the timestamp of an event which was timestamped using the monotonic clock.
+     *
+     * @param  event
+     *           The event.
+     *
+     * @return Nanoseconds since the Unix epoch.
+     */
+    public long toEpochNanos( GpioEvent event ) {
+
+        return this.toEpochNanos( event.getNanoTimestamp() ) ;
+    }
+
+
+
+
+    /**
+     * Converts the timestamp of an event from a batch, which was timestamped using the monotonic clock.
+     *
+     * @param  batch
+     *           The batch.
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return Nanoseconds since the Unix epoch.
+     */
+    public long toEpochNanos( GpioEventBatch batch ,
+                              int            index ) {
+
+        return this.toEpochNanos( batch.getNanoTimestamp( index ) ) ;
+    }
+}
@@ -9,16 +9,21 @@ package io.helins.linux.gpio ;
 import com.sun.jna.Pointer ;
 
 
-import com.sun.jna.NativeLong               ;
-import io.helins.linux.Linux                ;
-import io.helins.linux.errno.Errno          ;
-import io.helins.linux.gpio.GpioChipInfo    ;
-import io.helins.linux.gpio.GpioLineInfo    ;
-import io.helins.linux.gpio.GpioEventHandle ;
-import io.helins.linux.gpio.GpioHandle      ;
-import io.helins.linux.io.LinuxIO           ;
-import java.io.FileNotFoundException        ;
-import java.io.IOException                  ;
+import com.sun.jna.Memory                      ;
+import com.sun.jna.NativeLong                  ;
+import io.helins.linux.epoll.Epoll             ;
+import io.helins.linux.epoll.EpollEvent        ;
+import io.helins.linux.errno.Errno             ;
+import io.helins.linux.gpio.GpioBackend        ;
+import io.helins.linux.gpio.GpioChipInfo       ;
+import io.helins.linux.gpio.GpioLineInfo       ;
+import io.helins.linux.gpio.GpioLineInfoChange ;
+import io.helins.linux.gpio.GpioEventHandle    ;
+import io.helins.linux.gpio.GpioHandle         ;
+import io.helins.linux.gpio.GpioLine           ;
+import io.helins.linux.gpio.GpioLineHandle     ;
+import io.helins.linux.gpio.GpioLineRequest    ;
+import java.io.IOException                     ;
 
 
 
@@ -48,6 +53,12 @@ import java.io.IOException                  ;
  * The event watcher can then be used to wait until one of the registered lines transitions to its relevant state,
  * effectively using one thread for monitoring several lines at once.
  * <p>
+ * Since Linux 5.10, up to 64 lines can be monitored through a single line handle instead of one event handle per line.
+ * All their events are then read through a single file descriptor.
+ * <p>
+ * Since Linux 5.7, lines can be watched so that requests, releases, and reconfigurations are notified by this GPIO
+ * device instead of having to poll information about them.
+ * <p>
  * A GPIO line, just like a GPIO device, can only be requested and handled by one instance at a time. When a handle
  * is closed, all associated resources are cleaned-up by the kernel. A GPIO line is associated with a consumer, an
  * optional string provided by the user describing "who" is controlling that line.
@@ -62,24 +73,45 @@ public class GpioDevice implements AutoCloseable {
     // IOCTL requests.
     //
 
-    private static final NativeLong GPIO_GET_CHIPINFO_IOCTL   = new NativeLong( 2151986177L ,
-                                                                                true        ) ; 
+    static final NativeLong GPIO_GET_CHIPINFO_IOCTL         = new NativeLong( 2151986177L ,
+                                                                              true        ) ; 
+
+    static final NativeLong GPIO_GET_LINEINFO_IOCTL         = new NativeLong( 3225990146L ,
+                                                                              true        ) ;
+
+    static final NativeLong GPIO_GET_LINEHANDLE_IOCTL       = new NativeLong( 3245126659L ,
+                                                                              true        ) ;
+
+    static final NativeLong GPIO_GET_LINEEVENT_IOCTL        = new NativeLong( 3224417284L ,
+                                                                              true        ) ;
+
+    static final NativeLong GPIO_V2_GET_LINE_IOCTL          = new NativeLong( 3260068871L ,
+                                                                              true        ) ;
+
+    static final NativeLong GPIO_GET_LINEINFO_WATCH_IOCTL   = new NativeLong( 3225990155L ,
+                                                                              true        ) ;
 
-    private static final NativeLong GPIO_GET_LINEINFO_IOCTL   = new NativeLong( 3225990146L ,
-                                                                                true        ) ;
+    static final NativeLong GPIO_GET_LINEINFO_UNWATCH_IOCTL = new NativeLong( 3221533708L ,
+                                                                              true        ) ;
 
-    private static final NativeLong GPIO_GET_LINEHANDLE_IOCTL = new NativeLong( 3245126659L ,
-                                                                                true        ) ;
 
-    private static final NativeLong GPIO_GET_LINEEVENT_IOCTL  = new NativeLong( 3224417284L ,
-                                                                                true        ) ;
 
 
+    // Errno used within the kernel when an operation is not supported, which sometimes leaks to user space.
+    //
+    private static final int ENOTSUPP = 524 ;
+
+
+
+
+    // Backend performing system calls.
+    //
+    private final GpioBackend backend ;
 
 
     // Associated file descriptor.
     //
-    private int fd ;
+    private final int fd ;
 
 
     // Bookkeeping of state.
@@ -87,6 +119,21 @@ public class GpioDevice implements AutoCloseable {
     private boolean isClosed = false ;
 
 
+    // Epoll instance for waiting for changes of line info with a timeout, created when first needed.
+    //
+    private Epoll epoll = null ;
+
+
+    // Epoll event meant to be reused when waiting for changes of line info.
+    //
+    private EpollEvent epollEvent = null ;
+
+
+    // Native memory for passing the number of a line to unwatch, created when first needed.
+    //
+    private Memory unwatchLine = null ;
+
+
 
 
     /**
@@ -100,24 +147,32 @@ public class GpioDevice implements AutoCloseable {
      */
     public GpioDevice( String path ) throws IOException {
 
-        int fd = LinuxIO.open64( path             ,
-                                 LinuxIO.O_RDONLY ) ;
-
-        if ( fd < 0 ) {
+        this( GpioBackend.NATIVE ,
+              path               ) ;
+    }
 
-            int errno = Linux.getErrno() ;
 
-            switch ( errno ) {
 
-                case Errno.EACCES : throw new FileNotFoundException( "Permission denied : " + path )                                     ;
 
-                case Errno.ENOENT : throw new FileNotFoundException( "No such file : " + path )                                          ;
-        
-                default           : throw new IOException( "Native error while opening GPIO device at '" + path + "' : errno " + errno ) ;
-            }
-        }
+    /**
+     * Opens a GPIO device using the given backend, such as a simulated chip.
+     * <p>
+     * Handles obtained from this GPIO device use the same backend.
+     *
+     * @param  backend
+     *           Backend performing system calls.
+     *
+     * @param  path
+     *           Path to the GPIO device, as understood by the backend.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioDevice( GpioBackend backend ,
+                       String      path    ) throws IOException {
 
-        this.fd = fd ;
+        this.backend = backend              ;
+        this.fd      = backend.open( path ) ;
     }
 
 
@@ -150,12 +205,17 @@ public class GpioDevice implements AutoCloseable {
 
         if ( this.isClosed == false ) {
 
-            if ( LinuxIO.close( this.fd ) != 0 ) {
+            if ( this.backend.close( this.fd ) != 0 ) {
             
-                throw new IOException( "Native error while closing GPIO device : errno " + Linux.getErrno() ) ;
+                throw new IOException( "Native error while closing GPIO device : errno " + this.backend.getErrno() ) ;
             }
 
             this.isClosed = true ;
+
+            if ( this.epoll != null ) {
+
+                this.epoll.close() ;
+            }
         }
     }
 
@@ -226,11 +286,11 @@ public class GpioDevice implements AutoCloseable {
 
         this.guardClosed() ;
     
-        if ( LinuxIO.ioctl( this.fd                 ,
-                            GPIO_GET_CHIPINFO_IOCTL ,
-                            info.memory             ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                 ,
+                                 GPIO_GET_CHIPINFO_IOCTL ,
+                                 info.memory             ) < 0 ) {
 
-            int errno = Linux.getErrno() ;
+            int errno = this.backend.getErrno() ;
 
             throwIfBadDevice( errno ) ;
 
@@ -292,11 +352,11 @@ public class GpioDevice implements AutoCloseable {
     
         Pointer ptr = new Pointer( Pointer.nativeValue( info.memory ) ) ;
 
-        if ( LinuxIO.ioctl( this.fd                 ,
-                            GPIO_GET_LINEINFO_IOCTL ,
-                            info.memory             ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                 ,
+                                 GPIO_GET_LINEINFO_IOCTL ,
+                                 info.memory             ) < 0 ) {
 
-            int errno = Linux.getErrno() ;
+            int errno = this.backend.getErrno() ;
 
             throwIfBadDevice( errno ) ;
 
@@ -309,6 +369,196 @@ public class GpioDevice implements AutoCloseable {
 
 
 
+    /**
+     * Starts watching a GPIO line for changes and obtains information about it.
+     * <p>
+     * From then on, the kernel queues a change each time the line is requested, released, or reconfigured, by this
+     * process or any other one. Those changes are read from this GPIO device and avoid polling information about the
+     * line in order to learn who is using it. Each line can only be watched once at a time by the same GPIO device.
+     * <p>
+     * Requires Linux 5.7 or later.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @param  info
+     *           Will be overwritten with information about the line as it is before any change.
+     *
+     * @return Information.
+     *
+     * @throws IllegalStateException
+     *           When the GPIO device has been closed or when the line is already being watched.
+     *
+     * @throws IOException
+     *           When the device is not a proper GPIO device or an unplanned error occured.
+     *
+     * @see #waitForLineInfoChange(GpioLineInfoChange, int)
+     */
+    public GpioLineInfo watchLineInfo( int          line ,
+                                       GpioLineInfo info ) throws IOException {
+
+        this.guardClosed() ;
+
+        info.setLine( line ) ;
+
+        if ( this.backend.ioctl( this.fd                       ,
+                                 GPIO_GET_LINEINFO_WATCH_IOCTL ,
+                                 info.memory                   ) < 0 ) {
+
+            int errno = this.backend.getErrno() ;
+
+            throwIfBadDevice( errno ) ;
+
+            switch ( errno ) {
+
+                case Errno.EBUSY  : throw new IllegalStateException( "GPIO line already being watched : " + line ) ;
+
+                case Errno.EINVAL : throw new IllegalArgumentException( "Invalid GPIO line : " + line )           ;
+            }
+
+            throw new IOException( "Native error while watching a GPIO line : errno " + errno ) ;
+        }
+
+        return info ;
+    }
+
+
+
+
+    /**
+     * Stops watching a GPIO line for changes.
+     * <p>
+     * Changes already queued can still be read.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @throws IllegalStateException
+     *           When the GPIO device has been closed or when the line is not being watched.
+     *
+     * @throws IOException
+     *           When the device is not a proper GPIO device or an unplanned error occured.
+     *
+     * @see #watchLineInfo(int, GpioLineInfo)
+     */
+    public void unwatchLineInfo( int line ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( this.unwatchLine == null ) {
+
+            this.unwatchLine = new Memory( 4 ) ;
+        }
+
+        this.unwatchLine.setInt( 0    ,
+                                 line ) ;
+
+        if ( this.backend.ioctl( this.fd                         ,
+                                 GPIO_GET_LINEINFO_UNWATCH_IOCTL ,
+                                 this.unwatchLine                ) < 0 ) {
+
+            int errno = this.backend.getErrno() ;
+
+            throwIfBadDevice( errno ) ;
+
+            switch ( errno ) {
+
+                case Errno.EBUSY  : throw new IllegalStateException( "GPIO line not being watched : " + line ) ;
+
+                case Errno.EINVAL : throw new IllegalArgumentException( "Invalid GPIO line : " + line )     ;
+            }
+
+            throw new IOException( "Native error while unwatching a GPIO line : errno " + errno ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Waits forever until a watched GPIO line changes.
+     *
+     * @param  change
+     *           Will be overwritten in order to describe what happened.
+     *
+     * @return The change.
+     *
+     * @throws IllegalStateException
+     *           When the GPIO device has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #watchLineInfo(int, GpioLineInfo)
+     */
+    public GpioLineInfoChange waitForLineInfoChange( GpioLineInfoChange change ) throws IOException {
+
+        this.guardClosed() ;
+
+        change.read( this.fd ) ;
+
+        return change ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until a watched GPIO line changes.
+     *
+     * @param  change
+     *           Will be overwritten in order to describe what happened.
+     *
+     * @param  timeout
+     *           In milliseconds, 0 for returning right away, negative for waiting forever.
+     *
+     * @return True if a change was read, false if the timeout elapsed.
+     *
+     * @throws IllegalStateException
+     *           When the GPIO device has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #watchLineInfo(int, GpioLineInfo)
+     */
+    public boolean waitForLineInfoChange( GpioLineInfoChange change  ,
+                                          int                timeout ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( timeout < 0 ) {
+
+            change.read( this.fd ) ;
+
+            return true ;
+        }
+
+        if ( this.epoll == null ) {
+
+            this.epoll      = new Epoll()      ;
+            this.epollEvent = new EpollEvent() ;
+
+            this.epollEvent.setFlags( new EpollEvent.Flags().set( EpollEvent.Flag.EPOLLIN ) ) ;
+
+            this.epoll.add( this.fd         ,
+                            this.epollEvent ) ;
+        }
+
+        if ( this.epoll.wait( this.epollEvent ,
+                              timeout         ) ) {
+
+            change.read( this.fd ) ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
     // Throws if a line is already being used or a handle/event-handle request is invalid.
     //
     private static void throwIfHandleError( int errno ) throws IOException {
@@ -347,18 +597,19 @@ public class GpioDevice implements AutoCloseable {
 
         this.guardClosed() ;
     
-        if ( LinuxIO.ioctl( this.fd                   ,
-                            GPIO_GET_LINEHANDLE_IOCTL ,
-                            request.memory            ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                   ,
+                                 GPIO_GET_LINEHANDLE_IOCTL ,
+                                 request.memory            ) < 0 ) {
 
-            int errno = Linux.getErrno() ;
+            int errno = this.backend.getErrno() ;
 
             throwIfHandleError( errno ) ;
 
             throw new IOException( "Native error while requesting a GPIO handle : errno " + errno ) ;
         }
 
-        return new GpioHandle( request.getFD() ) ;
+        return new GpioHandle( this.backend    ,
+                               request.getFD() ) ;
     }
 
 
@@ -388,18 +639,83 @@ public class GpioDevice implements AutoCloseable {
 
         this.guardClosed() ;
 
-        if ( LinuxIO.ioctl( this.fd                  ,
-                            GPIO_GET_LINEEVENT_IOCTL ,
-                            request.memory           ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                  ,
+                                 GPIO_GET_LINEEVENT_IOCTL ,
+                                 request.memory           ) < 0 ) {
 
-            int errno = Linux.getErrno() ;
+            int errno = this.backend.getErrno() ;
 
             throwIfHandleError( errno ) ;
 
             throw new IOException( "Native error while requesting a GPIO event handle : errno " + errno ) ;
         }
 
-        return new GpioEventHandle( request.getFD()   ,
+        return new GpioEventHandle( this.backend      ,
+                                    request.getFD()   ,
                                     request.getLine() ) ;
     }
+
+
+
+
+    /**
+     * Obtains a GPIO line handle for the requested lines, using the second version of the kernel API (Linux 5.10 and
+     * later).
+     * <p>
+     * Events from all the lines monitored for edges are then read through this single handle.
+     *
+     * @param  request
+     *           Request specifying which lines will be handled and how.
+     *
+     * @return A GPIO line handle.
+     *
+     * @throws IllegalArgumentException
+     *           When something about the request is invalid, such as the number of a line.
+     *
+     * @throws IllegalStateException
+     *           When the GPIO device has been closed.
+     *
+     * @throws UnsupportedOperationException
+     *           When some lines are debounced and the driver refused it.
+     *
+     * @throws IOException
+     *           When the device is not a proper GPIO device, the kernel is too old or an unplanned error occured.
+     */
+    public GpioLineHandle requestLines( GpioLineRequest request ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( this.backend.ioctl( this.fd                ,
+                                 GPIO_V2_GET_LINE_IOCTL ,
+                                 request.memory         ) < 0 ) {
+
+            int errno = this.backend.getErrno() ;
+
+            // Invalid requests fail with EINVAL whether debounced or not, only these mean debouncing is not supported.
+            //
+            if ( request.isDebounced()
+                 &&
+                 ( errno == Errno.EOPNOTSUPP || errno == ENOTSUPP ) ) {
+
+                throw new UnsupportedOperationException( "Debouncing refused by the driver, errno " + errno + ", debounce in user space instead" ) ;
+            }
+
+            throwIfHandleError( errno ) ;
+
+            throw new IOException( "Native error while requesting a GPIO line handle : errno " + errno ) ;
+        }
+
+        GpioLine[] lines = new GpioLine[ request.getLineCount() ] ;
+
+        for ( int i = 0        ;
+              i < lines.length ;
+              i += 1           ) {
+
+            lines[ i ] = new GpioLine( request.getLineNumber( i ) ,
+                                       i                          ) ;
+        }
+
+        return new GpioLineHandle( request.getFD() ,
+                                   lines           ) ;
+    }
 }
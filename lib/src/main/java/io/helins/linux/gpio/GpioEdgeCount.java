@@ -0,0 +1,146 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+
+
+/**
+ * Class for holding a consistent snapshot of the edges counted for an id.
+ * <p>
+ * Frequency is computed from the kernel timestamps of the first and last edges of a window. An instance is meant
+ * to be reused and is filled by an edge counter.
+ *
+ * @see GpioEdgeCounter#snapshot(int, GpioEdgeCount)
+ */
+public class GpioEdgeCount {
+
+
+    // Id the edges were counted for.
+    //
+    int id = 0 ;
+
+
+    // Total number of edges.
+    //
+    long count = 0 ;
+
+
+    // Window the frequency is computed over.
+    //
+    long edges          = 0 ;
+    long firstTimestamp = 0 ;
+    long lastTimestamp  = 0 ;
+
+
+
+
+    /**
+     * Basic constructor.
+     */
+    public GpioEdgeCount() {}
+
+
+
+
+    /**
+     * Retrieves the id the edges were counted for.
+     *
+     * @return The id.
+     */
+    public int getId() {
+
+        return this.id ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many edges were counted in total.
+     *
+     * @return The number of edges.
+     */
+    public long getCount() {
+
+        return this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many edges the window contains, both first and last included.
+     *
+     * @return The number of edges.
+     */
+    public long getWindowEdges() {
+
+        return this.edges ;
+    }
+
+
+
+
+    /**
+     * Retrieves the kernel timestamp of the first edge of the window.
+     *
+     * @return Timestamp in nanoseconds.
+     */
+    public long getFirstTimestamp() {
+
+        return this.firstTimestamp ;
+    }
+
+
+
+
+    /**
+     * Retrieves the kernel timestamp of the last edge of the window.
+     * <p>
+     * The frequency of a window is not updated when no edge happens anymore. This timestamp is useful for
+     * deciding if it is stale.
+     *
+     * @return Timestamp in nanoseconds.
+     */
+    public long getLastTimestamp() {
+
+        return this.lastTimestamp ;
+    }
+
+
+
+
+    /**
+     * Retrieves the frequency of edges over the window.
+     *
+     * @return Frequency in hertz, 0 if not known yet.
+     */
+    public double getFrequency() {
+
+        long duration = this.lastTimestamp - this.firstTimestamp ;
+
+        return this.edges < 2 || duration <= 0 ? 0
+                                               : ( this.edges - 1 ) * 1e9 / duration ;
+    }
+
+
+
+
+    /**
+     * Retrieves the rotation speed of a shaft producing a given number of edges per revolution.
+     *
+     * @param  edgesPerRevolution
+     *           How many edges are counted for a revolution.
+     *
+     * @return Revolutions per minute.
+     */
+    public double getRpm( int edgesPerRevolution ) {
+
+        return this.getFrequency() * 60 / edgesPerRevolution ;
+    }
+}
@@ -0,0 +1,413 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEdgeCount          ;
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventBatch         ;
+import io.helins.linux.gpio.GpioEventHandle        ;
+import io.helins.linux.gpio.GpioEventSource        ;
+import io.helins.linux.gpio.GpioSequence           ;
+import java.io.IOException                         ;
+import java.util.Arrays                            ;
+import java.util.concurrent.atomic.AtomicLongArray ;
+
+
+
+
+/**
+ * Class for counting edges and estimating their frequency, for flow meters, tachometers and the like.
+ * <p>
+ * Edges are counted for a fixed set of ids, such as the ids given when adding handles to an event watcher. Events
+ * for other ids are ignored. Counts are 64-bit and each id has its own slot, padded so that it never shares a cache
+ * line with another one.
+ * <p>
+ * Frequency is computed over windows of a given duration using the kernel timestamps of the first and last edges
+ * of a window. The last edge of a window is also the first one of the next window, so that no interval is lost.
+ * <p>
+ * Counting must happen on a single thread, typically the one waiting for events. Any other thread can read counts
+ * and consistent snapshots at any time without any lock.
+ */
+public class GpioEdgeCounter {
+
+
+    // Layout of a slot, padded to the size of a GpioSequence.
+    //
+    private static final int STRIDE = GpioSequence.PADDING ;
+
+    private static final int SEQ          = 0 ;
+    private static final int COUNT        = 1 ;
+    private static final int EDGES        = 2 ;
+    private static final int FIRST        = 3 ;
+    private static final int LAST         = 4 ;
+    private static final int WINDOW_EDGES = 5 ;
+    private static final int WINDOW_FIRST = 6 ;
+    private static final int WINDOW_LAST  = 7 ;
+
+
+
+
+    // Ids being counted, sorted, the index of an id being the index of its slot.
+    //
+    private final int[] ids ;
+
+
+    // Duration of a window, in nanoseconds.
+    //
+    private final long windowNanos ;
+
+
+    // Slots, padded on both ends.
+    //
+    // Each slot is guarded by a sequence which is odd while the slot is being updated, so that readers can detect
+    // torn reads and retry.
+    //
+    private final AtomicLongArray cells ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  windowNanos
+     *           Duration of a window for computing frequency, in nanoseconds.
+     *
+     * @param  ids
+     *           Ids edges are counted for.
+     *
+     * @throws IllegalArgumentException
+     *           When the window is not strictly positive or an id is given several times.
+     */
+    public GpioEdgeCounter( long   windowNanos ,
+                            int... ids         ) {
+
+        if ( windowNanos <= 0 ) {
+
+            throw new IllegalArgumentException( "Window of an edge counter must be > 0" ) ;
+        }
+
+        this.ids = ids.clone() ;
+
+        Arrays.sort( this.ids ) ;
+
+        for ( int i = 1           ;
+              i < this.ids.length ;
+              i += 1              ) {
+
+            if ( this.ids[ i ] == this.ids[ i - 1 ] ) {
+
+                throw new IllegalArgumentException( "Id given several times to an edge counter : " + this.ids[ i ] ) ;
+            }
+        }
+
+        this.windowNanos = windowNanos                                                                                 ;
+        this.cells       = new AtomicLongArray( GpioSequence.PADDING + this.ids.length * STRIDE + GpioSequence.PADDING ) ;
+    }
+
+
+
+
+    // Finds the first cell of the slot of an id, -1 if not counted.
+    //
+    private int slotOf( int id ) {
+
+        int index = Arrays.binarySearch( this.ids ,
+                                         id       ) ;
+
+        return index < 0 ? -1
+                         : GpioSequence.PADDING + index * STRIDE ;
+    }
+
+
+
+
+    // Finds the first cell of the slot of an id, throws if not counted.
+    //
+    private int guardedSlotOf( int id ) {
+
+        int slot = this.slotOf( id ) ;
+
+        if ( slot < 0 ) {
+
+            throw new IllegalArgumentException( "Id not counted : " + id ) ;
+        }
+
+        return slot ;
+    }
+
+
+
+
+    // Counts an edge for an id.
+    //
+    // Returns false if the id is not counted.
+    //
+    boolean record( int  id            ,
+                    long nanoTimestamp ) {
+
+        int slot = this.slotOf( id ) ;
+
+        if ( slot < 0 ) {
+
+            return false ;
+        }
+
+        AtomicLongArray cells = this.cells                     ;
+        long            seq   = cells.getPlain( slot + SEQ )   ;
+        long            edges = cells.getPlain( slot + EDGES ) ;
+        long            first = cells.getPlain( slot + FIRST ) ;
+
+        // Odd while updating.
+        //
+        cells.set( slot + SEQ ,
+                   seq + 1    ) ;
+
+        cells.lazySet( slot + COUNT                       ,
+                       cells.getPlain( slot + COUNT ) + 1 ) ;
+
+        if ( edges == 0 ) {
+
+            cells.lazySet( slot + FIRST  ,
+                           nanoTimestamp ) ;
+
+            edges = 1 ;
+        }
+
+        else if ( nanoTimestamp - first >= this.windowNanos ) {
+
+            // The window is complete, this edge closes it and starts the next one.
+            //
+            cells.lazySet( slot + WINDOW_EDGES ,
+                           edges + 1           ) ;
+
+            cells.lazySet( slot + WINDOW_FIRST ,
+                           first               ) ;
+
+            cells.lazySet( slot + WINDOW_LAST ,
+                           nanoTimestamp      ) ;
+
+            cells.lazySet( slot + FIRST  ,
+                           nanoTimestamp ) ;
+
+            edges = 1 ;
+        }
+
+        else {
+
+            edges += 1 ;
+        }
+
+        cells.lazySet( slot + EDGES ,
+                       edges        ) ;
+
+        cells.lazySet( slot + LAST   ,
+                       nanoTimestamp ) ;
+
+        cells.lazySet( slot + SEQ ,
+                       seq + 2    ) ;
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Counts an event.
+     *
+     * @param  event
+     *           Event to count.
+     *
+     * @return True if the id of the event is counted.
+     */
+    public boolean record( GpioEvent event ) {
+
+        return this.record( event.getId()            ,
+                            event.getNanoTimestamp() ) ;
+    }
+
+
+
+
+    /**
+     * Counts all events from a batch.
+     *
+     * @param  batch
+     *           Events to count.
+     *
+     * @return How many events had an id which is counted.
+     */
+    public int record( GpioEventBatch batch ) {
+
+        int counted = 0 ;
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            if ( this.record( batch.getId( i )            ,
+                              batch.getNanoTimestamp( i ) ) ) {
+
+                counted += 1 ;
+            }
+        }
+
+        return counted ;
+    }
+
+
+
+
+    /**
+     * Reads events from a handle and counts them.
+     * <p>
+     * The id of the events is the number of the line.
+     *
+     * @param  handle
+     *           Handle monitoring a line.
+     *
+     * @param  batch
+     *           Batch used for reading events.
+     *
+     * @return How many events had an id which is counted.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventHandle#readEvents(GpioEventBatch)
+     */
+    public int capture( GpioEventHandle handle ,
+                        GpioEventBatch  batch  ) throws IOException {
+
+        return this.record( handle.readEvents( batch ) ) ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until GPIO events occur and counts them.
+     * <p>
+     * Meant to be called repeatedly by the thread monitoring lines.
+     *
+     * @param  source
+     *           Source of events, typically an event watcher monitoring the lines.
+     *
+     * @param  batch
+     *           Batch reused for reading events.
+     *
+     * @param  timeout
+     *           Timeout in milliseconds (-1 means forever).
+     *
+     * @return True if at least an event occured within the given timeout.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventSource#waitForEvents(GpioEventBatch, int)
+     */
+    public boolean pump( GpioEventSource source  ,
+                         GpioEventBatch  batch   ,
+                         int             timeout ) throws IOException {
+
+        if ( source.waitForEvents( batch   ,
+                                   timeout ) ) {
+
+            this.record( batch ) ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many edges were counted for an id.
+     * <p>
+     * Can be called from any thread.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @return The number of edges.
+     *
+     * @throws IllegalArgumentException
+     *           When the id is not counted.
+     */
+    public long getCount( int id ) {
+
+        return this.cells.get( this.guardedSlotOf( id ) + COUNT ) ;
+    }
+
+
+
+
+    /**
+     * Takes a consistent snapshot of what was counted for an id.
+     * <p>
+     * Can be called from any thread. The window is the last complete one or, if there is none yet, the current one.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @param  snapshot
+     *           Will hold the snapshot.
+     *
+     * @return The snapshot.
+     *
+     * @throws IllegalArgumentException
+     *           When the id is not counted.
+     */
+    public GpioEdgeCount snapshot( int           id       ,
+                                   GpioEdgeCount snapshot ) {
+
+        int             slot  = this.guardedSlotOf( id ) ;
+        AtomicLongArray cells = this.cells               ;
+
+        while ( true ) {
+
+            long seq = cells.get( slot + SEQ ) ;
+
+            if ( ( seq & 1 ) == 0 ) {
+
+                long count       = cells.get( slot + COUNT )        ;
+                long windowEdges = cells.get( slot + WINDOW_EDGES ) ;
+
+                if ( windowEdges > 0 ) {
+
+                    snapshot.edges          = windowEdges                       ;
+                    snapshot.firstTimestamp = cells.get( slot + WINDOW_FIRST ) ;
+                    snapshot.lastTimestamp  = cells.get( slot + WINDOW_LAST )  ;
+                }
+
+                else {
+
+                    snapshot.edges          = cells.get( slot + EDGES ) ;
+                    snapshot.firstTimestamp = cells.get( slot + FIRST ) ;
+                    snapshot.lastTimestamp  = cells.get( slot + LAST )  ;
+                }
+
+                if ( cells.get( slot + SEQ ) == seq ) {
+
+                    snapshot.id    = id    ;
+                    snapshot.count = count ;
+
+                    return snapshot ;
+                }
+            }
+
+            // Being updated, retrying.
+            //
+            Thread.onSpinWait() ;
+        }
+    }
+}
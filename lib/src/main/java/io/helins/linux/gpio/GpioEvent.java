@@ -7,9 +7,13 @@
 package io.helins.linux.gpio ;
 
 
+import com.sun.jna.Memory                                ;
 import io.helins.linux.Linux                             ;
+import io.helins.linux.errno.Errno                       ;
 import io.helins.linux.gpio.internal.NativeGpioEventData ;
-import io.helins.linux.io.LinuxIO                        ;
+import io.helins.linux.gpio.internal.NativeGpioLineEvent ;
+import io.helins.linux.gpio.internal.NativeIO            ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
 import java.io.IOException                               ;
 
 
@@ -23,8 +27,8 @@ public class GpioEvent {
 
     // Values for representing edge detection.
     //
-    private static final int GPIO_EVENT_RISING_EDGE  = 0x01 ;
-    private static final int GPIO_EVENT_FALLING_EDGE = 0x02 ;
+    static final int GPIO_EVENT_RISING_EDGE  = 0x01 ;
+    static final int GPIO_EVENT_FALLING_EDGE = 0x02 ;
 
 
 
@@ -38,6 +42,22 @@ public class GpioEvent {
     int id = 0 ;
 
 
+    // Sequence numbers of an event read from a line handle, 0 otherwise.
+    //
+    int seqno     = 0 ;
+    int lineSeqno = 0 ;
+
+
+    // Native memory for reading events from a line handle, allocated when first needed.
+    //
+    private Memory lineEvent = null ;
+
+
+    // Native `pollfd` for waiting on a file descriptor, allocated when first needed.
+    //
+    private Memory pollfd = null ;
+
+
 
 
     /**
@@ -49,10 +69,10 @@ public class GpioEvent {
 
     // Reads an event from a file descriptor.
     //
-    void read( int fd ) throws IOException {
+    boolean read( int fd ) throws IOException {
 
-        this.read( fd ,
-                   0  ) ;
+        return this.read( fd ,
+                          0  ) ;
     }
 
 
@@ -60,17 +80,135 @@ public class GpioEvent {
 
     // Reads an event from a file descriptor and updating the ID.
     //
-    void read( int fd ,
-               int id ) throws IOException {
+    // Returns false if the file descriptor is in non-blocking mode and nothing was queued.
+    //
+    boolean read( int fd ,
+                  int id ) throws IOException {
     
-        if ( LinuxIO.read( fd                             ,
-                           this.nativeStruct.getPointer() ,
-                           NativeGpioEventData.SIZE       ).intValue() < 0 ) {
+        if ( NativeIO.read( fd                             ,
+                            this.nativeStruct.getPointer() ,
+                            NativeGpioEventData.SIZE       ) < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EAGAIN ) {
+
+                return false ;
+            }
         
-            throw new IOException( "Native error while reading a GPIO event : errno " + Linux.getErrno() ) ;
+            throw new IOException( "Native error while reading a GPIO event : errno " + errno ) ;
+        }
+
+        this.id        = id ;
+        this.seqno     = 0  ;
+        this.lineSeqno = 0  ;
+
+        return true ;
+    }
+
+
+
+
+    // Reads an event from the file descriptor of a line handle, the ID being the number of the line plus the given
+    // base.
+    //
+    // Returns false if the file descriptor is in non-blocking mode and nothing was queued.
+    //
+    boolean readLine( int fd     ,
+                      int idBase ) throws IOException {
+
+        if ( this.lineEvent == null ) {
+
+            this.lineEvent = new Memory( NativeGpioLineEvent.BYTES ) ;
+        }
+
+        if ( NativeIO.read( fd                       ,
+                            this.lineEvent           ,
+                            NativeGpioLineEvent.SIZE ) < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EAGAIN ) {
+
+                return false ;
+            }
+
+            throw new IOException( "Native error while reading a GPIO line event : errno " + errno ) ;
+        }
+
+        this.set( this.lineEvent.getLong( NativeGpioLineEvent.OFFSET_TIMESTAMP )         ,
+                  this.lineEvent.getInt( NativeGpioLineEvent.OFFSET_ID )                 ,
+                  idBase + this.lineEvent.getInt( NativeGpioLineEvent.OFFSET_OFFSET ) ) ;
+
+        this.seqno     = this.lineEvent.getInt( NativeGpioLineEvent.OFFSET_SEQNO )      ;
+        this.lineSeqno = this.lineEvent.getInt( NativeGpioLineEvent.OFFSET_LINE_SEQNO ) ;
+
+        return true ;
+    }
+
+
+
+
+    // Waits until something can be read from a file descriptor, without modifying its flags.
+    //
+    // Meant for blocking on a file descriptor in non-blocking mode, which might be shared.
+    //
+    void await( int fd ) throws IOException {
+
+        if ( this.pollfd == null ) {
+
+            this.pollfd = new Memory( NativeLinux.POLLFD_BYTES ) ;
+        }
+
+        this.pollfd.setInt( 0  ,
+                            fd ) ;
+
+        this.pollfd.setShort( 4                         ,
+                              (short)NativeLinux.POLLIN ) ;
+
+        while ( NativeLinux.poll( this.pollfd ,
+                                  1           ,
+                                  -1          ) < 0 ) {
+
+            int errno = Linux.getErrno() ;
+
+            if ( errno != Errno.EINTR ) {
+
+                throw new IOException( "Native error while waiting for a GPIO event : errno " + errno ) ;
+            }
         }
+    }
+
+
+
+
+    // Overwrites this event as if it had been read.
+    //
+    GpioEvent set( long nanoTimestamp ,
+                   int  edges         ,
+                   int  id            ) {
 
-        this.id = id ;
+        this.nativeStruct.getPointer().setLong( NativeGpioEventData.OFFSET_TIMESTAMP ,
+                                                nanoTimestamp                        ) ;
+
+        this.nativeStruct.getPointer().setInt( NativeGpioEventData.OFFSET_ID ,
+                                               edges                         ) ;
+
+        this.id        = id ;
+        this.seqno     = 0  ;
+        this.lineSeqno = 0  ;
+
+        return this ;
+    }
+
+
+
+
+    // Retrieves the raw flags describing the edge.
+    //
+    int getEdges() {
+
+        return this.nativeStruct.readId() ;
     }
 
 
@@ -94,10 +232,48 @@ public class GpioEvent {
 
 
 
+    /**
+     * Retrieves the sequence number of this event amongst all events of the line handle it was read from.
+     * <p>
+     * Sequence numbers start at 1. A gap means the kernel dropped events because its buffer was full.
+     *
+     * @return The sequence number, 0 if this event was not read from a line handle.
+     *
+     * @see GpioLineRequest#setEventBufferSize(int)
+     */
+    public int getSequenceNumber() {
+
+        return this.seqno ;
+    }
+
+
+
+
+    /**
+     * Retrieves the sequence number of this event amongst all events of its line.
+     *
+     * @return The sequence number, 0 if this event was not read from a line handle.
+     *
+     * @see #getSequenceNumber()
+     */
+    public int getLineSequenceNumber() {
+
+        return this.lineSeqno ;
+    }
+
+
+
+
     /**
      * Retrieves the best estimation of when the event happened.
+     * <p>
+     * For event handles, the kernel uses the monotonic clock since Linux 5.7 and the real-time clock before. For line
+     * handles, it uses the clock selected in the request.
+     *
+     * @return  Timestamp in nanoseconds.
      *
-     * @return  Unix timestamp in nanoseconds.
+     * @see GpioClockConverter
+     * @see GpioLineRequest#setEventClock(GpioEventClock)
      */
     public long getNanoTimestamp() {
     
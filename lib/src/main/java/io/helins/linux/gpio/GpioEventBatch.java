@@ -0,0 +1,710 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                ;
+import com.sun.jna.Pointer                               ;
+import io.helins.linux.Linux                             ;
+import io.helins.linux.SizeT                             ;
+import io.helins.linux.errno.Errno                       ;
+import io.helins.linux.gpio.GpioEvent                    ;
+import io.helins.linux.gpio.internal.NativeGpioBatch     ;
+import io.helins.linux.gpio.internal.NativeGpioEventData ;
+import io.helins.linux.gpio.internal.NativeGpioLineEvent ;
+import io.helins.linux.gpio.internal.NativeIO            ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
+import java.io.IOException                               ;
+
+
+
+
+/**
+ * Class for holding several GPIO events read at once.
+ * <p>
+ * Instead of reading events one by one, a batch retrieves as many queued events as it can hold
+ * in a single read. This matters when lines are very active, such as a bouncing switch or an encoder,
+ * because the kernel only queues a small amount of events per line before dropping new ones.
+ * <p>
+ * A batch is meant to be reused. Events are accessed by index, from 0 to `<strong>size()</strong>`
+ * excluded, in the order they were queued by the kernel.
+ *
+ * @see GpioEventHandle#readEvents(GpioEventBatch)
+ * @see GpioLineHandle#readEvents(GpioEventBatch)
+ * @see GpioEventWatcher#readEvents(GpioEventBatch, int)
+ */
+public class GpioEventBatch {
+
+
+    /**
+     * Default capacity, matching how many events the kernel queues per line.
+     */
+    public static final int DEFAULT_CAPACITY = 16 ;
+
+
+
+
+    // Native memory the raw events are read into.
+    //
+    private final Memory memory ;
+
+
+    // Precomputed read sizes, indexed by the number of events wanted, for event handles and line handles.
+    //
+    private final SizeT[] readSizes     ;
+    private final SizeT[] lineReadSizes ;
+
+
+    // Decoded events.
+    //
+    private final long[] timestamps ;
+    private final int[]  edges      ;
+    private final int[]  ids        ;
+
+
+    // Sequence numbers of events read from a line handle, 0 otherwise.
+    //
+    private final int[] seqnos     ;
+    private final int[] lineSeqnos ;
+
+
+    // How many events are currently held.
+    //
+    private int size = 0 ;
+
+
+    // How many events can be read at most, lowered below the capacity when reading on demand.
+    //
+    private int limit ;
+
+
+    // Native pollfd structure for waiting when the native shim is not loaded, created when first needed.
+    //
+    private Memory pollfd = null ;
+
+
+    // Errno reported by the native shim, if any, meant to be reused.
+    //
+    private final int[] nativeError = new int[ 1 ] ;
+
+
+    // Views of the native memory starting at each event, indexed by the number of events before, for event handles
+    // and line handles, created when first needed by the same fallback.
+    //
+    private Pointer[] views     = null ;
+    private Pointer[] lineViews = null ;
+
+
+
+
+    /**
+     * Basic constructor holding at most `<strong>DEFAULT_CAPACITY</strong>` events.
+     */
+    public GpioEventBatch() {
+
+        this( DEFAULT_CAPACITY ) ;
+    }
+
+
+
+
+    /**
+     * Constructor specifying how many events this batch can hold.
+     *
+     * @param  capacity
+     *           Maximum number of events.
+     *
+     * @throws IllegalArgumentException
+     *           When the capacity is not strictly positive.
+     */
+    public GpioEventBatch( int capacity ) {
+
+        if ( capacity <= 0 ) {
+
+            throw new IllegalArgumentException( "Capacity of a batch must be > 0" ) ;
+        }
+
+        this.memory        = new Memory( (long)capacity * Math.max( NativeGpioEventData.BYTES  ,
+                                                                    NativeGpioLineEvent.BYTES ) ) ;
+        this.readSizes     = new SizeT[ capacity + 1 ]                                            ;
+        this.lineReadSizes = new SizeT[ capacity + 1 ]                                            ;
+        this.timestamps    = new long[ capacity ]                                                 ;
+        this.edges         = new int[ capacity ]                                                  ;
+        this.ids           = new int[ capacity ]                                                  ;
+        this.seqnos        = new int[ capacity ]                                                  ;
+        this.lineSeqnos    = new int[ capacity ]                                                  ;
+
+        for ( int i = 0     ;
+              i <= capacity ;
+              i += 1        ) {
+
+            this.readSizes[ i ]     = new SizeT( (long)i * NativeGpioEventData.BYTES ) ;
+            this.lineReadSizes[ i ] = new SizeT( (long)i * NativeGpioLineEvent.BYTES ) ;
+        }
+
+        this.limit = capacity ;
+
+        this.memory.clear() ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events this batch can hold.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+
+        return this.ids.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events this batch currently holds.
+     *
+     * @return The number of events.
+     */
+    public int size() {
+
+        return this.size ;
+    }
+
+
+
+
+    /**
+     * Is this batch full ?
+     *
+     * @return A boolean.
+     */
+    public boolean isFull() {
+
+        return this.size >= this.limit ;
+    }
+
+
+
+
+    // Sets how many events can be read at most, capped to the capacity, so that sources do not read more events than
+    // needed.
+    //
+    GpioEventBatch setLimit( long limit ) {
+
+        this.limit = (int)Math.min( limit           ,
+                                    this.ids.length ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Forgets about all events currently held.
+     *
+     * @return This instance.
+     */
+    public GpioEventBatch clear() {
+
+        this.size = 0 ;
+
+        return this ;
+    }
+
+
+
+
+    // Reads as many events as possible from a file descriptor, without exceeding the limit, and
+    // appends them with the given ID.
+    //
+    // Returns how many events were read, 0 if the file descriptor is in non-blocking mode and nothing was
+    // queued.
+    //
+    int read( int fd ,
+              int id ) throws IOException {
+
+        int wanted = this.limit - this.size ;
+
+        if ( wanted <= 0 ) {
+
+            return 0 ;
+        }
+
+        int bytes = NativeIO.read( fd                       ,
+                                   this.memory              ,
+                                   this.readSizes[ wanted ] ) ;
+
+        if ( bytes < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EAGAIN ) {
+
+                return 0 ;
+            }
+
+            throw new IOException( "Native error while reading GPIO events : errno " + errno ) ;
+        }
+
+        return this.decode( bytes ,
+                            id    ) ;
+    }
+
+
+
+
+    // Reads as many events as possible from the file descriptor of a line handle, without exceeding the limit.
+    // The ID of each event is the number of its line plus the given base.
+    //
+    // Returns how many events were read, 0 if the file descriptor is in non-blocking mode and nothing was
+    // queued.
+    //
+    int readLines( int fd     ,
+                   int idBase ) throws IOException {
+
+        int wanted = this.limit - this.size ;
+
+        if ( wanted <= 0 ) {
+
+            return 0 ;
+        }
+
+        int bytes = NativeIO.read( fd                           ,
+                                   this.memory                  ,
+                                   this.lineReadSizes[ wanted ] ) ;
+
+        if ( bytes < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EAGAIN ) {
+
+                return 0 ;
+            }
+
+            throw new IOException( "Native error while reading GPIO line events : errno " + errno ) ;
+        }
+
+        return this.decodeLines( bytes  ,
+                                 idBase ) ;
+    }
+
+
+
+
+    // Reads events from a file descriptor until this batch holds `count` events or `timeoutNanos` elapses, negative
+    // meaning no timeout. Reading also stops if the file descriptor reaches its end.
+    //
+    // Raw events are read at the start of the native memory, hence this batch must be empty. Uses the native shim
+    // when it is loaded.
+    //
+    // Returns how many bytes were read. Failing after reading at least an event returns those events instead of
+    // throwing, the error being expected to happen again when reading next.
+    //
+    private int fill( int  fd           ,
+                      int  eventBytes   ,
+                      int  count        ,
+                      long timeoutNanos ) throws IOException {
+
+        if ( count <= 0 || count > this.ids.length ) {
+
+            throw new IllegalArgumentException( "Number of events must be > 0 and <= capacity of the batch" ) ;
+        }
+
+        if ( NativeGpioBatch.IS_AVAILABLE ) {
+
+            int bytes = NativeGpioBatch.gpio_batch_read_events( fd               ,
+                                                                this.memory      ,
+                                                                eventBytes       ,
+                                                                count            ,
+                                                                timeoutNanos     ,
+                                                                this.nativeError ) ;
+
+            if ( this.nativeError[ 0 ] != 0 && bytes < eventBytes ) {
+
+                throw new IOException( "Native error while reading GPIO events : errno " + this.nativeError[ 0 ] ) ;
+            }
+
+            return bytes ;
+        }
+
+        if ( this.pollfd == null ) {
+
+            this.pollfd = new Memory( NativeLinux.POLLFD_BYTES ) ;
+        }
+
+        this.pollfd.setInt( 0  ,
+                            fd ) ;
+
+        this.pollfd.setShort( 4                         ,
+                              (short)NativeLinux.POLLIN ) ;
+
+        boolean   isLine = eventBytes == NativeGpioLineEvent.BYTES      ;
+        SizeT[]   sizes  = isLine ? this.lineReadSizes : this.readSizes ;
+        Pointer[] views  = isLine ? this.lineViews     : this.views     ;
+
+        if ( views == null ) {
+
+            views = new Pointer[ this.ids.length ] ;
+
+            for ( int i = 0           ;
+                  i < this.ids.length ;
+                  i += 1              ) {
+
+                views[ i ] = this.memory.share( (long)i * eventBytes ) ;
+            }
+
+            if ( isLine ) {
+
+                this.lineViews = views ;
+            }
+
+            else {
+
+                this.views = views ;
+            }
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos ;
+        int  wanted   = count * eventBytes               ;
+        int  total    = 0                                ;
+
+        while ( total < wanted ) {
+
+            int timeout = -1 ;
+
+            if ( timeoutNanos >= 0 ) {
+
+                long remaining = Math.max( 0                            ,
+                                           deadline - System.nanoTime() ) ;
+
+                timeout = (int)Math.min( Integer.MAX_VALUE                ,
+                                         ( remaining + 999999 ) / 1000000 ) ;
+            }
+
+            int ready = NativeLinux.poll( this.pollfd ,
+                                          1           ,
+                                          timeout     ) ;
+
+            if ( ready < 0 ) {
+
+                int errno = Linux.getErrno() ;
+
+                if ( errno == Errno.EINTR ) {
+
+                    continue ;
+                }
+
+                if ( total >= eventBytes ) {
+
+                    break ;
+                }
+
+                throw new IOException( "Native error while waiting for GPIO events : errno " + errno ) ;
+            }
+
+            if ( ready == 0 ) {
+
+                break ;
+            }
+
+            int nRead   = total / eventBytes ;
+            int partial = total % eventBytes ;
+
+            int bytes ;
+
+            if ( partial == 0 ) {
+
+                bytes = NativeIO.read( fd                     ,
+                                       views[ nRead ]         ,
+                                       sizes[ count - nRead ] ) ;
+            }
+
+            else {
+
+                // Completes an event which was split across reads, which does not happen with the kernel.
+                //
+                bytes = NativeIO.read( fd                                ,
+                                       this.memory.share( total )        ,
+                                       new SizeT( eventBytes - partial ) ) ;
+            }
+
+            if ( bytes < 0 ) {
+
+                int errno = NativeIO.getErrno() ;
+
+                if ( errno == Errno.EAGAIN || errno == Errno.EINTR ) {
+
+                    continue ;
+                }
+
+                if ( total >= eventBytes ) {
+
+                    break ;
+                }
+
+                throw new IOException( "Native error while reading GPIO events : errno " + errno ) ;
+            }
+
+            if ( bytes == 0 ) {
+
+                break ;
+            }
+
+            total += bytes ;
+        }
+
+        return total ;
+    }
+
+
+
+
+    // Reads events from a file descriptor until this batch holds `count` events or `timeoutNanos` elapses.
+    //
+    // Returns how many events were read.
+    //
+    int readUntil( int  fd           ,
+                   int  id           ,
+                   int  count        ,
+                   long timeoutNanos ) throws IOException {
+
+        return this.decode( this.fill( fd                        ,
+                                       NativeGpioEventData.BYTES ,
+                                       count                     ,
+                                       timeoutNanos              ) ,
+                            id                                       ) ;
+    }
+
+
+
+
+    // Reads events from the file descriptor of a line handle until this batch holds `count` events or `timeoutNanos`
+    // elapses.
+    //
+    // Returns how many events were read.
+    //
+    int readLinesUntil( int  fd           ,
+                        int  idBase       ,
+                        int  count        ,
+                        long timeoutNanos ) throws IOException {
+
+        return this.decodeLines( this.fill( fd                        ,
+                                            NativeGpioLineEvent.BYTES ,
+                                            count                     ,
+                                            timeoutNanos              ) ,
+                                 idBase                                   ) ;
+    }
+
+
+
+
+    // Decodes raw events which were read at the start of the native memory, with the given ID.
+    //
+    // Returns how many events were decoded.
+    //
+    private int decode( int bytes ,
+                        int id    ) {
+
+        int count = bytes / NativeGpioEventData.BYTES ;
+
+        for ( int i = 0  ;
+              i < count  ;
+              i += 1     ) {
+
+            long offset = (long)i * NativeGpioEventData.BYTES ;
+            int  index  = this.size + i                       ;
+
+            this.timestamps[ index ] = this.memory.getLong( offset + NativeGpioEventData.OFFSET_TIMESTAMP ) ;
+            this.edges[ index ]      = this.memory.getInt( offset + NativeGpioEventData.OFFSET_ID )         ;
+            this.ids[ index ]        = id                                                                    ;
+            this.seqnos[ index ]     = 0                                                                     ;
+            this.lineSeqnos[ index ] = 0                                                                     ;
+        }
+
+        this.size += count ;
+
+        return count ;
+    }
+
+
+
+
+    // Decodes raw line events which were read at the start of the native memory, the ID of each event being the number
+    // of its line plus the given base.
+    //
+    // Returns how many events were decoded.
+    //
+    private int decodeLines( int bytes  ,
+                             int idBase ) {
+
+        int count = bytes / NativeGpioLineEvent.BYTES ;
+
+        for ( int i = 0  ;
+              i < count  ;
+              i += 1     ) {
+
+            long offset = (long)i * NativeGpioLineEvent.BYTES ;
+            int  index  = this.size + i                       ;
+
+            this.timestamps[ index ] = this.memory.getLong( offset + NativeGpioLineEvent.OFFSET_TIMESTAMP )       ;
+            this.edges[ index ]      = this.memory.getInt( offset + NativeGpioLineEvent.OFFSET_ID )               ;
+            this.ids[ index ]        = idBase + this.memory.getInt( offset + NativeGpioLineEvent.OFFSET_OFFSET ) ;
+            this.seqnos[ index ]     = this.memory.getInt( offset + NativeGpioLineEvent.OFFSET_SEQNO )            ;
+            this.lineSeqnos[ index ] = this.memory.getInt( offset + NativeGpioLineEvent.OFFSET_LINE_SEQNO )       ;
+        }
+
+        this.size += count ;
+
+        return count ;
+    }
+
+
+
+
+    // Appends an event which was not read from a file descriptor.
+    //
+    // Returns false if this batch is full.
+    //
+    boolean add( long nanoTimestamp ,
+                 int  edges         ,
+                 int  id            ) {
+
+        if ( this.isFull() ) {
+
+            return false ;
+        }
+
+        this.timestamps[ this.size ] = nanoTimestamp ;
+        this.edges[ this.size ]      = edges         ;
+        this.ids[ this.size ]        = id            ;
+        this.seqnos[ this.size ]     = 0             ;
+        this.lineSeqnos[ this.size ] = 0             ;
+
+        this.size += 1 ;
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Retrieves the id associated with an event.
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return The id.
+     *
+     * @see GpioEvent#getId()
+     */
+    public int getId( int index ) {
+
+        return this.ids[ index ] ;
+    }
+
+
+
+
+    /**
+     * Retrieves the best estimation of when an event happened.
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return Timestamp in nanoseconds.
+     *
+     * @see GpioEvent#getNanoTimestamp()
+     */
+    public long getNanoTimestamp( int index ) {
+
+        return this.timestamps[ index ] ;
+    }
+
+
+
+
+    /**
+     * Retrieves the sequence number of an event amongst all events of the line handle it was read from.
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return The sequence number, 0 if the event was not read from a line handle.
+     *
+     * @see GpioEvent#getSequenceNumber()
+     */
+    public int getSequenceNumber( int index ) {
+
+        return this.seqnos[ index ] ;
+    }
+
+
+
+
+    /**
+     * Retrieves the sequence number of an event amongst all events of its line.
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return The sequence number, 0 if the event was not read from a line handle.
+     *
+     * @see GpioEvent#getLineSequenceNumber()
+     */
+    public int getLineSequenceNumber( int index ) {
+
+        return this.lineSeqnos[ index ] ;
+    }
+
+
+
+
+    // Retrieves the raw flags describing the edge of an event.
+    //
+    int getEdges( int index ) {
+
+        return this.edges[ index ] ;
+    }
+
+
+
+
+    /**
+     * Did an event happen on a rising edge ?
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return A boolean.
+     */
+    public boolean isRising( int index ) {
+
+        return ( this.edges[ index ] & GpioEvent.GPIO_EVENT_RISING_EDGE ) > 0 ;
+    }
+
+
+
+
+    /**
+     * Did an event happen on a falling edge ?
+     *
+     * @param  index
+     *           Index of the event.
+     *
+     * @return A boolean.
+     */
+    public boolean isFalling( int index ) {
+
+        return ( this.edges[ index ] & GpioEvent.GPIO_EVENT_FALLING_EDGE ) > 0 ;
+    }
+}
@@ -0,0 +1,55 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioFlags ;
+
+
+
+
+/**
+ * Enum representing the clock the kernel uses for timestamping events from a line handle.
+ *
+ * @see GpioLineRequest#setEventClock(GpioEventClock)
+ */
+public enum GpioEventClock {
+
+
+    /**
+     * Monotonic clock, the same one as `<strong>System.nanoTime()</strong>`, not affected by changes of wall-clock
+     * time. Default.
+     *
+     * @see GpioClockConverter
+     */
+    MONOTONIC ( 0 )                                        ,
+
+    /**
+     * Real-time clock, timestamps being nanoseconds since the Unix epoch (Linux 5.11 and later).
+     */
+    REALTIME  ( GpioFlags.LineFlags.EVENT_CLOCK_REALTIME ) ,
+
+    /**
+     * Hardware timestamping engine, the most precise when the platform provides one (Linux 5.19 and later).
+     */
+    HTE       ( GpioFlags.LineFlags.EVENT_CLOCK_HTE      ) ;
+
+
+
+
+    // Package protected internal value.
+    //
+    final long flags ;
+
+
+    // Private constructor.
+    //
+    private GpioEventClock( long flags ) {
+
+        this.flags = flags ;
+    }
+}
@@ -0,0 +1,641 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent          ;
+import io.helins.linux.gpio.GpioEventBatch     ;
+import io.helins.linux.gpio.GpioEventHandler   ;
+import io.helins.linux.gpio.GpioEventSource    ;
+import io.helins.linux.gpio.GpioOverflowPolicy ;
+import io.helins.linux.gpio.GpioWaitMode       ;
+import java.io.IOException                     ;
+import java.util.concurrent.ThreadFactory      ;
+
+
+
+
+/**
+ * Class for handling GPIO events on several worker threads, partitioned by id.
+ * <p>
+ * The id of an event is the one given when adding its handle to an event watcher. All events sharing an id go
+ * to the same partition, hence they are handled in order, by the same worker. Different partitions are handled
+ * in parallel. This way, a slow handler for a given line does not delay the others.
+ * <p>
+ * Each partition has a bounded queue which is fed by one thread, typically the one waiting on the event watcher,
+ * and drained by its own worker. Queues are preallocated and do not allocate per event. When a queue is full,
+ * the overflow policy decides whether the feeding thread waits or whether the event is dropped and counted.
+ * <p>
+ * Metrics are provided for each partition: current and maximum depth, how many events were handled, dropped or
+ * failed, and latency between dispatching and handling.
+ * <p>
+ * An exception thrown by the handler is counted as a failure for the partition of the event and the worker goes
+ * on with the next event.
+ *
+ * @see GpioEventWatcher#waitForEvents(GpioEventBatch, int)
+ */
+public class GpioEventDispatcher implements AutoCloseable {
+
+
+    // Partitions.
+    //
+    private final Partition[] partitions ;
+
+
+    // What happens when the queue of a partition is full.
+    //
+    private final GpioOverflowPolicy overflowPolicy ;
+
+
+    // How the feeding thread waits when a queue is full.
+    //
+    private final GpioWaitMode producerWaitMode ;
+
+
+    // Workers, one per partition.
+    //
+    private final Thread[] workers ;
+
+
+    // Bookkeeping of state.
+    //
+    private volatile boolean isRunning = true ;
+
+
+
+
+    /**
+     * Constructor starting the workers.
+     *
+     * @param  nPartitions
+     *           How many partitions, hence worker threads.
+     *
+     * @param  capacity
+     *           How many events the queue of a partition can hold, must be a power of 2.
+     *
+     * @param  overflowPolicy
+     *           What happens when the queue of a partition is full, `<strong>BLOCK</strong>` or
+     *           `<strong>DROP_NEWEST</strong>`.
+     *
+     * @param  waitMode
+     *           How workers wait for events as well as how the feeding thread waits when blocking.
+     *
+     * @param  handler
+     *           Handles events, called concurrently from all workers.
+     *
+     * @param  threadFactory
+     *           Creates worker threads.
+     *
+     * @throws IllegalArgumentException
+     *           When the number of partitions is not strictly positive, when the capacity is not a power of 2 or
+     *           when the overflow policy is not supported.
+     */
+    public GpioEventDispatcher( int                nPartitions    ,
+                                int                capacity       ,
+                                GpioOverflowPolicy overflowPolicy ,
+                                GpioWaitMode       waitMode       ,
+                                GpioEventHandler   handler        ,
+                                ThreadFactory      threadFactory  ) {
+
+        if ( nPartitions <= 0 ) {
+
+            throw new IllegalArgumentException( "Number of partitions must be > 0" ) ;
+        }
+
+        if ( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) {
+
+            throw new IllegalArgumentException( "Capacity of a partition must be a power of 2" ) ;
+        }
+
+        if ( overflowPolicy == GpioOverflowPolicy.DROP_OLDEST ) {
+
+            throw new IllegalArgumentException( "Partitions can only block or drop newest events" ) ;
+        }
+
+        this.partitions       = new Partition[ nPartitions ] ;
+        this.workers          = new Thread[ nPartitions ]    ;
+        this.overflowPolicy   = overflowPolicy               ;
+        this.producerWaitMode = waitMode                     ;
+
+        for ( int i = 0       ;
+              i < nPartitions ;
+              i += 1          ) {
+
+            final Partition partition = new Partition( capacity ) ;
+
+            this.partitions[ i ] = partition ;
+
+            this.workers[ i ] = threadFactory.newThread( () -> this.work( partition ,
+                                                                          waitMode  ,
+                                                                          handler   ) ) ;
+        }
+
+        for ( Thread worker : this.workers ) {
+
+            worker.start() ;
+        }
+    }
+
+
+
+
+    /**
+     * Stops the workers once they have handled all queued events and waits for them to terminate.
+     * <p>
+     * When interrupted, stops waiting and returns with the interrupt status of the current thread set. Workers
+     * still terminate once they have handled all queued events.
+     */
+    public void close() {
+
+        this.isRunning = false ;
+
+        try {
+
+            for ( Thread worker : this.workers ) {
+
+                worker.join() ;
+            }
+        }
+
+        catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt() ;
+        }
+    }
+
+
+
+
+    // Hands an event to the handler, counting a failure if it throws.
+    //
+    private static void handle( Partition        partition ,
+                                GpioEventHandler handler   ,
+                                GpioEvent        event     ) {
+
+        try {
+
+            handler.handle( event ) ;
+        }
+
+        catch ( Exception e ) {
+
+            partition.nFailed.increment() ;
+        }
+    }
+
+
+
+
+    // Loop executed by a worker.
+    //
+    private void work( Partition        partition ,
+                       GpioWaitMode     waitMode  ,
+                       GpioEventHandler handler   ) {
+
+        GpioEvent event = new GpioEvent() ;
+
+        try {
+
+            while ( true ) {
+
+                if ( partition.poll( event ) ) {
+
+                    handle( partition ,
+                            handler   ,
+                            event     ) ;
+                }
+
+                else if ( this.isRunning ) {
+
+                    waitMode.idle() ;
+                }
+
+                else {
+
+                    // Events might have been queued between the last poll and closing.
+                    //
+                    while ( partition.poll( event ) ) {
+
+                        handle( partition ,
+                                handler   ,
+                                event     ) ;
+                    }
+
+                    return ;
+                }
+            }
+        }
+
+        finally {
+
+            // If the worker dies because of an error, the feeding thread must not wait for it.
+            //
+            partition.isAlive = false ;
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves the number of partitions.
+     *
+     * @return The number of partitions.
+     */
+    public int getPartitionCount() {
+
+        return this.partitions.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves which partition handles events with the given id.
+     *
+     * @param  id
+     *           Id of an event.
+     *
+     * @return Index of the partition.
+     */
+    public int partitionOf( int id ) {
+
+        return Math.floorMod( id                     ,
+                              this.partitions.length ) ;
+    }
+
+
+
+
+    // Dispatches raw data, returns false if it was dropped.
+    //
+    private boolean dispatch( long nanoTimestamp ,
+                              int  edges         ,
+                              int  id            ) {
+
+        Partition partition = this.partitions[ this.partitionOf( id ) ] ;
+
+        while ( partition.offer( nanoTimestamp ,
+                                 edges         ,
+                                 id            ) == false ) {
+
+            if ( this.overflowPolicy == GpioOverflowPolicy.DROP_NEWEST || partition.isAlive == false ) {
+
+                partition.nDropped.increment() ;
+
+                return false ;
+            }
+
+            this.producerWaitMode.idle() ;
+        }
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Dispatches an event to the partition handling its id.
+     * <p>
+     * Must be called by only one thread at a time.
+     *
+     * @param  event
+     *           Event to dispatch, copied to the queue.
+     *
+     * @return False if the event was dropped because the queue was full or its worker died.
+     */
+    public boolean dispatch( GpioEvent event ) {
+
+        return this.dispatch( event.getNanoTimestamp() ,
+                              event.getEdges()         ,
+                              event.getId()            ) ;
+    }
+
+
+
+
+    /**
+     * Dispatches all events from a batch to the partitions handling their ids.
+     * <p>
+     * Must be called by only one thread at a time.
+     *
+     * @param  batch
+     *           Events to dispatch, copied to the queues.
+     *
+     * @return How many events were dispatched, the rest being dropped because queues were full or their workers
+     *         died.
+     */
+    public int dispatch( GpioEventBatch batch ) {
+
+        int nDispatched = 0 ;
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            if ( this.dispatch( batch.getNanoTimestamp( i ) ,
+                                batch.getEdges( i )         ,
+                                batch.getId( i )            ) ) {
+
+                nDispatched += 1 ;
+            }
+        }
+
+        return nDispatched ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until GPIO events occur and dispatches them.
+     * <p>
+     * Meant to be called repeatedly by the thread monitoring lines.
+     *
+     * @param  source
+     *           Source of events, typically an event watcher monitoring the lines.
+     *
+     * @param  batch
+     *           Batch reused for reading events.
+     *
+     * @param  timeout
+     *           Timeout in milliseconds (-1 means forever).
+     *
+     * @return True if at least an event occured within the given timeout.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public boolean pump( GpioEventSource source  ,
+                         GpioEventBatch  batch   ,
+                         int             timeout ) throws IOException {
+
+        if ( source.waitForEvents( batch   ,
+                                   timeout ) ) {
+
+            this.dispatch( batch ) ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events are currently queued in a partition.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return The number of events.
+     */
+    public long getDepth( int partition ) {
+
+        Partition p = this.partitions[ partition ] ;
+
+        return p.tail.get() - p.head.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves the maximum number of events queued in a partition so far, as seen when dispatching.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return The number of events.
+     */
+    public long getMaxDepth( int partition ) {
+
+        return this.partitions[ partition ].maxDepth.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events have been handed to the handler by a partition.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return The number of events.
+     */
+    public long getHandled( int partition ) {
+
+        return this.partitions[ partition ].head.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events have been dropped by a partition because its queue was full or its worker died.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return The number of events.
+     */
+    public long getDropped( int partition ) {
+
+        return this.partitions[ partition ].nDropped.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events made the handler throw an exception in a partition.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return The number of events.
+     */
+    public long getFailed( int partition ) {
+
+        return this.partitions[ partition ].nFailed.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves the mean latency between dispatching an event to a partition and handing it to the handler.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return Latency in nanoseconds, 0 if nothing was handled yet.
+     */
+    public long getMeanLatency( int partition ) {
+
+        Partition p = this.partitions[ partition ] ;
+
+        long nHandled = p.head.get() ;
+
+        return nHandled == 0 ? 0
+                             : p.totalLatency.get() / nHandled ;
+    }
+
+
+
+
+    /**
+     * Retrieves the maximum latency between dispatching an event to a partition and handing it to the handler.
+     *
+     * @param  partition
+     *           Index of the partition.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public long getMaxLatency( int partition ) {
+
+        return this.partitions[ partition ].maxLatency.get() ;
+    }
+
+
+
+
+    // Partition with a bounded single-producer single-consumer queue.
+    //
+    private static final class Partition {
+
+
+        // Slots.
+        //
+        private final long[] timestamps ;
+        private final int[]  edges      ;
+        private final int[]  ids        ;
+        private final long[] enqueuedAt ;
+
+
+        // For computing the index of a slot from a sequence.
+        //
+        private final int mask ;
+
+
+        // Sequences, written only by the worker and the feeding thread respectively.
+        //
+        private final GpioSequence head = new GpioSequence( 0 ) ;
+        private final GpioSequence tail = new GpioSequence( 0 ) ;
+
+
+        // Cached head, as last seen by the feeding thread.
+        //
+        private long cachedHead = 0 ;
+
+
+        // Whether the worker is still running.
+        //
+        private volatile boolean isAlive = true ;
+
+
+        // Metrics.
+        //
+        private final GpioSequence nDropped     = new GpioSequence( 0 ) ;
+        private final GpioSequence nFailed      = new GpioSequence( 0 ) ;
+        private final GpioSequence maxDepth     = new GpioSequence( 0 ) ;
+        private final GpioSequence totalLatency = new GpioSequence( 0 ) ;
+        private final GpioSequence maxLatency   = new GpioSequence( 0 ) ;
+
+
+
+
+        // Constructor.
+        //
+        private Partition( int capacity ) {
+
+            this.timestamps = new long[ capacity ] ;
+            this.edges      = new int[ capacity ]  ;
+            this.ids        = new int[ capacity ]  ;
+            this.enqueuedAt = new long[ capacity ] ;
+            this.mask       = capacity - 1         ;
+        }
+
+
+
+
+        // Enqueues an event, returns false if the queue is full.
+        //
+        private boolean offer( long nanoTimestamp ,
+                               int  edges         ,
+                               int  id            ) {
+
+            long tail = this.tail.get() ;
+
+            if ( tail - this.cachedHead == this.ids.length ) {
+
+                this.cachedHead = this.head.get() ;
+
+                if ( tail - this.cachedHead == this.ids.length ) {
+
+                    return false ;
+                }
+            }
+
+            int index = (int)tail & this.mask ;
+
+            this.timestamps[ index ] = nanoTimestamp     ;
+            this.edges[ index ]      = edges             ;
+            this.ids[ index ]        = id                ;
+            this.enqueuedAt[ index ] = System.nanoTime() ;
+
+            this.tail.set( tail + 1 ) ;
+
+            long depth = tail + 1 - this.cachedHead ;
+
+            if ( depth > this.maxDepth.get() ) {
+
+                this.maxDepth.set( depth ) ;
+            }
+
+            return true ;
+        }
+
+
+
+
+        // Dequeues an event, returns false if the queue is empty.
+        //
+        private boolean poll( GpioEvent event ) {
+
+            long head = this.head.get() ;
+
+            if ( head == this.tail.get() ) {
+
+                return false ;
+            }
+
+            int index = (int)head & this.mask ;
+
+            event.set( this.timestamps[ index ] ,
+                       this.edges[ index ]      ,
+                       this.ids[ index ]        ) ;
+
+            long latency = System.nanoTime() - this.enqueuedAt[ index ] ;
+
+            this.totalLatency.add( latency ) ;
+
+            if ( latency > this.maxLatency.get() ) {
+
+                this.maxLatency.set( latency ) ;
+            }
+
+            this.head.set( head + 1 ) ;
+
+            return true ;
+        }
+    }
+}
@@ -8,12 +8,14 @@ package io.helins.linux.gpio ;
 
 
 import io.helins.linux.Linux                             ;
+import io.helins.linux.gpio.GpioBackend                  ;
 import io.helins.linux.gpio.GpioBuffer                   ;
 import io.helins.linux.gpio.GpioEvent                    ;
+import io.helins.linux.gpio.GpioEventBatch               ;
 import io.helins.linux.gpio.GpioHandle                   ;
 import io.helins.linux.gpio.GpioLine                     ;
 import io.helins.linux.gpio.internal.NativeGpioEventData ;
-import io.helins.linux.io.LinuxIO                        ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
 import java.io.IOException                               ;
 
 
@@ -27,6 +29,11 @@ import java.io.IOException                               ;
 public class GpioEventHandle implements AutoCloseable {
 
 
+    // Backend performing system calls.
+    //
+    private final GpioBackend backend ;
+
+
     // File descriptor associated with this handle.
     //
     final int fd ;
@@ -39,7 +46,8 @@ public class GpioEventHandle implements AutoCloseable {
 
     // Bookkeeping the state of this handle.
     //
-    private boolean isClosed = false ;
+    private boolean isClosed      = false ;
+    private boolean isNonBlocking = false ;
 
 
 
@@ -49,9 +57,24 @@ public class GpioEventHandle implements AutoCloseable {
     GpioEventHandle( int fd   ,
                      int line ) {
 
-        this.fd   = fd                   ;
-        this.line = new GpioLine( line ,
-                                  0    ) ;
+        this( GpioBackend.NATIVE ,
+              fd                 ,
+              line               ) ;
+    }
+
+
+
+
+    // Private constructor using the given backend.
+    //
+    GpioEventHandle( GpioBackend backend ,
+                     int         fd      ,
+                     int         line    ) {
+
+        this.backend = backend              ;
+        this.fd      = fd                   ;
+        this.line    = new GpioLine( line ,
+                                     0    ) ;
     }
 
 
@@ -67,9 +90,9 @@ public class GpioEventHandle implements AutoCloseable {
 
         if ( this.isClosed == false ) {
 
-            if ( LinuxIO.close( this.fd ) != 0 ) {
+            if ( this.backend.close( this.fd ) != 0 ) {
             
-                throw new IOException( "Native error while closing a GPIO event handle for line " + this.line.lineNumber + " : errno " + Linux.getErrno() ) ;
+                throw new IOException( "Native error while closing a GPIO event handle for line " + this.line.lineNumber + " : errno " + this.backend.getErrno() ) ;
             }
 
             this.isClosed = true ;
@@ -79,6 +102,19 @@ public class GpioEventHandle implements AutoCloseable {
 
 
 
+    // Throws an IllegalStateException if this handle is not in non-blocking mode.
+    //
+    private void guardNonBlocking() {
+
+        if ( this.isNonBlocking == false ) {
+
+            throw new IllegalStateException( "GPIO event handle must be in non-blocking mode" ) ;
+        }
+    }
+
+
+
+
     /**
      * Retrieves the GPIO line associated with this handle.
      *
@@ -92,6 +128,60 @@ public class GpioEventHandle implements AutoCloseable {
 
 
 
+    /**
+     * Is this handle in non-blocking mode ?
+     *
+     * @return A boolean.
+     *
+     * @see #setNonBlocking(boolean)
+     */
+    public boolean isNonBlocking() {
+
+        return this.isNonBlocking ;
+    }
+
+
+
+
+    /**
+     * Sets or not this handle to non-blocking mode.
+     * <p>
+     * In non-blocking mode, reading events never waits. When nothing is queued, a batch simply remains empty.
+     * This is useful when the handle is monitored by an event watcher, so that a handle reported as ready
+     * but already drained can never stall the watcher.
+     *
+     * @param  isNonBlocking
+     *           Should be non-blocking ?
+     *
+     * @return This instance.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventHandle setNonBlocking( boolean isNonBlocking ) throws IOException {
+
+        int flags = NativeLinux.fcntl( this.fd             ,
+                                       NativeLinux.F_GETFL ,
+                                       0                   ) ;
+
+        if ( flags < 0
+             ||
+             NativeLinux.fcntl( this.fd                                        ,
+                                NativeLinux.F_SETFL                            ,
+                                isNonBlocking ? flags |  NativeLinux.O_NONBLOCK
+                                              : flags & ~NativeLinux.O_NONBLOCK ) < 0 ) {
+
+            throw new IOException( "Native error while setting blocking mode of GPIO event handle for line " + this.line.lineNumber + " : errno " + Linux.getErrno() ) ;
+        }
+
+        this.isNonBlocking = isNonBlocking ;
+
+        return this ;
+    }
+
+
+
+
     /**
      * Reads the current state of the line this handle controls and write it back to the given
      * buffer.
@@ -104,11 +194,11 @@ public class GpioEventHandle implements AutoCloseable {
      */
     public void read( GpioBuffer buffer ) throws IOException {
     
-        if ( LinuxIO.ioctl( this.fd                                     ,
-                            GpioHandle.GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
-                            buffer.getPointer()                         ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                                     ,
+                                 GpioHandle.GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                                 buffer.getPointer()                         ) < 0 ) {
         
-            throw new IOException( "Native error while reading GPIO event handle for line " + this.line.lineNumber + " : errno " + Linux.getErrno() ) ;
+            throw new IOException( "Native error while reading GPIO event handle for line " + this.line.lineNumber + " : errno " + this.backend.getErrno() ) ;
         }
     }
 
@@ -133,6 +223,8 @@ public class GpioEventHandle implements AutoCloseable {
 
     /**
      * Waits for an event to happen and writes what happened to the given `<strong>data</strong>` object.
+     * <p>
+     * Waits as well in non-blocking mode, without leaving it. See `<strong>pollEvent</strong>` for not waiting.
      *
      * @param  data
      *           Will hold data about what happened.
@@ -144,9 +236,166 @@ public class GpioEventHandle implements AutoCloseable {
      */
     public GpioEvent waitForEvent( GpioEvent data ) throws IOException {
 
-        data.read( this.fd              ,
-                   this.line.lineNumber ) ;
+        while ( data.read( this.fd              ,
+                           this.line.lineNumber ) == false ) {
+
+            data.await( this.fd ) ;
+        }
 
         return data ;
     }
+
+
+
+
+    /**
+     * Reads an event if one is queued, without waiting.
+     * <p>
+     * This handle must be in non-blocking mode.
+     *
+     * @param  data
+     *           Will hold data about what happened.
+     *
+     * @return True if an event was queued.
+     *
+     * @throws IllegalStateException
+     *           When this handle is not in non-blocking mode.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #setNonBlocking(boolean)
+     */
+    public boolean pollEvent( GpioEvent data ) throws IOException {
+
+        this.guardNonBlocking() ;
+
+        return data.read( this.fd              ,
+                          this.line.lineNumber ) ;
+    }
+
+
+
+
+    /**
+     * Busy-polls for an event and falls back to blocking after being idle for a while.
+     * <p>
+     * The calling thread keeps checking for an event without blocking, burning a core but reacting as fast as
+     * possible. Once it has been idle for `<strong>idleNanos</strong>`, it blocks until an event happens.
+     * `<strong>Long.MAX_VALUE</strong>` means never blocking.
+     * <p>
+     * This handle must be in non-blocking mode. Its flags are never modified, not even for blocking.
+     *
+     * @param  data
+     *           Will hold data about what happened.
+     *
+     * @param  idleNanos
+     *           How long to busy-poll before blocking, in nanoseconds.
+     *
+     * @return The event.
+     *
+     * @throws IllegalStateException
+     *           When this handle is not in non-blocking mode.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #setNonBlocking(boolean)
+     */
+    public GpioEvent spinForEvent( GpioEvent data      ,
+                                   long      idleNanos ) throws IOException {
+
+        this.guardNonBlocking() ;
+
+        long start = System.nanoTime() ;
+
+        do {
+
+            if ( data.read( this.fd              ,
+                            this.line.lineNumber ) ) {
+
+                return data ;
+            }
+
+            Thread.onSpinWait() ;
+        }
+        while ( System.nanoTime() - start < idleNanos ) ;
+
+        // Idle for too long, blocking in poll(2) until something happens since the file description might be shared
+        // and toggling its flags would cost several system calls.
+        //
+        return this.waitForEvent( data ) ;
+    }
+
+
+
+
+    /**
+     * Waits for at least one event to happen and reads as many queued events as the given batch can hold,
+     * in a single read.
+     * <p>
+     * The batch is cleared beforehand. The id of each event is the number of the line.
+     * <p>
+     * In non-blocking mode, this method does not wait and the batch is left empty if nothing was queued.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @return The batch.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventBatch readEvents( GpioEventBatch batch ) throws IOException {
+
+        batch.clear() ;
+
+        batch.read( this.fd              ,
+                    this.line.lineNumber ) ;
+
+        return batch ;
+    }
+
+
+
+
+    /**
+     * Reads events until the given batch holds `<strong>count</strong>` of them or the timeout elapses, without
+     * returning to Java in between when the native shim is loaded.
+     * <p>
+     * Meant for capturing bursts of edges at a high rate. The batch is cleared beforehand. The id of each event is
+     * the number of the line.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @param  count
+     *           How many events should be read, at most the capacity of the batch.
+     *
+     * @param  timeoutNanos
+     *           In nanoseconds, negative for waiting until enough events are read.
+     *
+     * @return The batch, holding less than `<strong>count</strong>` events if the timeout elapsed.
+     *
+     * @throws IllegalArgumentException
+     *           When the count is not positive or exceeds the capacity of the batch.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventBatch#capacity()
+     */
+    public GpioEventBatch readEvents( GpioEventBatch batch        ,
+                                      int            count        ,
+                                      long           timeoutNanos ) throws IOException {
+
+        batch.clear() ;
+
+        batch.readUntil( this.fd              ,
+                         this.line.lineNumber ,
+                         count                ,
+                         timeoutNanos         ) ;
+
+        return batch ;
+    }
 }
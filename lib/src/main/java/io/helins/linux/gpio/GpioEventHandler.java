@@ -0,0 +1,34 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent ;
+
+
+
+
+/**
+ * Interface for handling GPIO events as they are delivered.
+ *
+ * @see GpioEventDispatcher
+ */
+@FunctionalInterface
+public interface GpioEventHandler {
+
+
+    /**
+     * Handles an event.
+     * <p>
+     * The event is reused by the caller and must not be retained once this method returns. Exceptions are
+     * caught and counted by the caller, they do not stop the handling of subsequent events.
+     *
+     * @param event
+     *          What happened.
+     */
+    void handle( GpioEvent event ) ;
+}
@@ -0,0 +1,467 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioBuffer      ;
+import io.helins.linux.gpio.GpioEvent       ;
+import io.helins.linux.gpio.GpioEventBatch  ;
+import java.io.IOException                  ;
+import java.nio.ByteOrder                   ;
+import java.nio.MappedByteBuffer            ;
+import java.nio.channels.FileChannel        ;
+import java.nio.file.DirectoryStream        ;
+import java.nio.file.Files                  ;
+import java.nio.file.Path                   ;
+import java.nio.file.StandardOpenOption     ;
+
+
+
+
+/**
+ * Class for journaling GPIO events to memory-mapped files, for post-mortem analysis.
+ * <p>
+ * Each event is appended as a fixed-size record holding its kernel timestamp, its id and its edge. Values written
+ * to a GPIO handle can be journaled as well. Records go to segment files of a fixed capacity, all in the same
+ * directory. When a segment is full, the next one is created. Appending a record only writes to mapped memory, it
+ * does not allocate nor lock, so that journaling does not slow down the thread monitoring lines. Only rolling to
+ * a new segment involves the file system.
+ * <p>
+ * Every segment keeps a sparse index: for each block of records, the smallest and greatest timestamps. It lets a
+ * reader skip whatever is outside of a time range without scanning it, even when events from several lines are not
+ * strictly ordered.
+ * <p>
+ * The operating system writes mapped memory back to files on its own, even if the JVM crashes. Unless `<strong>
+ * flush</strong>` is called, the last records might be lost if the whole system goes down.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see GpioEventJournalReader
+ */
+public class GpioEventJournal implements AutoCloseable {
+
+
+    // Layout of a segment file, little-endian.
+    //
+    // Header, then the sparse index, then records.
+    //
+    static final int MAGIC   = 0x4A495047 ;
+    static final int VERSION = 1          ;
+
+    static final int HEADER_BYTES          = 64 ;
+    static final int HEADER_MAGIC          = 0  ;
+    static final int HEADER_VERSION        = 4  ;
+    static final int HEADER_CAPACITY       = 8  ;
+    static final int HEADER_INDEX_INTERVAL = 12 ;
+    static final int HEADER_COUNT          = 16 ;
+    static final int HEADER_MIN_TIMESTAMP  = 24 ;
+    static final int HEADER_MAX_TIMESTAMP  = 32 ;
+
+    static final int INDEX_BYTES         = 16 ;
+    static final int INDEX_MIN_TIMESTAMP = 0  ;
+    static final int INDEX_MAX_TIMESTAMP = 8  ;
+
+    static final int RECORD_BYTES     = 24 ;
+    static final int RECORD_TIMESTAMP = 0  ;
+    static final int RECORD_ID        = 8  ;
+    static final int RECORD_FLAGS     = 12 ;
+    static final int RECORD_VALUES    = 16 ;
+
+
+    // Flag of a record holding values written to a handle rather than an event.
+    //
+    static final int FLAG_WRITE = 0x100 ;
+
+
+    // Name of segment files.
+    //
+    static final String SEGMENT_SUFFIX = ".gpiojournal" ;
+
+
+
+
+    // Directory segments are written to.
+    //
+    private final Path directory ;
+
+
+    // How many records a segment holds.
+    //
+    private final int capacity ;
+
+
+    // How many records are indexed together.
+    //
+    private final int indexInterval ;
+
+
+    // Size of a segment file and where records start.
+    //
+    private final long segmentBytes  ;
+    private final int  recordsOffset ;
+
+
+    // Current segment.
+    //
+    private long             segmentNumber ;
+    private MappedByteBuffer segment       = null ;
+    private int              count         = 0    ;
+    private long             minTimestamp  ;
+    private long             maxTimestamp  ;
+    private long             blockMin      ;
+    private long             blockMax      ;
+
+
+    // Bookkeeping of state.
+    //
+    private boolean isClosed = false ;
+
+
+
+
+    /**
+     * Constructor.
+     * <p>
+     * Segments already present in the directory are kept and new ones are created after them.
+     *
+     * @param  directory
+     *           Directory segments are written to, must exist.
+     *
+     * @param  capacity
+     *           How many records a segment holds.
+     *
+     * @param  indexInterval
+     *           How many records are indexed together. Lower means faster reads but a bigger index.
+     *
+     * @throws IllegalArgumentException
+     *           When the capacity or the index interval is not strictly positive, or when a segment would be too
+     *           big for being mapped.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventJournal( Path directory     ,
+                             int  capacity      ,
+                             int  indexInterval ) throws IOException {
+
+        if ( capacity <= 0 || indexInterval <= 0 ) {
+
+            throw new IllegalArgumentException( "Capacity and index interval of a journal must be > 0" ) ;
+        }
+
+        long indexBytes   = ( ( (long)capacity + indexInterval - 1 ) / indexInterval ) * INDEX_BYTES ;
+        long segmentBytes = HEADER_BYTES + indexBytes + (long)capacity * RECORD_BYTES                ;
+
+        if ( segmentBytes > Integer.MAX_VALUE ) {
+
+            throw new IllegalArgumentException( "Segment of a journal would be too big for being mapped : " + segmentBytes + " bytes" ) ;
+        }
+
+        this.directory     = directory                          ;
+        this.capacity      = capacity                           ;
+        this.indexInterval = indexInterval                      ;
+        this.segmentBytes  = segmentBytes                       ;
+        this.recordsOffset = (int)( HEADER_BYTES + indexBytes ) ;
+
+        this.segmentNumber = lastSegmentNumber( directory ) ;
+
+        this.roll() ;
+    }
+
+
+
+
+    // Finds the number of the last segment in a directory, 0 if there is none.
+    //
+    static long lastSegmentNumber( Path directory ) throws IOException {
+
+        long last = 0 ;
+
+        try ( DirectoryStream< Path > stream = Files.newDirectoryStream( directory            ,
+                                                                         "*" + SEGMENT_SUFFIX ) ) {
+
+            for ( Path path : stream ) {
+
+                String name = path.getFileName().toString() ;
+
+                try {
+
+                    last = Math.max( last                                                                      ,
+                                     Long.parseLong( name.substring( 0                                         ,
+                                                                     name.length() - SEGMENT_SUFFIX.length() ) ) ) ;
+                }
+
+                catch ( NumberFormatException e ) {}
+            }
+        }
+
+        return last ;
+    }
+
+
+
+
+    // Name of the file of a segment, sorting in order.
+    //
+    static String segmentName( long segmentNumber ) {
+
+        return String.format( "%016d%s"      ,
+                              segmentNumber  ,
+                              SEGMENT_SUFFIX ) ;
+    }
+
+
+
+
+    // Throws an IllegalStateException if this journal is closed.
+    //
+    private void guardClosed() {
+
+        if ( this.isClosed ) {
+
+            throw new IllegalStateException( "GPIO event journal is closed" ) ;
+        }
+    }
+
+
+
+
+    // Creates and maps the next segment.
+    //
+    private void roll() throws IOException {
+
+        this.segmentNumber += 1 ;
+
+        Path path = this.directory.resolve( segmentName( this.segmentNumber ) ) ;
+
+        try ( FileChannel channel = FileChannel.open( path                          ,
+                                                      StandardOpenOption.CREATE_NEW ,
+                                                      StandardOpenOption.READ       ,
+                                                      StandardOpenOption.WRITE      ) ) {
+
+            this.segment = channel.map( FileChannel.MapMode.READ_WRITE ,
+                                        0                              ,
+                                        this.segmentBytes              ) ;
+        }
+
+        this.segment.order( ByteOrder.LITTLE_ENDIAN ) ;
+
+        this.count        = 0              ;
+        this.minTimestamp = Long.MAX_VALUE ;
+        this.maxTimestamp = Long.MIN_VALUE ;
+
+        this.segment.putInt( HEADER_MAGIC          , MAGIC              ) ;
+        this.segment.putInt( HEADER_VERSION        , VERSION            ) ;
+        this.segment.putInt( HEADER_CAPACITY       , this.capacity      ) ;
+        this.segment.putInt( HEADER_INDEX_INTERVAL , this.indexInterval ) ;
+        this.segment.putLong( HEADER_COUNT         , 0                  ) ;
+        this.segment.putLong( HEADER_MIN_TIMESTAMP , this.minTimestamp  ) ;
+        this.segment.putLong( HEADER_MAX_TIMESTAMP , this.maxTimestamp  ) ;
+    }
+
+
+
+
+    // Appends a record.
+    //
+    private void append( long nanoTimestamp ,
+                         int  id            ,
+                         int  flags         ,
+                         long values        ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( this.count == this.capacity ) {
+
+            this.roll() ;
+        }
+
+        MappedByteBuffer segment = this.segment                                                     ;
+        int              offset  = this.recordsOffset + this.count * RECORD_BYTES                   ;
+        int              entry   = HEADER_BYTES + ( this.count / this.indexInterval ) * INDEX_BYTES ;
+
+        segment.putLong( offset + RECORD_TIMESTAMP , nanoTimestamp ) ;
+        segment.putInt( offset + RECORD_ID         , id            ) ;
+        segment.putInt( offset + RECORD_FLAGS      , flags         ) ;
+        segment.putLong( offset + RECORD_VALUES    , values        ) ;
+
+        if ( this.count % this.indexInterval == 0 ) {
+
+            this.blockMin = nanoTimestamp ;
+            this.blockMax = nanoTimestamp ;
+        }
+
+        else {
+
+            this.blockMin = Math.min( this.blockMin  ,
+                                      nanoTimestamp ) ;
+
+            this.blockMax = Math.max( this.blockMax  ,
+                                      nanoTimestamp ) ;
+        }
+
+        this.minTimestamp = Math.min( this.minTimestamp ,
+                                      nanoTimestamp     ) ;
+
+        this.maxTimestamp = Math.max( this.maxTimestamp ,
+                                      nanoTimestamp     ) ;
+
+        segment.putLong( entry + INDEX_MIN_TIMESTAMP , this.blockMin     ) ;
+        segment.putLong( entry + INDEX_MAX_TIMESTAMP , this.blockMax     ) ;
+        segment.putLong( HEADER_MIN_TIMESTAMP        , this.minTimestamp ) ;
+        segment.putLong( HEADER_MAX_TIMESTAMP        , this.maxTimestamp ) ;
+
+        // Committing the record last.
+        //
+        this.count += 1 ;
+
+        segment.putLong( HEADER_COUNT ,
+                         this.count   ) ;
+    }
+
+
+
+
+    /**
+     * Appends an event.
+     *
+     * @param  event
+     *           Event to journal.
+     *
+     * @throws IllegalStateException
+     *           When this journal is closed.
+     *
+     * @throws IOException
+     *           When rolling to a new segment failed.
+     */
+    public void append( GpioEvent event ) throws IOException {
+
+        this.append( event.getNanoTimestamp() ,
+                     event.getId()            ,
+                     event.getEdges()         ,
+                     0                        ) ;
+    }
+
+
+
+
+    /**
+     * Appends all events from a batch, in order.
+     *
+     * @param  batch
+     *           Events to journal.
+     *
+     * @throws IllegalStateException
+     *           When this journal is closed.
+     *
+     * @throws IOException
+     *           When rolling to a new segment failed.
+     */
+    public void append( GpioEventBatch batch ) throws IOException {
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            this.append( batch.getNanoTimestamp( i ) ,
+                         batch.getId( i )            ,
+                         batch.getEdges( i )         ,
+                         0                           ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Appends values written to a GPIO handle.
+     * <p>
+     * The record is timestamped using `<strong>System.nanoTime()</strong>`, which relies on the same clock as event
+     * timestamps since Linux 5.7.
+     *
+     * @param  id
+     *           Id chosen for recognizing the handle.
+     *
+     * @param  buffer
+     *           Values written.
+     *
+     * @throws IllegalStateException
+     *           When this journal is closed.
+     *
+     * @throws IOException
+     *           When rolling to a new segment failed.
+     *
+     * @see GpioHandle#write(GpioBuffer)
+     */
+    public void appendWrite( int        id     ,
+                             GpioBuffer buffer ) throws IOException {
+
+        this.append( System.nanoTime() ,
+                     id                ,
+                     FLAG_WRITE        ,
+                     buffer.getBits()  ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many records the current segment holds.
+     *
+     * @return The number of records.
+     */
+    public int getSegmentCount() {
+
+        return this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the path of the segment currently written.
+     *
+     * @return The path.
+     */
+    public Path getSegmentPath() {
+
+        return this.directory.resolve( segmentName( this.segmentNumber ) ) ;
+    }
+
+
+
+
+    /**
+     * Forces the current segment to be written to storage.
+     *
+     * @throws IllegalStateException
+     *           When this journal is closed.
+     */
+    public void flush() {
+
+        this.guardClosed() ;
+
+        this.segment.force() ;
+    }
+
+
+
+
+    /**
+     * Flushes and closes this journal.
+     */
+    public void close() {
+
+        if ( this.isClosed == false ) {
+
+            this.segment.force() ;
+
+            this.segment  = null ;
+            this.isClosed = true ;
+        }
+    }
+}
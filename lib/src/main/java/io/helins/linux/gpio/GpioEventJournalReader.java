@@ -0,0 +1,394 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent        ;
+import io.helins.linux.gpio.GpioEventJournal ;
+import io.helins.linux.gpio.GpioLine         ;
+import java.io.IOException                   ;
+import java.nio.ByteOrder                    ;
+import java.nio.MappedByteBuffer             ;
+import java.nio.channels.FileChannel         ;
+import java.nio.file.DirectoryStream         ;
+import java.nio.file.Files                   ;
+import java.nio.file.Path                    ;
+import java.nio.file.StandardOpenOption      ;
+import java.util.ArrayList                   ;
+import java.util.Collections                 ;
+import java.util.List                        ;
+
+
+
+
+/**
+ * Class for reading back records from a GPIO event journal.
+ * <p>
+ * Records are read one by one, in the order they were appended, optionally restricted to a time range. Segments and
+ * blocks of records which are entirely outside of that range are skipped using the index, without being scanned.
+ * <p>
+ * The segments to read are listed when seeking. Records appended to the last of them while reading are seen as
+ * well.
+ *
+ * @see GpioEventJournal
+ */
+public class GpioEventJournalReader implements AutoCloseable {
+
+
+    // Directory segments are read from.
+    //
+    private final Path directory ;
+
+
+    // Segments to read, sorted.
+    //
+    private List< Path > segments = Collections.emptyList() ;
+
+
+    // Time range, inclusive.
+    //
+    private long fromNanos = Long.MIN_VALUE ;
+    private long toNanos   = Long.MAX_VALUE ;
+
+
+    // Current segment.
+    //
+    private int              segmentIndex  = 0    ;
+    private MappedByteBuffer segment       = null ;
+    private int              indexInterval = 0    ;
+    private int              recordsOffset = 0    ;
+    private int              position      = 0    ;
+
+
+    // Current record.
+    //
+    private long nanoTimestamp = 0 ;
+    private int  id            = 0 ;
+    private int  flags         = 0 ;
+    private long values        = 0 ;
+
+
+
+
+    /**
+     * Constructor, reading all records.
+     *
+     * @param  directory
+     *           Directory segments are read from.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventJournalReader( Path directory ) throws IOException {
+
+        this.directory = directory ;
+
+        this.seek( Long.MIN_VALUE ,
+                   Long.MAX_VALUE ) ;
+    }
+
+
+
+
+    /**
+     * Restarts reading from the first segment, restricted to a time range.
+     *
+     * @param  fromNanos
+     *           Records timestamped before are skipped, in nanoseconds.
+     *
+     * @param  toNanos
+     *           Records timestamped after are skipped, in nanoseconds.
+     *
+     * @return This instance.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventJournalReader seek( long fromNanos ,
+                                        long toNanos   ) throws IOException {
+
+        List< Path > segments = new ArrayList<>() ;
+
+        try ( DirectoryStream< Path > stream = Files.newDirectoryStream( this.directory                        ,
+                                                                         "*" + GpioEventJournal.SEGMENT_SUFFIX ) ) {
+
+            for ( Path path : stream ) {
+
+                segments.add( path ) ;
+            }
+        }
+
+        Collections.sort( segments ) ;
+
+        this.segments     = segments  ;
+        this.fromNanos    = fromNanos ;
+        this.toNanos      = toNanos   ;
+        this.segmentIndex = 0         ;
+        this.segment      = null      ;
+
+        return this ;
+    }
+
+
+
+
+    // Maps the next segment overlapping with the time range.
+    //
+    // Returns false if there is none.
+    //
+    private boolean nextSegment() throws IOException {
+
+        this.segment = null ;
+
+        while ( this.segmentIndex < this.segments.size() ) {
+
+            Path             path    = this.segments.get( this.segmentIndex ) ;
+            MappedByteBuffer segment                                           ;
+
+            this.segmentIndex += 1 ;
+
+            try ( FileChannel channel = FileChannel.open( path                    ,
+                                                          StandardOpenOption.READ ) ) {
+
+                segment = channel.map( FileChannel.MapMode.READ_ONLY ,
+                                       0                             ,
+                                       channel.size()                ) ;
+            }
+
+            segment.order( ByteOrder.LITTLE_ENDIAN ) ;
+
+            if ( segment.capacity() < GpioEventJournal.HEADER_BYTES
+                 ||
+                 segment.getInt( GpioEventJournal.HEADER_MAGIC ) != GpioEventJournal.MAGIC ) {
+
+                throw new IOException( "Not a GPIO event journal segment : " + path ) ;
+            }
+
+            if ( segment.getInt( GpioEventJournal.HEADER_VERSION ) != GpioEventJournal.VERSION ) {
+
+                throw new IOException( "Unsupported version of GPIO event journal segment : " + path ) ;
+            }
+
+            int capacity      = segment.getInt( GpioEventJournal.HEADER_CAPACITY )                  ;
+            int indexInterval = segment.getInt( GpioEventJournal.HEADER_INDEX_INTERVAL )            ;
+            int indexEntries  = (int)( ( (long)capacity + indexInterval - 1 ) / indexInterval ) ;
+
+            boolean isLast = this.segmentIndex == this.segments.size() ;
+
+            // The last segment might still be written, it is not skipped.
+            //
+            if ( isLast
+                 ||
+                 ( segment.getLong( GpioEventJournal.HEADER_COUNT ) > 0
+                   &&
+                   segment.getLong( GpioEventJournal.HEADER_MIN_TIMESTAMP ) <= this.toNanos
+                   &&
+                   segment.getLong( GpioEventJournal.HEADER_MAX_TIMESTAMP ) >= this.fromNanos ) ) {
+
+                this.segment       = segment                                                                   ;
+                this.indexInterval = indexInterval                                                             ;
+                this.recordsOffset = GpioEventJournal.HEADER_BYTES + indexEntries * GpioEventJournal.INDEX_BYTES ;
+                this.position      = 0                                                                         ;
+
+                return true ;
+            }
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Moves to the next record within the time range.
+     *
+     * @return True if there is one, false if the end of the journal was reached.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public boolean next() throws IOException {
+
+        while ( true ) {
+
+            if ( this.segment != null
+                 &&
+                 this.position >= this.segment.getLong( GpioEventJournal.HEADER_COUNT ) ) {
+
+                if ( this.segmentIndex == this.segments.size() ) {
+
+                    // Last segment, more records might be appended later.
+                    //
+                    return false ;
+                }
+
+                this.segment = null ;
+            }
+
+            if ( this.segment == null ) {
+
+                if ( this.nextSegment() == false ) {
+
+                    return false ;
+                }
+
+                continue ;
+            }
+
+            if ( this.position % this.indexInterval == 0 ) {
+
+                int entry = GpioEventJournal.HEADER_BYTES + ( this.position / this.indexInterval ) * GpioEventJournal.INDEX_BYTES ;
+
+                if ( this.segment.getLong( entry + GpioEventJournal.INDEX_MAX_TIMESTAMP ) < this.fromNanos
+                     ||
+                     this.segment.getLong( entry + GpioEventJournal.INDEX_MIN_TIMESTAMP ) > this.toNanos ) {
+
+                    // The whole block is out of range, unless it is still being written.
+                    //
+                    this.position = (int)Math.min( this.position + this.indexInterval                         ,
+                                                   this.segment.getLong( GpioEventJournal.HEADER_COUNT ) ) ;
+
+                    continue ;
+                }
+            }
+
+            int  offset        = this.recordsOffset + this.position * GpioEventJournal.RECORD_BYTES ;
+            long nanoTimestamp = this.segment.getLong( offset + GpioEventJournal.RECORD_TIMESTAMP ) ;
+
+            this.position += 1 ;
+
+            if ( nanoTimestamp >= this.fromNanos && nanoTimestamp <= this.toNanos ) {
+
+                this.nanoTimestamp = nanoTimestamp                                                   ;
+                this.id            = this.segment.getInt( offset + GpioEventJournal.RECORD_ID )      ;
+                this.flags         = this.segment.getInt( offset + GpioEventJournal.RECORD_FLAGS )   ;
+                this.values        = this.segment.getLong( offset + GpioEventJournal.RECORD_VALUES ) ;
+
+                return true ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves the timestamp of the current record.
+     *
+     * @return Timestamp in nanoseconds.
+     */
+    public long getNanoTimestamp() {
+
+        return this.nanoTimestamp ;
+    }
+
+
+
+
+    /**
+     * Retrieves the id of the current record.
+     *
+     * @return The id.
+     */
+    public int getId() {
+
+        return this.id ;
+    }
+
+
+
+
+    // Retrieves the raw flags describing the edge of the current record.
+    //
+    int getEdges() {
+
+        return this.flags & ~GpioEventJournal.FLAG_WRITE ;
+    }
+
+
+
+
+    /**
+     * Does the current record hold values written to a handle rather than an event ?
+     *
+     * @return A boolean.
+     *
+     * @see GpioEventJournal#appendWrite(int, GpioBuffer)
+     */
+    public boolean isWrite() {
+
+        return ( this.flags & GpioEventJournal.FLAG_WRITE ) > 0 ;
+    }
+
+
+
+
+    /**
+     * Did the current record happen on a rising edge ?
+     *
+     * @return A boolean.
+     */
+    public boolean isRising() {
+
+        return ( this.flags & GpioEvent.GPIO_EVENT_RISING_EDGE ) > 0 ;
+    }
+
+
+
+
+    /**
+     * Did the current record happen on a falling edge ?
+     *
+     * @return A boolean.
+     */
+    public boolean isFalling() {
+
+        return ( this.flags & GpioEvent.GPIO_EVENT_FALLING_EDGE ) > 0 ;
+    }
+
+
+
+
+    /**
+     * Retrieves the values written, when the current record is a write.
+     *
+     * @return Bit i is the state of the line at index i in the buffer.
+     */
+    public long getValues() {
+
+        return this.values ;
+    }
+
+
+
+
+    /**
+     * Retrieves the value written for a given line, when the current record is a write.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @return A boolean representing the state.
+     */
+    public boolean getValue( GpioLine line ) {
+
+        return ( ( this.values >>> line.index ) & 1 ) == 1 ;
+    }
+
+
+
+
+    /**
+     * Releases segments.
+     */
+    public void close() {
+
+        this.segments = Collections.emptyList() ;
+        this.segment  = null                    ;
+    }
+}
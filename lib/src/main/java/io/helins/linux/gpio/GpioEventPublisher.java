@@ -0,0 +1,343 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent         ;
+import io.helins.linux.gpio.GpioEventBatch    ;
+import io.helins.linux.gpio.GpioEventSource   ;
+import java.util.concurrent.Executor          ;
+import java.util.concurrent.Flow              ;
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.concurrent.locks.LockSupport ;
+
+
+
+
+/**
+ * Class for publishing GPIO events from an event watcher, or any other source, to a reactive subscriber.
+ * <p>
+ * Events are read only when the subscriber has requested some, and never more than requested. When demand reaches
+ * zero, nothing is read anymore and events are queued by the kernel until demand comes back. Hence, short bursts are
+ * absorbed without unbounded buffering on the JVM side. At most one batch of events is held at once.
+ * <p>
+ * A single event object is delivered over and over again, overwritten each time. It must not be retained once
+ * `<strong>onNext</strong>` returns.
+ * <p>
+ * Only one subscriber is supported. Delivery happens on one task submitted to the given executor, regardless of
+ * how many lines are monitored. That task keeps running until the subscription is cancelled or this publisher is
+ * closed. If the subscriber throws, the subscription is considered cancelled and the exception is rethrown to the
+ * executor, nothing else being signaled.
+ */
+public class GpioEventPublisher implements Flow.Publisher< GpioEvent > ,
+                                           AutoCloseable                {
+
+
+    // Source the events are read from.
+    //
+    private final GpioEventSource source ;
+
+
+    // Runs the delivery loop.
+    //
+    private final Executor executor ;
+
+
+    // Batch reused for reading events.
+    //
+    private final GpioEventBatch batch ;
+
+
+    // How long to wait for events before checking for cancellation, in milliseconds.
+    //
+    private final int pollTimeout ;
+
+
+    // Current subscription, null until subscribed.
+    //
+    private Subscription subscription = null ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  source
+     *           Source of events, typically a watcher monitoring the lines, not closed by this publisher.
+     *
+     * @param  executor
+     *           Runs the delivery task once subscribed.
+     *
+     * @param  batchCapacity
+     *           How many events can be read at once.
+     *
+     * @param  pollTimeout
+     *           How long to wait for events at most before checking if the subscription has been cancelled, in
+     *           milliseconds.
+     */
+    public GpioEventPublisher( GpioEventSource source        ,
+                               Executor        executor      ,
+                               int             batchCapacity ,
+                               int             pollTimeout   ) {
+
+        this.source      = source                              ;
+        this.executor    = executor                            ;
+        this.batch       = new GpioEventBatch( batchCapacity ) ;
+        this.pollTimeout = pollTimeout                         ;
+    }
+
+
+
+
+    /**
+     * Subscribes to events.
+     * <p>
+     * Subsequent subscribers are immediately signaled an `<strong>IllegalStateException</strong>`.
+     *
+     * @param subscriber
+     *          Subscriber.
+     */
+    @Override
+    public void subscribe( Flow.Subscriber< ? super GpioEvent > subscriber ) {
+
+        Subscription subscription ;
+
+        synchronized ( this ) {
+
+            if ( this.subscription != null ) {
+
+                subscription = null ;
+            }
+
+            else {
+
+                subscription      = new Subscription( subscriber ) ;
+                this.subscription = subscription                   ;
+            }
+        }
+
+        if ( subscription == null ) {
+
+            subscriber.onSubscribe( new Flow.Subscription() {
+
+                public void request( long n ) {}
+
+                public void cancel() {}
+            } ) ;
+
+            subscriber.onError( new IllegalStateException( "Only one subscriber is supported" ) ) ;
+
+            return ;
+        }
+
+        subscriber.onSubscribe( subscription ) ;
+
+        this.executor.execute( subscription::deliver ) ;
+    }
+
+
+
+
+    /**
+     * Stops delivering events and signals completion to the subscriber, if any and unless it has cancelled its
+     * subscription.
+     */
+    public void close() {
+
+        Subscription subscription ;
+
+        synchronized ( this ) {
+
+            subscription = this.subscription ;
+        }
+
+        if ( subscription != null ) {
+
+            subscription.complete() ;
+        }
+    }
+
+
+
+
+    // Subscription delivering events to a subscriber.
+    //
+    private final class Subscription implements Flow.Subscription {
+
+
+        // Subscriber receiving events.
+        //
+        private final Flow.Subscriber< ? super GpioEvent > subscriber ;
+
+
+        // Outstanding demand.
+        //
+        private final AtomicLong demand = new AtomicLong( 0 ) ;
+
+
+        // Bookkeeping of state.
+        //
+        private volatile boolean isCancelled  = false ;
+        private volatile boolean isCompleting = false ;
+
+
+        // Invalid demand, reported by the delivery task, strictly positive as long as demand was valid.
+        //
+        private volatile long invalidRequest = 1 ;
+
+
+        // Thread running the delivery loop, parked when there is no demand.
+        //
+        private volatile Thread deliveryThread = null ;
+
+
+
+
+        // Private constructor.
+        //
+        private Subscription( Flow.Subscriber< ? super GpioEvent > subscriber ) {
+
+            this.subscriber = subscriber ;
+        }
+
+
+
+
+        @Override
+        public void request( long n ) {
+
+            if ( n <= 0 ) {
+
+                this.invalidRequest = n    ;
+                this.isCancelled    = true ;
+            }
+
+            else {
+
+                this.demand.accumulateAndGet( n                       ,
+                                              ( current , added ) -> {
+
+                                                  long sum = current + added ;
+
+                                                  return sum < 0 ? Long.MAX_VALUE
+                                                                 : sum            ;
+                                              } ) ;
+            }
+
+            LockSupport.unpark( this.deliveryThread ) ;
+        }
+
+
+
+
+        @Override
+        public void cancel() {
+
+            this.isCancelled = true ;
+
+            LockSupport.unpark( this.deliveryThread ) ;
+        }
+
+
+
+
+        // Stops the delivery loop, which then signals completion unless cancelled.
+        //
+        private void complete() {
+
+            this.isCompleting = true ;
+
+            LockSupport.unpark( this.deliveryThread ) ;
+        }
+
+
+
+
+        // Delivery loop, executed as one task.
+        //
+        private void deliver() {
+
+            this.deliveryThread = Thread.currentThread() ;
+
+            GpioEvent event = new GpioEvent() ;
+            int       index = 0               ;
+
+            while ( this.isCancelled == false && this.isCompleting == false ) {
+
+                long demand = this.demand.get() ;
+
+                if ( demand == 0 ) {
+
+                    // No demand, not reading anything until there is.
+                    //
+                    LockSupport.park( this ) ;
+                }
+
+                else if ( index < batch.size() ) {
+
+                    try {
+
+                        this.subscriber.onNext( event.set( batch.getNanoTimestamp( index ) ,
+                                                           batch.getEdges( index )         ,
+                                                           batch.getId( index )            ) ) ;
+                    }
+
+                    catch ( RuntimeException | Error e ) {
+
+                        // The subscriber is broken, it must not be signaled anything else.
+                        //
+                        this.isCancelled = true ;
+
+                        throw e ;
+                    }
+
+                    index += 1 ;
+
+                    if ( demand != Long.MAX_VALUE ) {
+
+                        this.demand.decrementAndGet() ;
+                    }
+                }
+
+                else {
+
+                    index = 0 ;
+
+                    // Events beyond demand remain queued by the kernel.
+                    //
+                    batch.setLimit( demand ) ;
+
+                    try {
+
+                        source.waitForEvents( batch       ,
+                                              pollTimeout ) ;
+                    }
+
+                    catch ( Throwable e ) {
+
+                        this.isCancelled = true ;
+
+                        this.subscriber.onError( e ) ;
+
+                        return ;
+                    }
+                }
+            }
+
+            if ( this.invalidRequest <= 0 ) {
+
+                this.subscriber.onError( new IllegalArgumentException( "Requested a non-positive number of events : " + this.invalidRequest ) ) ;
+            }
+
+            else if ( this.isCancelled == false ) {
+
+                this.subscriber.onComplete() ;
+            }
+        }
+    }
+}
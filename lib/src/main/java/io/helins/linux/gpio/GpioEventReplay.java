@@ -0,0 +1,318 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventBatch         ;
+import io.helins.linux.gpio.GpioEventJournalReader ;
+import io.helins.linux.gpio.GpioEventSource        ;
+import java.io.IOException                         ;
+import java.util.concurrent.locks.LockSupport      ;
+
+
+
+
+/**
+ * Class for replaying events recorded in a GPIO event journal, as if they were happening again.
+ * <p>
+ * Events are delivered just like an event watcher does, hence handlers can be tested and benchmarked without any
+ * GPIO hardware, using real traces. Timestamps are the original ones.
+ * <p>
+ * Events can be delivered following their original timing, faster or slower by a given factor, or as fast as
+ * possible. When following timing, the replay keeps track of how late events are delivered compared to schedule.
+ * If this lateness keeps growing, the consumer cannot sustain the rate of events at that speed.
+ * <p>
+ * Records of written values are skipped. Once the journal is exhausted, waiting for events returns false right
+ * away, whatever the timeout.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see GpioEventJournal
+ */
+public class GpioEventReplay implements GpioEventSource {
+
+
+    /**
+     * Speed for delivering events as fast as possible, without following their timing.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY ;
+
+
+
+
+    // Below this, waiting is done by spinning because parking is not precise enough.
+    //
+    private static final long SPIN_NANOS = 50000 ;
+
+
+
+
+    // Reader the events come from.
+    //
+    private final GpioEventJournalReader reader ;
+
+
+    // Speed factor.
+    //
+    private final double speed ;
+
+
+    // Next event, read ahead.
+    //
+    private boolean hasNext       = false ;
+    private boolean isExhausted   = false ;
+    private long    nextTimestamp = 0     ;
+    private int     nextEdges     = 0     ;
+    private int     nextId        = 0     ;
+
+
+    // When the first event was delivered, in the JVM and in the journal.
+    //
+    private boolean isStarted      = false ;
+    private long    startNanos     = 0     ;
+    private long    startTimestamp = 0     ;
+
+
+    // Metrics.
+    //
+    private long delivered   = 0 ;
+    private long maxLateness = 0 ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  reader
+     *           Reader the events come from, starting from its current position.
+     *
+     * @param  speed
+     *           Speed factor, 1 meaning original timing, 2 meaning twice faster, or
+     *           `<strong>AS_FAST_AS_POSSIBLE</strong>`.
+     *
+     * @throws IllegalArgumentException
+     *           When the speed is not strictly positive.
+     */
+    public GpioEventReplay( GpioEventJournalReader reader ,
+                            double                 speed  ) {
+
+        if ( ( speed > 0 ) == false ) {
+
+            throw new IllegalArgumentException( "Speed of a replay must be > 0" ) ;
+        }
+
+        this.reader = reader ;
+        this.speed  = speed  ;
+    }
+
+
+
+
+    // Reads ahead the next event if needed.
+    //
+    // Returns false if the journal is exhausted.
+    //
+    private boolean peek() throws IOException {
+
+        while ( this.hasNext == false && this.isExhausted == false ) {
+
+            if ( this.reader.next() ) {
+
+                if ( this.reader.isWrite() == false ) {
+
+                    this.nextTimestamp = this.reader.getNanoTimestamp() ;
+                    this.nextEdges     = this.reader.getEdges()         ;
+                    this.nextId        = this.reader.getId()            ;
+                    this.hasNext       = true                           ;
+                }
+            }
+
+            else {
+
+                this.isExhausted = true ;
+            }
+        }
+
+        return this.hasNext ;
+    }
+
+
+
+
+    // Computes when the next event is due, in JVM time.
+    //
+    private long due() {
+
+        if ( this.isStarted == false ) {
+
+            this.startNanos     = System.nanoTime()  ;
+            this.startTimestamp = this.nextTimestamp ;
+            this.isStarted      = true               ;
+        }
+
+        return this.speed == AS_FAST_AS_POSSIBLE ? this.startNanos
+                                                 : this.startNanos + (long)( ( this.nextTimestamp - this.startTimestamp ) / this.speed ) ;
+    }
+
+
+
+
+    // Waits until the next event is due, `timeout` milliseconds at most.
+    //
+    // Returns true if it is due.
+    //
+    private boolean waitDue( int timeout ) {
+
+        long due      = this.due()               ;
+        long now      = System.nanoTime()        ;
+        long deadline = now + timeout * 1000000L ;
+
+        while ( now - due < 0 ) {
+
+            long remaining = due - now ;
+
+            if ( timeout >= 0 ) {
+
+                if ( now - deadline >= 0 ) {
+
+                    return false ;
+                }
+
+                remaining = Math.min( remaining      ,
+                                      deadline - now ) ;
+            }
+
+            if ( remaining > SPIN_NANOS ) {
+
+                LockSupport.parkNanos( remaining - SPIN_NANOS ) ;
+            }
+
+            else {
+
+                Thread.onSpinWait() ;
+            }
+
+            now = System.nanoTime() ;
+        }
+
+        this.maxLateness = Math.max( this.maxLateness ,
+                                     now - due        ) ;
+
+        return true ;
+    }
+
+
+
+
+    // Hands over the next event.
+    //
+    private void consume() {
+
+        this.hasNext    = false ;
+        this.delivered += 1     ;
+    }
+
+
+
+
+    @Override
+    public boolean waitForEvent( GpioEvent data    ,
+                                 int       timeout ) throws IOException {
+
+        if ( this.peek() && this.waitDue( timeout ) ) {
+
+            data.set( this.nextTimestamp ,
+                      this.nextEdges     ,
+                      this.nextId        ) ;
+
+            this.consume() ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for the next event, then also delivers the following ones which are already due.
+     */
+    @Override
+    public boolean waitForEvents( GpioEventBatch batch   ,
+                                  int            timeout ) throws IOException {
+
+        batch.clear() ;
+
+        if ( this.peek() && this.waitDue( timeout ) ) {
+
+            do {
+
+                batch.add( this.nextTimestamp ,
+                           this.nextEdges     ,
+                           this.nextId        ) ;
+
+                this.consume() ;
+            }
+            while ( batch.isFull() == false
+                    &&
+                    this.peek()
+                    &&
+                    this.due() - System.nanoTime() <= 0 ) ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Has the journal been entirely replayed ?
+     *
+     * @return A boolean.
+     */
+    public boolean isExhausted() {
+
+        return this.isExhausted && this.hasNext == false ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events were delivered.
+     *
+     * @return The number of events.
+     */
+    public long getDelivered() {
+
+        return this.delivered ;
+    }
+
+
+
+
+    /**
+     * Retrieves how late an event was delivered at most compared to schedule.
+     * <p>
+     * Meaningless when replaying as fast as possible.
+     *
+     * @return Lateness in nanoseconds.
+     */
+    public long getMaxLateness() {
+
+        return this.maxLateness ;
+    }
+}
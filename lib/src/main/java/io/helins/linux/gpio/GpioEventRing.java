@@ -0,0 +1,632 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent          ;
+import io.helins.linux.gpio.GpioEventBatch     ;
+import io.helins.linux.gpio.GpioOverflowPolicy ;
+import io.helins.linux.gpio.GpioWaitMode       ;
+import java.lang.invoke.VarHandle              ;
+import java.util.Arrays                        ;
+
+
+
+
+/**
+ * Class for broadcasting GPIO events from one producer thread to several consumer threads.
+ * <p>
+ * Typically, the producer is the thread monitoring lines with an event watcher. Instead of handling
+ * events itself, it publishes them to this ring and goes back to waiting as fast as possible. Each
+ * consumer then sees every event, at its own pace, without locks nor allocation. For instance, logging,
+ * control logic and metrics can all consume the same events.
+ * <p>
+ * Events are stored in preallocated slots. When the producer outpaces consumers and no slot is free,
+ * the overflow policy decides what happens. Overflows are counted.
+ * <p>
+ * Only one thread at a time can publish. Each consumer must be used by one thread at a time as well.
+ * Consumers should be created before publishing starts, otherwise they only see events published
+ * afterwards.
+ *
+ * @see GpioEventWatcher#waitForEvents(GpioEventBatch, int)
+ */
+public class GpioEventRing {
+
+
+    // Slots holding events.
+    //
+    private final long[] timestamps ;
+    private final int[]  edges      ;
+    private final int[]  ids        ;
+
+
+    // For computing the index of a slot from a sequence.
+    //
+    private final int mask ;
+
+
+    // How many of the last published events can be consumed. When dropping oldest events, the slot following
+    // the cursor can be overwritten at any time and is never read.
+    //
+    private final int window ;
+
+
+    // What happens when no slot is free.
+    //
+    private final GpioOverflowPolicy overflowPolicy ;
+
+
+    // How the producer waits when blocking.
+    //
+    private final GpioWaitMode producerWaitMode ;
+
+
+    // Sequence of the last published event.
+    //
+    private final GpioSequence cursor = new GpioSequence( -1 ) ;
+
+
+    // Counters.
+    //
+    private final GpioSequence nPublished = new GpioSequence( 0 ) ;
+    private final GpioSequence nDropped   = new GpioSequence( 0 ) ;
+
+
+    // Consumers gating the producer, replaced entirely when modified.
+    //
+    private volatile Consumer[] consumers = new Consumer[ 0 ] ;
+
+
+    // Sequence of the slowest consumer, as last seen by the producer.
+    //
+    private long cachedGatingSequence = -1 ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  capacity
+     *           How many events can be stored, must be a power of 2. When dropping oldest events, one slot is
+     *           always being overwritten, hence only the last `<strong>capacity - 1</strong>` events can be consumed
+     *           and the capacity must be at least 2.
+     *
+     * @param  overflowPolicy
+     *           What happens when the producer finds no free slot.
+     *
+     * @param  producerWaitMode
+     *           How the producer waits for a free slot, relevant only when blocking.
+     *
+     * @throws IllegalArgumentException
+     *           When the capacity is not a strictly positive power of 2, or is 1 when dropping oldest events.
+     */
+    public GpioEventRing( int                capacity         ,
+                          GpioOverflowPolicy overflowPolicy   ,
+                          GpioWaitMode       producerWaitMode ) {
+
+        if ( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) {
+
+            throw new IllegalArgumentException( "Capacity of a ring must be a power of 2" ) ;
+        }
+
+        if ( capacity == 1 && overflowPolicy == GpioOverflowPolicy.DROP_OLDEST ) {
+
+            throw new IllegalArgumentException( "Capacity of a ring dropping oldest events must be at least 2" ) ;
+        }
+
+        this.timestamps       = new long[ capacity ] ;
+        this.edges            = new int[ capacity ]  ;
+        this.ids              = new int[ capacity ]  ;
+        this.mask             = capacity - 1         ;
+        this.overflowPolicy   = overflowPolicy       ;
+        this.producerWaitMode = producerWaitMode     ;
+
+        this.window = overflowPolicy == GpioOverflowPolicy.DROP_OLDEST ? capacity - 1
+                                                                       : capacity     ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events this ring can store.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+
+        return this.ids.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves what happens when the producer finds no free slot.
+     *
+     * @return The overflow policy.
+     */
+    public GpioOverflowPolicy getOverflowPolicy() {
+
+        return this.overflowPolicy ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events have been published so far.
+     *
+     * @return The number of events.
+     */
+    public long getPublished() {
+
+        return this.nPublished.get() ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events have been discarded by the producer.
+     * <p>
+     * Only happens when the overflow policy is `<strong>DROP_NEWEST</strong>`.
+     *
+     * @return The number of events.
+     *
+     * @see Consumer#getMissed()
+     */
+    public long getDropped() {
+
+        return this.nDropped.get() ;
+    }
+
+
+
+
+    /**
+     * Creates a new consumer which will see every event published from now on.
+     *
+     * @param  waitMode
+     *           How the consumer waits when nothing is available.
+     *
+     * @return A consumer.
+     */
+    public Consumer newConsumer( GpioWaitMode waitMode ) {
+
+        Consumer consumer = new Consumer( waitMode ) ;
+
+        synchronized ( this ) {
+
+            Consumer[] consumers = Arrays.copyOf( this.consumers            ,
+                                                  this.consumers.length + 1 ) ;
+
+            consumers[ consumers.length - 1 ] = consumer ;
+
+            this.consumers = consumers ;
+        }
+
+        return consumer ;
+    }
+
+
+
+
+    // Stops a consumer from gating the producer.
+    //
+    private synchronized void removeConsumer( Consumer consumer ) {
+
+        if ( Arrays.asList( this.consumers ).contains( consumer ) == false ) {
+
+            // Already removed.
+            //
+            return ;
+        }
+
+        Consumer[] consumers = new Consumer[ this.consumers.length - 1 ] ;
+
+        int j = 0 ;
+
+        for ( Consumer c : this.consumers ) {
+
+            if ( c != consumer ) {
+
+                consumers[ j ] = c ;
+                j             += 1 ;
+            }
+        }
+
+        this.consumers = consumers ;
+    }
+
+
+
+
+    // Retrieves the sequence of the slowest consumer, or the given default if there are no consumers.
+    //
+    private long minimumSequence( long defaultSequence ) {
+
+        long minimum = defaultSequence ;
+
+        for ( Consumer consumer : this.consumers ) {
+
+            long sequence = consumer.sequence.get() ;
+
+            if ( sequence < minimum ) {
+
+                minimum = sequence ;
+            }
+        }
+
+        return minimum ;
+    }
+
+
+
+
+    // Publishes raw data, returns false if it was discarded.
+    //
+    private boolean publish( long nanoTimestamp ,
+                             int  edges         ,
+                             int  id            ) {
+
+        long sequence = this.cursor.get() + 1 ;
+
+        if ( this.overflowPolicy != GpioOverflowPolicy.DROP_OLDEST ) {
+
+            long wrapPoint = sequence - this.ids.length ;
+
+            while ( wrapPoint > this.cachedGatingSequence ) {
+
+                this.cachedGatingSequence = this.minimumSequence( sequence - 1 ) ;
+
+                if ( wrapPoint > this.cachedGatingSequence ) {
+
+                    if ( this.overflowPolicy == GpioOverflowPolicy.DROP_NEWEST ) {
+
+                        this.nDropped.increment() ;
+
+                        return false ;
+                    }
+
+                    this.producerWaitMode.idle() ;
+                }
+            }
+        }
+        else {
+
+            // The previous sequence must be visible before the slot is overwritten, so that a consumer
+            // noticing a torn copy also notices it was lapped.
+            //
+            VarHandle.storeStoreFence() ;
+        }
+
+        int index = (int)sequence & this.mask ;
+
+        this.timestamps[ index ] = nanoTimestamp ;
+        this.edges[ index ]      = edges         ;
+        this.ids[ index ]        = id            ;
+
+        this.cursor.set( sequence ) ;
+        this.nPublished.increment() ;
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Publishes an event to all consumers.
+     *
+     * @param  event
+     *           Event to publish, copied to a slot.
+     *
+     * @return False if the event was discarded because of the overflow policy.
+     */
+    public boolean publish( GpioEvent event ) {
+
+        return this.publish( event.getNanoTimestamp() ,
+                             event.getEdges()         ,
+                             event.getId()            ) ;
+    }
+
+
+
+
+    /**
+     * Publishes all events from a batch to all consumers.
+     *
+     * @param  batch
+     *           Events to publish, copied to slots.
+     *
+     * @return How many events were published, the rest being discarded because of the overflow policy.
+     */
+    public int publish( GpioEventBatch batch ) {
+
+        int nPublished = 0 ;
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            if ( this.publish( batch.getNanoTimestamp( i ) ,
+                               batch.getEdges( i )         ,
+                               batch.getId( i )            ) ) {
+
+                nPublished += 1 ;
+            }
+        }
+
+        return nPublished ;
+    }
+
+
+
+
+    /**
+     * Class for consuming every event published to a ring.
+     * <p>
+     * The current event is copied from its slot when moving to it, it remains valid until moving to
+     * the next one.
+     */
+    public class Consumer implements AutoCloseable {
+
+
+        // Sequence of the last consumed event.
+        //
+        private final GpioSequence sequence ;
+
+
+        // Events skipped because they were overwritten before being consumed.
+        //
+        private final GpioSequence nMissed = new GpioSequence( 0 ) ;
+
+
+        // How this consumer waits.
+        //
+        private final GpioWaitMode waitMode ;
+
+
+        // Current event.
+        //
+        private long currentTimestamp ;
+        private int  currentEdges     ;
+        private int  currentId        ;
+
+
+
+
+        // Private constructor.
+        //
+        private Consumer( GpioWaitMode waitMode ) {
+
+            this.waitMode = waitMode                         ;
+            this.sequence = new GpioSequence( cursor.get() ) ;
+        }
+
+
+
+
+        /**
+         * Stops consuming, the producer will not wait for this consumer anymore.
+         * <p>
+         * Closing more than once has no effect.
+         */
+        public void close() {
+
+            removeConsumer( this ) ;
+        }
+
+
+
+
+        /**
+         * Moves to the next event if one is available, without waiting.
+         *
+         * @return True if there was an event.
+         */
+        public boolean poll() {
+
+            long sequence  = this.sequence.get() + 1 ;
+            long available = cursor.get()            ;
+
+            while ( sequence <= available ) {
+
+                if ( available - sequence >= window ) {
+
+                    // Lapped by the producer, skipping to the oldest event still stored.
+                    //
+                    long oldest = available - window + 1 ;
+
+                    this.nMissed.add( oldest - sequence ) ;
+
+                    sequence = oldest ;
+                }
+
+                int index = (int)sequence & mask ;
+
+                this.currentTimestamp = timestamps[ index ] ;
+                this.currentEdges     = edges[ index ]      ;
+                this.currentId        = ids[ index ]        ;
+
+                if ( overflowPolicy == GpioOverflowPolicy.DROP_OLDEST ) {
+
+                    // The slot might have been overwritten while being copied.
+                    //
+                    VarHandle.acquireFence() ;
+
+                    available = cursor.get() ;
+
+                    if ( available - sequence >= window ) {
+
+                        continue ;
+                    }
+                }
+
+                this.sequence.set( sequence ) ;
+
+                return true ;
+            }
+
+            return false ;
+        }
+
+
+
+
+        /**
+         * Waits until the next event is available and moves to it.
+         */
+        public void take() {
+
+            while ( this.poll() == false ) {
+
+                this.waitMode.idle() ;
+            }
+        }
+
+
+
+
+        /**
+         * Waits `<strong>timeoutNanos</strong>` nanoseconds at most until the next event is available and moves
+         * to it.
+         *
+         * @param  timeoutNanos
+         *           Timeout in nanoseconds.
+         *
+         * @return True if there was an event within the given timeout.
+         */
+        public boolean take( long timeoutNanos ) {
+
+            if ( this.poll() ) {
+
+                return true ;
+            }
+
+            long start = System.nanoTime() ;
+
+            while ( System.nanoTime() - start < timeoutNanos ) {
+
+                this.waitMode.idle() ;
+
+                if ( this.poll() ) {
+
+                    return true ;
+                }
+            }
+
+            return false ;
+        }
+
+
+
+
+        /**
+         * Retrieves how many events are waiting to be consumed.
+         *
+         * @return The number of events.
+         */
+        public long lag() {
+
+            return Math.min( cursor.get() - this.sequence.get() ,
+                             window                             ) ;
+        }
+
+
+
+
+        /**
+         * Retrieves how many events this consumer has missed because they were overwritten before
+         * being consumed.
+         * <p>
+         * Only happens when the overflow policy is `<strong>DROP_OLDEST</strong>`.
+         *
+         * @return The number of events.
+         */
+        public long getMissed() {
+
+            return this.nMissed.get() ;
+        }
+
+
+
+
+        /**
+         * Copies the current event.
+         *
+         * @param  event
+         *           Will be overwritten.
+         *
+         * @return The event.
+         */
+        public GpioEvent copy( GpioEvent event ) {
+
+            return event.set( this.currentTimestamp ,
+                              this.currentEdges     ,
+                              this.currentId        ) ;
+        }
+
+
+
+
+        /**
+         * Retrieves the id of the current event.
+         *
+         * @return The id.
+         *
+         * @see GpioEvent#getId()
+         */
+        public int getId() {
+
+            return this.currentId ;
+        }
+
+
+
+
+        /**
+         * Retrieves the best estimation of when the current event happened.
+         *
+         * @return Timestamp in nanoseconds.
+         *
+         * @see GpioEvent#getNanoTimestamp()
+         */
+        public long getNanoTimestamp() {
+
+            return this.currentTimestamp ;
+        }
+
+
+
+
+        /**
+         * Did the current event happen on a rising edge ?
+         *
+         * @return A boolean.
+         */
+        public boolean isRising() {
+
+            return ( this.currentEdges & GpioEvent.GPIO_EVENT_RISING_EDGE ) > 0 ;
+        }
+
+
+
+
+        /**
+         * Did the current event happen on a falling edge ?
+         *
+         * @return A boolean.
+         */
+        public boolean isFalling() {
+
+            return ( this.currentEdges & GpioEvent.GPIO_EVENT_FALLING_EDGE ) > 0 ;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent      ;
+import io.helins.linux.gpio.GpioEventBatch ;
+import java.io.IOException                 ;
+
+
+
+
+/**
+ * Interface for anything delivering GPIO events the way an event watcher does.
+ * <p>
+ * Code consuming events from a source does not need to know whether they come from real lines or, for instance,
+ * from a recorded journal.
+ *
+ * @see GpioEventWatcher
+ * @see GpioEventReplay
+ */
+public interface GpioEventSource {
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until a GPIO event occurs.
+     *
+     * @param  data
+     *           Will be overwritten in order to describe what happened.
+     *
+     * @param  timeout
+     *           Timeout in milliseconds (-1 means forever).
+     *
+     * @return True if an event occured within the given timeout.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    boolean waitForEvent( GpioEvent data    ,
+                          int       timeout ) throws IOException ;
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until GPIO events occur and reads as many of them as
+     * available, up to the capacity of the batch.
+     * <p>
+     * The batch is cleared beforehand.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @param  timeout
+     *           Timeout in milliseconds (-1 means forever).
+     *
+     * @return True if at least an event occured within the given timeout.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    boolean waitForEvents( GpioEventBatch batch   ,
+                           int            timeout ) throws IOException ;
+}
@@ -7,11 +7,17 @@
 package io.helins.linux.gpio ;
 
 
-import io.helins.linux.epoll.Epoll           ;
-import io.helins.linux.epoll.EpollEvent      ;
-import io.helins.linux.gpio.GpioEvent        ;
-import io.helins.linux.gpio.GpioEventHandle  ;
-import java.io.IOException                   ;
+import io.helins.linux.epoll.Epoll                ;
+import io.helins.linux.epoll.EpollEvent           ;
+import io.helins.linux.epoll.EpollEvents          ;
+import io.helins.linux.gpio.GpioEvent             ;
+import io.helins.linux.gpio.GpioEventBatch        ;
+import io.helins.linux.gpio.GpioEventHandle       ;
+import io.helins.linux.gpio.GpioEventSource       ;
+import io.helins.linux.gpio.GpioLatencyHistograms ;
+import io.helins.linux.gpio.GpioLineHandle        ;
+import java.io.IOException                        ;
+import java.util.Arrays                           ;
 
 
 
@@ -19,7 +25,16 @@ import java.io.IOException                   ;
 /**
  * Class for efficiently monitoring several GPIO events at once.
  */
-public class GpioEventWatcher implements AutoCloseable {
+public class GpioEventWatcher implements AutoCloseable   ,
+                                         GpioEventSource {
+
+
+    /**
+     * Default maximum number of ready handles reported by a single wait.
+     *
+     * @see #waitForEvents(GpioEventBatch, int)
+     */
+    public static final int DEFAULT_MAX_READY = 64 ;
 
 
     // Epoll event flags meant to be reused.
@@ -28,6 +43,11 @@ public class GpioEventWatcher implements AutoCloseable {
                                                                              .set( EpollEvent.Flag.EPOLLPRI ) ;
 
 
+    // Marks user data related to a line handle, file descriptors being never negative.
+    //
+    private static final long LINE_HANDLE = 0x80000000L ;
+
+
 
 
     // Epoll instances for the monitoring.
@@ -40,6 +60,31 @@ public class GpioEventWatcher implements AutoCloseable {
     private EpollEvent epollEvent ;
 
 
+    // Epoll events meant to be reused when waiting for several ready handles at once.
+    //
+    private EpollEvents epollEvents ;
+
+
+    // How long to busy-poll before blocking, in nanoseconds, 0 meaning always blocking.
+    //
+    private long busyPollNanos = 0 ;
+
+
+    // Decides how to wait, null meaning always blocking.
+    //
+    private GpioWaitStrategy waitStrategy = null ;
+
+
+    // Measures delivery latency, null if not measured.
+    //
+    private GpioLatencyHistograms latencyHistograms = null ;
+
+
+    // Registered line handles, indexed by file descriptor, for checking sequence numbers.
+    //
+    private GpioLineHandle[] lineHandles = new GpioLineHandle[ 0 ] ;
+
+
 
 
     /**
@@ -49,9 +94,37 @@ public class GpioEventWatcher implements AutoCloseable {
      *           When an unplanned error occured.
      */
     public GpioEventWatcher() throws IOException {
+
+        this( DEFAULT_MAX_READY ) ;
+    }
+
+
+
+
+    /**
+     * Constructor specifying how many ready handles can be reported by a single wait.
+     *
+     * @param  maxReady
+     *           Maximum number of ready handles per wait.
+     *
+     * @throws IllegalArgumentException
+     *           When the maximum is not strictly positive.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #waitForEvents(GpioEventBatch, int)
+     */
+    public GpioEventWatcher( int maxReady ) throws IOException {
+
+        if ( maxReady <= 0 ) {
+
+            throw new IllegalArgumentException( "Maximum number of ready handles must be > 0" ) ;
+        }
     
-        this.epoll      = new Epoll()      ;
-        this.epollEvent = new EpollEvent() ;
+        this.epoll       = new Epoll()                 ;
+        this.epollEvent  = new EpollEvent()            ;
+        this.epollEvents = new EpollEvents( maxReady ) ;
     }
 
 
@@ -90,7 +163,17 @@ public class GpioEventWatcher implements AutoCloseable {
     //
     private static int decodeFD( long userData ) {
     
-        return (int)userData ;
+        return (int)( userData & ~LINE_HANDLE ) ;
+    }
+
+
+
+
+    // Is a long storing data about a line handle ?
+    //
+    private static boolean isLineHandle( long userData ) {
+
+        return ( userData & LINE_HANDLE ) != 0 ;
     }
 
 
@@ -106,6 +189,287 @@ public class GpioEventWatcher implements AutoCloseable {
 
 
 
+    /**
+     * Retrieves how long this watcher busy-polls before blocking.
+     *
+     * @return Duration in nanoseconds, 0 if this watcher always blocks.
+     *
+     * @see #setBusyPoll(long)
+     */
+    public long getBusyPoll() {
+
+        return this.busyPollNanos ;
+    }
+
+
+
+
+    /**
+     * Sets how long this watcher busy-polls before blocking when waiting for events.
+     * <p>
+     * By default, waiting blocks in the kernel until an event happens. Waking up a blocked thread takes time, typically
+     * tens of microseconds. When busy-polling, the calling thread keeps checking for ready handles without blocking,
+     * burning a core but reacting as fast as possible. Once it has been idle for the given duration, it falls back to
+     * blocking until an event happens or the timeout elapses.
+     * <p>
+     * `<strong>Long.MAX_VALUE</strong>` means never blocking and is meant for threads dedicated to latency-critical
+     * lines. It is best combined with event handles in non-blocking mode.
+     * <p>
+     * Replaces any wait strategy.
+     *
+     * @param  idleNanos
+     *           Duration in nanoseconds, 0 for always blocking.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the duration is negative.
+     *
+     * @see GpioEventHandle#setNonBlocking(boolean)
+     */
+    public GpioEventWatcher setBusyPoll( long idleNanos ) {
+
+        if ( idleNanos < 0 ) {
+
+            throw new IllegalArgumentException( "Busy-polling duration must be >= 0" ) ;
+        }
+
+        this.busyPollNanos = idleNanos                                              ;
+        this.waitStrategy  = idleNanos == 0 ? null
+                                            : GpioWaitStrategy.busyPoll( idleNanos ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves the strategy deciding how this watcher waits.
+     *
+     * @return The wait strategy, null if this watcher always blocks.
+     */
+    public GpioWaitStrategy getWaitStrategy() {
+
+        return this.waitStrategy ;
+    }
+
+
+
+
+    /**
+     * Sets the strategy deciding how this watcher waits for events.
+     * <p>
+     * The strategy is consulted every time no handle is ready and is notified about every event read.
+     *
+     * @param  waitStrategy
+     *           The wait strategy, null for always blocking.
+     *
+     * @return This instance.
+     *
+     * @see GpioAdaptiveWaitStrategy
+     */
+    public GpioEventWatcher setWaitStrategy( GpioWaitStrategy waitStrategy ) {
+
+        this.busyPollNanos = 0            ;
+        this.waitStrategy  = waitStrategy ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves the histograms measuring delivery latency.
+     *
+     * @return The latency histograms, null if latency is not measured.
+     */
+    public GpioLatencyHistograms getLatencyHistograms() {
+
+        return this.latencyHistograms ;
+    }
+
+
+
+
+    /**
+     * Sets histograms for measuring the latency between the kernel timestamping events and this watcher reading them.
+     * <p>
+     * Latency is recorded for every event read, right after reading.
+     *
+     * @param  latencyHistograms
+     *           The latency histograms, null for not measuring latency.
+     *
+     * @return This instance.
+     */
+    public GpioEventWatcher setLatencyHistograms( GpioLatencyHistograms latencyHistograms ) {
+
+        this.latencyHistograms = latencyHistograms ;
+
+        return this ;
+    }
+
+
+
+
+    // Waits for ready handles, returns how many are ready.
+    //
+    // Either one is reported in the reusable epoll event or several in the reusable epoll events.
+    //
+    private int epollWait( boolean isMany  ,
+                           int     timeout ) throws IOException {
+
+        if ( isMany ) {
+
+            return this.epoll.wait( this.epollEvents ,
+                                    timeout          ) ;
+        }
+
+        return this.epoll.wait( this.epollEvent ,
+                                timeout         ) ? 1
+                                                  : 0 ;
+    }
+
+
+
+
+    // Waits for ready handles according to the wait strategy, returns how many are ready.
+    //
+    private int waitReady( boolean isMany  ,
+                           int     timeout ) throws IOException {
+
+        GpioWaitStrategy waitStrategy = this.waitStrategy ;
+
+        if ( waitStrategy != null && timeout != 0 ) {
+
+            long start = System.nanoTime()            ;
+            long limit = timeout < 0 ? Long.MAX_VALUE
+                                     : timeout * 1000000L ;
+
+            while ( true ) {
+
+                int nReady = this.epollWait( isMany ,
+                                             0      ) ;
+
+                if ( nReady > 0 ) {
+
+                    return nReady ;
+                }
+
+                long idleNanos = System.nanoTime() - start ;
+
+                if ( idleNanos >= limit ) {
+
+                    return 0 ;
+                }
+
+                GpioWaitMode waitMode = waitStrategy.idle( idleNanos ) ;
+
+                if ( waitMode == GpioWaitMode.BLOCK ) {
+
+                    if ( timeout > 0 ) {
+
+                        timeout = Math.max( 1                                         ,
+                                            timeout - (int)( idleNanos / 1000000L ) ) ;
+                    }
+
+                    break ;
+                }
+
+                waitMode.idle() ;
+            }
+        }
+
+        return this.epollWait( isMany  ,
+                               timeout ) ;
+    }
+
+
+
+
+    // Notifies the wait strategy and latency histograms, if any, about events which have just been read.
+    //
+    private void notifyRead( GpioEventBatch batch ) {
+
+        if ( this.latencyHistograms != null ) {
+
+            this.latencyHistograms.record( batch ) ;
+        }
+
+        if ( this.waitStrategy != null ) {
+
+            for ( int i = 0        ;
+                  i < batch.size() ;
+                  i += 1           ) {
+
+                this.waitStrategy.onEvent( batch.getNanoTimestamp( i ) ) ;
+            }
+        }
+    }
+
+
+
+
+    // Reads an event from a ready handle described by the given user data.
+    //
+    private boolean read( GpioEvent data     ,
+                          long      userData ) throws IOException {
+
+        int fd = decodeFD( userData ) ;
+        int id = decodeID( userData ) ;
+
+        if ( isLineHandle( userData ) ) {
+
+            if ( data.readLine( fd ,
+                                id ) ) {
+
+                this.lineHandles[ fd ].track( data ,
+                                              id   ) ;
+
+                return true ;
+            }
+
+            return false ;
+        }
+
+        return data.read( fd ,
+                          id ) ;
+    }
+
+
+
+
+    // Reads events from a ready handle described by the given user data.
+    //
+    private void read( GpioEventBatch batch    ,
+                       long           userData ) throws IOException {
+
+        int fd = decodeFD( userData ) ;
+        int id = decodeID( userData ) ;
+
+        if ( isLineHandle( userData ) ) {
+
+            int from = batch.size() ;
+
+            batch.readLines( fd ,
+                             id ) ;
+
+            this.lineHandles[ fd ].track( batch ,
+                                          from  ,
+                                          id    ) ;
+        }
+
+        else {
+
+            batch.read( fd ,
+                        id ) ;
+        }
+    }
+
+
+
+
     /**
      * Adds a GPIO event to monitor.
      *
@@ -161,8 +525,79 @@ public class GpioEventWatcher implements AutoCloseable {
 
 
 
+    /**
+     * Adds a GPIO line handle to monitor, all its lines at once.
+     * <p>
+     * The id of an event is the number of its line plus the given base. Bases should be chosen so that ids from
+     * different handles do not overlap, such as 0 for one chip and 1000 for another one.
+     * <p>
+     * Sequence numbers of events read by this watcher are checked by the handle as if it read them itself.
+     *
+     * @param   handle
+     *            The GPIO line handle to monitor.
+     *
+     * @param   idBase
+     *            Added to the number of the line of each event.
+     *
+     * @return  This instance.
+     *
+     * @throws  IOException
+     *            When an unplanned error occured.
+     */
+    public GpioEventWatcher addHandle( GpioLineHandle handle ,
+                                       int            idBase ) throws IOException {
+
+        EpollEvent epollEvent = new EpollEvent() ;
+
+        epollEvent
+            .setFlags( eventFlags )
+            .setUserData( encodeUserData( handle.fd ,
+                                          idBase    ) | LINE_HANDLE ) ;
+
+        this.epoll.add( handle.fd  ,
+                        epollEvent ) ;
+
+        if ( handle.fd >= this.lineHandles.length ) {
+
+            this.lineHandles = Arrays.copyOf( this.lineHandles ,
+                                              handle.fd + 1    ) ;
+        }
+
+        this.lineHandles[ handle.fd ] = handle ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Removes a GPIO line handle from being monitored.
+     *
+     * @param   handle
+     *            The GPIO line handle to remove.
+     *
+     * @return  This instance.
+     *
+     * @throws  IOException
+     *            When an unplanned error occured.
+     */
+    public GpioEventWatcher removeHandle( GpioLineHandle handle ) throws IOException {
+
+        this.epoll.remove( handle.fd ) ;
+
+        this.lineHandles[ handle.fd ] = null ;
+
+        return this ;
+    }
+
+
+
+
     /**
      * Waits forever until a GPIO event occurs.
+     * <p>
+     * A handle reported as ready but already drained is waited on again.
      *
      * @param  data
      *           Will be overwritten in order to describe what happened.
@@ -172,8 +607,8 @@ public class GpioEventWatcher implements AutoCloseable {
      */
     public void waitForEvent( GpioEvent data ) throws IOException {
     
-        this.waitForEvent( data ,
-                           -1   ) ;
+        while ( this.waitForEvent( data ,
+                                   -1   ) == false ) {}
     }
 
 
@@ -192,11 +627,69 @@ public class GpioEventWatcher implements AutoCloseable {
      * @throws  IOException
      *             When an unplanned error occured.
      */
+    @Override
     public boolean waitForEvent( GpioEvent data    ,
                                  int       timeout ) throws IOException {
 
-        if ( this.epoll.wait( this.epollEvent ,
-                              timeout         ) ) {
+        if ( this.waitReady( false   ,
+                             timeout ) > 0 ) {
+
+            long userData = this.epollEvent.getUserData() ;
+
+            int id = decodeID( userData ) ;
+
+            if ( epollEvent.getFlags().isSet( EpollEvent.Flag.EPOLLERR ) ) {
+
+                throw new IOException( "Error condition detected for monitored input with id " + id ) ;
+            }
+
+            if ( this.read( data     ,
+                            userData ) ) {
+
+                if ( this.latencyHistograms != null ) {
+
+                    this.latencyHistograms.record( data ) ;
+                }
+
+                if ( this.waitStrategy != null ) {
+
+                    this.waitStrategy.onEvent( data.getNanoTimestamp() ) ;
+                }
+
+                return true ;
+            }
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until a GPIO event occurs and reads as many
+     * queued events as possible for that handle, in a single read.
+     * <p>
+     * The batch is cleared beforehand.
+     *
+     * @param   batch
+     *            Will hold the events.
+     *
+     * @param   timeout
+     *            Timeout in milliseconds (-1 means forever).
+     *
+     * @return  True if at least an event occured within the given timeout.
+     *
+     * @throws  IOException
+     *             When an unplanned error occured.
+     */
+    public boolean readEvents( GpioEventBatch batch   ,
+                               int            timeout ) throws IOException {
+
+        batch.clear() ;
+
+        if ( this.waitReady( false   ,
+                             timeout ) > 0 ) {
 
             long userData = this.epollEvent.getUserData() ;
 
@@ -207,12 +700,96 @@ public class GpioEventWatcher implements AutoCloseable {
                 throw new IOException( "Error condition detected for monitored input with id " + id ) ;
             }
 
-            data.read( decodeFD( userData ) ,
-                       id                   ) ;
+            this.read( batch    ,
+                       userData ) ;
+
+            this.notifyRead( batch ) ;
 
             return true ;
         }
 
         return false ;
     }
+
+
+
+
+    /**
+     * Waits forever until GPIO events occur and reads them from all ready handles.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @throws IOException
+     *            When an unplanned error occured.
+     *
+     * @see #waitForEvents(GpioEventBatch, int)
+     */
+    public void waitForEvents( GpioEventBatch batch ) throws IOException {
+
+        this.waitForEvents( batch ,
+                            -1    ) ;
+    }
+
+
+
+
+    /**
+     * Waits `<strong>timeout</strong>` milliseconds at most until GPIO events occur and reads them from all ready
+     * handles.
+     * <p>
+     * A single wait reports as many ready handles as specified when creating this watcher. Each of them is then read
+     * once, which empties its queue unless the batch gets full beforehand. Handles which could not be read because the
+     * batch is full remain ready and will be reported by the next wait, hence nothing is lost.
+     * <p>
+     * Event handles in non-blocking mode are recommended. Then, a handle reported as ready but already drained simply
+     * yields no event instead of blocking.
+     * <p>
+     * The batch is cleared beforehand.
+     *
+     * @param   batch
+     *            Will hold the events.
+     *
+     * @param   timeout
+     *            Timeout in milliseconds (-1 means forever).
+     *
+     * @return  True if at least a handle was ready within the given timeout.
+     *
+     * @throws  IOException
+     *             When an unplanned error occured.
+     *
+     * @see GpioEventHandle#setNonBlocking(boolean)
+     */
+    @Override
+    public boolean waitForEvents( GpioEventBatch batch   ,
+                                  int            timeout ) throws IOException {
+
+        batch.clear() ;
+
+        int nReady = this.waitReady( true    ,
+                                     timeout ) ;
+
+        for ( int i = 0                     ;
+              i < nReady && !batch.isFull() ;
+              i += 1                        ) {
+
+            EpollEvent epollEvent = this.epollEvents.getEpollEvent( i ) ;
+
+            long userData = epollEvent.getUserData() ;
+
+            int id = decodeID( userData ) ;
+
+            if ( epollEvent.getFlags().isSet( EpollEvent.Flag.EPOLLERR ) ) {
+
+                throw new IOException( "Error condition detected for monitored input with id " + id ) ;
+            }
+
+            this.read( batch    ,
+                       userData ) ;
+        }
+
+        this.notifyRead( batch ) ;
+
+        return nReady > 0 ;
+    }
 }
@@ -22,14 +22,14 @@ public class GpioFlags {
 
     // Flags related to requests.
     //
-    private static class RequestFlags {
+    static class RequestFlags {
 
 
-        private static final int INPUT       = 1 << 0 ;
-        private static final int OUTPUT      = 1 << 1 ;
-        private static final int ACTIVE_LOW  = 1 << 2 ;
-        private static final int OPEN_DRAIN  = 1 << 3 ;
-        private static final int OPEN_SOURCE = 1 << 4 ; 
+        static final int INPUT       = 1 << 0 ;
+        static final int OUTPUT      = 1 << 1 ;
+        static final int ACTIVE_LOW  = 1 << 2 ;
+        static final int OPEN_DRAIN  = 1 << 3 ;
+        static final int OPEN_SOURCE = 1 << 4 ; 
     }
 
 
@@ -50,6 +50,29 @@ public class GpioFlags {
 
 
 
+    // Flags related to the second version of the kernel API, shared by line requests and line info.
+    //
+    static class LineFlags {
+
+
+        static final long USED                 = 1L << 0  ;
+        static final long ACTIVE_LOW           = 1L << 1  ;
+        static final long INPUT                = 1L << 2  ;
+        static final long OUTPUT               = 1L << 3  ;
+        static final long EDGE_RISING          = 1L << 4  ;
+        static final long EDGE_FALLING         = 1L << 5  ;
+        static final long OPEN_DRAIN           = 1L << 6  ;
+        static final long OPEN_SOURCE          = 1L << 7  ;
+        static final long BIAS_PULL_UP         = 1L << 8  ;
+        static final long BIAS_PULL_DOWN       = 1L << 9  ;
+        static final long BIAS_DISABLED        = 1L << 10 ;
+        static final long EVENT_CLOCK_REALTIME = 1L << 11 ;
+        static final long EVENT_CLOCK_HTE      = 1L << 12 ;
+    }
+
+
+
+
     // Internal representation.
     //
     private boolean isOutput     = false ;
@@ -255,6 +278,34 @@ public class GpioFlags {
 
 
 
+    // Creates flags for a request using the second version of the kernel API.
+    //
+    long forLineRequest() {
+
+        long flags = this.isOutput ? LineFlags.OUTPUT
+                                   : LineFlags.INPUT  ;
+
+        if ( this.isActiveLow ) {
+
+            flags |= LineFlags.ACTIVE_LOW ;
+        }
+
+        if ( this.isOpenDrain ) {
+
+            flags |= LineFlags.OPEN_DRAIN ;
+        }
+
+        if ( this.isOpenSource ) {
+
+            flags |= LineFlags.OPEN_SOURCE ;
+        }
+
+        return flags ;
+    }
+
+
+
+
     // Interprets flags from a request.
     //
     GpioFlags fromRequest( int flags ) {
@@ -277,6 +328,21 @@ public class GpioFlags {
 
 
 
+    // Interprets flags from a request using the second version of the kernel API.
+    //
+    GpioFlags fromLineRequest( long flags ) {
+
+        this.isOutput     = ( flags & LineFlags.OUTPUT      ) != 0 ;
+        this.isActiveLow  = ( flags & LineFlags.ACTIVE_LOW  ) != 0 ;
+        this.isOpenDrain  = ( flags & LineFlags.OPEN_DRAIN  ) != 0 ;
+        this.isOpenSource = ( flags & LineFlags.OPEN_SOURCE ) != 0 ;
+
+        return this ;
+    }
+
+
+
+
     // Interprets flags from a line.
     //
     GpioFlags fromLineInfo( int flags ) {
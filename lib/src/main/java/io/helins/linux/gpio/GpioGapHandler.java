@@ -0,0 +1,38 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioLine ;
+
+
+
+
+/**
+ * Interface for being notified when the kernel dropped events because its buffer was full.
+ *
+ * @see GpioLineHandle#setGapHandler(GpioGapHandler)
+ */
+@FunctionalInterface
+public interface GpioGapHandler {
+
+
+    /**
+     * Handles a gap in the sequence of events of a line.
+     * <p>
+     * Called by the thread reading events, right before delivering the first event following the gap. Exceptions are
+     * not caught by the caller.
+     *
+     * @param line
+     *          Line which lost events.
+     *
+     * @param dropped
+     *          How many events were lost.
+     */
+    void onGap( GpioLine line    ,
+                long     dropped ) ;
+}
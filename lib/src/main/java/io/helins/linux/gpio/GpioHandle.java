@@ -7,11 +7,16 @@
 package io.helins.linux.gpio ;
 
 
-import com.sun.jna.NativeLong          ;
-import io.helins.linux.Linux           ;
-import io.helins.linux.gpio.GpioBuffer ;
-import io.helins.linux.io.LinuxIO      ;
-import java.io.IOException             ;
+import com.sun.jna.Memory                                   ;
+import com.sun.jna.NativeLong                               ;
+import io.helins.linux.errno.Errno                          ;
+import io.helins.linux.gpio.GpioBackend                     ;
+import io.helins.linux.gpio.GpioBuffer                      ;
+import io.helins.linux.gpio.GpioBufferSequence              ;
+import io.helins.linux.gpio.GpioFlags                       ;
+import io.helins.linux.gpio.internal.NativeGpioBatch        ;
+import io.helins.linux.gpio.internal.NativeGpioHandleConfig ;
+import java.io.IOException                                  ;
 
 
 
@@ -33,12 +38,30 @@ public class GpioHandle implements AutoCloseable {
     static final NativeLong GPIOHANDLE_SET_LINE_VALUES_IOCTL = new NativeLong( 3225465865L ,
                                                                                true        ) ;
 
+    static final NativeLong GPIOHANDLE_SET_CONFIG_IOCTL      = new NativeLong( 3226776586L ,
+                                                                               true        ) ;
+
+
+    // Backend performing system calls.
+    //
+    private final GpioBackend backend ;
+
 
     // Associated file descriptor.
     //
     final int fd ;
 
 
+    // Native structure for reconfiguring lines, allocated when first needed.
+    //
+    private Memory config = null ;
+
+
+    // Errno reported by the native shim, if any, meant to be reused.
+    //
+    private final int[] nativeError = new int[ 1 ] ;
+
+
     // Bookkeeping of state.
     //
     private boolean isClosed = false ;
@@ -50,7 +73,20 @@ public class GpioHandle implements AutoCloseable {
     //
     GpioHandle( int fd ) {
     
-        this.fd = fd   ;
+        this( GpioBackend.NATIVE ,
+              fd                 ) ;
+    }
+
+
+
+
+    // Private constructor using the given backend.
+    //
+    GpioHandle( GpioBackend backend ,
+                int         fd      ) {
+
+        this.backend = backend ;
+        this.fd      = fd      ;
     }
 
 
@@ -66,9 +102,9 @@ public class GpioHandle implements AutoCloseable {
 
         if ( this.isClosed == false ) {
 
-            if ( LinuxIO.close( this.fd ) != 0 ) {
+            if ( this.backend.close( this.fd ) != 0 ) {
             
-                throw new IOException( "Native error while closing GPIO handle : errno " + Linux.getErrno() ) ;
+                throw new IOException( "Native error while closing GPIO handle : errno " + this.backend.getErrno() ) ;
             }
 
             this.isClosed = true ;
@@ -109,11 +145,11 @@ public class GpioHandle implements AutoCloseable {
 
         this.guardClosed() ;
     
-        if ( LinuxIO.ioctl( this.fd                          ,
-                            GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
-                            buffer.getPointer()              ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                          ,
+                                 GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                                 buffer.getPointer()              ) < 0 ) {
         
-            throw new IOException( "Native error while reading a GPIO handle : errno " + Linux.getErrno() ) ;
+            throw new IOException( "Native error while reading a GPIO handle : errno " + this.backend.getErrno() ) ;
         }
     }
 
@@ -138,11 +174,230 @@ public class GpioHandle implements AutoCloseable {
 
         this.guardClosed() ;
 
-        if ( LinuxIO.ioctl( this.fd                          ,
-                            GPIOHANDLE_SET_LINE_VALUES_IOCTL ,
-                            buffer.getPointer()              ) < 0 ) {
+        if ( this.backend.ioctl( this.fd                          ,
+                                 GPIOHANDLE_SET_LINE_VALUES_IOCTL ,
+                                 buffer.getPointer()              ) < 0 ) {
+
+            throw new IOException( "Native error while writing to a GPIO handle : errno " + this.backend.getErrno() ) ;
+        }
+    }
+
+
+
+
+    // Busy-waits until a state of a sequence is due.
+    //
+    private static void spinUntil( long start        ,
+                                   int  index        ,
+                                   long spacingNanos ) {
+
+        if ( spacingNanos > 0 && index > 0 ) {
+
+            long due = start + index * spacingNanos ;
+
+            while ( System.nanoTime() - due < 0 ) {
+
+                Thread.onSpinWait() ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Writes a sequence of states, one after the other.
+     * <p>
+     * When the optional native shim is loaded, the whole sequence is written in a single native call, which matters
+     * for bit-banging at high rates. Otherwise, it is written from Java. Spacing is achieved by busy-waiting.
+     *
+     * @param  sequence
+     *           States to write, in order.
+     *
+     * @param  spacingNanos
+     *           How long between the start of 2 writes, in nanoseconds, 0 meaning as fast as possible.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured, the message telling how many states were written beforehand.
+     */
+    public void write( GpioBufferSequence sequence     ,
+                       long               spacingNanos ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( NativeGpioBatch.IS_AVAILABLE && this.backend == GpioBackend.NATIVE ) {
+
+            int nWritten = NativeGpioBatch.gpio_batch_write( this.fd                          ,
+                                                             GPIOHANDLE_SET_LINE_VALUES_IOCTL ,
+                                                             sequence.getPointer()            ,
+                                                             sequence.length()                ,
+                                                             spacingNanos                     ,
+                                                             this.nativeError                 ) ;
+
+            if ( nWritten < sequence.length() ) {
+
+                throw new IOException( "Native error while writing a sequence to a GPIO handle, after " + nWritten + " states : errno " + this.nativeError[ 0 ] ) ;
+            }
+
+            return ;
+        }
+
+        long start = System.nanoTime() ;
+
+        for ( int i = 0             ;
+              i < sequence.length() ;
+              i += 1                ) {
+
+            spinUntil( start        ,
+                       i            ,
+                       spacingNanos ) ;
+
+            if ( this.backend.ioctl( this.fd                          ,
+                                     GPIOHANDLE_SET_LINE_VALUES_IOCTL ,
+                                     sequence.getPointer( i )         ) < 0 ) {
+
+                throw new IOException( "Native error while writing a sequence to a GPIO handle, after " + i + " states : errno " + this.backend.getErrno() ) ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Samples the state of the lines this handle controls several times, filling a sequence.
+     * <p>
+     * When the optional native shim is loaded, the whole sequence is sampled in a single native call, which matters
+     * for capturing signals at high rates. Otherwise, it is sampled from Java. Spacing is achieved by busy-waiting and
+     * the time right before each sample is recorded.
+     *
+     * @param  sequence
+     *           Will hold the samples, in order.
+     *
+     * @param  spacingNanos
+     *           How long between the start of 2 samples, in nanoseconds, 0 meaning as fast as possible.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured, the message telling how many states were sampled beforehand, which
+     *           remain in the sequence.
+     *
+     * @see GpioBufferSequence#getNanoTimestamp(int)
+     */
+    public void read( GpioBufferSequence sequence     ,
+                      long               spacingNanos ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( NativeGpioBatch.IS_AVAILABLE && this.backend == GpioBackend.NATIVE ) {
+
+            int nSampled = NativeGpioBatch.gpio_batch_read( this.fd                          ,
+                                                            GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                                                            sequence.getPointer()            ,
+                                                            sequence.timestamps              ,
+                                                            sequence.length()                ,
+                                                            spacingNanos                     ,
+                                                            this.nativeError                 ) ;
+
+            if ( nSampled < sequence.length() ) {
+
+                throw new IOException( "Native error while sampling a GPIO handle, after " + nSampled + " states : errno " + this.nativeError[ 0 ] ) ;
+            }
+
+            return ;
+        }
+
+        long start = System.nanoTime() ;
+
+        for ( int i = 0             ;
+              i < sequence.length() ;
+              i += 1                ) {
+
+            spinUntil( start        ,
+                       i            ,
+                       spacingNanos ) ;
+
+            sequence.timestamps[ i ] = System.nanoTime() ;
+
+            if ( this.backend.ioctl( this.fd                          ,
+                                     GPIOHANDLE_GET_LINE_VALUES_IOCTL ,
+                                     sequence.getPointer( i )         ) < 0 ) {
+
+                throw new IOException( "Native error while sampling a GPIO handle, after " + i + " states : errno " + this.backend.getErrno() ) ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Reconfigures the lines this handle controls without releasing them (Linux 5.5 and later).
+     * <p>
+     * Typically, a line can switch between input and output at a high rate, such as when bit-banging a bidirectional
+     * bus. Unlike closing this handle and requesting a new one, lines are never released to other consumers and outputs
+     * do not glitch. Nothing is allocated once the first call is done.
+     *
+     * @param  flags
+     *           New flags for all the lines.
+     *
+     * @param  defaults
+     *           Values of outputs once reconfigured, null meaning all low.
+     *
+     * @throws IllegalArgumentException
+     *           When the flags are invalid, such as open drain for an input.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When the kernel is too old or an unplanned error occured.
+     */
+    public void reconfigure( GpioFlags  flags    ,
+                             GpioBuffer defaults ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( this.config == null ) {
+
+            this.config = new Memory( NativeGpioHandleConfig.SIZE ) ;
+
+            this.config.clear() ;
+        }
+
+        this.config.setInt( NativeGpioHandleConfig.OFFSET_FLAGS ,
+                            flags.forRequest()                  ) ;
+
+        if ( defaults == null ) {
+
+            this.config.setMemory( NativeGpioHandleConfig.OFFSET_DEFAULT_VALUES ,
+                                   GpioBuffer.SIZE                              ,
+                                   (byte)0                                      ) ;
+        }
+
+        else {
+
+            defaults.copyTo( this.config                                  ,
+                             NativeGpioHandleConfig.OFFSET_DEFAULT_VALUES ) ;
+        }
+
+        if ( this.backend.ioctl( this.fd                     ,
+                                 GPIOHANDLE_SET_CONFIG_IOCTL ,
+                                 this.config                 ) < 0 ) {
+
+            int errno = this.backend.getErrno() ;
+
+            if ( errno == Errno.EINVAL ) {
+
+                throw new IllegalArgumentException( "Invalid configuration for a GPIO handle" ) ;
+            }
 
-            throw new IOException( "Native error while writing to a GPIO handle : errno " + Linux.getErrno() ) ;
+            throw new IOException( "Native error while reconfiguring a GPIO handle : errno " + errno ) ;
         }
     }
 }
@@ -0,0 +1,306 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventBatch         ;
+import io.helins.linux.gpio.GpioLatencySnapshot    ;
+import java.util.Arrays                            ;
+import java.util.concurrent.atomic.AtomicLongArray ;
+
+
+
+
+/**
+ * Class for measuring the latency between the kernel timestamping an edge and the JVM receiving it, per id.
+ * <p>
+ * Latency is the difference between `<strong>System.nanoTime()</strong>`, which relies on `<strong>CLOCK_MONOTONIC
+ * </strong>` on Linux, and the timestamp of the event. Since Linux 5.7, events are timestamped using that same clock.
+ * Before, they are timestamped using the real-time clock and latencies are meaningless.
+ * <p>
+ * Latencies are recorded in log-linear histograms: each power of 2 is divided in 32 linear buckets, so that
+ * precision is about 3% from nanoseconds to minutes. Histograms are preallocated for a fixed set of ids and recording
+ * does not allocate anything. Latencies for other ids are ignored.
+ * <p>
+ * Any thread can take snapshots while latencies are being recorded, and reset histograms at the same time without
+ * losing any latency.
+ *
+ * @see GpioEventWatcher#setLatencyHistograms(GpioLatencyHistograms)
+ */
+public class GpioLatencyHistograms {
+
+
+    // Layout of buckets.
+    //
+    // Latencies below SUB_COUNT have their own bucket. Then, each power of 2 up to 2^MAX_EXPONENT is divided in
+    // SUB_COUNT buckets.
+    //
+    private static final int SUB_BITS     = 5             ;
+    private static final int SUB_COUNT    = 1 << SUB_BITS ;
+    private static final int MAX_EXPONENT = 40            ;
+
+    static final int BUCKETS = SUB_COUNT + ( MAX_EXPONENT - SUB_BITS ) * SUB_COUNT ;
+
+
+    // Layout of the cells of a histogram.
+    //
+    private static final int SUM     = 0 ;
+    private static final int MAX     = 1 ;
+    private static final int BUCKET0 = 2 ;
+
+
+
+
+    // Ids being measured, sorted, the index of an id being the index of its histogram.
+    //
+    private final int[] ids ;
+
+
+    // Histograms.
+    //
+    private final AtomicLongArray[] histograms ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  ids
+     *           Ids latencies are measured for.
+     *
+     * @throws IllegalArgumentException
+     *           When an id is given several times.
+     */
+    public GpioLatencyHistograms( int... ids ) {
+
+        this.ids = ids.clone() ;
+
+        Arrays.sort( this.ids ) ;
+
+        this.histograms = new AtomicLongArray[ this.ids.length ] ;
+
+        for ( int i = 0           ;
+              i < this.ids.length ;
+              i += 1              ) {
+
+            if ( i > 0 && this.ids[ i ] == this.ids[ i - 1 ] ) {
+
+                throw new IllegalArgumentException( "Id given several times to latency histograms : " + this.ids[ i ] ) ;
+            }
+
+            this.histograms[ i ] = new AtomicLongArray( BUCKET0 + BUCKETS ) ;
+        }
+    }
+
+
+
+
+    // Finds the bucket of a latency.
+    //
+    static int bucketOf( long latency ) {
+
+        if ( latency < SUB_COUNT ) {
+
+            return (int)Math.max( 0       ,
+                                  latency ) ;
+        }
+
+        latency = Math.min( latency                     ,
+                            ( 1L << MAX_EXPONENT ) - 1 ) ;
+
+        int shift = 63 - Long.numberOfLeadingZeros( latency ) - SUB_BITS ;
+
+        return SUB_COUNT + shift * SUB_COUNT + (int)( ( latency >>> shift ) - SUB_COUNT ) ;
+    }
+
+
+
+
+    // Retrieves the highest latency falling in a bucket.
+    //
+    static long upperBound( int bucket ) {
+
+        if ( bucket < SUB_COUNT ) {
+
+            return bucket ;
+        }
+
+        int shift = ( bucket - SUB_COUNT ) / SUB_COUNT ;
+        int sub   = ( bucket - SUB_COUNT ) % SUB_COUNT ;
+
+        return ( ( (long)( SUB_COUNT + sub ) ) << shift ) + ( 1L << shift ) - 1 ;
+    }
+
+
+
+
+    // Finds the histogram of an id, null if not measured.
+    //
+    private AtomicLongArray histogramOf( int id ) {
+
+        int index = Arrays.binarySearch( this.ids ,
+                                         id       ) ;
+
+        return index < 0 ? null
+                         : this.histograms[ index ] ;
+    }
+
+
+
+
+    // Records a latency for an id.
+    //
+    // Returns false if the id is not measured.
+    //
+    boolean record( int  id      ,
+                    long latency ) {
+
+        AtomicLongArray histogram = this.histogramOf( id ) ;
+
+        if ( histogram == null ) {
+
+            return false ;
+        }
+
+        latency = Math.max( 0       ,
+                            latency ) ;
+
+        histogram.incrementAndGet( BUCKET0 + bucketOf( latency ) ) ;
+
+        histogram.addAndGet( SUM     ,
+                             latency ) ;
+
+        long max = histogram.get( MAX ) ;
+
+        while ( latency > max
+                &&
+                histogram.compareAndSet( MAX     ,
+                                         max     ,
+                                         latency ) == false ) {
+
+            max = histogram.get( MAX ) ;
+        }
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Records the latency of an event which has just been received.
+     *
+     * @param  event
+     *           Event received.
+     *
+     * @return True if the id of the event is measured.
+     */
+    public boolean record( GpioEvent event ) {
+
+        return this.record( event.getId()                                ,
+                            System.nanoTime() - event.getNanoTimestamp() ) ;
+    }
+
+
+
+
+    /**
+     * Records the latency of all events from a batch which has just been received.
+     *
+     * @param  batch
+     *           Events received.
+     *
+     * @return How many events had an id which is measured.
+     */
+    public int record( GpioEventBatch batch ) {
+
+        long now      = System.nanoTime() ;
+        int  recorded = 0                 ;
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            if ( this.record( batch.getId( i )                  ,
+                              now - batch.getNanoTimestamp( i ) ) ) {
+
+                recorded += 1 ;
+            }
+        }
+
+        return recorded ;
+    }
+
+
+
+
+    /**
+     * Takes a snapshot of the histogram of an id, optionally resetting it.
+     * <p>
+     * When resetting, every latency recorded concurrently ends up either in this snapshot or in the next one.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @param  snapshot
+     *           Will hold the snapshot.
+     *
+     * @param  reset
+     *           Should the histogram be reset ?
+     *
+     * @return The snapshot.
+     *
+     * @throws IllegalArgumentException
+     *           When the id is not measured.
+     */
+    public GpioLatencySnapshot snapshot( int                 id       ,
+                                         GpioLatencySnapshot snapshot ,
+                                         boolean             reset    ) {
+
+        AtomicLongArray histogram = this.histogramOf( id ) ;
+
+        if ( histogram == null ) {
+
+            throw new IllegalArgumentException( "Id not measured : " + id ) ;
+        }
+
+        long count = 0 ;
+
+        for ( int i = 0   ;
+              i < BUCKETS ;
+              i += 1      ) {
+
+            long n = reset ? histogram.getAndSet( BUCKET0 + i ,
+                                                  0           )
+                           : histogram.get( BUCKET0 + i ) ;
+
+            snapshot.buckets[ i ]  = n ;
+            count                 += n ;
+        }
+
+        snapshot.count = count ;
+
+        if ( reset ) {
+
+            snapshot.sum = histogram.getAndSet( SUM ,
+                                                0   ) ;
+
+            snapshot.max = histogram.getAndSet( MAX ,
+                                                0   ) ;
+        }
+
+        else {
+
+            snapshot.sum = histogram.get( SUM ) ;
+            snapshot.max = histogram.get( MAX ) ;
+        }
+
+        return snapshot ;
+    }
+}
@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioLatencyHistograms ;
+
+
+
+
+/**
+ * Class for holding a snapshot of a latency histogram.
+ * <p>
+ * Percentiles are approximated by the upper bound of the bucket they fall in, which is at most about 3% higher than
+ * the actual value. An instance is meant to be reused and is filled by latency histograms.
+ *
+ * @see GpioLatencyHistograms#snapshot(int, GpioLatencySnapshot, boolean)
+ */
+public class GpioLatencySnapshot {
+
+
+    // Copy of the buckets.
+    //
+    final long[] buckets = new long[ GpioLatencyHistograms.BUCKETS ] ;
+
+
+    // How many latencies were recorded.
+    //
+    long count = 0 ;
+
+
+    // Sum and maximum of latencies.
+    //
+    long sum = 0 ;
+    long max = 0 ;
+
+
+
+
+    /**
+     * Basic constructor.
+     */
+    public GpioLatencySnapshot() {}
+
+
+
+
+    /**
+     * Retrieves how many latencies were recorded.
+     *
+     * @return The number of latencies.
+     */
+    public long getCount() {
+
+        return this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the highest latency.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public long getMax() {
+
+        return this.max ;
+    }
+
+
+
+
+    /**
+     * Retrieves the mean latency.
+     *
+     * @return Latency in nanoseconds, 0 if nothing was recorded.
+     */
+    public double getMean() {
+
+        return this.count == 0 ? 0
+                               : (double)this.sum / this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the latency below which a given proportion of latencies fall.
+     *
+     * @param  quantile
+     *           Between 0 and 1, such as 0.99 for the 99th percentile.
+     *
+     * @return Latency in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getPercentile( double quantile ) {
+
+        if ( this.count == 0 ) {
+
+            return 0 ;
+        }
+
+        long rank = Math.max( 1                                         ,
+                              (long)Math.ceil( quantile * this.count ) ) ;
+        long seen = 0                                                    ;
+
+        for ( int i = 0               ;
+              i < this.buckets.length ;
+              i += 1                  ) {
+
+            seen += this.buckets[ i ] ;
+
+            if ( seen >= rank ) {
+
+                return Math.min( GpioLatencyHistograms.upperBound( i ) ,
+                                 this.max                              ) ;
+            }
+        }
+
+        return this.max ;
+    }
+
+
+
+
+    /**
+     * Retrieves the median latency.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public long getP50() {
+
+        return this.getPercentile( 0.5 ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the 99th percentile of latencies.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public long getP99() {
+
+        return this.getPercentile( 0.99 ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the 99.9th percentile of latencies.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public long getP999() {
+
+        return this.getPercentile( 0.999 ) ;
+    }
+}
@@ -37,4 +37,20 @@ public class GpioLine {
         this.lineNumber = lineNumber ;
         this.index      = index      ;
     }
+
+
+
+
+    /**
+     * Retrieves the bit representing this line in masks, according to its position in the request.
+     *
+     * @return A mask with only the bit of this line set.
+     *
+     * @see GpioLineHandle#read(long)
+     * @see GpioLineHandle#write(long, long)
+     */
+    public long getMask() {
+
+        return 1L << this.index ;
+    }
 }
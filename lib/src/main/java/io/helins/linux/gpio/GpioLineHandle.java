@@ -0,0 +1,763 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                 ;
+import com.sun.jna.NativeLong                             ;
+import io.helins.linux.Linux                              ;
+import io.helins.linux.errno.Errno                        ;
+import io.helins.linux.gpio.GpioEvent                     ;
+import io.helins.linux.gpio.GpioEventBatch                ;
+import io.helins.linux.gpio.GpioGapHandler                ;
+import io.helins.linux.gpio.GpioLine                      ;
+import io.helins.linux.gpio.GpioLineRequest               ;
+import io.helins.linux.gpio.internal.NativeGpioLineValues ;
+import io.helins.linux.gpio.internal.NativeIO             ;
+import io.helins.linux.gpio.internal.NativeLinux          ;
+import java.io.IOException                                ;
+import java.util.Arrays                                   ;
+import java.util.concurrent.atomic.AtomicLongArray        ;
+
+
+
+
+/**
+ * Class for controlling GPIO lines requested using the second version of the kernel API.
+ * <p>
+ * Events from all the lines monitored for edges are read through this single handle, the id of each event being the
+ * number of its line.
+ * <p>
+ * Values are read and written using 64-bit masks where each bit represents a line, according to its position in the
+ * request. Only the lines selected by a mask are affected, hence independent parts of a program can drive different
+ * lines of the same handle without keeping a shadow copy of all values.
+ * <p>
+ * Sequence numbers of events are checked as they are read, through this handle or an event watcher. When the kernel
+ * dropped events because its buffer was full, the count of dropped events of the line is increased and an optional
+ * handler is notified.
+ *
+ * @see GpioLineRequest
+ * @see GpioEventWatcher#addHandle(GpioLineHandle, int)
+ */
+public class GpioLineHandle implements AutoCloseable {
+
+
+    //
+    // IOCTL requests.
+    //
+
+    private static final NativeLong GPIO_V2_LINE_GET_VALUES_IOCTL = new NativeLong( 3222320142L ,
+                                                                                    true        ) ;
+
+    private static final NativeLong GPIO_V2_LINE_SET_VALUES_IOCTL = new NativeLong( 3222320143L ,
+                                                                                    true        ) ;
+
+    private static final NativeLong GPIO_V2_LINE_SET_CONFIG_IOCTL = new NativeLong( 3239097357L ,
+                                                                                    true        ) ;
+
+
+
+
+    // File descriptor associated with this handle.
+    //
+    final int fd ;
+
+
+    // Lines associated with this handle, in the order they were requested.
+    //
+    private final GpioLine[] lines ;
+
+
+    // Numbers of the lines, sorted, and matching indices in `lines`.
+    //
+    private final int[] sortedNumbers ;
+    private final int[] sortedIndices ;
+
+
+    // Last sequence number read per line, by index.
+    //
+    private final int[] lastLineSeqnos ;
+
+
+    // Events dropped by the kernel per line, by index.
+    //
+    private final AtomicLongArray dropped ;
+
+
+    // Notified about gaps, null if none.
+    //
+    private volatile GpioGapHandler gapHandler = null ;
+
+
+    // Native structure for reading and writing values, guarded by itself.
+    //
+    private final Memory values = new Memory( NativeGpioLineValues.SIZE ) ;
+
+
+    // Bookkeeping the state of this handle.
+    //
+    private boolean isClosed      = false ;
+    private boolean isNonBlocking = false ;
+
+
+
+
+    // Private constructor.
+    //
+    GpioLineHandle( int        fd    ,
+                    GpioLine[] lines ) {
+
+        this.fd             = fd                                 ;
+        this.lines          = lines                              ;
+        this.sortedNumbers  = new int[ lines.length ]            ;
+        this.sortedIndices  = new int[ lines.length ]            ;
+        this.lastLineSeqnos = new int[ lines.length ]            ;
+        this.dropped        = new AtomicLongArray( lines.length ) ;
+
+        long[] pairs = new long[ lines.length ] ;
+
+        for ( int i = 0        ;
+              i < lines.length ;
+              i += 1           ) {
+
+            pairs[ i ] = ( (long)lines[ i ].lineNumber << 32 ) | i ;
+        }
+
+        Arrays.sort( pairs ) ;
+
+        for ( int i = 0        ;
+              i < pairs.length ;
+              i += 1           ) {
+
+            this.sortedNumbers[ i ] = (int)( pairs[ i ] >>> 32 ) ;
+            this.sortedIndices[ i ] = (int)pairs[ i ]            ;
+        }
+    }
+
+
+
+
+    /**
+     * Closes this GPIO line handle and releases resources.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public void close() throws IOException {
+
+        if ( this.isClosed == false ) {
+
+            if ( NativeIO.close( this.fd ) != 0 ) {
+
+                throw new IOException( "Native error while closing a GPIO line handle : errno " + NativeIO.getErrno() ) ;
+            }
+
+            this.isClosed = true ;
+        }
+    }
+
+
+
+
+    // Throws an IllegalStateException if the handle is closed.
+    // Meant to be used before IO operations.
+    //
+    private void guardClosed() {
+
+        if ( this.isClosed ) {
+
+            throw new IllegalStateException( "Unable to perform IO operation on closed GPIO line handle" ) ;
+        }
+    }
+
+
+
+
+    // Throws an IllegalStateException if this handle is not in non-blocking mode.
+    //
+    private void guardNonBlocking() {
+
+        if ( this.isNonBlocking == false ) {
+
+            throw new IllegalStateException( "GPIO line handle must be in non-blocking mode" ) ;
+        }
+    }
+
+
+
+
+    // Checks the sequence number of an event which has just been read, accounting for dropped events.
+    //
+    private void track( int lineNumber ,
+                        int lineSeqno  ) {
+
+        int i = Arrays.binarySearch( this.sortedNumbers ,
+                                     lineNumber         ) ;
+
+        if ( i < 0 ) {
+
+            return ;
+        }
+
+        int index = this.sortedIndices[ i ] ;
+
+        // Sequence numbers start at 1, hence a first event with a higher one means earlier events were dropped.
+        //
+        long gap = ( lineSeqno - this.lastLineSeqnos[ index ] - 1 ) & 0xffffffffL ;
+
+        this.lastLineSeqnos[ index ] = lineSeqno ;
+
+        if ( gap != 0 ) {
+
+            this.dropped.addAndGet( index ,
+                                    gap   ) ;
+
+            GpioGapHandler gapHandler = this.gapHandler ;
+
+            if ( gapHandler != null ) {
+
+                gapHandler.onGap( this.lines[ index ] ,
+                                  gap                 ) ;
+            }
+        }
+    }
+
+
+
+
+    // Checks the sequence numbers of events which have just been read in a batch, from the given index.
+    //
+    void track( GpioEventBatch batch  ,
+                int            from   ,
+                int            idBase ) {
+
+        for ( int i = from     ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            this.track( batch.getId( i ) - idBase        ,
+                        batch.getLineSequenceNumber( i ) ) ;
+        }
+    }
+
+
+
+
+    // Checks the sequence number of an event which has just been read.
+    //
+    void track( GpioEvent event  ,
+                int       idBase ) {
+
+        this.track( event.getId() - idBase        ,
+                    event.getLineSequenceNumber() ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events of a line were dropped by the kernel because its buffer was full.
+     * <p>
+     * Is thread-safe. Only events which have been followed by an event of the same line being read are accounted for.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @return The number of dropped events.
+     *
+     * @see GpioLineRequest#setEventBufferSize(int)
+     */
+    public long getDropped( GpioLine line ) {
+
+        return this.dropped.get( line.index ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events were dropped by the kernel for all lines.
+     *
+     * @return The number of dropped events.
+     *
+     * @see #getDropped(GpioLine)
+     */
+    public long getDropped() {
+
+        long dropped = 0 ;
+
+        for ( int i = 0                 ;
+              i < this.dropped.length() ;
+              i += 1                    ) {
+
+            dropped += this.dropped.get( i ) ;
+        }
+
+        return dropped ;
+    }
+
+
+
+
+    /**
+     * Retrieves the handler notified when events are dropped.
+     *
+     * @return The gap handler, null if none.
+     */
+    public GpioGapHandler getGapHandler() {
+
+        return this.gapHandler ;
+    }
+
+
+
+
+    /**
+     * Sets a handler notified when events are found to be dropped while reading them.
+     *
+     * @param  gapHandler
+     *           The gap handler, null for none.
+     *
+     * @return This instance.
+     */
+    public GpioLineHandle setGapHandler( GpioGapHandler gapHandler ) {
+
+        this.gapHandler = gapHandler ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many lines this handle controls.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+
+        return this.lines.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves a GPIO line associated with this handle.
+     *
+     * @param  index
+     *           Index of the line, in the order lines were added to the request.
+     *
+     * @return The GPIO line.
+     */
+    public GpioLine getLine( int index ) {
+
+        return this.lines[ index ] ;
+    }
+
+
+
+
+    /**
+     * Is this handle in non-blocking mode ?
+     *
+     * @return A boolean.
+     *
+     * @see #setNonBlocking(boolean)
+     */
+    public boolean isNonBlocking() {
+
+        return this.isNonBlocking ;
+    }
+
+
+
+
+    /**
+     * Sets or not this handle to non-blocking mode.
+     * <p>
+     * In non-blocking mode, reading events never waits. When nothing is queued, a batch simply remains empty.
+     *
+     * @param  isNonBlocking
+     *           Should be non-blocking ?
+     *
+     * @return This instance.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventHandle#setNonBlocking(boolean)
+     */
+    public GpioLineHandle setNonBlocking( boolean isNonBlocking ) throws IOException {
+
+        int flags = NativeLinux.fcntl( this.fd             ,
+                                       NativeLinux.F_GETFL ,
+                                       0                   ) ;
+
+        if ( flags < 0
+             ||
+             NativeLinux.fcntl( this.fd                                        ,
+                                NativeLinux.F_SETFL                            ,
+                                isNonBlocking ? flags |  NativeLinux.O_NONBLOCK
+                                              : flags & ~NativeLinux.O_NONBLOCK ) < 0 ) {
+
+            throw new IOException( "Native error while setting blocking mode of GPIO line handle : errno " + Linux.getErrno() ) ;
+        }
+
+        this.isNonBlocking = isNonBlocking ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Reads the current state of the selected lines.
+     * <p>
+     * Is thread-safe.
+     *
+     * @param  mask
+     *           Selects lines, bit `<strong>i</strong>` meaning the line at index `<strong>i</strong>`.
+     *
+     * @return The state of the selected lines, bits of other lines being 0.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioLine#getMask()
+     */
+    public long read( long mask ) throws IOException {
+
+        this.guardClosed() ;
+
+        synchronized ( this.values ) {
+
+            this.values.setLong( NativeGpioLineValues.OFFSET_BITS ,
+                                 0                                ) ;
+
+            this.values.setLong( NativeGpioLineValues.OFFSET_MASK ,
+                                 mask                             ) ;
+
+            if ( NativeIO.ioctl( this.fd                       ,
+                                 GPIO_V2_LINE_GET_VALUES_IOCTL ,
+                                 this.values                   ) < 0 ) {
+
+                throw new IOException( "Native error while reading a GPIO line handle : errno " + NativeIO.getErrno() ) ;
+            }
+
+            return this.values.getLong( NativeGpioLineValues.OFFSET_BITS ) & mask ;
+        }
+    }
+
+
+
+
+    /**
+     * Reads the current state of a single line.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @return A boolean representing the state.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public boolean read( GpioLine line ) throws IOException {
+
+        return this.read( line.getMask() ) != 0 ;
+    }
+
+
+
+
+    /**
+     * Writes the new state of the selected lines, leaving other lines untouched.
+     * <p>
+     * Obviously, this methods does not do anything for inputs. Is thread-safe.
+     *
+     * @param  bits
+     *           New state, bit `<strong>i</strong>` being the value of the line at index `<strong>i</strong>`.
+     *
+     * @param  mask
+     *           Selects lines to write.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioLine#getMask()
+     */
+    public void write( long bits ,
+                       long mask ) throws IOException {
+
+        this.guardClosed() ;
+
+        synchronized ( this.values ) {
+
+            this.values.setLong( NativeGpioLineValues.OFFSET_BITS ,
+                                 bits                             ) ;
+
+            this.values.setLong( NativeGpioLineValues.OFFSET_MASK ,
+                                 mask                             ) ;
+
+            if ( NativeIO.ioctl( this.fd                       ,
+                                 GPIO_V2_LINE_SET_VALUES_IOCTL ,
+                                 this.values                   ) < 0 ) {
+
+                throw new IOException( "Native error while writing to a GPIO line handle : errno " + NativeIO.getErrno() ) ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Writes the new state of a single line, leaving other lines untouched.
+     *
+     * @param  line
+     *           The GPIO line.
+     *
+     * @param  value
+     *           New state.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public void write( GpioLine line  ,
+                       boolean  value ) throws IOException {
+
+        long mask = line.getMask() ;
+
+        this.write( value ? mask
+                          : 0    ,
+                    mask         ) ;
+    }
+
+
+
+
+    /**
+     * Reconfigures the lines this handle controls without releasing them.
+     * <p>
+     * Only the configuration of the given request is used: flags, edge-detection, debouncing and default values of
+     * outputs. Its lines, if any, are ignored and attributes refer to lines by their index in this handle. Typically,
+     * a line can switch between input and output at a high rate, such as when bit-banging a bidirectional bus. Unlike
+     * closing this handle and requesting a new one, lines are never released to other consumers and outputs do not
+     * glitch.
+     * <p>
+     * Events already queued are kept.
+     *
+     * @param  request
+     *           Request holding the new configuration, meant to be reused.
+     *
+     * @throws IllegalArgumentException
+     *           When the configuration is invalid, such as edge-detection for an output.
+     *
+     * @throws IllegalStateException
+     *           When the handle has been closed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public void reconfigure( GpioLineRequest request ) throws IOException {
+
+        this.guardClosed() ;
+
+        if ( NativeIO.ioctl( this.fd                       ,
+                             GPIO_V2_LINE_SET_CONFIG_IOCTL ,
+                             request.config                ) < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EINVAL ) {
+
+                throw new IllegalArgumentException( "Invalid configuration for a GPIO line handle" ) ;
+            }
+
+            throw new IOException( "Native error while reconfiguring a GPIO line handle : errno " + errno ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Waits for an event to happen on any of the monitored lines.
+     *
+     * @return The event.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEvent waitForEvent() throws IOException {
+
+        return this.waitForEvent( new GpioEvent() ) ;
+    }
+
+
+
+
+    /**
+     * Waits for an event to happen on any of the monitored lines and writes what happened to the given
+     * `<strong>data</strong>` object.
+     * <p>
+     * The id of the event is the number of the line. Waits as well in non-blocking mode, without leaving it.
+     *
+     * @param  data
+     *           Will hold data about what happened.
+     *
+     * @return The event.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEvent waitForEvent( GpioEvent data ) throws IOException {
+
+        while ( data.readLine( this.fd ,
+                               0       ) == false ) {
+
+            data.await( this.fd ) ;
+        }
+
+        this.track( data ,
+                    0    ) ;
+
+        return data ;
+    }
+
+
+
+
+    /**
+     * Reads an event if one is queued, without waiting.
+     * <p>
+     * This handle must be in non-blocking mode.
+     *
+     * @param  data
+     *           Will hold data about what happened.
+     *
+     * @return True if an event was queued.
+     *
+     * @throws IllegalStateException
+     *           When this handle is not in non-blocking mode.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see #setNonBlocking(boolean)
+     */
+    public boolean pollEvent( GpioEvent data ) throws IOException {
+
+        this.guardNonBlocking() ;
+
+        if ( data.readLine( this.fd ,
+                            0       ) ) {
+
+            this.track( data ,
+                        0    ) ;
+
+            return true ;
+        }
+
+        return false ;
+    }
+
+
+
+
+    /**
+     * Waits for at least one event to happen and reads as many queued events as the given batch can hold, whatever
+     * their line, in a single read.
+     * <p>
+     * The batch is cleared beforehand. The id of each event is the number of its line.
+     * <p>
+     * In non-blocking mode, this method does not wait and the batch is left empty if nothing was queued.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @return The batch.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public GpioEventBatch readEvents( GpioEventBatch batch ) throws IOException {
+
+        batch.clear() ;
+
+        batch.readLines( this.fd ,
+                         0       ) ;
+
+        this.track( batch ,
+                    0     ,
+                    0     ) ;
+
+        return batch ;
+    }
+
+
+
+
+    /**
+     * Reads events until the given batch holds `<strong>count</strong>` of them or the timeout elapses, without
+     * returning to Java in between when the native shim is loaded.
+     * <p>
+     * Meant for capturing bursts of edges at a high rate. The batch is cleared beforehand. The id of each event is
+     * the number of its line.
+     *
+     * @param  batch
+     *           Will hold the events.
+     *
+     * @param  count
+     *           How many events should be read, at most the capacity of the batch.
+     *
+     * @param  timeoutNanos
+     *           In nanoseconds, negative for waiting until enough events are read.
+     *
+     * @return The batch, holding less than `<strong>count</strong>` events if the timeout elapsed.
+     *
+     * @throws IllegalArgumentException
+     *           When the count is not positive or exceeds the capacity of the batch.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventBatch#capacity()
+     */
+    public GpioEventBatch readEvents( GpioEventBatch batch        ,
+                                      int            count        ,
+                                      long           timeoutNanos ) throws IOException {
+
+        batch.clear() ;
+
+        batch.readLinesUntil( this.fd      ,
+                              0            ,
+                              count        ,
+                              timeoutNanos ) ;
+
+        this.track( batch ,
+                    0     ,
+                    0     ) ;
+
+        return batch ;
+    }
+}
@@ -95,7 +95,7 @@ public class GpioLineInfo {
 
     // Retrieves flags
     //
-    private int getRawFlags() {
+    int getRawFlags() {
     
         return this.memory.getInt( NativeGpioLineInfo.OFFSET_FLAGS ) ;
     }
@@ -0,0 +1,167 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                      ;
+import io.helins.linux.errno.Errno                             ;
+import io.helins.linux.gpio.GpioLineInfo                       ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfo        ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfoChanged ;
+import io.helins.linux.gpio.internal.NativeIO                  ;
+import java.io.IOException                                     ;
+
+
+
+
+/**
+ * Class for holding information about a change of a watched GPIO line, such as being requested by a consumer.
+ * <p>
+ * An instance is meant to be reused and nothing is allocated when reading a change.
+ *
+ * @see GpioDevice#watchLineInfo(int, GpioLineInfo)
+ * @see GpioDevice#waitForLineInfoChange(GpioLineInfoChange, int)
+ */
+public class GpioLineInfoChange {
+
+
+    /**
+     * Enum representing what changed.
+     */
+    public enum Type {
+
+
+        /**
+         * The line has been requested.
+         */
+        REQUESTED ,
+
+        /**
+         * The line has been released.
+         */
+        RELEASED  ,
+
+        /**
+         * The configuration of the line has changed.
+         */
+        CONFIG    ;
+    }
+
+
+
+
+    // Native memory the raw change is read into.
+    //
+    private final Memory memory ;
+
+
+    // Information about the line after the change.
+    //
+    private final GpioLineInfo info = new GpioLineInfo() ;
+
+
+    // What changed.
+    //
+    private Type type = null ;
+
+
+
+
+    /**
+     * Basic constructor.
+     */
+    public GpioLineInfoChange() {
+
+        this.memory = new Memory( NativeGpioLineInfoChanged.BYTES ) ;
+
+        this.memory.clear() ;
+    }
+
+
+
+
+    // Reads a change from the file descriptor of a GPIO device.
+    //
+    // Returns false if the file descriptor is in non-blocking mode and nothing was queued.
+    //
+    boolean read( int fd ) throws IOException {
+
+        if ( NativeIO.read( fd                             ,
+                            this.memory                    ,
+                            NativeGpioLineInfoChanged.SIZE ) < 0 ) {
+
+            int errno = NativeIO.getErrno() ;
+
+            if ( errno == Errno.EAGAIN ) {
+
+                return false ;
+            }
+
+            throw new IOException( "Native error while reading a change of GPIO line info : errno " + errno ) ;
+        }
+
+        for ( int i = 0                       ;
+              i < NativeGpioLineInfo.SIZE / 8 ;
+              i += 1                          ) {
+
+            this.info.memory.setLong( i * 8                                                            ,
+                                      this.memory.getLong( NativeGpioLineInfoChanged.OFFSET_INFO + i * 8 ) ) ;
+        }
+
+        switch ( this.memory.getInt( NativeGpioLineInfoChanged.OFFSET_EVENT_TYPE ) ) {
+
+            case NativeGpioLineInfoChanged.GPIOLINE_CHANGED_REQUESTED : this.type = Type.REQUESTED ; break ;
+
+            case NativeGpioLineInfoChanged.GPIOLINE_CHANGED_RELEASED  : this.type = Type.RELEASED  ; break ;
+
+            default                                                   : this.type = Type.CONFIG    ; break ;
+        }
+
+        return true ;
+    }
+
+
+
+
+    /**
+     * Retrieves what changed.
+     *
+     * @return The type of change.
+     */
+    public Type getType() {
+
+        return this.type ;
+    }
+
+
+
+
+    /**
+     * Retrieves information about the line, as it is after the change.
+     * <p>
+     * The returned object is reused for every change read by this instance.
+     *
+     * @return Information.
+     */
+    public GpioLineInfo getLineInfo() {
+
+        return this.info ;
+    }
+
+
+
+
+    /**
+     * Retrieves the best estimation of when the change happened.
+     *
+     * @return Timestamp in nanoseconds, from the monotonic clock.
+     */
+    public long getNanoTimestamp() {
+
+        return this.memory.getLong( NativeGpioLineInfoChanged.OFFSET_TIMESTAMP ) ;
+    }
+}
@@ -0,0 +1,740 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                          ;
+import com.sun.jna.Pointer                                         ;
+import io.helins.linux.gpio.GpioEdgeDetection                      ;
+import io.helins.linux.gpio.GpioEvent                              ;
+import io.helins.linux.gpio.GpioEventClock                         ;
+import io.helins.linux.gpio.GpioFlags                              ;
+import io.helins.linux.gpio.GpioLine                               ;
+import io.helins.linux.gpio.GpioUtils                              ;
+import io.helins.linux.gpio.internal.NativeGpioLineConfig          ;
+import io.helins.linux.gpio.internal.NativeGpioLineConfigAttribute ;
+import io.helins.linux.gpio.internal.NativeGpioLineRequest         ;
+
+
+
+
+/**
+ * Class representing a request for obtaining a GPIO line handle, using the second version of the kernel API
+ * (Linux 5.10 and later).
+ * <p>
+ * Unlike an event request, up to 64 lines can be monitored for edges through a single line handle, hence a single file
+ * descriptor. Events from all those lines are read together and each of them carries the number of its line.
+ * Watching many inputs then costs one file descriptor and one read per burst instead of one per line.
+ *
+ * <p>
+ * A request can also be used for reconfiguring lines which have already been requested.
+ *
+ * @see GpioDevice#requestLines(GpioLineRequest)
+ * @see GpioLineHandle
+ * @see GpioLineHandle#reconfigure(GpioLineRequest)
+ */
+public class GpioLineRequest {
+
+
+    /**
+     * Maximum number of lines in a single request.
+     */
+    public static final int MAX_LINES = NativeGpioLineRequest.GPIO_V2_LINES_MAX ;
+
+
+    /**
+     * Maximum number of events the kernel can buffer for a line handle.
+     */
+    public static final int MAX_EVENT_BUFFER_SIZE = MAX_LINES * 16 ;
+
+
+
+
+    // Gpio flags meant to be reused.
+    //
+    private static final long DEFAULT_FLAGS = new GpioFlags().setInput()
+                                                             .forLineRequest() ;
+
+
+
+
+    // Pointer to the native structure.
+    //
+    final Memory memory ;
+
+
+    // Pointer to the configuration within the native structure.
+    //
+    final Pointer config ;
+
+
+    // Flags, apart from edge-detection.
+    //
+    private long flags ;
+
+
+    // Selected edge-detection mode, null if none.
+    //
+    private GpioEdgeDetection edgeDetection ;
+
+
+    // Selected clock for timestamping events.
+    //
+    private GpioEventClock eventClock = GpioEventClock.MONOTONIC ;
+
+
+
+
+    /**
+     * Basic constructor requesting regular inputs for both rising and falling edges.
+     */
+    public GpioLineRequest() {
+
+        this( GpioEdgeDetection.RISING_AND_FALLING ) ;
+    }
+
+
+
+
+    /**
+     * Constructor requesting regular inputs leaving the choice of edge-detection.
+     *
+     * @param  edgeDetection
+     *           Edge-detection mode, null for none.
+     */
+    public GpioLineRequest( GpioEdgeDetection edgeDetection ) {
+
+        this.memory = new Memory( NativeGpioLineRequest.SIZE )                 ;
+        this.config = this.memory.share( NativeGpioLineRequest.OFFSET_CONFIG ,
+                                         NativeGpioLineConfig.SIZE           ) ;
+
+        this.memory.clear() ;
+
+        this.flags         = DEFAULT_FLAGS ;
+        this.edgeDetection = edgeDetection ;
+
+        this.writeFlags() ;
+    }
+
+
+
+
+    // Translates edge-detection into flags.
+    //
+    private static long edgeFlags( GpioEdgeDetection edgeDetection ) {
+
+        if ( edgeDetection == null ) {
+
+            return 0 ;
+        }
+
+        long flags = 0 ;
+
+        if ( GpioUtils.isSet( edgeDetection.flags             ,
+                              GpioEvent.GPIO_EVENT_RISING_EDGE ) ) {
+
+            flags |= GpioFlags.LineFlags.EDGE_RISING ;
+        }
+
+        if ( GpioUtils.isSet( edgeDetection.flags              ,
+                              GpioEvent.GPIO_EVENT_FALLING_EDGE ) ) {
+
+            flags |= GpioFlags.LineFlags.EDGE_FALLING ;
+        }
+
+        return flags ;
+    }
+
+
+
+
+    // Writes flags, edge-detection and the event clock to the native structure.
+    //
+    private void writeFlags() {
+
+        this.memory.setLong( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_FLAGS ,
+                             this.flags | edgeFlags( this.edgeDetection ) | this.eventClock.flags    ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the flags describing how the requested lines should be handled.
+     *
+     * @return Flags.
+     */
+    public GpioFlags getFlags() {
+
+        return new GpioFlags().fromLineRequest( this.flags ) ;
+    }
+
+
+
+
+    /**
+     * Sets flags describing how the requested lines should be handled.
+     * <p>
+     * Edge-detection is only possible for inputs.
+     *
+     * @param  flags
+     *           Flags.
+     *
+     * @return This instance.
+     */
+    public GpioLineRequest setFlags( GpioFlags flags ) {
+
+        this.flags = flags.forLineRequest() ;
+
+        this.writeFlags() ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves what kind of edge-detection this request is for.
+     *
+     * @return Edge-detection mode, null if none.
+     */
+    public GpioEdgeDetection getEdgeDetection() {
+
+        return this.edgeDetection ;
+    }
+
+
+
+
+    /**
+     * Selects edge-detection for all requested lines.
+     *
+     * @param  edgeDetection
+     *           Edge-detection mode, null for none.
+     *
+     * @return This instance.
+     */
+    public GpioLineRequest setEdgeDetection( GpioEdgeDetection edgeDetection ) {
+
+        this.edgeDetection = edgeDetection ;
+
+        this.writeFlags() ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves which clock the kernel uses for timestamping events.
+     *
+     * @return The event clock.
+     */
+    public GpioEventClock getEventClock() {
+
+        return this.eventClock ;
+    }
+
+
+
+
+    /**
+     * Selects which clock the kernel uses for timestamping events.
+     * <p>
+     * Unlike event handles, for which the clock depends on the kernel version, the clock of a line handle is always
+     * known. If the kernel does not support the selected clock, requesting the lines fails.
+     *
+     * @param  eventClock
+     *           The event clock.
+     *
+     * @return This instance.
+     *
+     * @see GpioClockConverter
+     */
+    public GpioLineRequest setEventClock( GpioEventClock eventClock ) {
+
+        this.eventClock = eventClock ;
+
+        this.writeFlags() ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves the consumer the lines will be requested under.
+     *
+     * @return Name of the consumer or null if none.
+     */
+    public String getConsumer() {
+
+        return GpioUtils.getString( this.memory                           ,
+                                    NativeGpioLineRequest.OFFSET_CONSUMER ) ;
+    }
+
+
+
+
+    /**
+     * Sets the consumer the lines will be requested under.
+     *
+     * @param  consumer
+     *           Name of the consumer, length must be smaller than 32.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the length of the consumer is equal or greater than 32.
+     */
+    public GpioLineRequest setConsumer( String consumer ) {
+
+        GpioUtils.setConsumer( this.memory                           ,
+                               NativeGpioLineRequest.OFFSET_CONSUMER ,
+                               consumer                              ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events the kernel will buffer for the line handle.
+     *
+     * @return Size of the buffer in events, 0 meaning the default of 16 events per line.
+     */
+    public int getEventBufferSize() {
+
+        return this.memory.getInt( NativeGpioLineRequest.OFFSET_EVENT_BUFFER_SIZE ) ;
+    }
+
+
+
+
+    /**
+     * Sets how many events the kernel will buffer for the line handle, for all lines together.
+     * <p>
+     * When the buffer is full, new events are dropped until some are read. By default, the kernel buffers 16 events
+     * per line, which might not be enough for bursts. Lost events can be detected thanks to sequence numbers.
+     *
+     * @param  size
+     *           Size of the buffer in events, 0 for the default, at most `<strong>MAX_EVENT_BUFFER_SIZE</strong>`.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the size is negative or too big.
+     *
+     * @see GpioLineHandle#getDropped(GpioLine)
+     */
+    public GpioLineRequest setEventBufferSize( int size ) {
+
+        if ( size < 0 || size > MAX_EVENT_BUFFER_SIZE ) {
+
+            throw new IllegalArgumentException( "Event buffer size must be between 0 and " + MAX_EVENT_BUFFER_SIZE ) ;
+        }
+
+        this.memory.setInt( NativeGpioLineRequest.OFFSET_EVENT_BUFFER_SIZE ,
+                            size                                           ) ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many lines have been added to this request.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+
+        return this.memory.getInt( NativeGpioLineRequest.OFFSET_NUM_LINES ) ;
+    }
+
+
+
+
+    // Retrieves the number of the line at the given index.
+    //
+    int getLineNumber( int index ) {
+
+        return this.memory.getInt( NativeGpioLineRequest.OFFSET_OFFSETS + 4 * index ) ;
+    }
+
+
+
+
+    /**
+     * Adds a GPIO line to the request.
+     *
+     * @param  lineNumber
+     *           Which line.
+     *
+     * @return A GPIO line useful for handling a buffer.
+     *
+     * @throws IllegalStateException
+     *           When `<strong>MAX_LINES</strong>` lines have already been added.
+     */
+    public GpioLine addLine( int lineNumber ) {
+
+        int index = this.getLineCount() ;
+
+        if ( index == MAX_LINES ) {
+
+            throw new IllegalStateException( "A line request cannot have more than " + MAX_LINES + " lines" ) ;
+        }
+
+        this.memory.setInt( NativeGpioLineRequest.OFFSET_OFFSETS + 4 * index ,
+                            lineNumber                                       ) ;
+
+        this.memory.setInt( NativeGpioLineRequest.OFFSET_NUM_LINES ,
+                            index + 1                              ) ;
+
+        return new GpioLine( lineNumber ,
+                             index      ) ;
+    }
+
+
+
+
+    /**
+     * Adds a GPIO line to the request with a default value.
+     * <p>
+     * Providing a default value works only for outputs.
+     *
+     * @param  lineNumber
+     *           Which line.
+     *
+     * @param  value
+     *           Default value.
+     *
+     * @return A GPIO line useful for handling a buffer.
+     *
+     * @throws IllegalStateException
+     *           When `<strong>MAX_LINES</strong>` lines have already been added.
+     */
+    public GpioLine addLine( int     lineNumber ,
+                             boolean value      ) {
+
+        GpioLine line = this.addLine( lineNumber ) ;
+        long     mask = line.getMask()             ;
+
+        long attribute = this.attribute( NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_OUTPUT_VALUES ) ;
+
+        if ( value ) {
+
+            this.memory.setLong( attribute + NativeGpioLineConfigAttribute.OFFSET_VALUE                                ,
+                                 this.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_VALUE ) | mask ) ;
+        }
+
+        this.memory.setLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK                                ,
+                             this.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK ) | mask ) ;
+
+        return line ;
+    }
+
+
+
+
+    // Retrieves how many attributes are set.
+    //
+    private int getAttributeCount() {
+
+        return this.memory.getInt( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_NUM_ATTRS ) ;
+    }
+
+
+
+
+    // Sets how many attributes are set.
+    //
+    private void setAttributeCount( int count ) {
+
+        this.memory.setInt( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_NUM_ATTRS ,
+                            count                                                                       ) ;
+    }
+
+
+
+
+    // Retrieves the offset of an attribute in the native structure.
+    //
+    private static long attributeOffset( int index ) {
+
+        return NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_ATTRS + (long)index * NativeGpioLineConfigAttribute.SIZE ;
+    }
+
+
+
+
+    // Finds the attribute with the given id in the native structure, adding it if needed.
+    //
+    // Returns its offset.
+    //
+    private long attribute( int id ) {
+
+        int count = this.getAttributeCount() ;
+
+        for ( int i = 0  ;
+              i < count  ;
+              i += 1     ) {
+
+            long attribute = attributeOffset( i ) ;
+
+            if ( this.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_ID ) == id ) {
+
+                return attribute ;
+            }
+        }
+
+        return this.addAttribute( id ) ;
+    }
+
+
+
+
+    // Adds an attribute with the given id to the native structure.
+    //
+    // Returns its offset.
+    //
+    private long addAttribute( int id ) {
+
+        int count = this.getAttributeCount() ;
+
+        if ( count == NativeGpioLineConfig.GPIO_V2_LINE_NUM_ATTRS_MAX ) {
+
+            throw new IllegalStateException( "A line request cannot have more than " + count + " attributes" ) ;
+        }
+
+        long attribute = attributeOffset( count ) ;
+
+        this.memory.setMemory( attribute                          ,
+                               NativeGpioLineConfigAttribute.SIZE ,
+                               (byte)0                            ) ;
+
+        this.memory.setInt( attribute + NativeGpioLineConfigAttribute.OFFSET_ID ,
+                            id                                                  ) ;
+
+        this.setAttributeCount( count + 1 ) ;
+
+        return attribute ;
+    }
+
+
+
+
+    // Removes an attribute from the native structure, shifting the following ones.
+    //
+    private void removeAttribute( int index ) {
+
+        int count = this.getAttributeCount() ;
+
+        for ( int i = index + 1 ;
+              i < count         ;
+              i += 1            ) {
+
+            byte[] next = this.memory.getByteArray( attributeOffset( i )               ,
+                                                    NativeGpioLineConfigAttribute.SIZE ) ;
+
+            this.memory.write( attributeOffset( i - 1 ) ,
+                               next                     ,
+                               0                        ,
+                               next.length              ) ;
+        }
+
+        this.setAttributeCount( count - 1 ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the debounce period of a line.
+     *
+     * @param  line
+     *           The GPIO line, as returned when added to this request.
+     *
+     * @return The period in microseconds, 0 if the line is not debounced.
+     */
+    public int getDebounce( GpioLine line ) {
+
+        int count = this.getAttributeCount() ;
+
+        for ( int i = 0  ;
+              i < count  ;
+              i += 1     ) {
+
+            long attribute = attributeOffset( i ) ;
+
+            if ( this.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_ID ) == NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_DEBOUNCE
+                 &&
+                 ( this.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK ) & line.getMask() ) != 0 ) {
+
+                return this.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_VALUE ) ;
+            }
+        }
+
+        return 0 ;
+    }
+
+
+
+
+    /**
+     * Debounces a line in the kernel, so that bounces are dropped before reaching user space.
+     * <p>
+     * An edge is only reported once the line has been stable for the given period. Controllers supporting debouncing
+     * do it in hardware. Otherwise, the kernel does it in software, which still spares a read and the crossing to the
+     * JVM for each bounce. Lines with different periods can be mixed, up to 10 attributes per request.
+     * <p>
+     * If the driver refuses the setting, requesting the lines fails with an `<strong>UnsupportedOperationException
+     * </strong>` and debouncing must then be done by the user.
+     *
+     * @param  line
+     *           The GPIO line, as returned when added to this request.
+     *
+     * @param  periodMicros
+     *           Debounce period in microseconds, 0 for no debouncing.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the period is negative.
+     *
+     * @throws IllegalStateException
+     *           When this request already has too many attributes.
+     *
+     * @see #clearDebounce()
+     * @see GpioDevice#requestLines(GpioLineRequest)
+     */
+    public GpioLineRequest setDebounce( GpioLine line         ,
+                                        int      periodMicros ) {
+
+        if ( periodMicros < 0 ) {
+
+            throw new IllegalArgumentException( "Debounce period must be >= 0" ) ;
+        }
+
+        long mask   = line.getMask() ;
+        long target = -1             ;
+
+        for ( int i = this.getAttributeCount() - 1 ;
+              i >= 0                               ;
+              i -= 1                               ) {
+
+            long attribute = attributeOffset( i ) ;
+
+            if ( this.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_ID ) == NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_DEBOUNCE ) {
+
+                if ( this.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_VALUE ) == periodMicros ) {
+
+                    target = attribute ;
+                }
+
+                else {
+
+                    long attributeMask = this.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK ) & ~mask ;
+
+                    if ( attributeMask == 0 ) {
+
+                        this.removeAttribute( i ) ;
+
+                        // Attributes have been shifted.
+                        //
+                        if ( target > attribute ) {
+
+                            target -= NativeGpioLineConfigAttribute.SIZE ;
+                        }
+                    }
+
+                    else {
+
+                        this.memory.setLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK ,
+                                             attributeMask                                         ) ;
+                    }
+                }
+            }
+        }
+
+        if ( periodMicros > 0 ) {
+
+            if ( target < 0 ) {
+
+                target = this.addAttribute( NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_DEBOUNCE ) ;
+
+                this.memory.setInt( target + NativeGpioLineConfigAttribute.OFFSET_VALUE ,
+                                    periodMicros                                        ) ;
+            }
+
+            this.memory.setLong( target + NativeGpioLineConfigAttribute.OFFSET_MASK                                ,
+                                 this.memory.getLong( target + NativeGpioLineConfigAttribute.OFFSET_MASK ) | mask ) ;
+        }
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Removes debouncing from all lines.
+     * <p>
+     * Useful for retrying a request after the driver refused debouncing.
+     *
+     * @return This instance.
+     */
+    public GpioLineRequest clearDebounce() {
+
+        for ( int i = this.getAttributeCount() - 1 ;
+              i >= 0                               ;
+              i -= 1                               ) {
+
+            if ( this.memory.getInt( attributeOffset( i ) + NativeGpioLineConfigAttribute.OFFSET_ID ) == NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_DEBOUNCE ) {
+
+                this.removeAttribute( i ) ;
+            }
+        }
+
+        return this ;
+    }
+
+
+
+
+    // Is any line debounced ?
+    //
+    boolean isDebounced() {
+
+        for ( int i = 0                    ;
+              i < this.getAttributeCount() ;
+              i += 1                       ) {
+
+            if ( this.memory.getInt( attributeOffset( i ) + NativeGpioLineConfigAttribute.OFFSET_ID ) == NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_DEBOUNCE ) {
+
+                return true ;
+            }
+        }
+
+        return false ;
+    }
+
+
+
+
+    // Retrieves the linux file descriptor after the request has been accepted.
+    //
+    int getFD() {
+
+        return this.memory.getInt( NativeGpioLineRequest.OFFSET_FD ) ;
+    }
+}
@@ -0,0 +1,81 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.NativeLong                 ;
+import com.sun.jna.Pointer                    ;
+import io.helins.linux.Linux                  ;
+import io.helins.linux.errno.Errno            ;
+import io.helins.linux.gpio.GpioBackend       ;
+import io.helins.linux.gpio.internal.NativeIO ;
+import io.helins.linux.io.LinuxIO             ;
+import java.io.FileNotFoundException          ;
+import java.io.IOException                    ;
+
+
+
+
+// Backend relying on the kernel.
+//
+final class GpioNativeBackend implements GpioBackend {
+
+
+    @Override
+    public int open( String path ) throws IOException {
+
+        int fd = LinuxIO.open64( path             ,
+                                 LinuxIO.O_RDONLY ) ;
+
+        if ( fd < 0 ) {
+
+            int errno = Linux.getErrno() ;
+
+            switch ( errno ) {
+
+                case Errno.EACCES : throw new FileNotFoundException( "Permission denied : " + path )                                     ;
+
+                case Errno.ENOENT : throw new FileNotFoundException( "No such file : " + path )                                          ;
+
+                default           : throw new IOException( "Native error while opening GPIO device at '" + path + "' : errno " + errno ) ;
+            }
+        }
+
+        return fd ;
+    }
+
+
+
+
+    @Override
+    public int ioctl( int        fd       ,
+                      NativeLong request  ,
+                      Pointer    argument ) {
+
+        return NativeIO.ioctl( fd       ,
+                               request  ,
+                               argument ) ;
+    }
+
+
+
+
+    @Override
+    public int close( int fd ) {
+
+        return NativeIO.close( fd ) ;
+    }
+
+
+
+
+    @Override
+    public int getErrno() {
+
+        return NativeIO.getErrno() ;
+    }
+}
@@ -0,0 +1,38 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+
+
+/**
+ * Enum representing what happens when a producer outpaces its consumers and no room is left.
+ *
+ * @see GpioEventRing
+ */
+public enum GpioOverflowPolicy {
+
+
+    /**
+     * The producer waits until the slowest consumer makes room.
+     * <p>
+     * Nothing is lost but a stalled consumer stalls the producer.
+     */
+    BLOCK       ,
+
+    /**
+     * The new event is discarded and counted.
+     */
+    DROP_NEWEST ,
+
+    /**
+     * The oldest event is overwritten, consumers lagging behind skip it and count it as missed.
+     * <p>
+     * The producer never waits.
+     */
+    DROP_OLDEST ;
+}
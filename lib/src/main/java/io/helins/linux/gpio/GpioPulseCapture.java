@@ -0,0 +1,467 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioEvent       ;
+import io.helins.linux.gpio.GpioEventBatch  ;
+import io.helins.linux.gpio.GpioEventHandle ;
+import io.helins.linux.gpio.GpioPulseStats  ;
+import java.io.IOException                  ;
+import java.util.Arrays                     ;
+
+
+
+
+/**
+ * Class for measuring pulse widths, periods and duty cycles of GPIO lines.
+ * <p>
+ * Lines must be monitored for both rising and falling edges, using `<strong>GpioEdgeDetection.RISING_AND_FALLING</strong>`.
+ * Each rising edge is paired with the following falling edge, and so on, using the timestamps provided by the kernel
+ * rather than the time at which events are read. Hence, measurements are not affected by how late the JVM handles
+ * events.
+ * <p>
+ * For each line, recognized by the id of its events, the durations of the last periods are kept in primitive ring
+ * buffers. Statistics can be retrieved over a sliding window, the last periods, or over a tumbling window, the last
+ * complete time window of a fixed duration. Apart from the first time a line is seen, recording events does not
+ * allocate anything.
+ * <p>
+ * When two consecutive edges of the same kind are seen, an edge was missed, typically because the kernel queue
+ * overflowed. The pending pulse is then discarded rather than being measured wrongly.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see GpioEdgeDetection#RISING_AND_FALLING
+ */
+public class GpioPulseCapture {
+
+
+    // How many periods are kept per line.
+    //
+    private final int windowSize ;
+
+
+    // Duration of a tumbling window, in nanoseconds, 0 if disabled.
+    //
+    private final long tumblingNanos ;
+
+
+    // Lines seen so far.
+    //
+    private Line[] lines  = new Line[ 4 ] ;
+    private int    nLines = 0             ;
+
+
+    // Last line looked up, lines being often fed one batch at a time.
+    //
+    private Line lastLine = null ;
+
+
+
+
+    /**
+     * Constructor.
+     *
+     * @param  windowSize
+     *           How many periods are kept per line for the sliding window.
+     *
+     * @param  tumblingNanos
+     *           Duration of a tumbling window, in nanoseconds, 0 for disabling tumbling windows.
+     *
+     * @throws IllegalArgumentException
+     *           When the window size is not strictly positive or the duration is negative.
+     */
+    public GpioPulseCapture( int  windowSize    ,
+                             long tumblingNanos ) {
+
+        if ( windowSize <= 0 ) {
+
+            throw new IllegalArgumentException( "Window size of a pulse capture must be > 0" ) ;
+        }
+
+        if ( tumblingNanos < 0 ) {
+
+            throw new IllegalArgumentException( "Tumbling window of a pulse capture must be >= 0" ) ;
+        }
+
+        this.windowSize    = windowSize    ;
+        this.tumblingNanos = tumblingNanos ;
+    }
+
+
+
+
+    // Finds a line by id, null if not seen yet.
+    //
+    private Line find( int id ) {
+
+        if ( this.lastLine != null && this.lastLine.id == id ) {
+
+            return this.lastLine ;
+        }
+
+        for ( int i = 0       ;
+              i < this.nLines ;
+              i += 1          ) {
+
+            if ( this.lines[ i ].id == id ) {
+
+                this.lastLine = this.lines[ i ] ;
+
+                return this.lastLine ;
+            }
+        }
+
+        return null ;
+    }
+
+
+
+
+    // Finds a line by id, creating it if needed.
+    //
+    private Line line( int id ) {
+
+        Line line = this.find( id ) ;
+
+        if ( line == null ) {
+
+            if ( this.nLines == this.lines.length ) {
+
+                this.lines = Arrays.copyOf( this.lines      ,
+                                            this.nLines * 2 ) ;
+            }
+
+            line                       = new Line( id              ,
+                                                   this.windowSize ) ;
+            this.lines[ this.nLines ]  = line                          ;
+            this.nLines               += 1                             ;
+            this.lastLine              = line                          ;
+        }
+
+        return line ;
+    }
+
+
+
+
+    // Records an edge.
+    //
+    // Returns true if a period was completed.
+    //
+    boolean record( int  id            ,
+                    long nanoTimestamp ,
+                    int  edges         ) {
+
+        Line line = this.line( id ) ;
+
+        int edge = ( edges & GpioEvent.GPIO_EVENT_RISING_EDGE ) > 0 ? GpioEvent.GPIO_EVENT_RISING_EDGE
+                                                                    : GpioEvent.GPIO_EVENT_FALLING_EDGE ;
+
+        boolean isCompleted = false ;
+
+        if ( edge == line.lastEdge || nanoTimestamp < line.lastTimestamp ) {
+
+            // An edge was missed, what is pending cannot be measured.
+            //
+            line.missed      += 1  ;
+            line.pendingHigh  = -1 ;
+        }
+
+        else if ( edge == GpioEvent.GPIO_EVENT_RISING_EDGE ) {
+
+            if ( line.pendingHigh >= 0 ) {
+
+                this.push( line                               ,
+                           line.pendingHigh                   ,
+                           nanoTimestamp - line.lastTimestamp ,
+                           nanoTimestamp                      ) ;
+
+                isCompleted = true ;
+            }
+
+            line.pendingHigh = -1 ;
+        }
+
+        else if ( line.lastEdge == GpioEvent.GPIO_EVENT_RISING_EDGE ) {
+
+            line.pendingHigh = nanoTimestamp - line.lastTimestamp ;
+        }
+
+        line.lastEdge      = edge          ;
+        line.lastTimestamp = nanoTimestamp ;
+
+        return isCompleted ;
+    }
+
+
+
+
+    // Stores a complete period and accounts for it in the tumbling window.
+    //
+    private void push( Line line ,
+                       long high ,
+                       long low  ,
+                       long end  ) {
+
+        line.highs[ line.head ] = high ;
+        line.lows[ line.head ]  = low  ;
+
+        line.head = line.head + 1 == this.windowSize ? 0
+                                                     : line.head + 1 ;
+
+        if ( line.size < this.windowSize ) {
+
+            line.size += 1 ;
+        }
+
+        if ( this.tumblingNanos > 0 ) {
+
+            if ( line.isWindowStarted == false ) {
+
+                line.windowStart     = end - high - low ;
+                line.isWindowStarted = true             ;
+            }
+
+            else if ( end - line.windowStart > this.tumblingNanos ) {
+
+                // The period ends in a later window, the current one is complete.
+                //
+                line.lastWindow.copy( line.currentWindow ) ;
+                line.currentWindow.clear() ;
+
+                line.windowStart += ( ( end - line.windowStart - 1 ) / this.tumblingNanos ) * this.tumblingNanos ;
+            }
+
+            line.currentWindow.add( high ,
+                                    low  ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Records an event.
+     *
+     * @param  event
+     *           Event to record.
+     *
+     * @return True if a period was completed.
+     */
+    public boolean record( GpioEvent event ) {
+
+        return this.record( event.getId()            ,
+                            event.getNanoTimestamp() ,
+                            event.getEdges()         ) ;
+    }
+
+
+
+
+    /**
+     * Records all events from a batch, in order.
+     *
+     * @param  batch
+     *           Events to record.
+     *
+     * @return How many periods were completed.
+     */
+    public int record( GpioEventBatch batch ) {
+
+        int completed = 0 ;
+
+        for ( int i = 0        ;
+              i < batch.size() ;
+              i += 1           ) {
+
+            if ( this.record( batch.getId( i )            ,
+                              batch.getNanoTimestamp( i ) ,
+                              batch.getEdges( i )         ) ) {
+
+                completed += 1 ;
+            }
+        }
+
+        return completed ;
+    }
+
+
+
+
+    /**
+     * Reads events from a handle and records them.
+     *
+     * @param  handle
+     *           Handle monitoring a line for both rising and falling edges.
+     *
+     * @param  batch
+     *           Batch used for reading events.
+     *
+     * @return How many periods were completed.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     *
+     * @see GpioEventHandle#readEvents(GpioEventBatch)
+     */
+    public int capture( GpioEventHandle handle ,
+                        GpioEventBatch  batch  ) throws IOException {
+
+        return this.record( handle.readEvents( batch ) ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many edges were missed on a line.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @return The number of missed edges.
+     */
+    public long getMissed( int id ) {
+
+        Line line = this.find( id ) ;
+
+        return line == null ? 0
+                            : line.missed ;
+    }
+
+
+
+
+    /**
+     * Computes statistics over the last periods of a line, at most as many as the window size.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @param  stats
+     *           Will hold the statistics.
+     *
+     * @return The statistics, without any period if the line is unknown.
+     */
+    public GpioPulseStats sliding( int            id    ,
+                                   GpioPulseStats stats ) {
+
+        stats.clear() ;
+
+        Line line = this.find( id ) ;
+
+        if ( line != null ) {
+
+            int index = line.head - line.size ;
+
+            if ( index < 0 ) {
+
+                index += this.windowSize ;
+            }
+
+            for ( int i = 0     ;
+                  i < line.size ;
+                  i += 1        ) {
+
+                stats.add( line.highs[ index ] ,
+                           line.lows[ index ]  ) ;
+
+                index = index + 1 == this.windowSize ? 0
+                                                     : index + 1 ;
+            }
+        }
+
+        return stats ;
+    }
+
+
+
+
+    /**
+     * Retrieves statistics over the last complete tumbling window of a line.
+     * <p>
+     * A period belongs to the window in which it ends. Windows start with the first period of a line and end
+     * inclusively.
+     *
+     * @param  id
+     *           Id of the line.
+     *
+     * @param  stats
+     *           Will hold the statistics.
+     *
+     * @return The statistics, without any period if the line is unknown or no window has been completed yet.
+     */
+    public GpioPulseStats tumbling( int            id    ,
+                                    GpioPulseStats stats ) {
+
+        Line line = this.find( id ) ;
+
+        return line == null ? stats.clear()
+                            : stats.copy( line.lastWindow ) ;
+    }
+
+
+
+
+    // State of a line.
+    //
+    private static final class Line {
+
+
+        // Id of the line.
+        //
+        private final int id ;
+
+
+        // Last edge seen and its kernel timestamp.
+        //
+        private int  lastEdge      = 0 ;
+        private long lastTimestamp = 0 ;
+
+
+        // Duration of the last high pulse if waiting for the low pulse to complete a period, -1 otherwise.
+        //
+        private long pendingHigh = -1 ;
+
+
+        // How many edges were missed.
+        //
+        private long missed = 0 ;
+
+
+        // Ring buffers of pulse durations.
+        //
+        private final long[] highs ;
+        private final long[] lows  ;
+
+        private int head = 0 ;
+        private int size = 0 ;
+
+
+        // Tumbling windows.
+        //
+        private final GpioPulseStats currentWindow = new GpioPulseStats() ;
+        private final GpioPulseStats lastWindow    = new GpioPulseStats() ;
+
+        private boolean isWindowStarted = false ;
+        private long    windowStart     = 0     ;
+
+
+
+
+        // Private constructor.
+        //
+        private Line( int id         ,
+                      int windowSize ) {
+
+            this.id    = id                     ;
+            this.highs = new long[ windowSize ] ;
+            this.lows  = new long[ windowSize ] ;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+
+
+/**
+ * Class for holding statistics about the pulses of a GPIO line over a window.
+ * <p>
+ * A period is made of a high pulse, from a rising edge to a falling edge, followed by a low pulse, from that
+ * falling edge to the next rising edge. All durations are measured using kernel timestamps.
+ * <p>
+ * An instance is meant to be reused and is filled by a pulse capture.
+ *
+ * @see GpioPulseCapture
+ */
+public class GpioPulseStats {
+
+
+    // How many periods were accounted.
+    //
+    private int count = 0 ;
+
+
+    // Sums of pulse durations.
+    //
+    private long sumHigh = 0 ;
+    private long sumLow  = 0 ;
+
+
+    // Extreme periods.
+    //
+    private long minPeriod = Long.MAX_VALUE ;
+    private long maxPeriod = Long.MIN_VALUE ;
+
+
+    // Running mean of periods and sum of squared deviations, following Welford's method so that jitter remains
+    // accurate for long periods.
+    //
+    private double meanPeriod = 0 ;
+    private double m2         = 0 ;
+
+
+
+
+    /**
+     * Basic constructor.
+     */
+    public GpioPulseStats() {}
+
+
+
+
+    // Forgets about all periods.
+    //
+    GpioPulseStats clear() {
+
+        this.count      = 0              ;
+        this.sumHigh    = 0              ;
+        this.sumLow     = 0              ;
+        this.minPeriod  = Long.MAX_VALUE ;
+        this.maxPeriod  = Long.MIN_VALUE ;
+        this.meanPeriod = 0              ;
+        this.m2         = 0              ;
+
+        return this ;
+    }
+
+
+
+
+    // Accounts for a period.
+    //
+    void add( long high ,
+              long low  ) {
+
+        long   period = high + low                ;
+        double delta  = period - this.meanPeriod ;
+
+        this.count      += 1                                    ;
+        this.sumHigh    += high                                 ;
+        this.sumLow     += low                                  ;
+        this.meanPeriod += delta / this.count                   ;
+        this.m2         += delta * ( period - this.meanPeriod ) ;
+
+        this.minPeriod = Math.min( this.minPeriod ,
+                                   period         ) ;
+
+        this.maxPeriod = Math.max( this.maxPeriod ,
+                                   period         ) ;
+    }
+
+
+
+
+    // Overwrites this instance with the given one.
+    //
+    GpioPulseStats copy( GpioPulseStats stats ) {
+
+        this.count      = stats.count      ;
+        this.sumHigh    = stats.sumHigh    ;
+        this.sumLow     = stats.sumLow     ;
+        this.minPeriod  = stats.minPeriod  ;
+        this.maxPeriod  = stats.maxPeriod  ;
+        this.meanPeriod = stats.meanPeriod ;
+        this.m2         = stats.m2         ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many complete periods were accounted.
+     *
+     * @return The number of periods, 0 meaning that other values are meaningless.
+     */
+    public int getCount() {
+
+        return this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the mean duration of a period.
+     *
+     * @return Duration in nanoseconds.
+     */
+    public double getMeanPeriod() {
+
+        return this.meanPeriod ;
+    }
+
+
+
+
+    /**
+     * Retrieves the shortest period.
+     *
+     * @return Duration in nanoseconds.
+     */
+    public long getMinPeriod() {
+
+        return this.minPeriod ;
+    }
+
+
+
+
+    /**
+     * Retrieves the longest period.
+     *
+     * @return Duration in nanoseconds.
+     */
+    public long getMaxPeriod() {
+
+        return this.maxPeriod ;
+    }
+
+
+
+
+    /**
+     * Retrieves the mean duration of a high pulse.
+     *
+     * @return Duration in nanoseconds.
+     */
+    public double getMeanHigh() {
+
+        return this.count == 0 ? 0
+                               : (double)this.sumHigh / this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the mean duration of a low pulse.
+     *
+     * @return Duration in nanoseconds.
+     */
+    public double getMeanLow() {
+
+        return this.count == 0 ? 0
+                               : (double)this.sumLow / this.count ;
+    }
+
+
+
+
+    /**
+     * Retrieves the duty cycle, the proportion of time the line was high.
+     *
+     * @return A value between 0 and 1.
+     */
+    public double getDutyCycle() {
+
+        long total = this.sumHigh + this.sumLow ;
+
+        return total == 0 ? 0
+                          : (double)this.sumHigh / total ;
+    }
+
+
+
+
+    /**
+     * Retrieves the jitter, the standard deviation of periods.
+     *
+     * @return Jitter in nanoseconds.
+     */
+    public double getJitter() {
+
+        return this.count < 2 ? 0
+                              : Math.sqrt( this.m2 / ( this.count - 1 ) ) ;
+    }
+}
@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import java.util.concurrent.atomic.AtomicLongArray ;
+
+
+
+
+// Atomic long padded on both sides so that it never shares a cache line with anything else.
+//
+// Meant for counters and sequences written by one thread and read by others.
+//
+final class GpioSequence {
+
+
+    // How many longs are needed to fill a cache line, with room for adjacent line prefetching.
+    //
+    static final int PADDING = 16 ;
+
+
+
+
+    // Padded storage, only the middle element is used.
+    //
+    private final AtomicLongArray cells = new AtomicLongArray( 2 * PADDING + 1 ) ;
+
+
+
+
+    // Basic constructor.
+    //
+    GpioSequence( long value ) {
+
+        this.cells.set( PADDING ,
+                        value   ) ;
+    }
+
+
+
+
+    // Reads the value, acquiring.
+    //
+    long get() {
+
+        return this.cells.get( PADDING ) ;
+    }
+
+
+
+
+    // Writes the value, releasing.
+    //
+    void set( long value ) {
+
+        this.cells.lazySet( PADDING ,
+                            value   ) ;
+    }
+
+
+
+
+    // Increments the value when there is only one writer, releasing.
+    //
+    void increment() {
+
+        this.cells.lazySet( PADDING                            ,
+                            this.cells.getPlain( PADDING ) + 1 ) ;
+    }
+
+
+
+
+    // Adds to the value when there is only one writer, releasing.
+    //
+    void add( long delta ) {
+
+        this.cells.lazySet( PADDING                               ,
+                            this.cells.getPlain( PADDING ) + delta ) ;
+    }
+}
@@ -0,0 +1,982 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import com.sun.jna.Memory                                    ;
+import com.sun.jna.NativeLong                                ;
+import com.sun.jna.Pointer                                   ;
+import io.helins.linux.Linux                                 ;
+import io.helins.linux.SizeT                                 ;
+import io.helins.linux.errno.Errno                           ;
+import io.helins.linux.gpio.GpioBackend                      ;
+import io.helins.linux.gpio.GpioDevice                       ;
+import io.helins.linux.gpio.GpioEvent                        ;
+import io.helins.linux.gpio.GpioFlags                        ;
+import io.helins.linux.gpio.GpioHandle                       ;
+import io.helins.linux.gpio.internal.NativeGpioChipInfo      ;
+import io.helins.linux.gpio.internal.NativeGpioEventData     ;
+import io.helins.linux.gpio.internal.NativeGpioEventRequest  ;
+import io.helins.linux.gpio.internal.NativeGpioHandleRequest ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfo      ;
+import io.helins.linux.gpio.internal.NativeLinux             ;
+import io.helins.linux.io.LinuxIO                            ;
+import java.io.IOException                                   ;
+import java.util.ArrayList                                   ;
+import java.util.HashMap                                     ;
+import java.util.List                                        ;
+import java.util.Map                                         ;
+
+
+
+
+/**
+ * Class simulating a GPIO chip in-process, for running an application without any hardware.
+ * <p>
+ * Being a {@link GpioBackend}, GPIO devices opened with it behave like real ones. Handles and event handles can be
+ * requested, values can be read and written, and events are read and watched as usual, through real file
+ * descriptors. Hence, the same application code runs against real chips or against this simulation. Only the first
+ * version of the kernel API is simulated, line handles and watching line info are not supported.
+ * <p>
+ * Lines are driven by calling {@link #setValue(int, boolean)} or by setting a rate at which they toggle. Time is
+ * virtual: it only advances when {@link #advance(long)} or {@link #advanceTo(long)} is called, which generates all
+ * the edges due in the meantime. This makes tests reproducible. For running in real time instead, the chip can be
+ * created with the current value of `<strong>System.nanoTime()</strong>` and a thread can periodically advance it to
+ * the new current value. Timestamps of events are then consistent with latencies measured in the JVM.
+ * <p>
+ * Like the kernel, events are dropped when they are not read fast enough. Each event handle queues as many events
+ * as a pipe can hold, typically 4096. Events are delivered in chunks of at most 256, each chunk being either queued
+ * or dropped as a whole, which allows generating millions of events per second when the consumer keeps up.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see GpioDevice#GpioDevice(GpioBackend, String)
+ */
+public class GpioSimulatedChip implements GpioBackend ,
+                                          AutoCloseable {
+
+
+    // Name of the simulated chip.
+    //
+    private static final String NAME = "gpiochip-sim" ;
+
+
+    // How many events are written at once to an event handle, so that each write is atomic (at most PIPE_BUF bytes).
+    //
+    private static final int CHUNK = 4096 / NativeGpioEventData.BYTES ;
+
+
+
+
+    // Handle or event handle requested from the simulated chip.
+    //
+    private static final class Handle {
+
+
+        // File descriptor given to the user and the other end of the pipe.
+        //
+        final int fd      ;
+        final int writeFd ;
+
+
+        // Lines, in order.
+        //
+        final int[] lines ;
+
+
+        // Request.
+        //
+        final String  consumer    ;
+        final boolean isOutput    ;
+        final boolean isActiveLow ;
+
+
+        // Requested edges, 0 for a handle which is not an event handle.
+        //
+        final int eventFlags ;
+
+
+        // Events waiting to be written to the pipe, null for a handle which is not an event handle.
+        //
+        final Memory staging ;
+        int          pending ;
+
+
+        Handle( int     fd          ,
+                int     writeFd     ,
+                int[]   lines       ,
+                String  consumer    ,
+                boolean isOutput    ,
+                boolean isActiveLow ,
+                int     eventFlags  ) {
+
+            this.fd          = fd          ;
+            this.writeFd     = writeFd     ;
+            this.lines       = lines       ;
+            this.consumer    = consumer    ;
+            this.isOutput    = isOutput    ;
+            this.isActiveLow = isActiveLow ;
+            this.eventFlags  = eventFlags  ;
+            this.staging     = eventFlags == 0 ? null
+                                               : new Memory( CHUNK * NativeGpioEventData.BYTES ) ;
+        }
+    }
+
+
+
+
+    // Label of the chip.
+    //
+    private final String label ;
+
+
+    // Physical value of each line.
+    //
+    private final boolean[] values ;
+
+
+    // Handle owning each line, null if free.
+    //
+    private final Handle[] owners ;
+
+
+    // For each line, nanoseconds between 2 edges (0 when the line does not toggle by itself) and time of the next
+    // edge.
+    //
+    private final long[] periods   ;
+    private final long[] nextEdges ;
+
+
+    // How many events were dropped for each line.
+    //
+    private final long[] dropped ;
+
+
+    // Open GPIO devices, from file descriptor given to the user to the other end of the pipe.
+    //
+    private final Map< Integer , Integer > devices = new HashMap<>() ;
+
+
+    // Open handles, by file descriptor.
+    //
+    private final Map< Integer , Handle > handles = new HashMap<>() ;
+
+
+    // Errno of the last failed call, per thread.
+    //
+    private final ThreadLocal< int[] > errno = ThreadLocal.withInitial( () -> new int[ 1 ] ) ;
+
+
+    // Virtual time in nanoseconds.
+    //
+    private long now ;
+
+
+
+
+    /**
+     * Basic constructor, virtual time starting at 0.
+     *
+     * @param  label
+     *           Label of the chip, at most 31 characters.
+     *
+     * @param  lineCount
+     *           How many lines the chip has.
+     *
+     * @throws IllegalArgumentException
+     *           When the label is too long or the number of lines is not strictly positive.
+     */
+    public GpioSimulatedChip( String label     ,
+                              int    lineCount ) {
+
+        this( label     ,
+              lineCount ,
+              0L        ) ;
+    }
+
+
+
+
+    /**
+     * Constructor specifying when virtual time starts.
+     *
+     * @param  label
+     *           Label of the chip, at most 31 characters.
+     *
+     * @param  lineCount
+     *           How many lines the chip has.
+     *
+     * @param  startNanos
+     *           Initial virtual time in nanoseconds, such as `<strong>System.nanoTime()</strong>` for running in real
+     *           time.
+     *
+     * @throws IllegalArgumentException
+     *           When the label is too long or the number of lines is not strictly positive.
+     */
+    public GpioSimulatedChip( String label      ,
+                              int    lineCount  ,
+                              long   startNanos ) {
+
+        if ( label.length() > 31 ) {
+
+            throw new IllegalArgumentException( "Label length must be < 32" ) ;
+        }
+
+        if ( lineCount <= 0 ) {
+
+            throw new IllegalArgumentException( "Number of lines must be > 0" ) ;
+        }
+
+        this.label     = label                   ;
+        this.values    = new boolean[ lineCount ] ;
+        this.owners    = new Handle[ lineCount ]  ;
+        this.periods   = new long[ lineCount ]    ;
+        this.nextEdges = new long[ lineCount ]    ;
+        this.dropped   = new long[ lineCount ]    ;
+        this.now       = startNanos               ;
+    }
+
+
+
+
+    /**
+     * Closes all GPIO devices and handles which are still open.
+     *
+     * @throws IOException
+     *           When an unplanned error occured.
+     */
+    public synchronized void close() throws IOException {
+
+        List< Integer > fds = new ArrayList<>( this.handles.keySet() ) ;
+
+        fds.addAll( this.devices.keySet() ) ;
+
+        for ( int fd : fds ) {
+
+            if ( this.close( fd ) != 0 ) {
+
+                throw new IOException( "Native error while closing simulated GPIO chip : errno " + this.getErrno() ) ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves the label of this chip.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+
+        return this.label ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many lines this chip has.
+     *
+     * @return Number of lines.
+     */
+    public int getLineCount() {
+
+        return this.values.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves the current virtual time.
+     *
+     * @return Time in nanoseconds.
+     */
+    public synchronized long getNanoTime() {
+
+        return this.now ;
+    }
+
+
+
+
+    // Throws an IllegalArgumentException if a line does not exist.
+    //
+    private void checkLine( int line ) {
+
+        if ( line < 0 || line >= this.values.length ) {
+
+            throw new IllegalArgumentException( "Line " + line + " does not exist on simulated chip '" + this.label + "'" ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Retrieves the physical value of a line, whether it is driven by the simulation or by the application.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @return True if the line is high.
+     *
+     * @throws IllegalArgumentException
+     *           When the line does not exist.
+     */
+    public synchronized boolean getValue( int line ) {
+
+        this.checkLine( line ) ;
+
+        return this.values[ line ] ;
+    }
+
+
+
+
+    /**
+     * Drives a line right now, as an external signal would, generating an event if needed.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @param  value
+     *           Physical value, true for high.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the line does not exist.
+     *
+     * @throws IllegalStateException
+     *           When the line is an output driven by the application.
+     */
+    public synchronized GpioSimulatedChip setValue( int     line  ,
+                                                    boolean value ) {
+
+        this.checkLine( line ) ;
+
+        Handle owner = this.owners[ line ] ;
+
+        if ( owner != null && owner.isOutput ) {
+
+            throw new IllegalStateException( "Line " + line + " is an output driven by the application" ) ;
+        }
+
+        if ( this.values[ line ] != value ) {
+
+            this.toggle( line     ,
+                         this.now ) ;
+
+            this.flush( line ) ;
+        }
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Makes a line toggle by itself at a given rate, from now on.
+     * <p>
+     * Edges are generated as virtual time advances. A line requested as an output does not toggle.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @param  edgesPerSecond
+     *           How many edges per second, rising and falling ones alternating, 0 for stopping.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the line does not exist or the rate is negative.
+     */
+    public synchronized GpioSimulatedChip setEdgeRate( int    line           ,
+                                                       double edgesPerSecond ) {
+
+        this.checkLine( line ) ;
+
+        if ( edgesPerSecond < 0 ) {
+
+            throw new IllegalArgumentException( "Rate of edges must be >= 0" ) ;
+        }
+
+        long period = edgesPerSecond == 0 ? 0
+                                          : Math.max( 1                                  ,
+                                                      Math.round( 1e9 / edgesPerSecond ) ) ;
+
+        this.periods[ line ]   = period            ;
+        this.nextEdges[ line ] = this.now + period ;
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Advances virtual time, generating all edges due in the meantime.
+     *
+     * @param  nanos
+     *           How many nanoseconds.
+     *
+     * @return How many edges were generated.
+     */
+    public synchronized long advance( long nanos ) {
+
+        return this.advanceTo( this.now + nanos ) ;
+    }
+
+
+
+
+    /**
+     * Advances virtual time up to the given time, generating all edges due in the meantime.
+     * <p>
+     * Nothing happens if that time is already past.
+     *
+     * @param  nanoTime
+     *           Time in nanoseconds.
+     *
+     * @return How many edges were generated.
+     */
+    public synchronized long advanceTo( long nanoTime ) {
+
+        if ( nanoTime <= this.now ) {
+
+            return 0 ;
+        }
+
+        long edges = 0 ;
+
+        for ( int line = 0              ;
+              line < this.values.length ;
+              line += 1                 ) {
+
+            long period = this.periods[ line ] ;
+
+            if ( period == 0 ) {
+
+                continue ;
+            }
+
+            Handle owner = this.owners[ line ] ;
+
+            if ( owner != null && owner.isOutput ) {
+
+                // Skips edges while the application drives the line.
+                //
+                if ( this.nextEdges[ line ] <= nanoTime ) {
+
+                    this.nextEdges[ line ] += ( ( nanoTime - this.nextEdges[ line ] ) / period + 1 ) * period ;
+                }
+
+                continue ;
+            }
+
+            while ( this.nextEdges[ line ] <= nanoTime ) {
+
+                this.toggle( line                   ,
+                             this.nextEdges[ line ] ) ;
+
+                this.nextEdges[ line ] += period ;
+                edges                  += 1      ;
+            }
+
+            this.flush( line ) ;
+        }
+
+        this.now = nanoTime ;
+
+        return edges ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many events were dropped for a line because they were not read fast enough.
+     *
+     * @param  line
+     *           Number of the line.
+     *
+     * @return Number of events dropped since the creation of this chip.
+     *
+     * @throws IllegalArgumentException
+     *           When the line does not exist.
+     */
+    public synchronized long getDropped( int line ) {
+
+        this.checkLine( line ) ;
+
+        return this.dropped[ line ] ;
+    }
+
+
+
+
+    // Toggles the physical value of a line and queues an event if the line is monitored for that edge.
+    //
+    private void toggle( int  line      ,
+                         long timestamp ) {
+
+        boolean value = ! this.values[ line ] ;
+
+        this.values[ line ] = value ;
+
+        Handle handle = this.owners[ line ] ;
+
+        if ( handle == null || handle.eventFlags == 0 ) {
+
+            return ;
+        }
+
+        // Edges are logical, and requested edges use the same bits as the ids of events.
+        //
+        int id = value != handle.isActiveLow ? GpioEvent.GPIO_EVENT_RISING_EDGE
+                                             : GpioEvent.GPIO_EVENT_FALLING_EDGE ;
+
+        if ( ( handle.eventFlags & id ) == 0 ) {
+
+            return ;
+        }
+
+        long offset = (long)handle.pending * NativeGpioEventData.BYTES ;
+
+        handle.staging.setLong( offset + NativeGpioEventData.OFFSET_TIMESTAMP ,
+                                timestamp                                     ) ;
+
+        handle.staging.setInt( offset + NativeGpioEventData.OFFSET_ID ,
+                               id                                     ) ;
+
+        handle.pending += 1 ;
+
+        if ( handle.pending == CHUNK ) {
+
+            this.flush( line ) ;
+        }
+    }
+
+
+
+
+    // Writes the pending events of a line to its event handle, dropping them if they do not fit.
+    //
+    private void flush( int line ) {
+
+        Handle handle = this.owners[ line ] ;
+
+        if ( handle == null || handle.pending == 0 ) {
+
+            return ;
+        }
+
+        if ( LinuxIO.write( handle.writeFd                                            ,
+                            handle.staging                                            ,
+                            new SizeT( (long)handle.pending * NativeGpioEventData.BYTES ) ).longValue() < 0 ) {
+
+            this.dropped[ line ] += handle.pending ;
+        }
+
+        handle.pending = 0 ;
+    }
+
+
+
+
+    // Fails a call with the given errno.
+    //
+    private int fail( int errno ) {
+
+        this.errno.get()[ 0 ] = errno ;
+
+        return -1 ;
+    }
+
+
+
+
+    // Creates a pipe whose write end does not block, returns { read end, write end }, or null after failing.
+    //
+    private int[] pipe() {
+
+        int[] fds = new int[ 2 ] ;
+
+        if ( NativeLinux.pipe2( fds                   ,
+                                NativeLinux.O_CLOEXEC ) != 0 ) {
+
+            this.fail( Linux.getErrno() ) ;
+
+            return null ;
+        }
+
+        NativeLinux.fcntl( fds[ 1 ]               ,
+                           NativeLinux.F_SETFL    ,
+                           NativeLinux.O_NONBLOCK ) ;
+
+        return fds ;
+    }
+
+
+
+
+    /**
+     * Opens this simulated chip, the path being ignored.
+     *
+     * @param  path
+     *           Ignored.
+     *
+     * @return File descriptor.
+     *
+     * @throws IOException
+     *           When no file descriptor is available.
+     */
+    @Override
+    public synchronized int open( String path ) throws IOException {
+
+        int[] fds = this.pipe() ;
+
+        if ( fds == null ) {
+
+            throw new IOException( "Native error while opening simulated GPIO chip : errno " + this.getErrno() ) ;
+        }
+
+        this.devices.put( fds[ 0 ] ,
+                          fds[ 1 ] ) ;
+
+        return fds[ 0 ] ;
+    }
+
+
+
+
+    @Override
+    public synchronized int ioctl( int        fd       ,
+                                   NativeLong request  ,
+                                   Pointer    argument ) {
+
+        if ( this.devices.containsKey( fd ) ) {
+
+            if ( request.equals( GpioDevice.GPIO_GET_CHIPINFO_IOCTL ) ) {
+
+                return this.chipInfo( argument ) ;
+            }
+
+            if ( request.equals( GpioDevice.GPIO_GET_LINEINFO_IOCTL ) ) {
+
+                return this.lineInfo( argument ) ;
+            }
+
+            if ( request.equals( GpioDevice.GPIO_GET_LINEHANDLE_IOCTL ) ) {
+
+                return this.requestHandle( argument ) ;
+            }
+
+            if ( request.equals( GpioDevice.GPIO_GET_LINEEVENT_IOCTL ) ) {
+
+                return this.requestEvent( argument ) ;
+            }
+
+            return this.fail( Errno.ENOTTY ) ;
+        }
+
+        Handle handle = this.handles.get( fd ) ;
+
+        if ( handle == null ) {
+
+            return this.fail( Errno.EBADF ) ;
+        }
+
+        if ( request.equals( GpioHandle.GPIOHANDLE_GET_LINE_VALUES_IOCTL ) ) {
+
+            for ( int i = 0                 ;
+                  i < handle.lines.length ;
+                  i += 1                  ) {
+
+                boolean value = this.values[ handle.lines[ i ] ] != handle.isActiveLow ;
+
+                argument.setByte( i                ,
+                                  (byte)( value ? 1
+                                                : 0 ) ) ;
+            }
+
+            return 0 ;
+        }
+
+        if ( request.equals( GpioHandle.GPIOHANDLE_SET_LINE_VALUES_IOCTL ) ) {
+
+            if ( handle.isOutput == false ) {
+
+                return this.fail( Errno.EPERM ) ;
+            }
+
+            for ( int i = 0                 ;
+                  i < handle.lines.length ;
+                  i += 1                  ) {
+
+                this.values[ handle.lines[ i ] ] = ( argument.getByte( i ) != 0 ) != handle.isActiveLow ;
+            }
+
+            return 0 ;
+        }
+
+        return this.fail( Errno.ENOTTY ) ;
+    }
+
+
+
+
+    // Fills information about the chip.
+    //
+    private int chipInfo( Pointer info ) {
+
+        info.setString( NativeGpioChipInfo.OFFSET_NAME ,
+                        NAME                           ) ;
+
+        info.setString( NativeGpioChipInfo.OFFSET_LABEL ,
+                        this.label                      ) ;
+
+        info.setInt( NativeGpioChipInfo.OFFSET_LINES ,
+                     this.values.length              ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    // Fills information about the requested line.
+    //
+    private int lineInfo( Pointer info ) {
+
+        int line = info.getInt( NativeGpioLineInfo.OFFSET_LINE ) ;
+
+        if ( line < 0 || line >= this.values.length ) {
+
+            return this.fail( Errno.EINVAL ) ;
+        }
+
+        Handle owner = this.owners[ line ] ;
+        int    flags = 0                   ;
+
+        if ( owner != null ) {
+
+            flags |= GpioFlags.LineInfoFlags.KERNEL ;
+
+            if ( owner.isOutput ) {
+
+                flags |= GpioFlags.LineInfoFlags.IS_OUT ;
+            }
+
+            if ( owner.isActiveLow ) {
+
+                flags |= GpioFlags.LineInfoFlags.ACTIVE_LOW ;
+            }
+        }
+
+        info.setInt( NativeGpioLineInfo.OFFSET_FLAGS ,
+                     flags                           ) ;
+
+        info.setString( NativeGpioLineInfo.OFFSET_NAME ,
+                        "sim-" + line                  ) ;
+
+        info.setString( NativeGpioLineInfo.OFFSET_CONSUMER            ,
+                        owner == null ? ""
+                                      : owner.consumer                ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    // Registers a handle or an event handle for the given lines, returns its file descriptor or -1 after failing.
+    //
+    private int register( int[]   lines       ,
+                          String  consumer    ,
+                          boolean isOutput    ,
+                          boolean isActiveLow ,
+                          int     eventFlags  ) {
+
+        for ( int i = 0        ;
+              i < lines.length ;
+              i += 1           ) {
+
+            if ( lines[ i ] < 0 || lines[ i ] >= this.values.length ) {
+
+                return this.fail( Errno.EINVAL ) ;
+            }
+
+            if ( this.owners[ lines[ i ] ] != null ) {
+
+                return this.fail( Errno.EBUSY ) ;
+            }
+
+            for ( int j = 0 ;
+                  j < i     ;
+                  j += 1    ) {
+
+                if ( lines[ j ] == lines[ i ] ) {
+
+                    return this.fail( Errno.EBUSY ) ;
+                }
+            }
+        }
+
+        int[] fds = this.pipe() ;
+
+        if ( fds == null ) {
+
+            return -1 ;
+        }
+
+        Handle handle = new Handle( fds[ 0 ]    ,
+                                    fds[ 1 ]    ,
+                                    lines       ,
+                                    consumer    ,
+                                    isOutput    ,
+                                    isActiveLow ,
+                                    eventFlags  ) ;
+
+        for ( int line : lines ) {
+
+            this.owners[ line ] = handle ;
+        }
+
+        this.handles.put( handle.fd ,
+                          handle    ) ;
+
+        return handle.fd ;
+    }
+
+
+
+
+    // Requests a handle.
+    //
+    private int requestHandle( Pointer request ) {
+
+        int count = request.getInt( NativeGpioHandleRequest.OFFSET_LINES ) ;
+
+        if ( count <= 0 || count > NativeGpioHandleRequest.GPIOHANDLES_MAX ) {
+
+            return this.fail( Errno.EINVAL ) ;
+        }
+
+        int     flags       = request.getInt( NativeGpioHandleRequest.OFFSET_FLAGS )            ;
+        boolean isOutput    = ( flags & GpioFlags.RequestFlags.OUTPUT     ) != 0               ;
+        boolean isActiveLow = ( flags & GpioFlags.RequestFlags.ACTIVE_LOW ) != 0               ;
+        int[]   lines       = request.getIntArray( NativeGpioHandleRequest.OFFSET_LINE_OFFSETS ,
+                                                   count                                       ) ;
+
+        int fd = this.register( lines                                                        ,
+                                request.getString( NativeGpioHandleRequest.OFFSET_CONSUMER ) ,
+                                isOutput                                                     ,
+                                isActiveLow                                                  ,
+                                0                                                            ) ;
+
+        if ( fd < 0 ) {
+
+            return -1 ;
+        }
+
+        if ( isOutput ) {
+
+            for ( int i = 0        ;
+                  i < lines.length ;
+                  i += 1           ) {
+
+                this.values[ lines[ i ] ] = ( request.getByte( NativeGpioHandleRequest.OFFSET_DEFAULT_VALUES + i ) != 0 ) != isActiveLow ;
+            }
+        }
+
+        request.setInt( NativeGpioHandleRequest.OFFSET_FD ,
+                        fd                                ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    // Requests an event handle.
+    //
+    private int requestEvent( Pointer request ) {
+
+        int flags      = request.getInt( NativeGpioEventRequest.OFFSET_HANDLE_FLAGS ) ;
+        int eventFlags = request.getInt( NativeGpioEventRequest.OFFSET_EVENT_FLAGS )  ;
+
+        if ( ( flags & GpioFlags.RequestFlags.OUTPUT ) != 0 || eventFlags == 0 ) {
+
+            return this.fail( Errno.EINVAL ) ;
+        }
+
+        int fd = this.register( new int[] { request.getInt( NativeGpioEventRequest.OFFSET_LINE ) } ,
+                                request.getString( NativeGpioEventRequest.OFFSET_CONSUMER )        ,
+                                false                                                              ,
+                                ( flags & GpioFlags.RequestFlags.ACTIVE_LOW ) != 0                 ,
+                                eventFlags                                                         ) ;
+
+        if ( fd < 0 ) {
+
+            return -1 ;
+        }
+
+        request.setInt( NativeGpioEventRequest.OFFSET_FD ,
+                        fd                               ) ;
+
+        return 0 ;
+    }
+
+
+
+
+    @Override
+    public synchronized int close( int fd ) {
+
+        Integer writeFd = this.devices.remove( fd ) ;
+
+        if ( writeFd == null ) {
+
+            Handle handle = this.handles.remove( fd ) ;
+
+            if ( handle == null ) {
+
+                return this.fail( Errno.EBADF ) ;
+            }
+
+            for ( int line : handle.lines ) {
+
+                this.owners[ line ] = null ;
+            }
+
+            writeFd = handle.writeFd ;
+        }
+
+        LinuxIO.close( writeFd ) ;
+
+        if ( LinuxIO.close( fd ) != 0 ) {
+
+            return this.fail( Linux.getErrno() ) ;
+        }
+
+        return 0 ;
+    }
+
+
+
+
+    @Override
+    public int getErrno() {
+
+        return this.errno.get()[ 0 ] ;
+    }
+}
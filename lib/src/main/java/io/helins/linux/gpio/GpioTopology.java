@@ -0,0 +1,850 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioChipInfo ;
+import io.helins.linux.gpio.GpioDevice   ;
+import io.helins.linux.gpio.GpioFlags    ;
+import io.helins.linux.gpio.GpioLineInfo ;
+import io.helins.linux.gpio.GpioUtils    ;
+import java.io.FileNotFoundException     ;
+import java.io.IOException               ;
+import java.io.UncheckedIOException      ;
+import java.nio.file.Files               ;
+import java.nio.file.Path                ;
+import java.nio.file.Paths               ;
+import java.util.ArrayList               ;
+import java.util.Arrays                  ;
+import java.util.HashMap                 ;
+import java.util.List                    ;
+import java.util.Map                     ;
+import java.util.stream.IntStream        ;
+import java.util.stream.Stream           ;
+
+
+
+
+/**
+ * Class indexing the GPIO lines of all GPIO devices of the machine, so that lines can be resolved by name without
+ * requesting anything.
+ * <p>
+ * Refreshing scans all '/dev/gpiochipX' devices in parallel and stores the name, consumer, and flags of each line in
+ * compact tables, one per chip. Looking up a line by name then takes constant time and does not allocate anything.
+ * When several lines share the same name, the one from the chip with the lowest number wins.
+ * <p>
+ * A single chip can be rescanned when it is known to have changed, such as when it is plugged in. The consumer and flags
+ * of a single line can be updated from information already obtained, such as a change of a watched line.
+ * <p>
+ * Any thread can query the topology while it is being refreshed. Queries see either the previous state of a chip or
+ * the new one. Refreshes happen one at a time and updates made during a refresh are applied to what it scanned, so
+ * that older information never replaces newer one.
+ *
+ * @see GpioDevice#watchLineInfo(int, GpioLineInfo)
+ */
+public class GpioTopology {
+
+
+    /**
+     * Returned by a lookup when no line has the requested name.
+     */
+    public static final long NOT_FOUND = -1 ;
+
+
+    /**
+     * Default directory where GPIO devices are found.
+     */
+    public static final String DEFAULT_DIRECTORY = "/dev" ;
+
+
+
+
+    // Prefix of the file name of a GPIO device.
+    //
+    static final String CHIP_PREFIX = "gpiochip" ;
+
+
+
+
+    // Tables describing the lines of a chip, indexed by line number.
+    //
+    private static final class Chip {
+
+        final int      number    ;
+        final String   label     ;
+        final String   name      ;
+        final String[] names     ;
+        final String[] consumers ;
+        final int[]    flags     ;
+
+        Chip( int      number    ,
+              String   label     ,
+              String   name      ,
+              String[] names     ,
+              String[] consumers ,
+              int[]    flags     ) {
+
+            this.number    = number    ;
+            this.label     = label     ;
+            this.name      = name      ;
+            this.names     = names     ;
+            this.consumers = consumers ;
+            this.flags     = flags     ;
+        }
+    }
+
+
+
+
+    // Update of the consumer and flags of a line.
+    //
+    private static final class Update {
+
+        final int    chip     ;
+        final int    offset   ;
+        final String consumer ;
+        final int    flags    ;
+
+        Update( int    chip     ,
+                int    offset   ,
+                String consumer ,
+                int    flags    ) {
+
+            this.chip     = chip     ;
+            this.offset   = offset   ;
+            this.consumer = consumer ;
+            this.flags    = flags    ;
+        }
+    }
+
+
+
+
+    // Chips indexed by number, null when absent, along with the index of line names.
+    //
+    // Never modified once published.
+    //
+    private static final class Snapshot {
+
+        final Chip[]              chips ;
+        final Map< String, Long > index ;
+
+        Snapshot( Chip[]              chips ,
+                  Map< String, Long > index ) {
+
+            this.chips = chips ;
+            this.index = index ;
+        }
+
+        Snapshot( Chip[] chips ) {
+
+            this.chips = chips           ;
+            this.index = new HashMap<>() ;
+
+            for ( Chip chip : chips ) {
+
+                if ( chip != null ) {
+
+                    for ( int offset = 0             ;
+                          offset < chip.names.length ;
+                          offset += 1                ) {
+
+                        if ( chip.names[ offset ] != null ) {
+
+                            this.index.putIfAbsent( chip.names[ offset ]           ,
+                                                    encode( chip.number ,
+                                                            offset      ) ) ;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+
+
+    // Directory where GPIO devices are found.
+    //
+    private final Path directory ;
+
+
+    // Current state.
+    //
+    private volatile Snapshot snapshot = new Snapshot( new Chip[ 0 ] ) ;
+
+
+    // Serializes refreshes so that an older scan never replaces a newer one.
+    //
+    private final Object refreshLock = new Object() ;
+
+
+    // Updates made while a refresh is scanning, re-applied to what it scanned, null when not refreshing.
+    //
+    // Guarded by this instance.
+    //
+    private List< Update > pendingUpdates = null ;
+
+
+
+
+    /**
+     * Basic constructor, using the default directory.
+     * <p>
+     * The topology is empty until refreshed.
+     */
+    public GpioTopology() {
+
+        this( Paths.get( DEFAULT_DIRECTORY ) ) ;
+    }
+
+
+
+
+    /**
+     * Constructor specifying where GPIO devices are found.
+     * <p>
+     * The topology is empty until refreshed.
+     *
+     * @param  directory
+     *           Directory containing the GPIO devices.
+     */
+    public GpioTopology( Path directory ) {
+
+        this.directory = directory ;
+    }
+
+
+
+
+    // Packs the address of a line.
+    //
+    private static long encode( int chip   ,
+                                int offset ) {
+
+        return ( (long)chip << 32 ) | ( offset & 0xffffffffL ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the number of the chip from the address of a line.
+     *
+     * @param  address
+     *           Address returned by a lookup.
+     *
+     * @return The number of the chip.
+     *
+     * @see #lookup(String)
+     */
+    public static int chipOf( long address ) {
+
+        return (int)( address >>> 32 ) ;
+    }
+
+
+
+
+    /**
+     * Retrieves the number of the line within its chip from the address of a line.
+     *
+     * @param  address
+     *           Address returned by a lookup.
+     *
+     * @return The number of the line.
+     *
+     * @see #lookup(String)
+     */
+    public static int offsetOf( long address ) {
+
+        return (int)address ;
+    }
+
+
+
+
+    // Lists the numbers of the GPIO devices found in a directory, sorted.
+    //
+    static int[] listChips( Path directory ) throws IOException {
+
+        try ( Stream< Path > paths = Files.list( directory ) ) {
+
+            return paths.mapToInt( path -> parseChip( path.getFileName().toString() ) )
+                        .filter( number -> number >= 0 )
+                        .sorted()
+                        .toArray() ;
+        }
+    }
+
+
+
+
+    // Parses the number of a GPIO device from its file name, -1 if it is not a GPIO device.
+    //
+    static int parseChip( String fileName ) {
+
+        if ( fileName.startsWith( CHIP_PREFIX ) == false || fileName.length() == CHIP_PREFIX.length() ) {
+
+            return -1 ;
+        }
+
+        int number = 0 ;
+
+        for ( int i = CHIP_PREFIX.length() ;
+              i < fileName.length()        ;
+              i += 1                       ) {
+
+            char c = fileName.charAt( i ) ;
+
+            if ( c < '0' || c > '9' || number > 100000 ) {
+
+                return -1 ;
+            }
+
+            number = number * 10 + ( c - '0' ) ;
+        }
+
+        return number ;
+    }
+
+
+
+
+    // Scans a chip, returns null if it does not exist or is not accessible.
+    //
+    private Chip scan( int number ) throws IOException {
+
+        GpioDevice device ;
+
+        try {
+
+            device = new GpioDevice( this.directory.resolve( CHIP_PREFIX + number ).toString() ) ;
+        }
+
+        catch ( FileNotFoundException e ) {
+
+            return null ;
+        }
+
+        try ( device ) {
+
+            GpioChipInfo chipInfo = device.requestChipInfo() ;
+            GpioLineInfo lineInfo = new GpioLineInfo()       ;
+            int          nLines   = chipInfo.getLines()      ;
+
+            String[] names     = new String[ nLines ] ;
+            String[] consumers = new String[ nLines ] ;
+            int[]    flags     = new int[ nLines ]    ;
+
+            for ( int offset = 0  ;
+                  offset < nLines ;
+                  offset += 1     ) {
+
+                device.requestLineInfo( offset   ,
+                                        lineInfo ) ;
+
+                names[ offset ]     = lineInfo.getName()     ;
+                consumers[ offset ] = lineInfo.getConsumer() ;
+                flags[ offset ]     = lineInfo.getRawFlags() ;
+            }
+
+            return new Chip( number              ,
+                             chipInfo.getLabel() ,
+                             chipInfo.getName()  ,
+                             names               ,
+                             consumers           ,
+                             flags               ) ;
+        }
+    }
+
+
+
+
+    // Starts recording updates until the scan about to happen is published.
+    //
+    private synchronized void startScanning() {
+
+        this.pendingUpdates = new ArrayList<>() ;
+    }
+
+
+
+
+    // Stops recording updates, such as when a scan fails.
+    //
+    private synchronized void stopScanning() {
+
+        this.pendingUpdates = null ;
+    }
+
+
+
+
+    // Publishes a new state where the given chips are replaced, null chips being removed.
+    //
+    // When `isComplete` is true, chips which are not given are removed as well. Updates recorded while scanning are
+    // re-applied to the scanned chips, which are not published yet.
+    //
+    private synchronized void publish( int[]   numbers    ,
+                                       Chip[]  scanned    ,
+                                       boolean isComplete ) {
+
+        if ( this.pendingUpdates != null ) {
+
+            for ( Update update : this.pendingUpdates ) {
+
+                for ( int i = 0          ;
+                      i < numbers.length ;
+                      i += 1             ) {
+
+                    Chip chip = scanned[ i ] ;
+
+                    if ( numbers[ i ] == update.chip && chip != null && update.offset < chip.names.length ) {
+
+                        chip.consumers[ update.offset ] = update.consumer ;
+                        chip.flags[ update.offset ]     = update.flags    ;
+                    }
+                }
+            }
+
+            this.pendingUpdates = null ;
+        }
+
+        Chip[] chips = isComplete ? new Chip[ 0 ]
+                                  : this.snapshot.chips ;
+
+        int length = chips.length ;
+
+        for ( int number : numbers ) {
+
+            length = Math.max( length     ,
+                               number + 1 ) ;
+        }
+
+        chips = Arrays.copyOf( chips  ,
+                               length ) ;
+
+        for ( int i = 0          ;
+              i < numbers.length ;
+              i += 1             ) {
+
+            chips[ numbers[ i ] ] = scanned[ i ] ;
+        }
+
+        this.snapshot = new Snapshot( chips ) ;
+    }
+
+
+
+
+    // Adds or replaces a chip without scanning anything.
+    //
+    void put( int      number    ,
+              String   label     ,
+              String[] names     ,
+              String[] consumers ,
+              int[]    flags     ) {
+
+        Chip chip = new Chip( number               ,
+                              label                ,
+                              CHIP_PREFIX + number ,
+                              names                ,
+                              consumers            ,
+                              flags                ) ;
+
+        synchronized ( this.refreshLock ) {
+
+            this.publish( new int[] { number } ,
+                          new Chip[] { chip }  ,
+                          false                ) ;
+        }
+    }
+
+
+
+
+    /**
+     * Scans all GPIO devices in parallel and replaces the whole topology.
+     *
+     * @return This instance.
+     *
+     * @throws IOException
+     *           When a GPIO device could not be scanned.
+     */
+    public GpioTopology refresh() throws IOException {
+
+        synchronized ( this.refreshLock ) {
+
+            this.startScanning() ;
+
+            try {
+
+                int[]  numbers = listChips( this.directory ) ;
+                Chip[] scanned = new Chip[ numbers.length ]  ;
+
+                IntStream.range( 0              ,
+                                 numbers.length ).parallel()
+                                                 .forEach( i -> {
+
+                    try {
+
+                        scanned[ i ] = this.scan( numbers[ i ] ) ;
+                    }
+
+                    catch ( IOException e ) {
+
+                        throw new UncheckedIOException( e ) ;
+                    }
+                } ) ;
+
+                this.publish( numbers ,
+                              scanned ,
+                              true    ) ;
+            }
+
+            catch ( UncheckedIOException e ) {
+
+                throw e.getCause() ;
+            }
+
+            finally {
+
+                this.stopScanning() ;
+            }
+        }
+
+        return this ;
+    }
+
+
+
+
+    /**
+     * Rescans a single GPIO device, removing it from the topology if it does not exist anymore.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return True if the chip is now part of the topology.
+     *
+     * @throws IOException
+     *           When the GPIO device could not be scanned.
+     */
+    public boolean refresh( int chip ) throws IOException {
+
+        synchronized ( this.refreshLock ) {
+
+            this.startScanning() ;
+
+            try {
+
+                Chip scanned = this.scan( chip ) ;
+
+                this.publish( new int[] { chip }     ,
+                              new Chip[] { scanned } ,
+                              false                  ) ;
+
+                return scanned != null ;
+            }
+
+            finally {
+
+                this.stopScanning() ;
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Updates the consumer and flags of a line from information already obtained, without scanning anything.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @param  info
+     *           Information about the line, such as the one of a change of a watched line.
+     *
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException
+     *           When the chip or the line is not part of the topology.
+     *
+     * @see GpioLineInfoChange#getLineInfo()
+     */
+    public synchronized GpioTopology update( int          chip ,
+                                             GpioLineInfo info ) {
+
+        Chip tables = this.chip( chip ) ;
+        int  offset = this.checkOffset( tables         ,
+                                        info.getLine() ) ;
+
+        // Published tables are copied rather than modified, so that readers always see consistent ones.
+        //
+        Chip updated = new Chip( tables.number            ,
+                                 tables.label             ,
+                                 tables.name              ,
+                                 tables.names             ,
+                                 tables.consumers.clone() ,
+                                 tables.flags.clone()     ) ;
+
+        updated.consumers[ offset ] = info.getConsumer() ;
+        updated.flags[ offset ]     = info.getRawFlags() ;
+
+        Chip[] chips = this.snapshot.chips.clone() ;
+
+        chips[ chip ] = updated ;
+
+        this.snapshot = new Snapshot( chips               ,
+                                      this.snapshot.index ) ;
+
+        if ( this.pendingUpdates != null ) {
+
+            this.pendingUpdates.add( new Update( chip               ,
+                                                 offset             ,
+                                                 info.getConsumer() ,
+                                                 info.getRawFlags() ) ) ;
+        }
+
+        return this ;
+    }
+
+
+
+
+    // Retrieves a chip, throws if it is not part of the topology.
+    //
+    private Chip chip( int number ) {
+
+        Chip[] chips = this.snapshot.chips ;
+
+        if ( number < 0 || number >= chips.length || chips[ number ] == null ) {
+
+            throw new IllegalArgumentException( "GPIO chip not part of the topology : " + number ) ;
+        }
+
+        return chips[ number ] ;
+    }
+
+
+
+
+    // Throws if a line does not exist in the given chip.
+    //
+    private int checkOffset( Chip chip   ,
+                             int  offset ) {
+
+        if ( offset < 0 || offset >= chip.names.length ) {
+
+            throw new IllegalArgumentException( "GPIO line " + offset + " does not exist on chip " + chip.number ) ;
+        }
+
+        return offset ;
+    }
+
+
+
+
+    /**
+     * Finds a line by name.
+     *
+     * @param  name
+     *           Name of the line, as provided by the device tree.
+     *
+     * @return The address of the line, or `<strong>NOT_FOUND</strong>`.
+     *
+     * @see #chipOf(long)
+     * @see #offsetOf(long)
+     */
+    public long lookup( String name ) {
+
+        Long address = this.snapshot.index.get( name ) ;
+
+        return address == null ? NOT_FOUND
+                               : address ;
+    }
+
+
+
+
+    /**
+     * Retrieves the numbers of the chips part of this topology.
+     *
+     * @return Numbers of the chips, sorted.
+     */
+    public int[] getChips() {
+
+        return Arrays.stream( this.snapshot.chips )
+                     .filter( chip -> chip != null )
+                     .mapToInt( chip -> chip.number )
+                     .toArray() ;
+    }
+
+
+
+
+    /**
+     * Retrieves the label of a chip.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return The label.
+     *
+     * @throws IllegalArgumentException
+     *           When the chip is not part of the topology.
+     */
+    public String getLabel( int chip ) {
+
+        return this.chip( chip ).label ;
+    }
+
+
+
+
+    /**
+     * Retrieves the name of a chip, such as "gpiochip0".
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return The name.
+     *
+     * @throws IllegalArgumentException
+     *           When the chip is not part of the topology.
+     */
+    public String getName( int chip ) {
+
+        return this.chip( chip ).name ;
+    }
+
+
+
+
+    /**
+     * Retrieves how many lines a chip has.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @return The number of lines.
+     *
+     * @throws IllegalArgumentException
+     *           When the chip is not part of the topology.
+     */
+    public int getLineCount( int chip ) {
+
+        return this.chip( chip ).names.length ;
+    }
+
+
+
+
+    /**
+     * Retrieves the name of a line.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @param  offset
+     *           Number of the line within the chip.
+     *
+     * @return The name, null if the line has none.
+     *
+     * @throws IllegalArgumentException
+     *           When the line is not part of the topology.
+     */
+    public String getLineName( int chip   ,
+                               int offset ) {
+
+        Chip tables = this.chip( chip ) ;
+
+        return tables.names[ this.checkOffset( tables ,
+                                               offset ) ] ;
+    }
+
+
+
+
+    /**
+     * Retrieves the consumer of a line, as last known.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @param  offset
+     *           Number of the line within the chip.
+     *
+     * @return The consumer, null if there is none.
+     *
+     * @throws IllegalArgumentException
+     *           When the line is not part of the topology.
+     */
+    public String getConsumer( int chip   ,
+                               int offset ) {
+
+        Chip tables = this.chip( chip ) ;
+
+        return tables.consumers[ this.checkOffset( tables ,
+                                                   offset ) ] ;
+    }
+
+
+
+
+    /**
+     * Retrieves the flags of a line, as last known.
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @param  offset
+     *           Number of the line within the chip.
+     *
+     * @return The flags.
+     *
+     * @throws IllegalArgumentException
+     *           When the line is not part of the topology.
+     */
+    public GpioFlags getFlags( int chip   ,
+                               int offset ) {
+
+        Chip tables = this.chip( chip ) ;
+
+        return new GpioFlags().fromLineInfo( tables.flags[ this.checkOffset( tables ,
+                                                                             offset ) ] ) ;
+    }
+
+
+
+
+    /**
+     * Is a line used, as last known ?
+     *
+     * @param  chip
+     *           Number of the chip.
+     *
+     * @param  offset
+     *           Number of the line within the chip.
+     *
+     * @return True if the line is used.
+     *
+     * @throws IllegalArgumentException
+     *           When the line is not part of the topology.
+     */
+    public boolean isUsed( int chip   ,
+                           int offset ) {
+
+        Chip tables = this.chip( chip ) ;
+
+        return GpioUtils.isSet( tables.flags[ this.checkOffset( tables ,
+                                                                offset ) ] ,
+                                GpioFlags.LineInfoFlags.KERNEL             ) ;
+    }
+}
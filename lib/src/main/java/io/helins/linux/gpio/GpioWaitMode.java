@@ -0,0 +1,71 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import java.util.concurrent.locks.LockSupport ;
+
+
+
+
+/**
+ * Enum representing how a thread waits when it has nothing to do.
+ * <p>
+ * Going from spinning to blocking, latency increases while CPU usage decreases.
+ *
+ * @see GpioEventRing
+ * @see GpioWaitStrategy
+ */
+public enum GpioWaitMode {
+
+
+    /**
+     * Busy-spins, burning a core for the lowest latency.
+     */
+    SPIN  ,
+
+    /**
+     * Yields to other threads before trying again.
+     */
+    YIELD ,
+
+    /**
+     * Parks briefly before trying again.
+     */
+    PARK  ,
+
+    /**
+     * Blocks in the kernel until something happens.
+     * <p>
+     * Only meaningful for an event watcher, behaves like `<strong>PARK</strong>` anywhere else.
+     */
+    BLOCK ;
+
+
+
+
+    // How long a thread parks, in nanoseconds.
+    //
+    static final long PARK_NANOS = 50000L ;
+
+
+
+
+    // Waits once according to this mode.
+    //
+    void idle() {
+
+        switch ( this ) {
+
+            case SPIN  : Thread.onSpinWait()                  ; break ;
+
+            case YIELD : Thread.yield()                       ; break ;
+
+            default    : LockSupport.parkNanos( PARK_NANOS )  ; break ;
+        }
+    }
+}
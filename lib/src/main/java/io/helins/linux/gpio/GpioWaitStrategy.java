@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import io.helins.linux.gpio.GpioWaitMode ;
+
+
+
+
+/**
+ * Interface for deciding how an event watcher waits for events.
+ * <p>
+ * When waiting, an event watcher first checks if a handle is ready without blocking. If none is, it asks its
+ * strategy how to wait before checking again. Whenever the strategy answers `<strong>BLOCK</strong>`, the watcher
+ * blocks in the kernel until an event happens or the timeout elapses.
+ * <p>
+ * A strategy is called only by the thread waiting on the watcher.
+ *
+ * @see GpioEventWatcher#setWaitStrategy(GpioWaitStrategy)
+ */
+public interface GpioWaitStrategy {
+
+
+    /**
+     * Creates a strategy busy-polling for a while before blocking.
+     *
+     * @param  spinNanos
+     *           How long to busy-poll before blocking, in nanoseconds, `<strong>Long.MAX_VALUE</strong>` meaning never
+     *           blocking.
+     *
+     * @return A strategy.
+     */
+    static GpioWaitStrategy busyPoll( long spinNanos ) {
+
+        return new GpioWaitStrategy() {
+
+            @Override
+            public void onEvent( long nanoTimestamp ) {}
+
+            @Override
+            public GpioWaitMode idle( long idleNanos ) {
+
+                return idleNanos < spinNanos ? GpioWaitMode.SPIN
+                                             : GpioWaitMode.BLOCK ;
+            }
+        } ;
+    }
+
+
+
+
+    /**
+     * Called for every event read by the watcher.
+     *
+     * @param nanoTimestamp
+     *          Kernel timestamp of the event.
+     *
+     * @see GpioEvent#getNanoTimestamp()
+     */
+    void onEvent( long nanoTimestamp ) ;
+
+
+
+
+    /**
+     * Called when no handle is ready.
+     *
+     * @param  idleNanos
+     *           For how long the watcher has been waiting so far, in nanoseconds.
+     *
+     * @return How to wait before checking again.
+     */
+    GpioWaitMode idle( long idleNanos ) ;
+}
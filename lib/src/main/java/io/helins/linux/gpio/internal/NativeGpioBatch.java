@@ -0,0 +1,84 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Native     ;
+import com.sun.jna.NativeLong ;
+import com.sun.jna.Pointer    ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ * <p>
+ * Binds the optional native shim running sequences of GPIO operations in a single native call. It is used when
+ * `libgpiobatch.so` is found by JNA, such as in a directory given by `-Djna.library.path`.
+ */
+public class NativeGpioBatch {
+
+
+    public static final String LIBRARY = "gpiobatch" ;
+
+
+    /**
+     * Has the native shim been loaded ?
+     */
+    public static final boolean IS_AVAILABLE ;
+
+
+    static {
+
+        boolean isAvailable ;
+
+        try {
+
+            Native.register( LIBRARY ) ;
+
+            isAvailable = true ;
+        }
+
+        catch ( UnsatisfiedLinkError e ) {
+
+            isAvailable = false ;
+        }
+
+        IS_AVAILABLE = isAvailable ;
+    }
+
+
+
+
+    public static native int gpio_batch_write( int        fd           ,
+                                               NativeLong request      ,
+                                               Pointer    states       ,
+                                               int        count        ,
+                                               long       spacingNanos ,
+                                               int[]      error        ) ;
+
+
+
+
+    public static native int gpio_batch_read( int        fd           ,
+                                              NativeLong request      ,
+                                              Pointer    states       ,
+                                              long[]     timestamps   ,
+                                              int        count        ,
+                                              long       spacingNanos ,
+                                              int[]      error        ) ;
+
+
+
+
+    public static native int gpio_batch_read_events( int     fd           ,
+                                                     Pointer buffer       ,
+                                                     int     eventSize    ,
+                                                     int     maxEvents    ,
+                                                     long    timeoutNanos ,
+                                                     int[]   error        ) ;
+}
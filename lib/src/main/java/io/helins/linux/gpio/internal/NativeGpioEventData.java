@@ -29,7 +29,22 @@ public class NativeGpioEventData extends Structure {
     private int offsetId        = this.fieldOffset( "id" )        ;
 
 
-    public static final SizeT SIZE = new SizeT( ( new NativeGpioEventData()).size() ) ;
+    public static final int OFFSET_TIMESTAMP ;
+    public static final int OFFSET_ID        ;
+    public static final int BYTES            ;
+
+    public static final SizeT SIZE ;
+
+
+    static {
+
+        NativeGpioEventData nativeStruct = new NativeGpioEventData() ;
+
+        OFFSET_TIMESTAMP = nativeStruct.offsetTimestamp ;
+        OFFSET_ID        = nativeStruct.offsetId        ;
+        BYTES            = nativeStruct.size()          ;
+        SIZE             = new SizeT( BYTES )           ;
+    }
 
 
 
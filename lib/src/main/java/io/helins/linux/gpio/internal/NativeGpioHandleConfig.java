@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure ;
+import java.util.Arrays      ;
+import java.util.List        ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioHandleConfig extends Structure {
+
+
+    public static final int GPIOHANDLES_MAX = 64 ;
+
+
+    public int    flags         = 0                           ;
+    public byte[] defaultValues = new byte[ GPIOHANDLES_MAX ] ;
+    public int[]  padding       = new int[ 4 ]                ;
+
+
+    public static final int OFFSET_FLAGS          ;
+    public static final int OFFSET_DEFAULT_VALUES ;
+    public static final int SIZE                  ;
+
+
+    static {
+
+        NativeGpioHandleConfig nativeStruct = new NativeGpioHandleConfig() ;
+
+        OFFSET_FLAGS          = nativeStruct.fieldOffset( "flags"         ) ;
+        OFFSET_DEFAULT_VALUES = nativeStruct.fieldOffset( "defaultValues" ) ;
+        SIZE                  = nativeStruct.size()                         ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "flags"         ,
+                                             "defaultValues" ,
+                                             "padding"       } ) ;
+    }
+}
@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure ;
+import java.util.Arrays      ;
+import java.util.List        ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineConfig extends Structure {
+
+
+    public static final int GPIO_V2_LINE_NUM_ATTRS_MAX = 10 ;
+    public static final int ATTRIBUTE_BYTES            = 24 ;
+
+
+    public long   flags    = 0                                                        ;
+    public int    numAttrs = 0                                                        ;
+    public int[]  padding  = new int[ 5 ]                                             ;
+    public byte[] attrs    = new byte[ GPIO_V2_LINE_NUM_ATTRS_MAX * ATTRIBUTE_BYTES ] ;
+
+
+    public static final int OFFSET_FLAGS     ;
+    public static final int OFFSET_NUM_ATTRS ;
+    public static final int OFFSET_ATTRS     ;
+    public static final int SIZE             ;
+
+
+    static {
+
+        NativeGpioLineConfig nativeStruct = new NativeGpioLineConfig() ;
+
+        OFFSET_FLAGS     = nativeStruct.fieldOffset( "flags"    ) ;
+        OFFSET_NUM_ATTRS = nativeStruct.fieldOffset( "numAttrs" ) ;
+        OFFSET_ATTRS     = nativeStruct.fieldOffset( "attrs"    ) ;
+        SIZE             = nativeStruct.size()                    ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "flags"    ,
+                                             "numAttrs" ,
+                                             "padding"  ,
+                                             "attrs"    } ) ;
+    }
+}
@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure ;
+import java.util.Arrays      ;
+import java.util.List        ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineConfigAttribute extends Structure {
+
+
+    public static final int GPIO_V2_LINE_ATTR_ID_FLAGS         = 1 ;
+    public static final int GPIO_V2_LINE_ATTR_ID_OUTPUT_VALUES = 2 ;
+    public static final int GPIO_V2_LINE_ATTR_ID_DEBOUNCE      = 3 ;
+
+
+    public int  id      = 0 ;
+    public int  padding = 0 ;
+    public long value   = 0 ;
+    public long mask    = 0 ;
+
+
+    public static final int OFFSET_ID    ;
+    public static final int OFFSET_VALUE ;
+    public static final int OFFSET_MASK  ;
+    public static final int SIZE         ;
+
+
+    static {
+
+        NativeGpioLineConfigAttribute nativeStruct = new NativeGpioLineConfigAttribute() ;
+
+        OFFSET_ID    = nativeStruct.fieldOffset( "id"    ) ;
+        OFFSET_VALUE = nativeStruct.fieldOffset( "value" ) ;
+        OFFSET_MASK  = nativeStruct.fieldOffset( "mask"  ) ;
+        SIZE         = nativeStruct.size()                 ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "id"      ,
+                                             "padding" ,
+                                             "value"   ,
+                                             "mask"    } ) ;
+    }
+}
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure ;
+import io.helins.linux.SizeT ;
+import java.util.Arrays      ;
+import java.util.List        ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineEvent extends Structure {
+
+
+    public long  timestamp = 0            ;
+    public int   id        = 0            ;
+    public int   offset    = 0            ;
+    public int   seqno     = 0            ;
+    public int   lineSeqno = 0            ;
+    public int[] padding   = new int[ 6 ] ;
+
+
+    public static final int OFFSET_TIMESTAMP  ;
+    public static final int OFFSET_ID         ;
+    public static final int OFFSET_OFFSET     ;
+    public static final int OFFSET_SEQNO      ;
+    public static final int OFFSET_LINE_SEQNO ;
+    public static final int BYTES             ;
+
+    public static final SizeT SIZE ;
+
+
+    static {
+
+        NativeGpioLineEvent nativeStruct = new NativeGpioLineEvent() ;
+
+        OFFSET_TIMESTAMP  = nativeStruct.fieldOffset( "timestamp" ) ;
+        OFFSET_ID         = nativeStruct.fieldOffset( "id"        ) ;
+        OFFSET_OFFSET     = nativeStruct.fieldOffset( "offset"    ) ;
+        OFFSET_SEQNO      = nativeStruct.fieldOffset( "seqno"     ) ;
+        OFFSET_LINE_SEQNO = nativeStruct.fieldOffset( "lineSeqno" ) ;
+        BYTES             = nativeStruct.size()                     ;
+        SIZE              = new SizeT( BYTES )                      ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "timestamp" ,
+                                             "id"        ,
+                                             "offset"    ,
+                                             "seqno"     ,
+                                             "lineSeqno" ,
+                                             "padding"   } ) ;
+    }
+}
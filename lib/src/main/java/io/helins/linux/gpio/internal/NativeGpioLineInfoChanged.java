@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure                            ;
+import io.helins.linux.SizeT                            ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfo ;
+import java.util.Arrays                                 ;
+import java.util.List                                   ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineInfoChanged extends Structure {
+
+
+    public static final int GPIOLINE_CHANGED_REQUESTED = 1 ;
+    public static final int GPIOLINE_CHANGED_RELEASED  = 2 ;
+    public static final int GPIOLINE_CHANGED_CONFIG    = 3 ;
+
+
+    public NativeGpioLineInfo info      = new NativeGpioLineInfo() ;
+    public long               timestamp = 0                        ;
+    public int                eventType = 0                        ;
+    public int[]              padding   = new int[ 5 ]             ;
+
+
+    public static final int OFFSET_INFO       ;
+    public static final int OFFSET_TIMESTAMP  ;
+    public static final int OFFSET_EVENT_TYPE ;
+    public static final int BYTES             ;
+
+    public static final SizeT SIZE ;
+
+
+    static {
+
+        NativeGpioLineInfoChanged nativeStruct = new NativeGpioLineInfoChanged() ;
+
+        OFFSET_INFO       = nativeStruct.fieldOffset( "info"      ) ;
+        OFFSET_TIMESTAMP  = nativeStruct.fieldOffset( "timestamp" ) ;
+        OFFSET_EVENT_TYPE = nativeStruct.fieldOffset( "eventType" ) ;
+        BYTES             = nativeStruct.size()                     ;
+        SIZE              = new SizeT( BYTES )                      ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "info"      ,
+                                             "timestamp" ,
+                                             "eventType" ,
+                                             "padding"   } ) ;
+    }
+}
@@ -0,0 +1,71 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure                              ;
+import io.helins.linux.gpio.internal.NativeGpioLineConfig ;
+import java.util.Arrays                                   ;
+import java.util.List                                     ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineRequest extends Structure {
+
+
+    public static final int GPIO_V2_LINES_MAX = 64 ;
+
+
+    public int[]                offsets         = new int[ GPIO_V2_LINES_MAX ] ;
+    public byte[]               consumer        = new byte[ 32 ]               ;
+    public NativeGpioLineConfig config          = new NativeGpioLineConfig()   ;
+    public int                  numLines        = 0                            ;
+    public int                  eventBufferSize = 0                            ;
+    public int[]                padding         = new int[ 5 ]                 ;
+    public int                  fd              = -1                           ;
+
+
+    public static final int OFFSET_OFFSETS           ;
+    public static final int OFFSET_CONSUMER          ;
+    public static final int OFFSET_CONFIG            ;
+    public static final int OFFSET_NUM_LINES         ;
+    public static final int OFFSET_EVENT_BUFFER_SIZE ;
+    public static final int OFFSET_FD                ;
+    public static final int SIZE                     ;
+
+
+    static {
+
+        NativeGpioLineRequest nativeStruct = new NativeGpioLineRequest() ;
+
+        OFFSET_OFFSETS           = nativeStruct.fieldOffset( "offsets"         ) ;
+        OFFSET_CONSUMER          = nativeStruct.fieldOffset( "consumer"        ) ;
+        OFFSET_CONFIG            = nativeStruct.fieldOffset( "config"          ) ;
+        OFFSET_NUM_LINES         = nativeStruct.fieldOffset( "numLines"        ) ;
+        OFFSET_EVENT_BUFFER_SIZE = nativeStruct.fieldOffset( "eventBufferSize" ) ;
+        OFFSET_FD                = nativeStruct.fieldOffset( "fd"              ) ;
+        SIZE                     = nativeStruct.size()                           ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "offsets"         ,
+                                             "consumer"        ,
+                                             "config"          ,
+                                             "numLines"        ,
+                                             "eventBufferSize" ,
+                                             "padding"         ,
+                                             "fd"              } ) ;
+    }
+}
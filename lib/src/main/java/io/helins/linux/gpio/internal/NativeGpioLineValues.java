@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Structure ;
+import java.util.Arrays      ;
+import java.util.List        ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeGpioLineValues extends Structure {
+
+
+    public long bits = 0 ;
+    public long mask = 0 ;
+
+
+    public static final int OFFSET_BITS ;
+    public static final int OFFSET_MASK ;
+    public static final int SIZE        ;
+
+
+    static {
+
+        NativeGpioLineValues nativeStruct = new NativeGpioLineValues() ;
+
+        OFFSET_BITS = nativeStruct.fieldOffset( "bits" ) ;
+        OFFSET_MASK = nativeStruct.fieldOffset( "mask" ) ;
+        SIZE        = nativeStruct.size()                ;
+    }
+
+
+
+
+    protected List< String > getFieldOrder() {
+
+        return Arrays.asList( new String[] { "bits" ,
+                                             "mask" } ) ;
+    }
+}
@@ -0,0 +1,74 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.NativeLong     ;
+import com.sun.jna.Pointer        ;
+import io.helins.linux.Linux      ;
+import io.helins.linux.SizeT      ;
+import io.helins.linux.io.LinuxIO ;
+
+
+
+
+/**
+ * This class has be to public for the library to work as needed, the user should not care about it.
+ * <p>
+ * Native calls on the hot paths go through this class. This version relies on JNA. When running on Java 22 or later,
+ * a version relying on the Foreign Function and Memory API replaces it (multi-release JAR).
+ * <p>
+ * Calls return -1 on failure and errno must then be retrieved using {@link #getErrno()}, from the same thread.
+ */
+public class NativeIO {
+
+
+    /**
+     * Is the Foreign Function and Memory API used instead of JNA ?
+     */
+    public static final boolean IS_FOREIGN = false ;
+
+
+
+
+    public static int ioctl( int        fd      ,
+                             NativeLong request ,
+                             Pointer    arg     ) {
+
+        return LinuxIO.ioctl( fd      ,
+                              request ,
+                              arg     ) ;
+    }
+
+
+
+
+    public static int read( int     fd     ,
+                            Pointer buffer ,
+                            SizeT   size   ) {
+
+        return LinuxIO.read( fd     ,
+                             buffer ,
+                             size   ).intValue() ;
+    }
+
+
+
+
+    public static int close( int fd ) {
+
+        return LinuxIO.close( fd ) ;
+    }
+
+
+
+
+    public static int getErrno() {
+
+        return Linux.getErrno() ;
+    }
+}
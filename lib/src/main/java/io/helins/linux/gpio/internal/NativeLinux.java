@@ -0,0 +1,87 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.Native   ;
+import com.sun.jna.Platform ;
+import com.sun.jna.Pointer  ;
+
+
+
+
+/**
+ * This class has be to public for JNA to work as needed, the user should not care about it.
+ */
+public class NativeLinux {
+
+
+    public static final int F_GETFL    = 3       ;
+    public static final int F_SETFL    = 4       ;
+    public static final int O_NONBLOCK = 0x0800  ;
+    public static final int O_CLOEXEC  = 0x80000 ;
+
+    public static final int CLOCK_REALTIME  = 0 ;
+    public static final int CLOCK_MONOTONIC = 1 ;
+
+    public static final int IN_NONBLOCK    = 0x00000800 ;
+    public static final int IN_CLOEXEC     = 0x00080000 ;
+    public static final int IN_ATTRIB      = 0x00000004 ;
+    public static final int IN_MOVED_FROM  = 0x00000040 ;
+    public static final int IN_MOVED_TO    = 0x00000080 ;
+    public static final int IN_CREATE      = 0x00000100 ;
+    public static final int IN_DELETE      = 0x00000200 ;
+    public static final int IN_Q_OVERFLOW  = 0x00004000 ;
+    public static final int IN_EVENT_BYTES = 16         ;
+
+    public static final int POLLIN       = 0x0001 ;
+    public static final int POLLFD_BYTES = 8      ;
+
+
+    static {
+
+        Native.register( Platform.C_LIBRARY_NAME ) ;
+    }
+
+
+
+
+    public static native int fcntl( int fd  ,
+                                    int cmd ,
+                                    int arg ) ;
+
+
+
+
+    public static native int clock_gettime( int     clockId  ,
+                                            Pointer timespec ) ;
+
+
+
+
+    public static native int inotify_init1( int flags ) ;
+
+
+
+
+    public static native int inotify_add_watch( int    fd       ,
+                                                String pathname ,
+                                                int    mask     ) ;
+
+
+
+
+    public static native int poll( Pointer fds     ,
+                                   int     nfds    ,
+                                   int     timeout ) ;
+
+
+
+
+    public static native int pipe2( int[] fds   ,
+                                    int   flags ) ;
+}
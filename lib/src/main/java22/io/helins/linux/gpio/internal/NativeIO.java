@@ -0,0 +1,222 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio.internal ;
+
+
+import com.sun.jna.NativeLong               ;
+import com.sun.jna.Pointer                  ;
+import io.helins.linux.Linux                ;
+import io.helins.linux.SizeT                ;
+import io.helins.linux.io.LinuxIO           ;
+import java.lang.foreign.Arena              ;
+import java.lang.foreign.FunctionDescriptor ;
+import java.lang.foreign.Linker             ;
+import java.lang.foreign.MemoryLayout       ;
+import java.lang.foreign.MemorySegment      ;
+import java.lang.foreign.StructLayout       ;
+import java.lang.foreign.ValueLayout        ;
+import java.lang.invoke.MethodHandle        ;
+import java.lang.invoke.VarHandle           ;
+
+
+
+
+/**
+ * This class has be to public for the library to work as needed, the user should not care about it.
+ * <p>
+ * Native calls on the hot paths go through this class. This version relies on the Foreign Function and Memory API,
+ * which avoids the marshalling done by JNA. Structures are still allocated by JNA, only their addresses are passed.
+ * <p>
+ * JNA is used instead on platforms where longs and pointers are not 64 bits, when downcall handles cannot be
+ * created, or when the system property `<strong>io.helins.linux.gpio.jna</strong>` is set to true, for instance for
+ * comparing both. Native access should be enabled for this module, or for the unnamed module, in order to avoid a
+ * warning.
+ * <p>
+ * Calls return -1 on failure and errno must then be retrieved using {@link #getErrno()}, from the same thread.
+ */
+public class NativeIO {
+
+
+    // Downcall handles, null when JNA is used.
+    //
+    private static final MethodHandle IOCTL ;
+    private static final MethodHandle READ  ;
+    private static final MethodHandle CLOSE ;
+
+
+    // Where errno is captured after each call, per thread.
+    //
+    private static final VarHandle                    ERRNO   ;
+    private static final ThreadLocal< MemorySegment > CAPTURE ;
+
+
+    /**
+     * Is the Foreign Function and Memory API used instead of JNA ?
+     */
+    public static final boolean IS_FOREIGN ;
+
+
+    static {
+
+        MethodHandle ioctl = null ;
+        MethodHandle read  = null ;
+        MethodHandle close = null ;
+
+        StructLayout captureLayout = Linker.Option.captureStateLayout() ;
+
+        boolean isJnaForced = Boolean.getBoolean( "io.helins.linux.gpio.jna" ) ;
+
+        if ( ValueLayout.ADDRESS.byteSize() == 8 && NativeLong.SIZE == 8 && isJnaForced == false ) {
+
+            try {
+
+                Linker        linker  = Linker.nativeLinker()                     ;
+                Linker.Option capture = Linker.Option.captureCallState( "errno" ) ;
+
+                // ioctl is variadic, the third argument being the first variadic one.
+                //
+                ioctl = linker.downcallHandle( linker.defaultLookup().find( "ioctl" ).orElseThrow() ,
+                                               FunctionDescriptor.of( ValueLayout.JAVA_INT  ,
+                                                                      ValueLayout.JAVA_INT  ,
+                                                                      ValueLayout.JAVA_LONG ,
+                                                                      ValueLayout.ADDRESS   )       ,
+                                               Linker.Option.firstVariadicArg( 2 )                  ,
+                                               capture                                              ) ;
+
+                read  = linker.downcallHandle( linker.defaultLookup().find( "read" ).orElseThrow() ,
+                                               FunctionDescriptor.of( ValueLayout.JAVA_LONG ,
+                                                                      ValueLayout.JAVA_INT  ,
+                                                                      ValueLayout.ADDRESS   ,
+                                                                      ValueLayout.JAVA_LONG )      ,
+                                               capture                                             ) ;
+
+                close = linker.downcallHandle( linker.defaultLookup().find( "close" ).orElseThrow() ,
+                                               FunctionDescriptor.of( ValueLayout.JAVA_INT ,
+                                                                      ValueLayout.JAVA_INT )        ,
+                                               capture                                              ) ;
+            }
+
+            catch ( RuntimeException e ) {
+
+                ioctl = null ;
+                read  = null ;
+                close = null ;
+            }
+        }
+
+        IOCTL      = ioctl         ;
+        READ       = read          ;
+        CLOSE      = close         ;
+        IS_FOREIGN = ioctl != null ;
+
+        ERRNO   = captureLayout.varHandle( MemoryLayout.PathElement.groupElement( "errno" ) ) ;
+        CAPTURE = ThreadLocal.withInitial( () -> Arena.ofAuto().allocate( captureLayout ) )   ;
+    }
+
+
+
+
+    // Downcall handles only throw what the native function throws, which is nothing.
+    //
+    private static IllegalStateException unexpected( Throwable e ) {
+
+        return new IllegalStateException( "Unexpected failure of a native call" ,
+                                          e                                     ) ;
+    }
+
+
+
+
+    public static int ioctl( int        fd      ,
+                             NativeLong request ,
+                             Pointer    arg     ) {
+
+        if ( IS_FOREIGN ) {
+
+            try {
+
+                return (int)IOCTL.invokeExact( CAPTURE.get()                                       ,
+                                               fd                                                  ,
+                                               request.longValue()                                 ,
+                                               MemorySegment.ofAddress( Pointer.nativeValue( arg ) ) ) ;
+            }
+
+            catch ( Throwable e ) {
+
+                throw unexpected( e ) ;
+            }
+        }
+
+        return LinuxIO.ioctl( fd      ,
+                              request ,
+                              arg     ) ;
+    }
+
+
+
+
+    public static int read( int     fd     ,
+                            Pointer buffer ,
+                            SizeT   size   ) {
+
+        if ( IS_FOREIGN ) {
+
+            try {
+
+                return (int)(long)READ.invokeExact( CAPTURE.get()                                            ,
+                                                    fd                                                       ,
+                                                    MemorySegment.ofAddress( Pointer.nativeValue( buffer ) ) ,
+                                                    size.longValue()                                         ) ;
+            }
+
+            catch ( Throwable e ) {
+
+                throw unexpected( e ) ;
+            }
+        }
+
+        return LinuxIO.read( fd     ,
+                             buffer ,
+                             size   ).intValue() ;
+    }
+
+
+
+
+    public static int close( int fd ) {
+
+        if ( IS_FOREIGN ) {
+
+            try {
+
+                return (int)CLOSE.invokeExact( CAPTURE.get() ,
+                                               fd            ) ;
+            }
+
+            catch ( Throwable e ) {
+
+                throw unexpected( e ) ;
+            }
+        }
+
+        return LinuxIO.close( fd ) ;
+    }
+
+
+
+
+    public static int getErrno() {
+
+        if ( IS_FOREIGN ) {
+
+            return (int)ERRNO.get( CAPTURE.get() ,
+                                   0L            ) ;
+        }
+
+        return Linux.getErrno() ;
+    }
+}
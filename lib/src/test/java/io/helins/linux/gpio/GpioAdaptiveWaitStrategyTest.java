@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioAdaptiveWaitStrategy ;
+import io.helins.linux.gpio.GpioWaitMode             ;
+import org.junit.jupiter.api.DisplayName             ;
+import org.junit.jupiter.api.Test                    ;
+
+
+
+
+public class GpioAdaptiveWaitStrategyTest {
+
+
+    @Test
+    @DisplayName( "Backing off during a burst and blocking when quiet." )
+    void backOff() {
+
+        GpioAdaptiveWaitStrategy strategy = new GpioAdaptiveWaitStrategy( 100000 ,
+                                                                          1000   ,
+                                                                          2000   ,
+                                                                          3000   ) ;
+
+        // Nothing known yet, blocking right away.
+        //
+        assertFalse( strategy.isBursting() ) ;
+
+        assertEquals( GpioWaitMode.BLOCK ,
+                      strategy.idle( 0 ) ) ;
+
+        // Events every 10 microseconds.
+        //
+        for ( int i = 1 ;
+              i <= 20   ;
+              i += 1    ) {
+
+            strategy.onEvent( i * 10000L ) ;
+        }
+
+        assertTrue( strategy.isBursting() ) ;
+
+        assertEquals( 10000                       ,
+                      strategy.getMeanInterval() ) ;
+
+        assertEquals( GpioWaitMode.SPIN ,
+                      strategy.idle( 0 ) ) ;
+
+        assertEquals( GpioWaitMode.YIELD    ,
+                      strategy.idle( 1500 ) ) ;
+
+        assertEquals( GpioWaitMode.PARK     ,
+                      strategy.idle( 4000 ) ) ;
+
+        assertEquals( GpioWaitMode.BLOCK    ,
+                      strategy.idle( 6000 ) ) ;
+
+        // The line goes quiet for a while.
+        //
+        for ( int i = 1 ;
+              i <= 5    ;
+              i += 1    ) {
+
+            strategy.onEvent( 200000L + i * 1000000L ) ;
+        }
+
+        assertFalse( strategy.isBursting() ) ;
+
+        assertEquals( GpioWaitMode.BLOCK ,
+                      strategy.idle( 0 ) ) ;
+    }
+}
@@ -0,0 +1,78 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioBuffer         ;
+import io.helins.linux.gpio.GpioBufferSequence ;
+import io.helins.linux.gpio.GpioLine           ;
+import org.junit.jupiter.api.DisplayName       ;
+import org.junit.jupiter.api.Test              ;
+
+
+
+
+public class GpioBufferSequenceTest {
+
+
+    @Test
+    @DisplayName( "Setting and getting line values at each step of a sequence." )
+    void setAndGet() {
+
+        GpioLine line0 = new GpioLine( 0 ,
+                                       0 ) ;
+        GpioLine line1 = new GpioLine( 1 ,
+                                       1 ) ;
+
+        GpioBufferSequence sequence = new GpioBufferSequence( 3 ) ;
+
+        assertEquals( 3                 ,
+                      sequence.length() ) ;
+
+        sequence.set( 0     ,
+                      line0 ,
+                      true  ) ;
+
+        sequence.set( 2     ,
+                      line1 ,
+                      true  ) ;
+
+        assertTrue( sequence.get( 0     ,
+                                  line0 ) ) ;
+
+        assertFalse( sequence.get( 0     ,
+                                   line1 ) ) ;
+
+        assertFalse( sequence.get( 1     ,
+                                   line0 ) ) ;
+
+        GpioBuffer buffer = sequence.get( 2                ,
+                                          new GpioBuffer() ) ;
+
+        assertFalse( buffer.get( line0 ) ) ;
+        assertTrue( buffer.get( line1 ) ) ;
+
+        buffer.set( line0 ,
+                    true  ) ;
+
+        sequence.set( 1      ,
+                      buffer ) ;
+
+        assertTrue( sequence.get( 1     ,
+                                  line0 ) ) ;
+
+        assertTrue( sequence.get( 1     ,
+                                  line1 ) ) ;
+
+        assertThrows( IndexOutOfBoundsException.class ,
+                      () -> sequence.get( 3     ,
+                                          line0 ) ) ;
+    }
+}
@@ -10,6 +10,7 @@ package io.helins.linux.gpio ;
 import static org.junit.jupiter.api.Assertions.* ;
 
 
+import com.sun.jna.Memory                ;
 import io.helins.linux.gpio.GpioBuffer   ;
 import org.junit.jupiter.api.DisplayName ;
 import org.junit.jupiter.api.Test        ;
@@ -107,4 +108,36 @@ public class GpioBufferTest {
             assertFalse( buffer.get( line ) ) ;
         }
     }
+
+
+
+
+    @Test
+    @DisplayName( "Copying states to native memory at an unaligned offset." )
+    void copyTo() {
+
+        GpioBuffer buffer = new GpioBuffer()                  ;
+        Memory     memory = new Memory( 4 + GpioBuffer.SIZE ) ;
+
+        memory.clear() ;
+
+        buffer.set( new GpioLine( 0 ,
+                                  0 ) ,
+                    true              )
+              .set( new GpioLine( 63 ,
+                                  63 ) ,
+                    true               ) ;
+
+        buffer.copyTo( memory ,
+                       4      ) ;
+
+        for ( int i = 0           ;
+              i < GpioBuffer.SIZE ;
+              i += 1              ) {
+
+            assertEquals( i == 0 || i == 63 ? 1
+                                            : 0 ,
+                          memory.getByte( 4 + i ) ) ;
+        }
+    }
 }
@@ -0,0 +1,274 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioChipInfo     ;
+import io.helins.linux.gpio.GpioChipListener ;
+import io.helins.linux.gpio.GpioChipRegistry ;
+import io.helins.linux.gpio.GpioDevice       ;
+import io.helins.linux.io.LinuxIO            ;
+import java.io.IOException                   ;
+import java.nio.file.Files                   ;
+import java.nio.file.Path                    ;
+import java.nio.file.Paths                   ;
+import java.util.stream.Stream               ;
+import java.util.ArrayList                   ;
+import java.util.List                        ;
+import org.junit.jupiter.api.DisplayName     ;
+import org.junit.jupiter.api.Test            ;
+import org.junit.jupiter.api.io.TempDir      ;
+
+
+
+
+public class GpioChipRegistryTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    // Records what the registry notifies as strings such as "+0", "-0", or "!0".
+    //
+    private static class Recorder implements GpioChipListener {
+
+        final List< String > changes = new ArrayList<>() ;
+
+        @Override
+        public void onAdded( int          chip   ,
+                             GpioDevice   device ,
+                             GpioChipInfo info   ) {
+
+            this.changes.add( "+" + chip ) ;
+        }
+
+        @Override
+        public void onRemoved( int chip ) {
+
+            this.changes.add( "-" + chip ) ;
+        }
+
+        @Override
+        public void onError( int         chip ,
+                             IOException e    ) {
+
+            this.changes.add( "!" + chip ) ;
+        }
+    }
+
+
+
+
+    // Counts the file descriptors currently open by this process.
+    //
+    private static long countOpenFiles() throws IOException {
+
+        try ( Stream< Path > files = Files.list( Paths.get( "/proc/self/fd" ) ) ) {
+
+            return files.count() ;
+        }
+    }
+
+
+
+
+    // Finds a file descriptor this process opened for the given file, -1 if there is none.
+    //
+    private static int findOpenFile( Path path ) throws IOException {
+
+        Path target = path.toRealPath() ;
+
+        try ( Stream< Path > files = Files.list( Paths.get( "/proc/self/fd" ) ) ) {
+
+            for ( Path file : (Iterable< Path >)files::iterator ) {
+
+                try {
+
+                    if ( Files.readSymbolicLink( file ).equals( target ) ) {
+
+                        return Integer.parseInt( file.getFileName().toString() ) ;
+                    }
+                }
+
+                // Such as the descriptor used for listing, already closed.
+                //
+                catch ( IOException e ) {}
+            }
+        }
+
+        return -1 ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "GPIO devices are opened and closed as they appear and disappear." )
+    void hotplug() throws IOException {
+
+        Files.createFile( this.directory.resolve( "gpiochip0" ) ) ;
+
+        Recorder recorder = new Recorder() ;
+
+        try ( GpioChipRegistry registry = new GpioChipRegistry( this.directory               ,
+                                                                recorder                     ,
+                                                                device -> new GpioChipInfo() ) ) {
+
+            assertArrayEquals( new int[] { 0 }     ,
+                               registry.getChips() ) ;
+
+            assertEquals( 0                            ,
+                          registry.processChanges( 0 ) ) ;
+
+            Files.createFile( this.directory.resolve( "gpiochip3" ) ) ;
+            Files.createFile( this.directory.resolve( "ttyS0"     ) ) ;
+
+            assertEquals( 1                               ,
+                          registry.processChanges( 1000 ) ) ;
+
+            assertNotNull( registry.getDevice( 3 ) ) ;
+
+            assertNotNull( registry.getChipInfo( 3 ) ) ;
+
+            Files.delete( this.directory.resolve( "gpiochip0" ) ) ;
+
+            assertEquals( 1                               ,
+                          registry.processChanges( 1000 ) ) ;
+
+            assertNull( registry.getDevice( 0 ) ) ;
+
+            assertArrayEquals( new int[] { 3 }     ,
+                               registry.getChips() ) ;
+        }
+
+        assertEquals( List.of( "+0" ,
+                               "+3" ,
+                               "-0" )   ,
+                      recorder.changes ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Files which are not GPIO devices are reported as errors." )
+    void errors() throws IOException {
+
+        Recorder recorder = new Recorder() ;
+
+        try ( GpioChipRegistry registry = new GpioChipRegistry( this.directory ,
+                                                                recorder       ) ) {
+
+            Files.createFile( this.directory.resolve( "gpiochip1" ) ) ;
+
+            assertEquals( 0                               ,
+                          registry.processChanges( 1000 ) ) ;
+
+            assertEquals( 0                          ,
+                          registry.getChips().length ) ;
+        }
+
+        assertEquals( List.of( "!1" ) ,
+                      recorder.changes ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Nothing is leaked when the listener throws." )
+    void throwingListener() throws IOException {
+
+        Files.createFile( this.directory.resolve( "gpiochip0" ) ) ;
+
+        long nOpen = countOpenFiles() ;
+
+        Recorder throwingOnAdded = new Recorder() {
+
+            @Override
+            public void onAdded( int          chip   ,
+                                 GpioDevice   device ,
+                                 GpioChipInfo info   ) {
+
+                throw new IllegalStateException() ;
+            }
+        } ;
+
+        assertThrows( IllegalStateException.class                                     ,
+                      () -> new GpioChipRegistry( this.directory               ,
+                                                  throwingOnAdded              ,
+                                                  device -> new GpioChipInfo() ) ) ;
+
+        assertEquals( nOpen            ,
+                      countOpenFiles() ) ;
+
+        Recorder throwingOnRemoved = new Recorder() {
+
+            @Override
+            public void onRemoved( int chip ) {
+
+                throw new IllegalStateException() ;
+            }
+        } ;
+
+        try ( GpioChipRegistry registry = new GpioChipRegistry( this.directory               ,
+                                                                throwingOnRemoved            ,
+                                                                device -> new GpioChipInfo() ) ) {
+
+            Files.delete( this.directory.resolve( "gpiochip0" ) ) ;
+
+            assertThrows( IllegalStateException.class               ,
+                          () -> registry.processChanges( 1000 ) ) ;
+
+            assertNull( registry.getDevice( 0 ) ) ;
+        }
+
+        assertEquals( nOpen            ,
+                      countOpenFiles() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Everything is closed even when closing a GPIO device fails." )
+    void failingClose() throws IOException {
+
+        Files.createFile( this.directory.resolve( "gpiochip0" ) ) ;
+        Files.createFile( this.directory.resolve( "gpiochip1" ) ) ;
+
+        long nOpen = countOpenFiles() ;
+
+        GpioChipRegistry registry = new GpioChipRegistry( this.directory               ,
+                                                          new Recorder()               ,
+                                                          device -> new GpioChipInfo() ) ;
+
+        assertArrayEquals( new int[] { 0 , 1 } ,
+                           registry.getChips() ) ;
+
+        // Closing chip 0 behind the back of the registry makes closing its device fail.
+        //
+        int fd = findOpenFile( this.directory.resolve( "gpiochip0" ) ) ;
+
+        assertTrue( fd >= 0 ) ;
+
+        assertEquals( 0                   ,
+                      LinuxIO.close( fd ) ) ;
+
+        assertThrows( IOException.class         ,
+                      () -> registry.close() ) ;
+
+        assertEquals( nOpen            ,
+                      countOpenFiles() ) ;
+    }
+}
@@ -0,0 +1,50 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioClockConverter ;
+import io.helins.linux.gpio.GpioEvent          ;
+import java.io.IOException                     ;
+import org.junit.jupiter.api.DisplayName       ;
+import org.junit.jupiter.api.Test              ;
+
+
+
+
+public class GpioClockConverterTest {
+
+
+    @Test
+    @DisplayName( "Converting monotonic timestamps to wall-clock time." )
+    void convert() throws IOException {
+
+        GpioClockConverter converter = new GpioClockConverter() ;
+
+        // Very generous, a loaded machine can be slow.
+        //
+        assertTrue( converter.getUncertainty() < 1000000L ) ;
+
+        long now = System.nanoTime() ;
+
+        assertTrue( Math.abs( converter.toEpochNanos( now ) - System.currentTimeMillis() * 1000000L ) < 50000000L ) ;
+
+        GpioEvent event = new GpioEvent().set( now                              ,
+                                               GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                               0                                ) ;
+
+        assertEquals( now + converter.getOffset()     ,
+                      converter.toEpochNanos( event ) ) ;
+
+        assertFalse( converter.calibrateIfOlder( Long.MAX_VALUE ) ) ;
+
+        assertTrue( converter.calibrateIfOlder( 0 ) ) ;
+    }
+}
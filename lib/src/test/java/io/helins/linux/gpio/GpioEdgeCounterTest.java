@@ -0,0 +1,135 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioEdgeCount   ;
+import io.helins.linux.gpio.GpioEdgeCounter ;
+import io.helins.linux.gpio.GpioEvent       ;
+import org.junit.jupiter.api.DisplayName    ;
+import org.junit.jupiter.api.Test           ;
+
+
+
+
+public class GpioEdgeCounterTest {
+
+
+    @Test
+    @DisplayName( "Counting edges and computing frequency per id." )
+    void frequency() {
+
+        GpioEdgeCounter counter = new GpioEdgeCounter( 1000000 ,
+                                                       3       ,
+                                                       1       ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        // 1 kHz on id 1, 4 kHz on id 3, for 2.5 milliseconds.
+        //
+        for ( long t = 0   ;
+              t <= 2500000 ;
+              t += 250000  ) {
+
+            if ( t % 1000000 == 0 ) {
+
+                assertTrue( counter.record( event.set( t                                ,
+                                                       GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                                       1                                ) ) ) ;
+            }
+
+            assertTrue( counter.record( event.set( t                                ,
+                                                   GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                                   3                                ) ) ) ;
+        }
+
+        assertFalse( counter.record( event.set( 0 ,
+                                                0 ,
+                                                2 ) ) ) ;
+
+        assertEquals( 3                      ,
+                      counter.getCount( 1 ) ) ;
+
+        assertEquals( 11                     ,
+                      counter.getCount( 3 ) ) ;
+
+        GpioEdgeCount snapshot = counter.snapshot( 3                   ,
+                                                   new GpioEdgeCount() ) ;
+
+        assertEquals( 5                          ,
+                      snapshot.getWindowEdges() ) ;
+
+        assertEquals( 4000                    ,
+                      snapshot.getFrequency() ,
+                      1e-6                    ) ;
+
+        assertEquals( 60000                ,
+                      snapshot.getRpm( 4 ) ,
+                      1e-6                 ) ;
+
+        assertEquals( 1000                                           ,
+                      counter.snapshot( 1        ,
+                                        snapshot ).getFrequency() ,
+                      1e-6                                           ) ;
+
+        assertThrows( IllegalArgumentException.class ,
+                      () -> counter.getCount( 2 )    ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Snapshots are consistent while counting on another thread." )
+    void consistency() throws InterruptedException {
+
+        final long PERIOD = 1000 ;
+
+        GpioEdgeCounter counter = new GpioEdgeCounter( 10 * PERIOD ,
+                                                       0           ) ;
+
+        Thread writer = new Thread( () -> {
+
+            GpioEvent event = new GpioEvent() ;
+
+            for ( long i = 0  ;
+                  i < 1000000 ;
+                  i += 1      ) {
+
+                counter.record( event.set( i * PERIOD ,
+                                           0          ,
+                                           0          ) ) ;
+            }
+        } ) ;
+
+        writer.start() ;
+
+        GpioEdgeCount snapshot = new GpioEdgeCount() ;
+
+        while ( writer.isAlive() ) {
+
+            counter.snapshot( 0        ,
+                              snapshot ) ;
+
+            if ( snapshot.getWindowEdges() > 0 ) {
+
+                assertEquals( ( snapshot.getWindowEdges() - 1 ) * PERIOD                    ,
+                              snapshot.getLastTimestamp() - snapshot.getFirstTimestamp() ) ;
+
+                assertTrue( snapshot.getCount() * PERIOD > snapshot.getLastTimestamp() ) ;
+            }
+        }
+
+        writer.join() ;
+
+        assertEquals( 1000000               ,
+                      counter.getCount( 0 ) ) ;
+    }
+}
@@ -0,0 +1,321 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import com.sun.jna.Memory                                ;
+import io.helins.linux.SizeT                             ;
+import io.helins.linux.gpio.GpioEvent                    ;
+import io.helins.linux.gpio.GpioEventBatch               ;
+import io.helins.linux.gpio.internal.NativeGpioEventData ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
+import io.helins.linux.io.LinuxIO                        ;
+import java.io.IOException                               ;
+import org.junit.jupiter.api.DisplayName                 ;
+import org.junit.jupiter.api.Test                        ;
+
+
+
+
+public class GpioEventBatchTest {
+
+
+    // Creates a pipe standing for an event handle, { read end, write end }, the read end not blocking.
+    //
+    private static int[] pipe() {
+
+        int[] pipe = new int[ 2 ] ;
+
+        assertEquals( 0                                       ,
+                      NativeLinux.pipe2( pipe                  ,
+                                         NativeLinux.O_CLOEXEC ) ) ;
+
+        assertTrue( NativeLinux.fcntl( pipe[ 0 ]              ,
+                                       NativeLinux.F_SETFL    ,
+                                       NativeLinux.O_NONBLOCK ) >= 0 ) ;
+
+        return pipe ;
+    }
+
+
+
+
+    // Closes both ends of a pipe.
+    //
+    private static void close( int[] pipe ) {
+
+        LinuxIO.close( pipe[ 0 ] ) ;
+        LinuxIO.close( pipe[ 1 ] ) ;
+    }
+
+
+
+
+    // Writes raw events to the pipe, as read from an event handle, with the given timestamps and alternating edges
+    // starting with a rising one.
+    //
+    private static void write( int[]   pipe       ,
+                               long... timestamps ) {
+
+        Memory memory = new Memory( (long)timestamps.length * NativeGpioEventData.BYTES ) ;
+
+        memory.clear() ;
+
+        for ( int i = 0             ;
+              i < timestamps.length ;
+              i += 1                ) {
+
+            long offset = (long)i * NativeGpioEventData.BYTES ;
+
+            memory.setLong( offset + NativeGpioEventData.OFFSET_TIMESTAMP ,
+                            timestamps[ i ]                               ) ;
+
+            memory.setInt( offset + NativeGpioEventData.OFFSET_ID              ,
+                           i % 2 == 0 ? GpioEvent.GPIO_EVENT_RISING_EDGE
+                                      : GpioEvent.GPIO_EVENT_FALLING_EDGE ) ;
+        }
+
+        assertEquals( memory.size()                              ,
+                      LinuxIO.write( pipe[ 1 ]                  ,
+                                     memory                     ,
+                                     new SizeT( memory.size() ) ).longValue() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Raw events are decoded with the given id." )
+    void decoding() throws IOException {
+
+        int[] pipe = pipe() ;
+
+        try {
+
+            write( pipe ,
+                   10L  ,
+                   20L  ,
+                   30L  ) ;
+
+            GpioEventBatch batch = new GpioEventBatch() ;
+
+            assertEquals( 3                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      7         ) ) ;
+
+            assertEquals( 3            ,
+                          batch.size() ) ;
+
+            for ( int i = 0 ;
+                  i < 3     ;
+                  i += 1    ) {
+
+                assertEquals( 7                ,
+                              batch.getId( i ) ) ;
+
+                assertEquals( 10L * ( i + 1 )             ,
+                              batch.getNanoTimestamp( i ) ) ;
+
+                assertEquals( 0                            ,
+                              batch.getSequenceNumber( i ) ) ;
+            }
+
+            assertTrue( batch.isRising( 0 ) ) ;
+            assertTrue( batch.isFalling( 1 ) ) ;
+            assertFalse( batch.isFalling( 2 ) ) ;
+
+            // Nothing else is queued.
+            //
+            assertEquals( 0                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      7         ) ) ;
+
+            assertEquals( 3            ,
+                          batch.size() ) ;
+        }
+
+        finally {
+
+            close( pipe ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "A full batch does not read anything until it is cleared." )
+    void capacity() throws IOException {
+
+        int[] pipe = pipe() ;
+
+        try {
+
+            assertThrows( IllegalArgumentException.class ,
+                          () -> new GpioEventBatch( 0 ) ) ;
+
+            write( pipe ,
+                   10L  ,
+                   20L  ,
+                   30L  ,
+                   40L  ,
+                   50L  ) ;
+
+            GpioEventBatch batch = new GpioEventBatch( 2 ) ;
+
+            assertEquals( 2                ,
+                          batch.capacity() ) ;
+
+            assertEquals( 2                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      0         ) ) ;
+
+            assertTrue( batch.isFull() ) ;
+
+            assertEquals( 0                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      0         ) ) ;
+
+            assertFalse( batch.add( 60L                              ,
+                                    GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                    0                                ) ) ;
+
+            assertEquals( 20L                         ,
+                          batch.getNanoTimestamp( 1 ) ) ;
+
+            // Events left queued are read in order once cleared.
+            //
+            assertEquals( 2                             ,
+                          batch.clear().read( pipe[ 0 ] ,
+                                              0         ) ) ;
+
+            assertEquals( 30L                         ,
+                          batch.getNanoTimestamp( 0 ) ) ;
+
+            assertEquals( 1                             ,
+                          batch.clear().read( pipe[ 0 ] ,
+                                              0         ) ) ;
+
+            assertFalse( batch.isFull() ) ;
+
+            assertEquals( 50L                         ,
+                          batch.getNanoTimestamp( 0 ) ) ;
+        }
+
+        finally {
+
+            close( pipe ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "No more events than the limit are read, the limit being capped to the capacity." )
+    void limit() throws IOException {
+
+        int[] pipe = pipe() ;
+
+        try {
+
+            write( pipe ,
+                   10L  ,
+                   20L  ,
+                   30L  ,
+                   40L  ,
+                   50L  ,
+                   60L  ) ;
+
+            GpioEventBatch batch = new GpioEventBatch( 4 ).setLimit( 1 ) ;
+
+            assertEquals( 1                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      0         ) ) ;
+
+            assertTrue( batch.isFull() ) ;
+
+            assertEquals( 0                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      0         ) ) ;
+
+            batch.setLimit( Long.MAX_VALUE ) ;
+
+            assertFalse( batch.isFull() ) ;
+
+            // Appended after the event already held.
+            //
+            assertEquals( 3                     ,
+                          batch.read( pipe[ 0 ] ,
+                                      0         ) ) ;
+
+            assertEquals( 4            ,
+                          batch.size() ) ;
+
+            assertTrue( batch.isFull() ) ;
+
+            assertEquals( 10L                         ,
+                          batch.getNanoTimestamp( 0 ) ) ;
+
+            assertEquals( 40L                         ,
+                          batch.getNanoTimestamp( 3 ) ) ;
+        }
+
+        finally {
+
+            close( pipe ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Counted reads stop at the requested number of events or when the timeout elapses." )
+    void counted() throws IOException {
+
+        int[] pipe = pipe() ;
+
+        try {
+
+            write( pipe ,
+                   10L  ,
+                   20L  ,
+                   30L  ) ;
+
+            GpioEventBatch batch = new GpioEventBatch( 4 ) ;
+
+            assertEquals( 2                          ,
+                          batch.readUntil( pipe[ 0 ] ,
+                                           0         ,
+                                           2         ,
+                                           1000000L  ) ) ;
+
+            assertEquals( 20L                         ,
+                          batch.getNanoTimestamp( 1 ) ) ;
+
+            // Reused for reading again, only one event remaining.
+            //
+            assertEquals( 1                                  ,
+                          batch.clear().readUntil( pipe[ 0 ] ,
+                                                   0         ,
+                                                   4         ,
+                                                   1000000L  ) ) ;
+
+            assertEquals( 30L                         ,
+                          batch.getNanoTimestamp( 0 ) ) ;
+        }
+
+        finally {
+
+            close( pipe ) ;
+        }
+    }
+}
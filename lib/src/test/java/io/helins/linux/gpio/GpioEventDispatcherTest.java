@@ -0,0 +1,200 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioEvent           ;
+import io.helins.linux.gpio.GpioEventDispatcher ;
+import io.helins.linux.gpio.GpioOverflowPolicy  ;
+import io.helins.linux.gpio.GpioWaitMode        ;
+import org.junit.jupiter.api.DisplayName        ;
+import org.junit.jupiter.api.Test               ;
+
+
+
+
+public class GpioEventDispatcherTest {
+
+
+    @Test
+    @DisplayName( "Events sharing an id are handled in order, by the same worker." )
+    void ordering() throws InterruptedException {
+
+        final int N_IDS       = 10    ;
+        final int N_PER_ID    = 10000 ;
+        final int N_PARTITION = 4     ;
+
+        // Only touched by the worker handling a given id.
+        //
+        final long[]   lastTimestamps = new long[ N_IDS ]   ;
+        final String[] threadNames    = new String[ N_IDS ] ;
+        final int[]    nHandled       = new int[ N_IDS ]    ;
+
+        GpioEventDispatcher dispatcher = new GpioEventDispatcher( N_PARTITION              ,
+                                                                  64                       ,
+                                                                  GpioOverflowPolicy.BLOCK ,
+                                                                  GpioWaitMode.YIELD       ,
+                                                                  ( event ) -> {
+
+                                                                      int id = event.getId() ;
+
+                                                                      assertTrue( event.getNanoTimestamp() > lastTimestamps[ id ] ) ;
+
+                                                                      lastTimestamps[ id ] = event.getNanoTimestamp() ;
+
+                                                                      if ( threadNames[ id ] == null ) {
+
+                                                                          threadNames[ id ] = Thread.currentThread().getName() ;
+                                                                      }
+
+                                                                      assertEquals( threadNames[ id ]                ,
+                                                                                    Thread.currentThread().getName() ) ;
+
+                                                                      nHandled[ id ] += 1 ;
+                                                                  }                        ,
+                                                                  Thread::new              ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 1     ;
+              i <= N_PER_ID ;
+              i += 1        ) {
+
+            for ( int id = 0 ;
+                  id < N_IDS ;
+                  id += 1    ) {
+
+                assertTrue( dispatcher.dispatch( event.set( i  ,
+                                                            0  ,
+                                                            id ) ) ) ;
+            }
+        }
+
+        dispatcher.close() ;
+
+        long total = 0 ;
+
+        for ( int p = 0       ;
+              p < N_PARTITION ;
+              p += 1          ) {
+
+            assertEquals( 0                        ,
+                          dispatcher.getDepth( p ) ) ;
+
+            assertEquals( 0                          ,
+                          dispatcher.getDropped( p ) ) ;
+
+            assertEquals( 0                         ,
+                          dispatcher.getFailed( p ) ) ;
+
+            total += dispatcher.getHandled( p ) ;
+        }
+
+        assertEquals( N_IDS * N_PER_ID ,
+                      total            ) ;
+
+        for ( int id = 0 ;
+              id < N_IDS ;
+              id += 1    ) {
+
+            assertEquals( N_PER_ID       ,
+                          nHandled[ id ] ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Exceptions thrown by the handler are counted and do not stop the worker." )
+    void failures() {
+
+        final int N = 1000 ;
+
+        GpioEventDispatcher dispatcher = new GpioEventDispatcher( 1                        ,
+                                                                  4                        ,
+                                                                  GpioOverflowPolicy.BLOCK ,
+                                                                  GpioWaitMode.YIELD       ,
+                                                                  ( event ) -> {
+
+                                                                      if ( ( event.getNanoTimestamp() & 1 ) == 1 ) {
+
+                                                                          throw new IllegalStateException() ;
+                                                                      }
+                                                                  }                        ,
+                                                                  Thread::new              ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < N     ;
+              i += 1    ) {
+
+            // Would block forever if the worker had died.
+            //
+            assertTrue( dispatcher.dispatch( event.set( i ,
+                                                        0 ,
+                                                        0 ) ) ) ;
+        }
+
+        dispatcher.close() ;
+
+        assertEquals( N                          ,
+                      dispatcher.getHandled( 0 ) ) ;
+
+        assertEquals( N / 2                     ,
+                      dispatcher.getFailed( 0 ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Events dispatched right before closing are still handled." )
+    void closing() {
+
+        final int N = 1000 ;
+
+        for ( int i = 0 ;
+              i < N     ;
+              i += 1    ) {
+
+            final int[] nHandled = new int[ 1 ] ;
+
+            GpioEventDispatcher dispatcher = new GpioEventDispatcher( 1                               ,
+                                                                      4                               ,
+                                                                      GpioOverflowPolicy.BLOCK        ,
+                                                                      GpioWaitMode.YIELD              ,
+                                                                      ( event ) -> nHandled[ 0 ] += 1 ,
+                                                                      Thread::new                     ) ;
+
+            GpioEvent event = new GpioEvent() ;
+
+            for ( int j = 0 ;
+                  j < 3     ;
+                  j += 1    ) {
+
+                assertTrue( dispatcher.dispatch( event.set( j ,
+                                                            0 ,
+                                                            0 ) ) ) ;
+            }
+
+            dispatcher.close() ;
+
+            // Joining the worker makes its writes visible.
+            //
+            assertEquals( 3             ,
+                          nHandled[ 0 ] ) ;
+
+            assertEquals( 3                          ,
+                          dispatcher.getHandled( 0 ) ) ;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioBuffer             ;
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventJournal       ;
+import io.helins.linux.gpio.GpioEventJournalReader ;
+import io.helins.linux.gpio.GpioLine               ;
+import java.io.IOException                         ;
+import java.nio.file.Files                         ;
+import java.nio.file.Path                          ;
+import java.util.stream.Stream                     ;
+import org.junit.jupiter.api.DisplayName           ;
+import org.junit.jupiter.api.Test                  ;
+import org.junit.jupiter.api.io.TempDir            ;
+
+
+
+
+public class GpioEventJournalTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    @Test
+    @DisplayName( "Rolling segments and reading back a time range." )
+    void timeRange() throws IOException {
+
+        GpioEvent event = new GpioEvent() ;
+
+        try ( GpioEventJournal journal = new GpioEventJournal( this.directory ,
+                                                                100            ,
+                                                                8              ) ) {
+
+            // Events from two lines, the second one being slightly late so that timestamps are not ordered.
+            //
+            for ( int i = 0 ;
+                  i < 500   ;
+                  i += 1    ) {
+
+                journal.append( event.set( i * 1000L                        ,
+                                           GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                           1                                ) ) ;
+
+                journal.append( event.set( i * 1000L - 1500                   ,
+                                           GpioEvent.GPIO_EVENT_FALLING_EDGE ,
+                                           2                                 ) ) ;
+            }
+        }
+
+        try ( Stream< Path > segments = Files.list( this.directory ) ) {
+
+            assertEquals( 10               ,
+                          segments.count() ) ;
+        }
+
+        try ( GpioEventJournalReader reader = new GpioEventJournalReader( this.directory ) ) {
+
+            int count = 0 ;
+
+            while ( reader.next() ) {
+
+                count += 1 ;
+            }
+
+            assertEquals( 1000  ,
+                          count ) ;
+
+            reader.seek( 250000 ,
+                         259999 ) ;
+
+            int rising  = 0 ;
+            int falling = 0 ;
+
+            while ( reader.next() ) {
+
+                assertTrue( reader.getNanoTimestamp() >= 250000 ) ;
+                assertTrue( reader.getNanoTimestamp() <= 259999 ) ;
+
+                if ( reader.isRising() ) {
+
+                    assertEquals( 1               ,
+                                  reader.getId() ) ;
+
+                    rising += 1 ;
+                }
+
+                else {
+
+                    assertTrue( reader.isFalling() ) ;
+
+                    falling += 1 ;
+                }
+            }
+
+            assertEquals( 10     ,
+                          rising ) ;
+
+            assertEquals( 10      ,
+                          falling ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Journaling written values." )
+    void writes() throws IOException {
+
+        GpioBuffer buffer = new GpioBuffer() ;
+
+        GpioLine line0  = new GpioLine( 17 ,
+                                        0  ) ;
+
+        GpioLine line9  = new GpioLine( 27 ,
+                                        9  ) ;
+
+        GpioLine line63 = new GpioLine( 4  ,
+                                        63 ) ;
+
+        try ( GpioEventJournal journal = new GpioEventJournal( this.directory ,
+                                                                16             ,
+                                                                4              ) ) {
+
+            journal.appendWrite( 42                   ,
+                                 buffer.set( line9  ,
+                                             true   )
+                                       .set( line63 ,
+                                             true   ) ) ;
+        }
+
+        try ( GpioEventJournalReader reader = new GpioEventJournalReader( this.directory ) ) {
+
+            assertTrue( reader.next() ) ;
+
+            assertTrue( reader.isWrite() ) ;
+
+            assertEquals( 42              ,
+                          reader.getId() ) ;
+
+            assertEquals( ( 1L << 9 ) | ( 1L << 63 ) ,
+                          reader.getValues()         ) ;
+
+            assertFalse( reader.getValue( line0 ) ) ;
+            assertTrue( reader.getValue( line9 ) ) ;
+            assertTrue( reader.getValue( line63 ) ) ;
+
+            assertFalse( reader.next() ) ;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventBatch         ;
+import io.helins.linux.gpio.GpioEventPublisher     ;
+import io.helins.linux.gpio.GpioEventSource        ;
+import java.util.concurrent.BlockingQueue          ;
+import java.util.concurrent.CountDownLatch         ;
+import java.util.concurrent.Executor               ;
+import java.util.concurrent.Flow                   ;
+import java.util.concurrent.LinkedBlockingQueue    ;
+import java.util.concurrent.TimeUnit               ;
+import java.util.concurrent.atomic.AtomicInteger   ;
+import java.util.concurrent.atomic.AtomicReference ;
+import org.junit.jupiter.api.DisplayName           ;
+import org.junit.jupiter.api.Test                  ;
+
+
+
+
+public class GpioEventPublisherTest {
+
+
+    // Endless source of events, the id of an event being how many events were read before it.
+    //
+    private static final class Counter implements GpioEventSource {
+
+
+        private final AtomicInteger nRead = new AtomicInteger( 0 ) ;
+
+
+
+
+        @Override
+        public boolean waitForEvent( GpioEvent data    ,
+                                     int       timeout ) {
+
+            int id = this.nRead.getAndIncrement() ;
+
+            data.set( id                               ,
+                      GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                      id                               ) ;
+
+            return true ;
+        }
+
+
+
+
+        @Override
+        public boolean waitForEvents( GpioEventBatch batch   ,
+                                      int            timeout ) {
+
+            batch.clear() ;
+
+            while ( batch.isFull() == false ) {
+
+                int id = this.nRead.getAndIncrement() ;
+
+                batch.add( id                               ,
+                           GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                           id                               ) ;
+            }
+
+            return true ;
+        }
+    }
+
+
+
+
+    // Subscriber recording what it is signaled.
+    //
+    private static class Recorder implements Flow.Subscriber< GpioEvent > {
+
+
+        final BlockingQueue< Integer >     ids          = new LinkedBlockingQueue<>() ;
+        final AtomicReference< Throwable > error        = new AtomicReference<>()     ;
+        final CountDownLatch               isTerminated = new CountDownLatch( 1 )     ;
+
+        volatile Flow.Subscription subscription ;
+
+
+
+
+        @Override
+        public void onSubscribe( Flow.Subscription subscription ) {
+
+            this.subscription = subscription ;
+        }
+
+
+
+
+        @Override
+        public void onNext( GpioEvent event ) {
+
+            this.ids.add( event.getId() ) ;
+        }
+
+
+
+
+        @Override
+        public void onError( Throwable error ) {
+
+            this.error.set( error ) ;
+
+            this.isTerminated.countDown() ;
+        }
+
+
+
+
+        @Override
+        public void onComplete() {
+
+            this.isTerminated.countDown() ;
+        }
+
+
+
+
+        // Retrieves the next id delivered within a second.
+        //
+        int next() throws InterruptedException {
+
+            Integer id = this.ids.poll( 1                ,
+                                        TimeUnit.SECONDS ) ;
+
+            assertNotNull( id ) ;
+
+            return id ;
+        }
+    }
+
+
+
+
+    // Runs each task on a new thread, remembering what it threw.
+    //
+    private static Executor executor( AtomicReference< Throwable > thrown ) {
+
+        return ( task ) -> new Thread( () -> {
+
+            try {
+
+                task.run() ;
+            }
+
+            catch ( Throwable e ) {
+
+                thrown.set( e ) ;
+            }
+        } ).start() ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Events are read only as far as requested, and completion is signaled when closed." )
+    void demand() throws InterruptedException {
+
+        Counter  counter  = new Counter()  ;
+        Recorder recorder = new Recorder() ;
+
+        GpioEventPublisher publisher = new GpioEventPublisher( counter                             ,
+                                                               executor( new AtomicReference<>() ) ,
+                                                               16                                  ,
+                                                               10                                  ) ;
+
+        publisher.subscribe( recorder ) ;
+
+        recorder.subscription.request( 1 ) ;
+
+        assertEquals( 0               ,
+                      recorder.next() ) ;
+
+        Thread.sleep( 50 ) ;
+
+        // Nothing beyond demand is read from the source.
+        //
+        assertEquals( 1                   ,
+                      counter.nRead.get() ) ;
+
+        assertTrue( recorder.ids.isEmpty() ) ;
+
+        recorder.subscription.request( 3 ) ;
+
+        for ( int i = 1 ;
+              i < 4     ;
+              i += 1    ) {
+
+            assertEquals( i               ,
+                          recorder.next() ) ;
+        }
+
+        Thread.sleep( 50 ) ;
+
+        assertEquals( 4                   ,
+                      counter.nRead.get() ) ;
+
+        recorder.subscription.request( Long.MAX_VALUE ) ;
+
+        for ( int i = 4 ;
+              i < 100   ;
+              i += 1    ) {
+
+            assertEquals( i               ,
+                          recorder.next() ) ;
+        }
+
+        publisher.close() ;
+
+        assertTrue( recorder.isTerminated.await( 1                ,
+                                                 TimeUnit.SECONDS ) ) ;
+
+        assertNull( recorder.error.get() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Nothing is signaled after cancellation." )
+    void cancellation() throws InterruptedException {
+
+        Counter  counter  = new Counter()  ;
+        Recorder recorder = new Recorder() {
+
+            @Override
+            public void onNext( GpioEvent event ) {
+
+                super.onNext( event ) ;
+
+                if ( event.getId() == 4 ) {
+
+                    this.subscription.cancel() ;
+                }
+            }
+        } ;
+
+        GpioEventPublisher publisher = new GpioEventPublisher( counter                             ,
+                                                               executor( new AtomicReference<>() ) ,
+                                                               16                                  ,
+                                                               10                                  ) ;
+
+        publisher.subscribe( recorder ) ;
+
+        recorder.subscription.request( Long.MAX_VALUE ) ;
+
+        for ( int i = 0 ;
+              i < 5     ;
+              i += 1    ) {
+
+            assertEquals( i               ,
+                          recorder.next() ) ;
+        }
+
+        publisher.close() ;
+
+        assertFalse( recorder.isTerminated.await( 50                    ,
+                                                  TimeUnit.MILLISECONDS ) ) ;
+
+        assertTrue( recorder.ids.isEmpty() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "A throwing subscriber is considered cancelled while an invalid request is signaled as an error." )
+    void failures() throws InterruptedException {
+
+        AtomicReference< Throwable > thrown = new AtomicReference<>() ;
+
+        Recorder throwing = new Recorder() {
+
+            @Override
+            public void onNext( GpioEvent event ) {
+
+                super.onNext( event ) ;
+
+                throw new IllegalStateException() ;
+            }
+        } ;
+
+        GpioEventPublisher publisher = new GpioEventPublisher( new Counter()      ,
+                                                               executor( thrown ) ,
+                                                               16                 ,
+                                                               10                 ) ;
+
+        publisher.subscribe( throwing ) ;
+
+        throwing.subscription.request( 10 ) ;
+
+        assertEquals( 0               ,
+                      throwing.next() ) ;
+
+        assertFalse( throwing.isTerminated.await( 50                    ,
+                                                  TimeUnit.MILLISECONDS ) ) ;
+
+        assertTrue( throwing.ids.isEmpty() ) ;
+
+        assertTrue( thrown.get() instanceof IllegalStateException ) ;
+
+        Recorder recorder = new Recorder() ;
+
+        new GpioEventPublisher( new Counter()                       ,
+                                executor( new AtomicReference<>() ) ,
+                                16                                  ,
+                                10                                  ).subscribe( recorder ) ;
+
+        recorder.subscription.request( 0 ) ;
+
+        assertTrue( recorder.isTerminated.await( 1                ,
+                                                 TimeUnit.SECONDS ) ) ;
+
+        assertTrue( recorder.error.get() instanceof IllegalArgumentException ) ;
+    }
+}
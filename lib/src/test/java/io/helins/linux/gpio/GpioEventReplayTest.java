@@ -0,0 +1,138 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioBuffer             ;
+import io.helins.linux.gpio.GpioEvent              ;
+import io.helins.linux.gpio.GpioEventBatch         ;
+import io.helins.linux.gpio.GpioEventJournal       ;
+import io.helins.linux.gpio.GpioEventJournalReader ;
+import io.helins.linux.gpio.GpioEventReplay        ;
+import java.io.IOException                         ;
+import java.nio.file.Path                          ;
+import org.junit.jupiter.api.DisplayName           ;
+import org.junit.jupiter.api.Test                  ;
+import org.junit.jupiter.api.io.TempDir            ;
+
+
+
+
+public class GpioEventReplayTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    // Records 100 events, 1 millisecond apart, alternating between 2 lines, with a write in the middle.
+    //
+    private void record() throws IOException {
+
+        GpioEvent event = new GpioEvent() ;
+
+        try ( GpioEventJournal journal = new GpioEventJournal( this.directory ,
+                                                                64             ,
+                                                                8              ) ) {
+
+            for ( int i = 0 ;
+                  i < 100   ;
+                  i += 1    ) {
+
+                journal.append( event.set( 5000000000L + i * 1000000L       ,
+                                           GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                           i % 2                            ) ) ;
+
+                if ( i == 50 ) {
+
+                    journal.appendWrite( 7                ,
+                                         new GpioBuffer() ) ;
+                }
+            }
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Replaying at an accelerated speed follows timing." )
+    void accelerated() throws IOException {
+
+        this.record() ;
+
+        GpioEventReplay replay = new GpioEventReplay( new GpioEventJournalReader( this.directory ) ,
+                                                      10                                           ) ;
+
+        GpioEvent event = new GpioEvent()   ;
+        long      start = System.nanoTime() ;
+
+        for ( int i = 0 ;
+              i < 100   ;
+              i += 1    ) {
+
+            assertTrue( replay.waitForEvent( event ,
+                                             -1    ) ) ;
+
+            assertEquals( 5000000000L + i * 1000000L ,
+                          event.getNanoTimestamp()   ) ;
+
+            assertEquals( i % 2         ,
+                          event.getId() ) ;
+
+            assertTrue( event.isRising() ) ;
+        }
+
+        // 99 milliseconds of events replayed 10 times faster.
+        //
+        assertTrue( System.nanoTime() - start >= 9900000 ) ;
+
+        assertFalse( replay.waitForEvent( event ,
+                                          -1    ) ) ;
+
+        assertTrue( replay.isExhausted() ) ;
+
+        assertEquals( 100                   ,
+                      replay.getDelivered() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Replaying as fast as possible fills batches." )
+    void asFastAsPossible() throws IOException {
+
+        this.record() ;
+
+        GpioEventReplay replay = new GpioEventReplay( new GpioEventJournalReader( this.directory ) ,
+                                                      GpioEventReplay.AS_FAST_AS_POSSIBLE         ) ;
+
+        GpioEventBatch batch = new GpioEventBatch( 16 ) ;
+
+        int nBatches = 0 ;
+        int nEvents  = 0 ;
+
+        while ( replay.waitForEvents( batch ,
+                                      0     ) ) {
+
+            nBatches += 1            ;
+            nEvents  += batch.size() ;
+        }
+
+        assertEquals( 7        ,
+                      nBatches ) ;
+
+        assertEquals( 100     ,
+                      nEvents ) ;
+    }
+}
@@ -0,0 +1,310 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioEvent          ;
+import io.helins.linux.gpio.GpioEventRing      ;
+import io.helins.linux.gpio.GpioOverflowPolicy ;
+import io.helins.linux.gpio.GpioWaitMode       ;
+import org.junit.jupiter.api.DisplayName       ;
+import org.junit.jupiter.api.Test              ;
+
+
+
+
+public class GpioEventRingTest {
+
+
+    @Test
+    @DisplayName( "Every consumer sees every event, in order." )
+    void broadcast() {
+
+        GpioEventRing ring = new GpioEventRing( 8                        ,
+                                                GpioOverflowPolicy.BLOCK ,
+                                                GpioWaitMode.SPIN        ) ;
+
+        GpioEventRing.Consumer consumer1 = ring.newConsumer( GpioWaitMode.SPIN ) ;
+        GpioEventRing.Consumer consumer2 = ring.newConsumer( GpioWaitMode.SPIN ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < 8     ;
+              i += 1    ) {
+
+            assertTrue( ring.publish( event.set( 1000 + i                          ,
+                                                 GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                                 i                                ) ) ) ;
+        }
+
+        for ( GpioEventRing.Consumer consumer : new GpioEventRing.Consumer[] { consumer1 ,
+                                                                                consumer2 } ) {
+
+            assertEquals( 8              ,
+                          consumer.lag() ) ;
+
+            for ( int i = 0 ;
+                  i < 8     ;
+                  i += 1    ) {
+
+                assertTrue( consumer.poll() ) ;
+
+                assertEquals( i                ,
+                              consumer.getId() ) ;
+
+                assertEquals( 1000 + i                      ,
+                              consumer.getNanoTimestamp() ) ;
+
+                assertTrue( consumer.isRising() ) ;
+                assertFalse( consumer.isFalling() ) ;
+            }
+
+            assertFalse( consumer.poll() ) ;
+        }
+
+        assertEquals( 8                   ,
+                      ring.getPublished() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Dropping newest events when full." )
+    void dropNewest() {
+
+        GpioEventRing ring = new GpioEventRing( 4                              ,
+                                                GpioOverflowPolicy.DROP_NEWEST ,
+                                                GpioWaitMode.SPIN              ) ;
+
+        GpioEventRing.Consumer consumer = ring.newConsumer( GpioWaitMode.SPIN ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < 6     ;
+              i += 1    ) {
+
+            ring.publish( event.set( i ,
+                                     0 ,
+                                     i ) ) ;
+        }
+
+        assertEquals( 4                   ,
+                      ring.getPublished() ) ;
+
+        assertEquals( 2                 ,
+                      ring.getDropped() ) ;
+
+        for ( int i = 0 ;
+              i < 4     ;
+              i += 1    ) {
+
+            assertTrue( consumer.poll() ) ;
+
+            assertEquals( i                ,
+                          consumer.getId() ) ;
+        }
+
+        assertFalse( consumer.poll() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Dropping oldest events when full." )
+    void dropOldest() {
+
+        GpioEventRing ring = new GpioEventRing( 4                              ,
+                                                GpioOverflowPolicy.DROP_OLDEST ,
+                                                GpioWaitMode.SPIN              ) ;
+
+        GpioEventRing.Consumer consumer = ring.newConsumer( GpioWaitMode.SPIN ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < 10    ;
+              i += 1    ) {
+
+            assertTrue( ring.publish( event.set( i ,
+                                                 0 ,
+                                                 i ) ) ) ;
+        }
+
+        // The slot following the cursor is never read.
+        //
+        assertEquals( 3              ,
+                      consumer.lag() ) ;
+
+        for ( int i = 7 ;
+              i < 10    ;
+              i += 1    ) {
+
+            assertTrue( consumer.poll() ) ;
+
+            assertEquals( i                ,
+                          consumer.getId() ) ;
+        }
+
+        assertFalse( consumer.poll() ) ;
+
+        assertEquals( 7                     ,
+                      consumer.getMissed() ) ;
+
+        consumer.close() ;
+        consumer.close() ;
+
+        assertThrows( IllegalArgumentException.class                          ,
+                      () -> new GpioEventRing( 1                              ,
+                                               GpioOverflowPolicy.DROP_OLDEST ,
+                                               GpioWaitMode.SPIN              ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "A consumer lapped while copying an event never sees a torn event." )
+    void lapped() throws InterruptedException {
+
+        final int N = 1000000 ;
+
+        GpioEventRing ring = new GpioEventRing( 4                              ,
+                                                GpioOverflowPolicy.DROP_OLDEST ,
+                                                GpioWaitMode.SPIN              ) ;
+
+        GpioEventRing.Consumer consumer = ring.newConsumer( GpioWaitMode.YIELD ) ;
+
+        boolean[] isConsistent = { true } ;
+        long[]    nConsumed    = { 0 }    ;
+
+        Thread thread = new Thread( () -> {
+
+            int last = -1 ;
+
+            while ( last < N - 1 ) {
+
+                if ( consumer.poll() == false ) {
+
+                    Thread.yield() ;
+
+                    continue ;
+                }
+
+                int id = consumer.getId() ;
+
+                // Timestamp and edges are derived from the id, they must all come from the same event.
+                //
+                isConsistent[ 0 ] &= id > last
+                                     && consumer.getNanoTimestamp() == id
+                                     && consumer.isRising() == ( ( id & 1 ) == 0 ) ;
+
+                last            = id ;
+                nConsumed[ 0 ] += 1  ;
+            }
+        } ) ;
+
+        thread.start() ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < N     ;
+              i += 1    ) {
+
+            int edges = ( i & 1 ) == 0 ? GpioEvent.GPIO_EVENT_RISING_EDGE
+                                       : GpioEvent.GPIO_EVENT_FALLING_EDGE ;
+
+            ring.publish( event.set( i     ,
+                                     edges ,
+                                     i     ) ) ;
+        }
+
+        thread.join() ;
+
+        assertTrue( isConsistent[ 0 ] ) ;
+
+        assertEquals( N                                     ,
+                      nConsumed[ 0 ] + consumer.getMissed() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Blocking producer does not lose events for concurrent consumers." )
+    void concurrent() throws InterruptedException {
+
+        final int N = 100000 ;
+
+        GpioEventRing ring = new GpioEventRing( 64                       ,
+                                                GpioOverflowPolicy.BLOCK ,
+                                                GpioWaitMode.YIELD       ) ;
+
+        GpioEventRing.Consumer[] consumers = { ring.newConsumer( GpioWaitMode.SPIN  ) ,
+                                               ring.newConsumer( GpioWaitMode.YIELD ) ,
+                                               ring.newConsumer( GpioWaitMode.PARK  ) } ;
+
+        boolean[] isOrdered = new boolean[ consumers.length ] ;
+        Thread[]  threads   = new Thread[ consumers.length ]  ;
+
+        for ( int c = 0            ;
+              c < consumers.length ;
+              c += 1               ) {
+
+            final int                    index    = c              ;
+            final GpioEventRing.Consumer consumer = consumers[ c ] ;
+
+            threads[ c ] = new Thread( () -> {
+
+                boolean ordered = true ;
+
+                for ( int i = 0 ;
+                      i < N     ;
+                      i += 1    ) {
+
+                    consumer.take() ;
+
+                    ordered &= consumer.getId() == i ;
+                }
+
+                isOrdered[ index ] = ordered ;
+            } ) ;
+
+            threads[ c ].start() ;
+        }
+
+        GpioEvent event = new GpioEvent() ;
+
+        for ( int i = 0 ;
+              i < N     ;
+              i += 1    ) {
+
+            ring.publish( event.set( i ,
+                                     0 ,
+                                     i ) ) ;
+        }
+
+        for ( int c = 0            ;
+              c < consumers.length ;
+              c += 1               ) {
+
+            threads[ c ].join() ;
+
+            assertTrue( isOrdered[ c ] ) ;
+        }
+
+        assertEquals( 0                 ,
+                      ring.getDropped() ) ;
+    }
+}
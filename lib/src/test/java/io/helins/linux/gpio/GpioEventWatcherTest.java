@@ -0,0 +1,179 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioDevice        ;
+import io.helins.linux.gpio.GpioEdgeDetection ;
+import io.helins.linux.gpio.GpioEventBatch    ;
+import io.helins.linux.gpio.GpioEventHandle   ;
+import io.helins.linux.gpio.GpioEventRequest  ;
+import io.helins.linux.gpio.GpioEventWatcher  ;
+import io.helins.linux.gpio.GpioSimulatedChip ;
+import java.io.IOException                    ;
+import org.junit.jupiter.api.DisplayName      ;
+import org.junit.jupiter.api.Test             ;
+
+
+
+
+public class GpioEventWatcherTest {
+
+
+    // Number of simulated lines, each one being watched.
+    //
+    private static final int N_LINES = 3 ;
+
+
+
+
+    // Requests non-blocking event handles for all lines and adds them to the watcher, the id being the number of the
+    // line.
+    //
+    private static GpioEventHandle[] watch( GpioDevice       device  ,
+                                            GpioEventWatcher watcher ) throws IOException {
+
+        GpioEventHandle[] handles = new GpioEventHandle[ N_LINES ] ;
+
+        for ( int line = 0   ;
+              line < N_LINES ;
+              line += 1      ) {
+
+            handles[ line ] = device.requestEvent( new GpioEventRequest( line                                 ,
+                                                                         GpioEdgeDetection.RISING_AND_FALLING ) ) ;
+
+            handles[ line ].setNonBlocking( true ) ;
+
+            watcher.addHandle( handles[ line ] ,
+                               line            ) ;
+        }
+
+        return handles ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "A single wait reads events from all ready handles." )
+    void severalReady() throws IOException {
+
+        try ( GpioSimulatedChip chip    = new GpioSimulatedChip( "sim"   ,
+                                                                 N_LINES ) ;
+              GpioDevice        device  = new GpioDevice( chip  ,
+                                                          "sim" ) ;
+              GpioEventWatcher  watcher = new GpioEventWatcher() ) {
+
+            GpioEventHandle[] handles = watch( device  ,
+                                               watcher ) ;
+
+            for ( int line = 0   ;
+                  line < N_LINES ;
+                  line += 1      ) {
+
+                chip.setEdgeRate( line      ,
+                                  1000000.0 ) ;
+            }
+
+            // 2 edges per line.
+            //
+            chip.advance( 2000 ) ;
+
+            GpioEventBatch batch = new GpioEventBatch( 16 ) ;
+
+            assertTrue( watcher.waitForEvents( batch ,
+                                               0     ) ) ;
+
+            assertEquals( 2 * N_LINES  ,
+                          batch.size() ) ;
+
+            int[] nPerLine = new int[ N_LINES ] ;
+
+            for ( int i = 0        ;
+                  i < batch.size() ;
+                  i += 1           ) {
+
+                nPerLine[ batch.getId( i ) ] += 1 ;
+            }
+
+            assertArrayEquals( new int[] { 2 , 2 , 2 } ,
+                               nPerLine                ) ;
+
+            // Everything was read.
+            //
+            assertFalse( watcher.waitForEvents( batch ,
+                                                0     ) ) ;
+
+            for ( GpioEventHandle handle : handles ) {
+
+                handle.close() ;
+            }
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Handles which could not be read because the batch is full remain ready for the next wait." )
+    void batchFull() throws IOException {
+
+        try ( GpioSimulatedChip chip    = new GpioSimulatedChip( "sim"   ,
+                                                                 N_LINES ) ;
+              GpioDevice        device  = new GpioDevice( chip  ,
+                                                          "sim" ) ;
+              GpioEventWatcher  watcher = new GpioEventWatcher() ) {
+
+            GpioEventHandle[] handles = watch( device  ,
+                                               watcher ) ;
+
+            for ( int line = 0   ;
+                  line < N_LINES ;
+                  line += 1      ) {
+
+                chip.setEdgeRate( line      ,
+                                  1000000.0 ) ;
+            }
+
+            // 4 edges per line, more than a batch holds.
+            //
+            chip.advance( 4000 ) ;
+
+            GpioEventBatch batch    = new GpioEventBatch( 5 ) ;
+            int[]          nPerLine = new int[ N_LINES ]      ;
+            int            nWaits   = 0                       ;
+
+            while ( watcher.waitForEvents( batch ,
+                                           0     ) ) {
+
+                assertTrue( batch.size() > 0 ) ;
+
+                for ( int i = 0        ;
+                      i < batch.size() ;
+                      i += 1           ) {
+
+                    nPerLine[ batch.getId( i ) ] += 1 ;
+                }
+
+                nWaits += 1 ;
+            }
+
+            assertTrue( nWaits >= 3 ) ;
+
+            assertArrayEquals( new int[] { 4 , 4 , 4 } ,
+                               nPerLine                ) ;
+
+            for ( GpioEventHandle handle : handles ) {
+
+                handle.close() ;
+            }
+        }
+    }
+}
@@ -65,6 +65,13 @@ public class GpioFlagsTest {
 
         flagsTest.fromRequest( flagsRef.forRequest() ) ;
 
+        assertEquals( flagsRef  ,
+                      flagsTest ) ;
+
+        flagsTest = new GpioFlags() ;
+
+        flagsTest.fromLineRequest( flagsRef.forLineRequest() ) ;
+
         assertEquals( flagsRef  ,
                       flagsTest ) ;
     }
@@ -0,0 +1,109 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioLatencyHistograms ;
+import io.helins.linux.gpio.GpioLatencySnapshot   ;
+import org.junit.jupiter.api.DisplayName          ;
+import org.junit.jupiter.api.Test                 ;
+
+
+
+
+public class GpioLatencyHistogramsTest {
+
+
+    @Test
+    @DisplayName( "Buckets cover latencies with a bounded relative error." )
+    void buckets() {
+
+        for ( long latency = 1           ;
+              latency < 1000000000000L   ;
+              latency = latency * 3 + 1  ) {
+
+            int  bucket = GpioLatencyHistograms.bucketOf( latency ) ;
+            long upper  = GpioLatencyHistograms.upperBound( bucket ) ;
+
+            assertTrue( upper >= latency ) ;
+            assertTrue( upper - latency <= latency / 32 ) ;
+
+            assertEquals( bucket                                  ,
+                          GpioLatencyHistograms.bucketOf( upper ) ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Percentiles per id, snapshotting and resetting." )
+    void percentiles() {
+
+        GpioLatencyHistograms histograms = new GpioLatencyHistograms( 1 ,
+                                                                      2 ) ;
+
+        // 1 to 10000 microseconds.
+        //
+        for ( int i = 1  ;
+              i <= 10000 ;
+              i += 1     ) {
+
+            assertTrue( histograms.record( 1         ,
+                                           i * 1000L ) ) ;
+        }
+
+        assertFalse( histograms.record( 3    ,
+                                        1000 ) ) ;
+
+        GpioLatencySnapshot snapshot = histograms.snapshot( 1                         ,
+                                                            new GpioLatencySnapshot() ,
+                                                            true                      ) ;
+
+        assertEquals( 10000               ,
+                      snapshot.getCount() ) ;
+
+        assertEquals( 10000000L        ,
+                      snapshot.getMax() ) ;
+
+        assertEquals( 5000500            ,
+                      snapshot.getMean() ,
+                      1e-6               ) ;
+
+        assertEquals( 5000000.0         ,
+                      snapshot.getP50() ,
+                      5000000.0 / 32    ) ;
+
+        assertEquals( 9900000.0         ,
+                      snapshot.getP99() ,
+                      9900000.0 / 32    ) ;
+
+        assertEquals( 9990000.0          ,
+                      snapshot.getP999() ,
+                      9990000.0 / 32     ) ;
+
+        // Was reset.
+        //
+        histograms.snapshot( 1        ,
+                             snapshot ,
+                             false    ) ;
+
+        assertEquals( 0                   ,
+                      snapshot.getCount() ) ;
+
+        assertEquals( 0                 ,
+                      snapshot.getP99() ) ;
+
+        assertEquals( 0                                       ,
+                      histograms.snapshot( 2        ,
+                                           snapshot ,
+                                           false    ).getCount() ) ;
+    }
+}
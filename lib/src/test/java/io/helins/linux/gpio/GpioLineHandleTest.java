@@ -0,0 +1,257 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import com.sun.jna.Memory                                ;
+import io.helins.linux.SizeT                             ;
+import io.helins.linux.gpio.GpioEvent                    ;
+import io.helins.linux.gpio.GpioEventBatch               ;
+import io.helins.linux.gpio.GpioLine                     ;
+import io.helins.linux.gpio.GpioLineHandle               ;
+import io.helins.linux.gpio.internal.NativeGpioLineEvent ;
+import io.helins.linux.gpio.internal.NativeLinux         ;
+import io.helins.linux.io.LinuxIO                        ;
+import java.io.IOException                               ;
+import java.nio.ByteBuffer                               ;
+import java.nio.ByteOrder                                ;
+import java.nio.file.Files                               ;
+import java.nio.file.Path                                ;
+import java.util.ArrayList                               ;
+import java.util.List                                    ;
+import org.junit.jupiter.api.DisplayName                 ;
+import org.junit.jupiter.api.Test                        ;
+import org.junit.jupiter.api.io.TempDir                  ;
+
+
+
+
+public class GpioLineHandleTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    // Writes raw line events to a file, each event being { line, line sequence number }, and opens it.
+    //
+    private int events( int[][] events ) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate( events.length * NativeGpioLineEvent.BYTES )
+                                      .order( ByteOrder.nativeOrder() ) ;
+
+        for ( int i = 0         ;
+              i < events.length ;
+              i += 1            ) {
+
+            int offset = i * NativeGpioLineEvent.BYTES ;
+
+            buffer.putLong( offset + NativeGpioLineEvent.OFFSET_TIMESTAMP ,
+                            1000L * ( i + 1 )                             ) ;
+
+            buffer.putInt( offset + NativeGpioLineEvent.OFFSET_ID ,
+                           GpioEvent.GPIO_EVENT_RISING_EDGE       ) ;
+
+            buffer.putInt( offset + NativeGpioLineEvent.OFFSET_OFFSET ,
+                           events[ i ][ 0 ]                           ) ;
+
+            buffer.putInt( offset + NativeGpioLineEvent.OFFSET_SEQNO ,
+                           i + 1                                     ) ;
+
+            buffer.putInt( offset + NativeGpioLineEvent.OFFSET_LINE_SEQNO ,
+                           events[ i ][ 1 ]                               ) ;
+        }
+
+        Path path = this.directory.resolve( "events" ) ;
+
+        Files.write( path           ,
+                     buffer.array() ) ;
+
+        return LinuxIO.open64( path.toString()  ,
+                               LinuxIO.O_RDONLY ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Gaps in sequence numbers are counted as dropped events." )
+    void gaps() throws IOException {
+
+        GpioLine line5 = new GpioLine( 5 ,
+                                       0 ) ;
+        GpioLine line7 = new GpioLine( 7 ,
+                                       1 ) ;
+
+        int fd = this.events( new int[][] { { 5 , 1 } ,
+                                            { 7 , 1 } ,
+                                            { 5 , 4 } ,
+                                            { 7 , 2 } } ) ;
+
+        assertTrue( fd >= 0 ) ;
+
+        List< Long > gaps = new ArrayList<>() ;
+
+        try ( GpioLineHandle handle = new GpioLineHandle( fd                               ,
+                                                          new GpioLine[] { line5 , line7 } ) ) {
+
+            handle.setGapHandler( ( line , dropped ) -> {
+
+                assertSame( line5 ,
+                            line  ) ;
+
+                gaps.add( dropped ) ;
+            } ) ;
+
+            GpioEventBatch batch = handle.readEvents( new GpioEventBatch() ) ;
+
+            assertEquals( 4            ,
+                          batch.size() ) ;
+
+            assertEquals( 7                ,
+                          batch.getId( 3 ) ) ;
+
+            assertEquals( 3                            ,
+                          batch.getSequenceNumber( 2 ) ) ;
+
+            assertEquals( 4                                ,
+                          batch.getLineSequenceNumber( 2 ) ) ;
+
+            assertEquals( 2                          ,
+                          handle.getDropped( line5 ) ) ;
+
+            assertEquals( 0                          ,
+                          handle.getDropped( line7 ) ) ;
+
+            assertEquals( 2                   ,
+                          handle.getDropped() ) ;
+
+            assertEquals( List.of( 2L ) ,
+                          gaps          ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Counted reads stop at the requested number of events or when nothing else arrives." )
+    void counted() throws IOException {
+
+        GpioLine line5 = new GpioLine( 5 ,
+                                       0 ) ;
+
+        int fd = this.events( new int[][] { { 5 , 1 } ,
+                                            { 5 , 2 } ,
+                                            { 5 , 3 } } ) ;
+
+        assertTrue( fd >= 0 ) ;
+
+        try ( GpioLineHandle handle = new GpioLineHandle( fd                       ,
+                                                          new GpioLine[] { line5 } ) ) {
+
+            GpioEventBatch batch = new GpioEventBatch( 4 ) ;
+
+            handle.readEvents( batch   ,
+                               2       ,
+                               1000000 ) ;
+
+            assertEquals( 2            ,
+                          batch.size() ) ;
+
+            assertEquals( 2000L                       ,
+                          batch.getNanoTimestamp( 1 ) ) ;
+
+            // Only one event remains in the file.
+            //
+            handle.readEvents( batch ,
+                               4     ,
+                               -1    ) ;
+
+            assertEquals( 1            ,
+                          batch.size() ) ;
+
+            assertEquals( 3                                ,
+                          batch.getLineSequenceNumber( 0 ) ) ;
+
+            assertThrows( IllegalArgumentException.class ,
+                          () -> handle.readEvents( batch ,
+                                                   5     ,
+                                                   0     ) ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "In non-blocking mode, polling an empty queue returns false right away." )
+    void nonBlocking() throws IOException {
+
+        GpioLine line5 = new GpioLine( 5 ,
+                                       0 ) ;
+
+        int[] pipe = new int[ 2 ] ;
+
+        assertEquals( 0                                       ,
+                      NativeLinux.pipe2( pipe                  ,
+                                         NativeLinux.O_CLOEXEC ) ) ;
+
+        try ( GpioLineHandle handle = new GpioLineHandle( pipe[ 0 ]                ,
+                                                          new GpioLine[] { line5 } ) ) {
+
+            GpioEvent event = new GpioEvent() ;
+
+            assertThrows( IllegalStateException.class ,
+                          () -> handle.pollEvent( event ) ) ;
+
+            handle.setNonBlocking( true ) ;
+
+            assertTrue( handle.isNonBlocking() ) ;
+
+            assertFalse( handle.pollEvent( event ) ) ;
+
+            Memory raw = new Memory( NativeGpioLineEvent.BYTES ) ;
+
+            raw.clear() ;
+
+            raw.setLong( NativeGpioLineEvent.OFFSET_TIMESTAMP ,
+                         1000L                                ) ;
+
+            raw.setInt( NativeGpioLineEvent.OFFSET_OFFSET ,
+                        5                                 ) ;
+
+            raw.setInt( NativeGpioLineEvent.OFFSET_LINE_SEQNO ,
+                        1                                     ) ;
+
+            assertEquals( NativeGpioLineEvent.BYTES                     ,
+                          LinuxIO.write( pipe[ 1 ]                              ,
+                                         raw                                    ,
+                                         new SizeT( NativeGpioLineEvent.BYTES ) ).intValue() ) ;
+
+            assertTrue( handle.pollEvent( event ) ) ;
+
+            assertEquals( 5             ,
+                          event.getId() ) ;
+
+            assertEquals( 1000L                    ,
+                          event.getNanoTimestamp() ) ;
+
+            assertFalse( handle.pollEvent( event ) ) ;
+        }
+
+        finally {
+
+            LinuxIO.close( pipe[ 1 ] ) ;
+        }
+    }
+}
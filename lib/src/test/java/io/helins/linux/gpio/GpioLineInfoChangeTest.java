@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioLineInfoChange                 ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfo        ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfoChanged ;
+import io.helins.linux.io.LinuxIO                              ;
+import java.io.IOException                                     ;
+import java.nio.ByteBuffer                                     ;
+import java.nio.ByteOrder                                      ;
+import java.nio.charset.StandardCharsets                       ;
+import java.nio.file.Files                                     ;
+import java.nio.file.Path                                      ;
+import org.junit.jupiter.api.DisplayName                       ;
+import org.junit.jupiter.api.Test                              ;
+import org.junit.jupiter.api.io.TempDir                        ;
+
+
+
+
+public class GpioLineInfoChangeTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    // Writes a raw change of line info to a buffer.
+    //
+    private static void change( ByteBuffer buffer    ,
+                                int        index     ,
+                                int        eventType ,
+                                String     consumer  ) {
+
+        int offset = index * NativeGpioLineInfoChanged.BYTES        ;
+        int info   = offset + NativeGpioLineInfoChanged.OFFSET_INFO ;
+
+        buffer.putInt( info + NativeGpioLineInfo.OFFSET_LINE ,
+                       17                                    ) ;
+
+        buffer.position( info + NativeGpioLineInfo.OFFSET_CONSUMER ) ;
+        buffer.put( consumer.getBytes( StandardCharsets.US_ASCII ) ) ;
+
+        buffer.putLong( offset + NativeGpioLineInfoChanged.OFFSET_TIMESTAMP ,
+                        1000L * ( index + 1 )                               ) ;
+
+        buffer.putInt( offset + NativeGpioLineInfoChanged.OFFSET_EVENT_TYPE ,
+                       eventType                                            ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Layout of a change matches the kernel." )
+    void layout() {
+
+        assertEquals( 72                      ,
+                      NativeGpioLineInfo.SIZE ) ;
+
+        assertEquals( 104                             ,
+                      NativeGpioLineInfoChanged.BYTES ) ;
+
+        assertEquals( 72                                         ,
+                      NativeGpioLineInfoChanged.OFFSET_TIMESTAMP ) ;
+
+        assertEquals( 80                                          ,
+                      NativeGpioLineInfoChanged.OFFSET_EVENT_TYPE ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Changes are read one at a time into a reused instance." )
+    void read() throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate( 2 * NativeGpioLineInfoChanged.BYTES )
+                                      .order( ByteOrder.nativeOrder() ) ;
+
+        change( buffer                                               ,
+                0                                                    ,
+                NativeGpioLineInfoChanged.GPIOLINE_CHANGED_REQUESTED ,
+                "relay"                                              ) ;
+
+        change( buffer                                              ,
+                1                                                   ,
+                NativeGpioLineInfoChanged.GPIOLINE_CHANGED_RELEASED ,
+                ""                                                  ) ;
+
+        Path path = this.directory.resolve( "changes" ) ;
+
+        Files.write( path           ,
+                     buffer.array() ) ;
+
+        int fd = LinuxIO.open64( path.toString()  ,
+                                 LinuxIO.O_RDONLY ) ;
+
+        assertTrue( fd >= 0 ) ;
+
+        GpioLineInfoChange change = new GpioLineInfoChange() ;
+
+        try {
+
+            assertTrue( change.read( fd ) ) ;
+
+            assertEquals( GpioLineInfoChange.Type.REQUESTED ,
+                          change.getType()                  ) ;
+
+            assertEquals( 1000L                     ,
+                          change.getNanoTimestamp() ) ;
+
+            assertEquals( 17                             ,
+                          change.getLineInfo().getLine() ) ;
+
+            assertEquals( "relay"                            ,
+                          change.getLineInfo().getConsumer() ) ;
+
+            assertTrue( change.read( fd ) ) ;
+
+            assertEquals( GpioLineInfoChange.Type.RELEASED ,
+                          change.getType()                 ) ;
+
+            assertNull( change.getLineInfo().getConsumer() ) ;
+        }
+
+        finally {
+
+            LinuxIO.close( fd ) ;
+        }
+    }
+}
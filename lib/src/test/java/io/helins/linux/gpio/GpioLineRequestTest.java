@@ -0,0 +1,302 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import com.sun.jna.NativeLong                                      ;
+import com.sun.jna.Pointer                                         ;
+import io.helins.linux.errno.Errno                                 ;
+import io.helins.linux.gpio.GpioBackend                            ;
+import io.helins.linux.gpio.GpioDevice                             ;
+import io.helins.linux.gpio.GpioEdgeDetection                      ;
+import io.helins.linux.gpio.GpioEventClock                         ;
+import io.helins.linux.gpio.GpioFlags                              ;
+import io.helins.linux.gpio.GpioLine                               ;
+import io.helins.linux.gpio.GpioLineRequest                        ;
+import io.helins.linux.gpio.internal.NativeGpioHandleConfig        ;
+import io.helins.linux.gpio.internal.NativeGpioLineConfig          ;
+import io.helins.linux.gpio.internal.NativeGpioLineConfigAttribute ;
+import io.helins.linux.gpio.internal.NativeGpioLineEvent           ;
+import io.helins.linux.gpio.internal.NativeGpioLineRequest         ;
+import java.io.IOException                                         ;
+import org.junit.jupiter.api.DisplayName                           ;
+import org.junit.jupiter.api.Test                                  ;
+
+
+
+
+public class GpioLineRequestTest {
+
+
+    @Test
+    @DisplayName( "Native structures match the kernel API." )
+    void layout() {
+
+        assertEquals( 272                       ,
+                      NativeGpioLineConfig.SIZE ) ;
+
+        assertEquals( 32                                ,
+                      NativeGpioLineConfig.OFFSET_ATTRS ) ;
+
+        assertEquals( 256                                   ,
+                      NativeGpioLineRequest.OFFSET_CONSUMER ) ;
+
+        assertEquals( 288                                 ,
+                      NativeGpioLineRequest.OFFSET_CONFIG ) ;
+
+        assertEquals( 560                                    ,
+                      NativeGpioLineRequest.OFFSET_NUM_LINES ) ;
+
+        assertEquals( 588                             ,
+                      NativeGpioLineRequest.OFFSET_FD ) ;
+
+        assertEquals( 592                        ,
+                      NativeGpioLineRequest.SIZE ) ;
+
+        // _IOWR( 0xB4, 0x07, struct gpio_v2_line_request ).
+        //
+        assertEquals( ( 3L << 30 ) | ( (long)NativeGpioLineRequest.SIZE << 16 ) | ( 0xB4 << 8 ) | 0x07 ,
+                      GpioDevice.GPIO_V2_GET_LINE_IOCTL.longValue()                                   ) ;
+
+        assertEquals( 12                                ,
+                      NativeGpioLineEvent.OFFSET_OFFSET ) ;
+
+        assertEquals( 48                        ,
+                      NativeGpioLineEvent.BYTES ) ;
+
+        assertEquals( 84                          ,
+                      NativeGpioHandleConfig.SIZE ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Adding lines and encoding flags." )
+    void request() {
+
+        GpioLineRequest request = new GpioLineRequest() ;
+
+        long flags = request.memory.getLong( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_FLAGS ) ;
+
+        assertEquals( GpioFlags.LineFlags.INPUT | GpioFlags.LineFlags.EDGE_RISING | GpioFlags.LineFlags.EDGE_FALLING ,
+                      flags                                                                                          ) ;
+
+        request.setFlags( new GpioFlags().setActiveLow( true ) )
+               .setEdgeDetection( GpioEdgeDetection.FALLING ) ;
+
+        flags = request.memory.getLong( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_FLAGS ) ;
+
+        assertEquals( GpioFlags.LineFlags.INPUT | GpioFlags.LineFlags.ACTIVE_LOW | GpioFlags.LineFlags.EDGE_FALLING ,
+                      flags                                                                                         ) ;
+
+        assertTrue( request.getFlags().isActiveLow() ) ;
+
+        request.setEventClock( GpioEventClock.REALTIME ) ;
+
+        flags = request.memory.getLong( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_FLAGS ) ;
+
+        assertEquals( GpioFlags.LineFlags.EVENT_CLOCK_REALTIME         ,
+                      flags & GpioFlags.LineFlags.EVENT_CLOCK_REALTIME ) ;
+
+        assertEquals( GpioEventClock.REALTIME ,
+                      request.getEventClock() ) ;
+
+        for ( int i = 0                     ;
+              i < GpioLineRequest.MAX_LINES ;
+              i += 1                        ) {
+
+            GpioLine line = request.addLine( 100 + i ) ;
+
+            assertEquals( i          ,
+                          line.index ) ;
+        }
+
+        assertEquals( GpioLineRequest.MAX_LINES ,
+                      request.getLineCount()    ) ;
+
+        assertEquals( 163                         ,
+                      request.getLineNumber( 63 ) ) ;
+
+        assertThrows( IllegalStateException.class ,
+                      () -> request.addLine( 0 )  ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Default values of outputs are set in a single attribute." )
+    void outputValues() {
+
+        GpioLineRequest request = new GpioLineRequest( null ).setFlags( new GpioFlags().setOutput() ) ;
+
+        GpioLine line0 = request.addLine( 10    ,
+                                          true  ) ;
+        GpioLine line1 = request.addLine( 11    ,
+                                          false ) ;
+        GpioLine line2 = request.addLine( 12    ,
+                                          true  ) ;
+
+        assertEquals( 0b100           ,
+                      line2.getMask() ) ;
+
+        long config    = NativeGpioLineRequest.OFFSET_CONFIG        ;
+        long attribute = config + NativeGpioLineConfig.OFFSET_ATTRS ;
+
+        assertEquals( GpioFlags.LineFlags.OUTPUT                                           ,
+                      request.memory.getLong( config + NativeGpioLineConfig.OFFSET_FLAGS ) ) ;
+
+        assertEquals( 1                                                                       ,
+                      request.memory.getInt( config + NativeGpioLineConfig.OFFSET_NUM_ATTRS ) ) ;
+
+        assertEquals( NativeGpioLineConfigAttribute.GPIO_V2_LINE_ATTR_ID_OUTPUT_VALUES             ,
+                      request.memory.getInt( attribute + NativeGpioLineConfigAttribute.OFFSET_ID ) ) ;
+
+        assertEquals( line0.getMask() | line2.getMask()                                                ,
+                      request.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_VALUE ) ) ;
+
+        assertEquals( line0.getMask() | line1.getMask() | line2.getMask()                             ,
+                      request.memory.getLong( attribute + NativeGpioLineConfigAttribute.OFFSET_MASK ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Debounce periods are grouped by attribute." )
+    void debounce() {
+
+        GpioLineRequest request = new GpioLineRequest() ;
+
+        GpioLine line0 = request.addLine( 20 ) ;
+        GpioLine line1 = request.addLine( 21 ) ;
+        GpioLine line2 = request.addLine( 22 ) ;
+
+        assertFalse( request.isDebounced() ) ;
+
+        request.setDebounce( line0 ,
+                             5000  )
+               .setDebounce( line1 ,
+                             10000 )
+               .setDebounce( line2 ,
+                             5000  ) ;
+
+        assertTrue( request.isDebounced() ) ;
+
+        assertEquals( 2                                                                                                    ,
+                      request.memory.getInt( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_NUM_ATTRS ) ) ;
+
+        assertEquals( 10000                        ,
+                      request.getDebounce( line1 ) ) ;
+
+        // Moving line 1 to the first period removes the second attribute.
+        //
+        request.setDebounce( line1 ,
+                             5000  ) ;
+
+        assertEquals( 1                                                                                                    ,
+                      request.memory.getInt( NativeGpioLineRequest.OFFSET_CONFIG + NativeGpioLineConfig.OFFSET_NUM_ATTRS ) ) ;
+
+        assertEquals( 5000                         ,
+                      request.getDebounce( line1 ) ) ;
+
+        request.setDebounce( line0 ,
+                             0     ) ;
+
+        assertEquals( 0                            ,
+                      request.getDebounce( line0 ) ) ;
+
+        assertEquals( 5000                         ,
+                      request.getDebounce( line2 ) ) ;
+
+        request.clearDebounce() ;
+
+        assertFalse( request.isDebounced() ) ;
+
+        assertThrows( IllegalArgumentException.class    ,
+                      () -> request.setDebounce( line0 ,
+                                                 -1    ) ) ;
+    }
+
+
+
+
+    // Backend failing every ioctl with the given errno.
+    //
+    private static GpioBackend failing( int errno ) {
+
+        return new GpioBackend() {
+
+            @Override
+            public int open( String path ) {
+
+                return 42 ;
+            }
+
+
+            @Override
+            public int ioctl( int        fd       ,
+                              NativeLong request  ,
+                              Pointer    argument ) {
+
+                return -1 ;
+            }
+
+
+            @Override
+            public int close( int fd ) {
+
+                return 0 ;
+            }
+
+
+            @Override
+            public int getErrno() {
+
+                return errno ;
+            }
+        } ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Only errors meaning debouncing is not supported are reported as such." )
+    void refusedDebounce() throws IOException {
+
+        GpioLineRequest request = new GpioLineRequest() ;
+
+        request.setDebounce( request.addLine( 20 ) ,
+                             5000                  ) ;
+
+        try ( GpioDevice device = new GpioDevice( failing( Errno.EOPNOTSUPP ) ,
+                                                  "failing"                   ) ) {
+
+            assertThrows( UnsupportedOperationException.class ,
+                          () -> device.requestLines( request ) ) ;
+        }
+
+        try ( GpioDevice device = new GpioDevice( failing( 524 ) ,
+                                                  "failing"      ) ) {
+
+            assertThrows( UnsupportedOperationException.class ,
+                          () -> device.requestLines( request ) ) ;
+        }
+
+        try ( GpioDevice device = new GpioDevice( failing( Errno.EINVAL ) ,
+                                                  "failing"               ) ) {
+
+            assertThrows( IllegalArgumentException.class ,
+                          () -> device.requestLines( request ) ) ;
+        }
+    }
+}
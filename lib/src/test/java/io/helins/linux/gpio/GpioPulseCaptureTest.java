@@ -0,0 +1,219 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioEvent        ;
+import io.helins.linux.gpio.GpioPulseCapture ;
+import io.helins.linux.gpio.GpioPulseStats   ;
+import org.junit.jupiter.api.DisplayName     ;
+import org.junit.jupiter.api.Test            ;
+
+
+
+
+public class GpioPulseCaptureTest {
+
+
+    // Feeds a square signal, high for `high` and low for `low` nanoseconds, starting with a rising edge.
+    //
+    private static long feed( GpioPulseCapture capture ,
+                              int              id      ,
+                              long             start   ,
+                              int              periods ,
+                              long             high    ,
+                              long             low     ) {
+
+        GpioEvent event = new GpioEvent() ;
+        long      t     = start           ;
+
+        for ( int i = 0     ;
+              i < periods   ;
+              i += 1        ) {
+
+            capture.record( event.set( t                                 ,
+                                       GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                       id                               ) ) ;
+
+            t += high ;
+
+            capture.record( event.set( t                                  ,
+                                       GpioEvent.GPIO_EVENT_FALLING_EDGE ,
+                                       id                                ) ) ;
+
+            t += low ;
+        }
+
+        return t ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Duty cycle and period over a sliding window, per line." )
+    void sliding() {
+
+        GpioPulseCapture capture = new GpioPulseCapture( 8 ,
+                                                         0 ) ;
+
+        // The last period is only completed by the following rising edge.
+        //
+        feed( capture ,
+              1       ,
+              1000    ,
+              21      ,
+              250     ,
+              750     ) ;
+
+        feed( capture ,
+              2       ,
+              1000    ,
+              4       ,
+              500     ,
+              500     ) ;
+
+        GpioPulseStats stats = capture.sliding( 1                    ,
+                                                new GpioPulseStats() ) ;
+
+        assertEquals( 8                ,
+                      stats.getCount() ) ;
+
+        assertEquals( 0.25                 ,
+                      stats.getDutyCycle() ,
+                      1e-9                 ) ;
+
+        assertEquals( 1000                  ,
+                      stats.getMeanPeriod() ,
+                      1e-9                  ) ;
+
+        assertEquals( 0                  ,
+                      stats.getJitter()  ,
+                      1e-9               ) ;
+
+        capture.sliding( 2     ,
+                         stats ) ;
+
+        assertEquals( 3                ,
+                      stats.getCount() ) ;
+
+        assertEquals( 0.5                  ,
+                      stats.getDutyCycle() ,
+                      1e-9                 ) ;
+
+        assertEquals( 0                ,
+                      capture.sliding( 42    ,
+                                       stats ).getCount() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Statistics over the last complete tumbling window." )
+    void tumbling() {
+
+        GpioPulseCapture capture = new GpioPulseCapture( 4       ,
+                                                         1000000 ) ;
+
+        // First window : 10 periods of 100 microseconds. Second window : periods of 50 microseconds.
+        //
+        long t = feed( capture ,
+                       1       ,
+                       0       ,
+                       10      ,
+                       20000   ,
+                       80000   ) ;
+
+        t = feed( capture ,
+                  1       ,
+                  t       ,
+                  20      ,
+                  25000   ,
+                  25000   ) ;
+
+        GpioPulseStats stats = capture.tumbling( 1                    ,
+                                                 new GpioPulseStats() ) ;
+
+        assertEquals( 10               ,
+                      stats.getCount() ) ;
+
+        assertEquals( 0.2                  ,
+                      stats.getDutyCycle() ,
+                      1e-9                 ) ;
+
+        assertEquals( 100000                ,
+                      stats.getMinPeriod() ) ;
+
+        assertEquals( 100000                ,
+                      stats.getMaxPeriod() ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Missed edges discard the pending pulse and jitter is measured." )
+    void missed() {
+
+        GpioPulseCapture capture = new GpioPulseCapture( 16 ,
+                                                         0  ) ;
+
+        GpioEvent event = new GpioEvent() ;
+
+        long[] risings = { 0 , 1000 , 2100 , 2900 , 4000 } ;
+
+        for ( long t : risings ) {
+
+            capture.record( event.set( t                                 ,
+                                       GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                       7                                ) ) ;
+
+            capture.record( event.set( t + 400                            ,
+                                       GpioEvent.GPIO_EVENT_FALLING_EDGE ,
+                                       7                                 ) ) ;
+        }
+
+        // Falling edge lost, the pulse from 5000 cannot be measured.
+        //
+        capture.record( event.set( 5000                             ,
+                                   GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                   7                                ) ) ;
+
+        capture.record( event.set( 6000                             ,
+                                   GpioEvent.GPIO_EVENT_RISING_EDGE ,
+                                   7                                ) ) ;
+
+        assertEquals( 1                      ,
+                      capture.getMissed( 7 ) ) ;
+
+        GpioPulseStats stats = capture.sliding( 7                    ,
+                                                new GpioPulseStats() ) ;
+
+        assertEquals( 5                ,
+                      stats.getCount() ) ;
+
+        assertEquals( 800                   ,
+                      stats.getMinPeriod() ) ;
+
+        assertEquals( 1100                  ,
+                      stats.getMaxPeriod() ) ;
+
+        // Periods : 1000, 1100, 800, 1100, 1000.
+        //
+        assertEquals( 1000                  ,
+                      stats.getMeanPeriod() ,
+                      1e-9                  ) ;
+
+        assertEquals( Math.sqrt( 60000 / 4.0 ) ,
+                      stats.getJitter()        ,
+                      1e-9                     ) ;
+    }
+}
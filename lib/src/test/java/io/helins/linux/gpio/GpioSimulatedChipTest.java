@@ -0,0 +1,315 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioBuffer           ;
+import io.helins.linux.gpio.GpioDevice           ;
+import io.helins.linux.gpio.GpioEdgeDetection    ;
+import io.helins.linux.gpio.GpioEvent            ;
+import io.helins.linux.gpio.GpioEventBatch       ;
+import io.helins.linux.gpio.GpioEventHandle      ;
+import io.helins.linux.gpio.GpioEventRequest     ;
+import io.helins.linux.gpio.GpioEventWatcher     ;
+import io.helins.linux.gpio.GpioFlags            ;
+import io.helins.linux.gpio.GpioHandle           ;
+import io.helins.linux.gpio.GpioHandleRequest    ;
+import io.helins.linux.gpio.GpioLine             ;
+import io.helins.linux.gpio.GpioLineInfo         ;
+import io.helins.linux.gpio.GpioSimulatedChip    ;
+import io.helins.linux.gpio.internal.NativeLinux ;
+import java.io.IOException                       ;
+import org.junit.jupiter.api.DisplayName         ;
+import org.junit.jupiter.api.Test                ;
+
+
+
+
+public class GpioSimulatedChipTest {
+
+
+    @Test
+    @DisplayName( "Handles drive and read simulated lines like real ones." )
+    void handles() throws IOException {
+
+        try ( GpioSimulatedChip chip   = new GpioSimulatedChip( "sim" ,
+                                                                8     ) ;
+              GpioDevice        device = new GpioDevice( chip  ,
+                                                         "sim" ) ) {
+
+            assertEquals( "sim"                               ,
+                          device.requestChipInfo().getLabel() ) ;
+
+            assertEquals( 8                                   ,
+                          device.requestChipInfo().getLines() ) ;
+
+            GpioHandleRequest request = new GpioHandleRequest().setConsumer( "test" )
+                                                               .setFlags( new GpioFlags().setOutput() ) ;
+
+            GpioLine line2 = request.addLine( 2    ,
+                                              true ) ;
+
+            try ( GpioHandle handle = device.requestHandle( request ) ) {
+
+                assertTrue( chip.getValue( 2 ) ) ;
+
+                GpioLineInfo info = device.requestLineInfo( 2 ) ;
+
+                assertTrue( info.isUsed() ) ;
+                assertTrue( info.getFlags().isOutput() ) ;
+
+                assertEquals( "test"             ,
+                              info.getConsumer() ) ;
+
+                handle.write( new GpioBuffer().set( line2 ,
+                                                    false ) ) ;
+
+                assertFalse( chip.getValue( 2 ) ) ;
+
+                assertThrows( IllegalStateException.class   ,
+                              () -> chip.setValue( 2    ,
+                                                   true ) ) ;
+
+                // Already requested.
+                //
+                assertThrows( IOException.class                     ,
+                              () -> device.requestHandle( request ) ) ;
+            }
+
+            assertFalse( device.requestLineInfo( 2 ).isUsed() ) ;
+
+            GpioHandleRequest inputRequest = new GpioHandleRequest() ;
+
+            GpioLine line5 = inputRequest.addLine( 5 ) ;
+
+            try ( GpioHandle handle = device.requestHandle( inputRequest ) ) {
+
+                GpioBuffer buffer = new GpioBuffer() ;
+
+                chip.setValue( 5    ,
+                               true ) ;
+
+                handle.read( buffer ) ;
+
+                assertTrue( buffer.get( line5 ) ) ;
+
+                assertThrows( IOException.class               ,
+                              () -> handle.write( buffer ) ) ;
+            }
+
+            assertThrows( IOException.class                 ,
+                          () -> device.requestLineInfo( 8 ) ) ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Edges are generated at a given rate in virtual time and watched like real ones." )
+    void events() throws IOException {
+
+        try ( GpioSimulatedChip chip    = new GpioSimulatedChip( "sim" ,
+                                                                 4     ) ;
+              GpioDevice        device  = new GpioDevice( chip  ,
+                                                          "sim" ) ;
+              GpioEventWatcher  watcher = new GpioEventWatcher() ) {
+
+            GpioEventHandle handle = device.requestEvent( new GpioEventRequest( 1                                    ,
+                                                                                GpioEdgeDetection.RISING_AND_FALLING ) ) ;
+
+            watcher.addHandle( handle ,
+                               42     ) ;
+
+            // 1 edge per microsecond.
+            //
+            chip.setEdgeRate( 1         ,
+                              1000000.0 ) ;
+
+            assertEquals( 100                    ,
+                          chip.advance( 100000 ) ) ;
+
+            GpioEvent event = new GpioEvent() ;
+
+            assertTrue( watcher.waitForEvent( event ,
+                                              0     ) ) ;
+
+            assertEquals( 42            ,
+                          event.getId() ) ;
+
+            assertEquals( 1000L                    ,
+                          event.getNanoTimestamp() ) ;
+
+            assertTrue( event.isRising() ) ;
+
+            GpioEventBatch batch = handle.readEvents( new GpioEventBatch( 128 ) ) ;
+
+            assertEquals( 99           ,
+                          batch.size() ) ;
+
+            assertTrue( batch.isFalling( 0 ) ) ;
+
+            assertEquals( 100000L                      ,
+                          batch.getNanoTimestamp( 98 ) ) ;
+
+            handle.close() ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Events which are not read fast enough are dropped." )
+    void overload() throws IOException {
+
+        try ( GpioSimulatedChip chip   = new GpioSimulatedChip( "sim" ,
+                                                                1     ) ;
+              GpioDevice        device = new GpioDevice( chip  ,
+                                                         "sim" ) ) {
+
+            GpioEventHandle handle = device.requestEvent( new GpioEventRequest( 0                       ,
+                                                                                GpioEdgeDetection.RISING ) ) ;
+
+            handle.setNonBlocking( true ) ;
+
+            chip.setEdgeRate( 0          ,
+                              10000000.0 ) ;
+
+            // 10 million edges, half of them rising.
+            //
+            assertEquals( 10000000L                   ,
+                          chip.advance( 1000000000L ) ) ;
+
+            GpioEventBatch batch  = new GpioEventBatch( 256 ) ;
+            long           queued = 0                         ;
+
+            while ( handle.readEvents( batch ).size() > 0 ) {
+
+                queued += batch.size() ;
+            }
+
+            assertTrue( queued > 0 ) ;
+            assertTrue( chip.getDropped( 0 ) > 0 ) ;
+
+            assertEquals( 5000000L                      ,
+                          queued + chip.getDropped( 0 ) ) ;
+
+            handle.close() ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "In non-blocking mode, polling does not wait while waiting does, without leaving that mode." )
+    void nonBlocking() throws IOException        ,
+                              InterruptedException {
+
+        try ( GpioSimulatedChip chip   = new GpioSimulatedChip( "sim" ,
+                                                                1     ) ;
+              GpioDevice        device = new GpioDevice( chip  ,
+                                                         "sim" ) ) {
+
+            GpioEventHandle handle = device.requestEvent( new GpioEventRequest( 0                       ,
+                                                                                GpioEdgeDetection.RISING ) ) ;
+
+            handle.setNonBlocking( true ) ;
+
+            chip.setEdgeRate( 0         ,
+                              1000000.0 ) ;
+
+            GpioEvent event = new GpioEvent() ;
+
+            assertFalse( handle.pollEvent( event ) ) ;
+
+            // Only the pipe is touched by the waiting thread.
+            //
+            Thread edges = new Thread( () -> {
+
+                try {
+
+                    Thread.sleep( 50 ) ;
+                }
+
+                catch ( InterruptedException e ) {}
+
+                chip.advance( 2000 ) ;
+            } ) ;
+
+            edges.start() ;
+
+            assertSame( event                        ,
+                        handle.waitForEvent( event ) ) ;
+
+            edges.join() ;
+
+            assertEquals( 1000L                    ,
+                          event.getNanoTimestamp() ) ;
+
+            assertTrue( handle.isNonBlocking() ) ;
+            assertFalse( handle.pollEvent( event ) ) ;
+
+            handle.close() ;
+        }
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Spinning for an event ends up blocking without modifying the flags of the handle." )
+    void spinning() throws IOException        ,
+                           InterruptedException {
+
+        try ( GpioSimulatedChip chip   = new GpioSimulatedChip( "sim" ,
+                                                                1     ) ;
+              GpioDevice        device = new GpioDevice( chip  ,
+                                                         "sim" ) ) {
+
+            GpioEventHandle handle = device.requestEvent( new GpioEventRequest( 0                       ,
+                                                                                GpioEdgeDetection.RISING ) ) ;
+
+            handle.setNonBlocking( true ) ;
+
+            chip.setEdgeRate( 0         ,
+                              1000000.0 ) ;
+
+            Thread edges = new Thread( () -> {
+
+                try {
+
+                    Thread.sleep( 50 ) ;
+                }
+
+                catch ( InterruptedException e ) {}
+
+                chip.advance( 2000 ) ;
+            } ) ;
+
+            edges.start() ;
+
+            GpioEvent event = handle.spinForEvent( new GpioEvent() ,
+                                                   1000000L         ) ;
+
+            edges.join() ;
+
+            assertEquals( 1000L                    ,
+                          event.getNanoTimestamp() ) ;
+
+            assertTrue( ( NativeLinux.fcntl( handle.fd           ,
+                                             NativeLinux.F_GETFL ,
+                                             0                   ) & NativeLinux.O_NONBLOCK ) != 0 ) ;
+
+            handle.close() ;
+        }
+    }
+}
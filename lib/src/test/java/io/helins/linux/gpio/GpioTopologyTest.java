@@ -0,0 +1,187 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+
+
+
+package io.helins.linux.gpio ;
+
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+
+import io.helins.linux.gpio.GpioFlags                   ;
+import io.helins.linux.gpio.GpioLineInfo                ;
+import io.helins.linux.gpio.GpioTopology                ;
+import io.helins.linux.gpio.internal.NativeGpioLineInfo ;
+import java.io.IOException                              ;
+import java.nio.file.Files                              ;
+import java.nio.file.Path                               ;
+import org.junit.jupiter.api.DisplayName                ;
+import org.junit.jupiter.api.Test                       ;
+import org.junit.jupiter.api.io.TempDir                 ;
+
+
+
+
+public class GpioTopologyTest {
+
+
+    @TempDir
+    Path directory ;
+
+
+
+
+    // Builds a topology of 2 chips without scanning anything, "RELAY_3" existing on both.
+    //
+    private GpioTopology topology() {
+
+        GpioTopology topology = new GpioTopology( this.directory ) ;
+
+        topology.put( 4                                         ,
+                      "expander"                                ,
+                      new String[] { "RELAY_3" , null , "LED" } ,
+                      new String[ 3 ]                           ,
+                      new int[ 3 ]                              ) ;
+
+        topology.put( 0                                                ,
+                      "pinctrl"                                        ,
+                      new String[] { "SDA" , "RELAY_3" }               ,
+                      new String[] { null , "relays" }                 ,
+                      new int[] { 0 , GpioFlags.LineInfoFlags.KERNEL } ) ;
+
+        return topology ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Names of GPIO devices are recognized." )
+    void parseChip() {
+
+        assertEquals( 12                                     ,
+                      GpioTopology.parseChip( "gpiochip12" ) ) ;
+
+        assertEquals( -1                                   ,
+                      GpioTopology.parseChip( "gpiochip" ) ) ;
+
+        assertEquals( -1                                     ,
+                      GpioTopology.parseChip( "gpiochip1a" ) ) ;
+
+        assertEquals( -1                                ,
+                      GpioTopology.parseChip( "ttyS0" ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Lines are found by name, the chip with the lowest number winning." )
+    void lookup() {
+
+        GpioTopology topology = this.topology() ;
+
+        long address = topology.lookup( "RELAY_3" ) ;
+
+        assertEquals( 0                              ,
+                      GpioTopology.chipOf( address ) ) ;
+
+        assertEquals( 1                                ,
+                      GpioTopology.offsetOf( address ) ) ;
+
+        address = topology.lookup( "LED" ) ;
+
+        assertEquals( 4                              ,
+                      GpioTopology.chipOf( address ) ) ;
+
+        assertEquals( 2                                ,
+                      GpioTopology.offsetOf( address ) ) ;
+
+        assertEquals( GpioTopology.NOT_FOUND       ,
+                      topology.lookup( "MISSING" ) ) ;
+
+        assertArrayEquals( new int[] { 0 , 4 } ,
+                           topology.getChips() ) ;
+
+        assertEquals( "relays"                    ,
+                      topology.getConsumer( 0 ,
+                                            1 ) ) ;
+
+        assertTrue( topology.isUsed( 0 ,
+                                     1 ) ) ;
+
+        assertEquals( 3                          ,
+                      topology.getLineCount( 4 ) ) ;
+
+        assertThrows( IllegalArgumentException.class ,
+                      () -> topology.getLabel( 2 )   ) ;
+
+        assertThrows( IllegalArgumentException.class ,
+                      () -> topology.getLineName( 4 ,
+                                                  3 ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Lines are updated from information and chips are refreshed individually." )
+    void incremental() throws IOException {
+
+        GpioTopology topology = this.topology() ;
+
+        GpioLineInfo info = new GpioLineInfo() ;
+
+        info.setLine( 1 ) ;
+
+        info.memory.setString( NativeGpioLineInfo.OFFSET_CONSUMER ,
+                               "other"                            ) ;
+
+        topology.update( 0    ,
+                         info ) ;
+
+        assertEquals( "other"                     ,
+                      topology.getConsumer( 0 ,
+                                            1 ) ) ;
+
+        assertFalse( topology.isUsed( 0 ,
+                                      1 ) ) ;
+
+        // Chip 0 does not exist in the directory.
+        //
+        assertFalse( topology.refresh( 0 ) ) ;
+
+        assertArrayEquals( new int[] { 4 }     ,
+                           topology.getChips() ) ;
+
+        assertEquals( 4                                                   ,
+                      GpioTopology.chipOf( topology.lookup( "RELAY_3" ) ) ) ;
+    }
+
+
+
+
+    @Test
+    @DisplayName( "Refreshing everything only considers GPIO devices." )
+    void refresh() throws IOException {
+
+        Files.createFile( this.directory.resolve( "ttyS0" ) ) ;
+
+        GpioTopology topology = this.topology().refresh() ;
+
+        assertEquals( 0                          ,
+                      topology.getChips().length ) ;
+
+        assertEquals( GpioTopology.NOT_FOUND       ,
+                      topology.lookup( "RELAY_3" ) ) ;
+
+        // A regular file is not a GPIO device.
+        //
+        Files.createFile( this.directory.resolve( "gpiochip1" ) ) ;
+
+        assertThrows( IOException.class        ,
+                      () -> topology.refresh() ) ;
+    }
+}